@@ -22,6 +22,7 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import java.util.function.Consumer;
 import org.apache.bookkeeper.common.allocator.impl.ByteBufAllocatorBuilderImpl;
+import org.apache.bookkeeper.stats.StatsLogger;
 
 /**
  * Builder object to customize a ByteBuf allocator.
@@ -92,4 +93,25 @@ public interface ByteBufAllocatorBuilder {
      * <p>Default is {@link LeakDetectionPolicy#Disabled}
      */
     ByteBufAllocatorBuilder leakDetectionPolicy(LeakDetectionPolicy leakDetectionPolicy);
+
+    /**
+     * Export the stats of the memory pool: the arenas, the allocations per size
+     * class, the usage of the chunks and the thread cache hits and misses. The
+     * thread cache hits are only exported when the allocator has its own pool.
+     *
+     * <p>Default is to not export any stats.
+     */
+    ByteBufAllocatorBuilder statsLogger(StatsLogger statsLogger);
+
+    /**
+     * Trim the thread-local cache of the memory pool of a thread that did not
+     * allocate for the given time. This gives back to the pool the memory that
+     * threads kept cached since their last burst.
+     *
+     * <p>Netty event loop threads trim their cache from a periodic task on their
+     * event loop. The other threads trim it when they allocate again.
+     *
+     * <p>Default is 0, which never trims the thread caches on idleness.
+     */
+    ByteBufAllocatorBuilder threadCacheIdleTrimMillis(long threadCacheIdleTrimMillis);
 }
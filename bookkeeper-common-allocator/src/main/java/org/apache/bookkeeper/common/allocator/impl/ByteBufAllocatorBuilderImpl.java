@@ -24,6 +24,7 @@ import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
 import org.apache.bookkeeper.common.allocator.LeakDetectionPolicy;
 import org.apache.bookkeeper.common.allocator.OutOfMemoryPolicy;
 import org.apache.bookkeeper.common.allocator.PoolingPolicy;
+import org.apache.bookkeeper.stats.StatsLogger;
 
 /**
  * Implementation of {@link ByteBufAllocatorBuilder}.
@@ -37,11 +38,13 @@ public class ByteBufAllocatorBuilderImpl implements ByteBufAllocatorBuilder {
     OutOfMemoryPolicy outOfMemoryPolicy = OutOfMemoryPolicy.FallbackToHeap;
     Consumer<OutOfMemoryError> outOfMemoryListener = null;
     LeakDetectionPolicy leakDetectionPolicy = LeakDetectionPolicy.Disabled;
+    StatsLogger statsLogger = null;
+    long threadCacheIdleTrimMillis = 0;
 
     @Override
     public ByteBufAllocatorWithOomHandler build() {
         return new ByteBufAllocatorImpl(pooledAllocator, unpooledAllocator, poolingPolicy, poolingConcurrency,
-                outOfMemoryPolicy, outOfMemoryListener, leakDetectionPolicy);
+                outOfMemoryPolicy, outOfMemoryListener, leakDetectionPolicy, statsLogger, threadCacheIdleTrimMillis);
     }
 
     @Override
@@ -86,4 +89,16 @@ public class ByteBufAllocatorBuilderImpl implements ByteBufAllocatorBuilder {
         return this;
     }
 
+    @Override
+    public ByteBufAllocatorBuilder statsLogger(StatsLogger statsLogger) {
+        this.statsLogger = statsLogger;
+        return this;
+    }
+
+    @Override
+    public ByteBufAllocatorBuilder threadCacheIdleTrimMillis(long threadCacheIdleTrimMillis) {
+        this.threadCacheIdleTrimMillis = threadCacheIdleTrimMillis;
+        return this;
+    }
+
 }
@@ -24,11 +24,17 @@ import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.ResourceLeakDetector;
 import io.netty.util.ResourceLeakDetector.Level;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
 import org.apache.bookkeeper.common.allocator.LeakDetectionPolicy;
 import org.apache.bookkeeper.common.allocator.OutOfMemoryPolicy;
 import org.apache.bookkeeper.common.allocator.PoolingPolicy;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,10 +55,37 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
     private final OutOfMemoryPolicy outOfMemoryPolicy;
     private Consumer<OutOfMemoryError> outOfMemoryListener;
 
+    private final LongAdder directAllocations = new LongAdder();
+
+    // Netty thread caches can only be trimmed by their own thread. The event loop threads trim their cache from a
+    // periodic task on their event loop, the other threads when they allocate again after having been idle
+    private final long threadCacheIdleTrimNanos;
+    private final FastThreadLocal<ThreadCacheTrimmer> threadCacheTrimmers =
+            new FastThreadLocal<ThreadCacheTrimmer>() {
+        @Override
+        protected ThreadCacheTrimmer initialValue() {
+            return new ThreadCacheTrimmer();
+        }
+
+        @Override
+        protected void onRemoval(ThreadCacheTrimmer trimmer) {
+            trimmer.cancel();
+        }
+    };
+    private final LongAdder threadCacheTrims = new LongAdder();
+
     ByteBufAllocatorImpl(ByteBufAllocator pooledAllocator, ByteBufAllocator unpooledAllocator,
             PoolingPolicy poolingPolicy, int poolingConcurrency, OutOfMemoryPolicy outOfMemoryPolicy,
             Consumer<OutOfMemoryError> outOfMemoryListener,
             LeakDetectionPolicy leakDetectionPolicy) {
+        this(pooledAllocator, unpooledAllocator, poolingPolicy, poolingConcurrency, outOfMemoryPolicy,
+                outOfMemoryListener, leakDetectionPolicy, null, 0);
+    }
+
+    ByteBufAllocatorImpl(ByteBufAllocator pooledAllocator, ByteBufAllocator unpooledAllocator,
+            PoolingPolicy poolingPolicy, int poolingConcurrency, OutOfMemoryPolicy outOfMemoryPolicy,
+            Consumer<OutOfMemoryError> outOfMemoryListener,
+            LeakDetectionPolicy leakDetectionPolicy, StatsLogger statsLogger, long threadCacheIdleTrimMillis) {
         super(poolingPolicy == PoolingPolicy.PooledDirect /* preferDirect */);
 
         this.poolingPolicy = poolingPolicy;
@@ -65,6 +98,7 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
             this.outOfMemoryListener = outOfMemoryListener;
         }
 
+        boolean dedicatedPool = false;
         if (poolingPolicy == PoolingPolicy.PooledDirect) {
             if (pooledAllocator == null) {
                 if (poolingConcurrency == PooledByteBufAllocator.defaultNumDirectArena()) {
@@ -81,6 +115,7 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
                             PooledByteBufAllocator.defaultSmallCacheSize(),
                             PooledByteBufAllocator.defaultNormalCacheSize(),
                             PooledByteBufAllocator.defaultUseCacheForAllThreads());
+                    dedicatedPool = true;
                 }
             } else {
                 this.pooledAllocator = pooledAllocator;
@@ -91,6 +126,16 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
 
         this.unpooledAllocator = (unpooledAllocator != null) ? unpooledAllocator : UnpooledByteBufAllocator.DEFAULT;
 
+        if (this.pooledAllocator instanceof PooledByteBufAllocator) {
+            this.threadCacheIdleTrimNanos = TimeUnit.MILLISECONDS.toNanos(threadCacheIdleTrimMillis);
+            if (statsLogger != null) {
+                new ByteBufAllocatorStats(((PooledByteBufAllocator) this.pooledAllocator).metric())
+                        .register(statsLogger, dedicatedPool ? directAllocations : null, threadCacheTrims);
+            }
+        } else {
+            this.threadCacheIdleTrimNanos = 0;
+        }
+
         // The setting is static in Netty, so it will actually affect all
         // allocators
         switch (leakDetectionPolicy) {
@@ -142,8 +187,13 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
         try {
             // There are few cases in which we ask explicitly for a pooled
             // heap buffer.
-            ByteBufAllocator alloc = (poolingPolicy == PoolingPolicy.PooledDirect) ? pooledAllocator
-                    : unpooledAllocator;
+            ByteBufAllocator alloc;
+            if (poolingPolicy == PoolingPolicy.PooledDirect) {
+                trimThreadCacheIfIdle();
+                alloc = pooledAllocator;
+            } else {
+                alloc = unpooledAllocator;
+            }
             return alloc.heapBuffer(initialCapacity, maxCapacity);
         } catch (OutOfMemoryError e) {
             outOfMemoryListener.accept(e);
@@ -159,6 +209,8 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
 
     private ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity, boolean canFallbackToHeap) {
         if (poolingPolicy == PoolingPolicy.PooledDirect) {
+            trimThreadCacheIfIdle();
+            directAllocations.increment();
             try {
                 return pooledAllocator.directBuffer(initialCapacity, maxCapacity);
             } catch (OutOfMemoryError e) {
@@ -187,6 +239,61 @@ public class ByteBufAllocatorImpl extends AbstractByteBufAllocator implements By
         }
     }
 
+    private void trimThreadCacheIfIdle() {
+        if (threadCacheIdleTrimNanos > 0) {
+            threadCacheTrimmers.get().allocated();
+        }
+    }
+
+    /**
+     * Trims the thread cache of the thread it belongs to, once per idle period of the thread.
+     */
+    private final class ThreadCacheTrimmer implements Runnable {
+        private final ScheduledFuture<?> periodicTrim;
+        private long lastAllocationNanos = System.nanoTime();
+        private boolean trimmed = false;
+
+        ThreadCacheTrimmer() {
+            EventExecutor eventLoop = io.netty.util.internal.ThreadExecutorMap.currentExecutor();
+            if (eventLoop != null) {
+                periodicTrim = eventLoop.scheduleAtFixedRate(this, threadCacheIdleTrimNanos, threadCacheIdleTrimNanos,
+                        TimeUnit.NANOSECONDS);
+            } else {
+                periodicTrim = null;
+            }
+        }
+
+        void allocated() {
+            long now = System.nanoTime();
+            if (periodicTrim == null) {
+                trimIfIdle(now);
+            }
+            lastAllocationNanos = now;
+            trimmed = false;
+        }
+
+        @Override
+        public void run() {
+            // Runs on the event loop, which is the thread owning the cache
+            trimIfIdle(System.nanoTime());
+        }
+
+        private void trimIfIdle(long now) {
+            if (!trimmed && now - lastAllocationNanos > threadCacheIdleTrimNanos) {
+                trimmed = true;
+                if (((PooledByteBufAllocator) pooledAllocator).trimCurrentThreadCache()) {
+                    threadCacheTrims.increment();
+                }
+            }
+        }
+
+        void cancel() {
+            if (periodicTrim != null) {
+                periodicTrim.cancel(false);
+            }
+        }
+    }
+
     @Override
     public boolean isDirectBufferPooled() {
         return pooledAllocator != null && pooledAllocator.isDirectBufferPooled();
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.common.allocator.impl;
+
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PoolChunkListMetric;
+import io.netty.buffer.PoolChunkMetric;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * Stats of the pooled allocator behind a {@link ByteBufAllocatorImpl}.
+ *
+ * <p>The arena stats are summed over the direct arenas, where the allocator puts all its pooled buffers. Netty
+ * only counts in the arenas the allocations that missed the thread caches, so the thread cache hits are the
+ * direct allocations made through the allocator minus the allocations made in the arenas. When the pool is
+ * shared with other users, such as the default Netty pool, the arena stats include their allocations too, and
+ * the thread cache hits are not exported since they cannot be told apart.
+ */
+class ByteBufAllocatorStats {
+
+    static final String NUM_DIRECT_ARENAS = "num_direct_arenas";
+    static final String NUM_HEAP_ARENAS = "num_heap_arenas";
+    static final String NUM_THREAD_CACHES = "num_thread_caches";
+    static final String CHUNK_SIZE = "chunk_size";
+    static final String USED_DIRECT_MEMORY = "used_direct_memory";
+    static final String USED_HEAP_MEMORY = "used_heap_memory";
+    static final String ACTIVE_BYTES = "active_bytes";
+
+    static final String SIZE_CLASS_LABEL = "size_class";
+    static final String ALLOCATIONS = "allocations";
+    static final String DEALLOCATIONS = "deallocations";
+    static final String ACTIVE_ALLOCATIONS = "active_allocations";
+
+    static final String CHUNK_USAGE_LABEL = "chunk_usage";
+    static final String CHUNKS = "chunks";
+    static final String CHUNKS_FREE_BYTES = "chunks_free_bytes";
+
+    static final String THREAD_CACHE_HITS = "thread_cache_hits";
+    static final String THREAD_CACHE_MISSES = "thread_cache_misses";
+    static final String THREAD_CACHE_TRIMS = "thread_cache_trims";
+
+    private final PooledByteBufAllocatorMetric metric;
+
+    ByteBufAllocatorStats(PooledByteBufAllocatorMetric metric) {
+        this.metric = metric;
+    }
+
+    /**
+     * @param directAllocations the direct allocations made through the allocator, or null if the pool is shared
+     */
+    void register(StatsLogger statsLogger, LongAdder directAllocations, LongAdder threadCacheTrims) {
+        registerGauge(statsLogger, NUM_DIRECT_ARENAS, () -> metric.numDirectArenas());
+        registerGauge(statsLogger, NUM_HEAP_ARENAS, () -> metric.numHeapArenas());
+        registerGauge(statsLogger, NUM_THREAD_CACHES, () -> metric.numThreadLocalCaches());
+        registerGauge(statsLogger, CHUNK_SIZE, () -> metric.chunkSize());
+        registerGauge(statsLogger, USED_DIRECT_MEMORY, () -> metric.usedDirectMemory());
+        registerGauge(statsLogger, USED_HEAP_MEMORY, () -> metric.usedHeapMemory());
+        registerGauge(statsLogger, ACTIVE_BYTES, () -> sumDirectArenas(PoolArenaMetric::numActiveBytes));
+
+        StatsLogger smallStats = statsLogger.scopeLabel(SIZE_CLASS_LABEL, "small");
+        registerGauge(smallStats, ALLOCATIONS, () -> sumDirectArenas(PoolArenaMetric::numSmallAllocations));
+        registerGauge(smallStats, DEALLOCATIONS, () -> sumDirectArenas(PoolArenaMetric::numSmallDeallocations));
+        registerGauge(smallStats, ACTIVE_ALLOCATIONS,
+                () -> sumDirectArenas(PoolArenaMetric::numActiveSmallAllocations));
+        StatsLogger normalStats = statsLogger.scopeLabel(SIZE_CLASS_LABEL, "normal");
+        registerGauge(normalStats, ALLOCATIONS, () -> sumDirectArenas(PoolArenaMetric::numNormalAllocations));
+        registerGauge(normalStats, DEALLOCATIONS, () -> sumDirectArenas(PoolArenaMetric::numNormalDeallocations));
+        registerGauge(normalStats, ACTIVE_ALLOCATIONS,
+                () -> sumDirectArenas(PoolArenaMetric::numActiveNormalAllocations));
+        StatsLogger hugeStats = statsLogger.scopeLabel(SIZE_CLASS_LABEL, "huge");
+        registerGauge(hugeStats, ALLOCATIONS, () -> sumDirectArenas(PoolArenaMetric::numHugeAllocations));
+        registerGauge(hugeStats, DEALLOCATIONS, () -> sumDirectArenas(PoolArenaMetric::numHugeDeallocations));
+        registerGauge(hugeStats, ACTIVE_ALLOCATIONS,
+                () -> sumDirectArenas(PoolArenaMetric::numActiveHugeAllocations));
+
+        // The chunk lists are the same in every arena, ordered by usage
+        List<PoolArenaMetric> arenas = metric.directArenas();
+        if (!arenas.isEmpty()) {
+            List<PoolChunkListMetric> chunkLists = arenas.get(0).chunkLists();
+            for (int i = 0; i < chunkLists.size(); i++) {
+                int chunkListIdx = i;
+                PoolChunkListMetric chunkList = chunkLists.get(i);
+                StatsLogger chunkListStats = statsLogger.scopeLabel(CHUNK_USAGE_LABEL,
+                        chunkList.minUsage() + "-" + chunkList.maxUsage());
+                registerGauge(chunkListStats, CHUNKS, () -> sumChunks(chunkListIdx, chunk -> 1));
+                registerGauge(chunkListStats, CHUNKS_FREE_BYTES,
+                        () -> sumChunks(chunkListIdx, PoolChunkMetric::freeBytes));
+            }
+        }
+
+        registerGauge(statsLogger, THREAD_CACHE_MISSES, this::threadCacheMisses);
+        if (directAllocations != null) {
+            registerGauge(statsLogger, THREAD_CACHE_HITS,
+                    () -> Math.max(0, directAllocations.sum() - threadCacheMisses()));
+        }
+        registerGauge(statsLogger, THREAD_CACHE_TRIMS, threadCacheTrims::sum);
+    }
+
+    private long threadCacheMisses() {
+        return sumDirectArenas(PoolArenaMetric::numAllocations);
+    }
+
+    private long sumDirectArenas(ToLongFunction<PoolArenaMetric> value) {
+        long sum = 0;
+        for (PoolArenaMetric arena : metric.directArenas()) {
+            sum += value.applyAsLong(arena);
+        }
+        return sum;
+    }
+
+    private long sumChunks(int chunkListIdx, ToLongFunction<PoolChunkMetric> value) {
+        long sum = 0;
+        for (PoolArenaMetric arena : metric.directArenas()) {
+            for (PoolChunkMetric chunk : arena.chunkLists().get(chunkListIdx)) {
+                sum += value.applyAsLong(chunk);
+            }
+        }
+        return sum;
+    }
+
+    private static void registerGauge(StatsLogger statsLogger, String name, LongSupplier supplier) {
+        statsLogger.registerGauge(name, new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return supplier.getAsLong();
+            }
+        });
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.common.util;
+
+/**
+ * Listener of the hot ordering keys detected by an {@link OrderedExecutor}.
+ *
+ * <p>The callbacks are invoked by the thread submitting the task that closes a detection window, so they
+ * should return quickly and must not block on the executor.
+ */
+public interface HotKeyListener {
+
+    /**
+     * A key became hot: it got at least the configured share of the tasks submitted during the last window.
+     *
+     * @param executorName name of the executor
+     * @param key ordering key
+     * @param threadIdx index of the thread executing the tasks of the key
+     * @param share estimated share of the submitted tasks that had the key
+     */
+    void onHotKey(String executorName, long key, int threadIdx, double share);
+
+    /**
+     * A hot key cooled down: it got less than half the configured share during the last window.
+     *
+     * @param executorName name of the executor
+     * @param key ordering key
+     * @param threadIdx index of the thread executing the tasks of the key
+     */
+    default void onKeyCooled(String executorName, long key, int threadIdx) {
+    }
+
+    /**
+     * The tasks of a key are now executed by another thread. The keys first submitted to a split thread start
+     * right away on their new thread and are not reported.
+     *
+     * @param executorName name of the executor
+     * @param key ordering key
+     * @param fromThreadIdx index of the thread that executed the tasks of the key so far
+     * @param toThreadIdx index of the thread executing the tasks of the key from now on
+     */
+    default void onKeyRemapped(String executorName, long key, int fromThreadIdx, int toThreadIdx) {
+    }
+}
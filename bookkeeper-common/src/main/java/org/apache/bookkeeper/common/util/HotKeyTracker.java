@@ -0,0 +1,607 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.common.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.StampedLock;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * Online detection of the hot ordering keys of an {@link OrderedExecutor}, with the optional remapping of the
+ * other keys of the threads executing them.
+ *
+ * <p>One in {@link #SAMPLE_RATE} tasks submitted with a long ordering key is counted in a Space-Saving sketch,
+ * which keeps the most frequent keys with a bounded overestimation of their counts. Every window of at least
+ * {@link #WINDOW_SAMPLES} samples and {@link #MIN_WINDOW_MILLIS} milliseconds, the keys whose guaranteed count
+ * reaches the threshold share of the window are reported hot, the hot keys falling under half the threshold are
+ * reported cooled, and the sketch restarts.
+ *
+ * <p>With remapping, a thread executing hot keys is split: its hottest key stays, while its other keys, hot or
+ * cold, are spread over the threads without hot keys. When the thread no longer executes hot keys, its keys go
+ * back to it. A key changes thread only at a quiescent point, when none of its tasks is queued or running:
+ * <ul>
+ * <li>A split starts by queuing a marker task on the thread while holding the route lock of the thread, which
+ * every submission to the thread holds while it looks up the route of its key. The tasks queued before the split
+ * are done when the marker runs.</li>
+ * <li>During the split, every key submitted to the thread gets a route counting its queued and running tasks.
+ * The route moves the key to its destination once the marker ran and no task of the key is left.</li>
+ * <li>A route is only dropped when no task of its key is left, while holding the route lock of its home
+ * thread.</li>
+ * </ul>
+ */
+@Slf4j
+final class HotKeyTracker {
+
+    static final int SAMPLE_RATE = 16;
+    static final int TRACKED_KEYS = 32;
+    static final int WINDOW_SAMPLES = 64 * TRACKED_KEYS;
+    static final long MIN_WINDOW_MILLIS = 1000;
+    private static final int NO_TARGET = -1;
+
+    private final String name;
+    private final ExecutorService[] threads;
+    private final double threshold;
+    private final boolean remapping;
+    private final HotKeyListener listener;
+
+    // Space-Saving sketch of the current window, guarded by this
+    private final long[] keys = new long[TRACKED_KEYS];
+    private final long[] counts = new long[TRACKED_KEYS];
+    private final long[] errors = new long[TRACKED_KEYS];
+    private int numKeys = 0;
+    private long samples = 0;
+    private long windowStartNanos = MathUtils.nowInNano();
+
+    // hot keys with their count in the last window, guarded by evaluationLock
+    private final Object evaluationLock = new Object();
+    private final Map<Long, Long> hotKeys = new HashMap<>();
+    private volatile int numHotKeys = 0;
+
+    // a submission to a home thread holds the read lock of the thread while it looks up the route of its key
+    private final StampedLock[] routeLocks;
+    // split of each home thread, null if the thread is not split, guarded by the route lock of the thread
+    private final Split[] splits;
+    private final ConcurrentHashMap<Long, KeyRoute> routes = new ConcurrentHashMap<>();
+    private final AtomicIntegerArray numRoutes;
+
+    private final Counter hotKeyDetections;
+    private final Counter keyRemaps;
+
+    HotKeyTracker(String name, ExecutorService[] threads, StatsLogger statsLogger, double threshold,
+                  boolean remapping, HotKeyListener listener) {
+        this.name = name;
+        this.threads = threads;
+        this.threshold = threshold;
+        // there is no other thread to move a key to
+        this.remapping = remapping && threads.length > 1;
+        this.listener = listener;
+        this.routeLocks = new StampedLock[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            routeLocks[i] = new StampedLock();
+        }
+        this.splits = new Split[threads.length];
+        this.numRoutes = new AtomicIntegerArray(threads.length);
+
+        this.hotKeyDetections = statsLogger.getCounter(String.format("%s-hot-key-detections", name));
+        this.keyRemaps = statsLogger.getCounter(String.format("%s-key-remaps", name));
+        statsLogger.registerGauge(String.format("%s-hot-keys", name), new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                return numHotKeys;
+            }
+        });
+        statsLogger.registerGauge(String.format("%s-remapped-keys", name), new Gauge<Number>() {
+            @Override
+            public Number getDefaultValue() {
+                return 0;
+            }
+
+            @Override
+            public Number getSample() {
+                int remapped = 0;
+                for (KeyRoute route : routes.values()) {
+                    if (route.thread != route.home) {
+                        remapped++;
+                    }
+                }
+                return remapped;
+            }
+        });
+    }
+
+    /**
+     * Execute a task on the thread of its ordering key.
+     */
+    void execute(long key, Runnable r) {
+        int home = OrderedExecutor.chooseThreadIdx(key, threads.length);
+        if (!remapping) {
+            threads[home].execute(r);
+        } else {
+            StampedLock lock = routeLocks[home];
+            long stamp = lock.readLock();
+            try {
+                Split split = splits[home];
+                KeyRoute route = null;
+                if (null != split) {
+                    route = routes.computeIfAbsent(key, k -> split.newRoute(k, home));
+                } else if (numRoutes.get(home) > 0) {
+                    route = routes.get(key);
+                }
+                if (null == route) {
+                    threads[home].execute(r);
+                } else {
+                    route.execute(r);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        // sample without holding a route lock, as closing a window may split threads
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0) {
+            sample(key);
+        }
+    }
+
+    /**
+     * Returns the index of the thread executing the tasks of a key, which only holds while a task of the key
+     * is queued or running.
+     */
+    int getThreadIdx(long key) {
+        int home = OrderedExecutor.chooseThreadIdx(key, threads.length);
+        if (!remapping) {
+            return home;
+        }
+        KeyRoute route = routes.get(key);
+        return null == route ? home : route.thread;
+    }
+
+    private void sample(long key) {
+        Window window = null;
+        synchronized (this) {
+            addToSketch(key);
+            if (++samples >= WINDOW_SAMPLES
+                    && MathUtils.elapsedMSec(windowStartNanos) >= MIN_WINDOW_MILLIS) {
+                window = new Window(Arrays.copyOf(keys, numKeys), Arrays.copyOf(counts, numKeys),
+                        Arrays.copyOf(errors, numKeys), samples);
+                numKeys = 0;
+                samples = 0;
+                windowStartNanos = MathUtils.nowInNano();
+            }
+        }
+        if (null != window) {
+            evaluate(window);
+        }
+    }
+
+    private void addToSketch(long key) {
+        int minIdx = -1;
+        long minCount = Long.MAX_VALUE;
+        for (int i = 0; i < numKeys; i++) {
+            if (keys[i] == key) {
+                counts[i]++;
+                return;
+            }
+            if (counts[i] < minCount) {
+                minCount = counts[i];
+                minIdx = i;
+            }
+        }
+        if (numKeys < keys.length) {
+            keys[numKeys] = key;
+            counts[numKeys] = 1;
+            errors[numKeys] = 0;
+            numKeys++;
+        } else {
+            // evict the least frequent key, whose count bounds the overestimation of the new key
+            keys[minIdx] = key;
+            errors[minIdx] = minCount;
+            counts[minIdx] = minCount + 1;
+        }
+    }
+
+    private void evaluate(Window window) {
+        List<Runnable> events = new ArrayList<>();
+        synchronized (evaluationLock) {
+            double hotCount = threshold * window.samples;
+            Iterator<Map.Entry<Long, Long>> hotKeysIter = hotKeys.entrySet().iterator();
+            while (hotKeysIter.hasNext()) {
+                Map.Entry<Long, Long> hotKey = hotKeysIter.next();
+                long key = hotKey.getKey();
+                int i = window.indexOf(key);
+                if (i < 0 || window.guaranteedCount(i) < hotCount / 2) {
+                    hotKeysIter.remove();
+                    int threadIdx = destinationOf(key);
+                    log.info("Key {} of executor {} on thread {} cooled down", key, name, threadIdx);
+                    events.add(() -> listener.onKeyCooled(name, key, threadIdx));
+                } else {
+                    hotKey.setValue(window.guaranteedCount(i));
+                }
+            }
+            for (int i = 0; i < window.keys.length; i++) {
+                long key = window.keys[i];
+                long count = window.guaranteedCount(i);
+                if (count >= hotCount && null == hotKeys.putIfAbsent(key, count)) {
+                    hotKeyDetections.inc();
+                    int threadIdx = destinationOf(key);
+                    double share = (double) count / window.samples;
+                    log.info("Key {} of executor {} on thread {} is hot: {}% of the tasks", key, name, threadIdx,
+                            Math.round(share * 100));
+                    events.add(() -> listener.onHotKey(name, key, threadIdx, share));
+                }
+            }
+            numHotKeys = hotKeys.size();
+
+            if (remapping) {
+                rebalance();
+            }
+        }
+
+        if (null != listener) {
+            for (Runnable event : events) {
+                notifyListener(event);
+            }
+        }
+    }
+
+    private void rebalance() {
+        int numThreads = threads.length;
+        boolean[] hotThreads = new boolean[numThreads];
+        long[] hottestKeys = new long[numThreads];
+        long[] hottestCounts = new long[numThreads];
+        for (Map.Entry<Long, Long> hotKey : hotKeys.entrySet()) {
+            int threadIdx = destinationOf(hotKey.getKey());
+            hotThreads[threadIdx] = true;
+            if (hotKey.getValue() > hottestCounts[threadIdx]) {
+                hottestCounts[threadIdx] = hotKey.getValue();
+                hottestKeys[threadIdx] = hotKey.getKey();
+            }
+        }
+        int[] coldThreads = new int[numThreads];
+        int numColdThreads = 0;
+        for (int i = 0; i < numThreads; i++) {
+            if (!hotThreads[i]) {
+                coldThreads[numColdThreads++] = i;
+            }
+        }
+        coldThreads = Arrays.copyOf(coldThreads, numColdThreads);
+
+        for (int i = 0; i < numThreads; i++) {
+            boolean split = hotThreads[i] && numColdThreads > 0;
+            if (split && null == splits[i]) {
+                startSplit(i, hottestKeys[i], coldThreads);
+            } else if (split) {
+                splits[i].update(hottestKeys[i], coldThreads);
+            } else if (null != splits[i]) {
+                endSplit(i);
+            }
+        }
+
+        // move the keys away from the hot threads they do not own, back home once their home thread is no longer
+        // split, and drop the routes that stayed idle for a whole window
+        for (KeyRoute route : routes.values()) {
+            boolean used = route.clearUsed();
+            Split split = splits[route.home];
+            if (null == split || !used) {
+                if (route.isIdle()) {
+                    removeRoute(route);
+                } else if (null == split) {
+                    route.moveTo(route.home);
+                }
+                continue;
+            }
+            int destination = route.destination();
+            if (hotThreads[destination] && hottestKeys[destination] != route.key) {
+                route.moveTo(split.threadFor(route.key));
+            }
+        }
+    }
+
+    private void startSplit(int threadIdx, long keepKey, int[] coldThreads) {
+        Split split = new Split(threadIdx, keepKey, coldThreads);
+        StampedLock lock = routeLocks[threadIdx];
+        long stamp = lock.writeLock();
+        try {
+            // no task can be submitted to the thread until the split is set, so the tasks queued behind the
+            // marker all go through the routes
+            threads[threadIdx].execute(split::markDrained);
+            splits[threadIdx] = split;
+        } catch (RejectedExecutionException e) {
+            // the thread is full or shutting down, retry on the next window
+            return;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        log.info("Split thread {} of executor {}, keeping key {} and moving its other keys to threads {}",
+                threadIdx, name, keepKey, coldThreads);
+    }
+
+    private void endSplit(int threadIdx) {
+        StampedLock lock = routeLocks[threadIdx];
+        long stamp = lock.writeLock();
+        try {
+            splits[threadIdx] = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        log.info("Thread {} of executor {} no longer split, moving its keys back", threadIdx, name);
+    }
+
+    private void removeRoute(KeyRoute route) {
+        StampedLock lock = routeLocks[route.home];
+        long stamp = lock.writeLock();
+        try {
+            // no task of the key can be submitted while holding the lock, so it stays idle
+            if (route.isIdle() && routes.remove(route.key, route)) {
+                numRoutes.decrementAndGet(route.home);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the thread that executes, or is about to execute, the tasks of a key.
+     */
+    private int destinationOf(long key) {
+        KeyRoute route = routes.get(key);
+        return null == route ? OrderedExecutor.chooseThreadIdx(key, threads.length) : route.destination();
+    }
+
+    private void remapped(long key, int from, int to) {
+        keyRemaps.inc();
+        if (log.isDebugEnabled()) {
+            log.debug("Key {} of executor {} moved from thread {} to thread {}", key, name, from, to);
+        }
+        if (null != listener) {
+            notifyListener(() -> listener.onKeyRemapped(name, key, from, to));
+        }
+    }
+
+    private void notifyListener(Runnable event) {
+        try {
+            event.run();
+        } catch (Throwable t) {
+            log.warn("Hot key listener of executor {} failed: {}", name, t.getMessage(), t);
+        }
+    }
+
+    /**
+     * Split of a thread executing hot keys.
+     */
+    private final class Split {
+        final int home;
+        volatile long keepKey;
+        volatile int[] coldThreads;
+        // guarded by this
+        boolean drained = false;
+        List<KeyRoute> waitingRoutes = new ArrayList<>();
+
+        Split(int home, long keepKey, int[] coldThreads) {
+            this.home = home;
+            this.keepKey = keepKey;
+            this.coldThreads = coldThreads;
+        }
+
+        void update(long keepKey, int[] coldThreads) {
+            this.keepKey = keepKey;
+            this.coldThreads = coldThreads;
+        }
+
+        int threadFor(long key) {
+            if (key == keepKey) {
+                return home;
+            }
+            int[] threads = coldThreads;
+            return threads[MathUtils.signSafeMod(key * 0x9E3779B97F4A7C15L >>> 32, threads.length)];
+        }
+
+        /**
+         * Create the route of a key submitted to the thread, with the route lock of the thread held.
+         */
+        KeyRoute newRoute(long key, int home) {
+            KeyRoute route = new KeyRoute(key, home);
+            int destination = threadFor(key);
+            synchronized (this) {
+                if (drained) {
+                    // the key has no task left
+                    route.drained = true;
+                    route.thread = destination;
+                } else {
+                    route.target = destination == home ? NO_TARGET : destination;
+                    waitingRoutes.add(route);
+                }
+            }
+            numRoutes.incrementAndGet(home);
+            return route;
+        }
+
+        void markDrained() {
+            List<KeyRoute> drainedRoutes;
+            synchronized (this) {
+                drained = true;
+                drainedRoutes = waitingRoutes;
+                waitingRoutes = null;
+            }
+            for (KeyRoute route : drainedRoutes) {
+                route.markDrained();
+            }
+        }
+    }
+
+    /**
+     * Route of a key, counting the tasks of the key that are queued or running, so that the key moves to another
+     * thread only when none is left.
+     */
+    private final class KeyRoute {
+        final long key;
+        final int home;
+        // thread executing the tasks of the key, only changed when the key is quiescent
+        volatile int thread;
+        // guarded by this
+        int target = NO_TARGET;
+        int inFlight = 0;
+        boolean drained = false;
+        boolean used = true;
+
+        KeyRoute(long key, int home) {
+            this.key = key;
+            this.home = home;
+            this.thread = home;
+        }
+
+        /**
+         * Execute a task of the key, with the route lock of the home thread held.
+         */
+        void execute(Runnable r) {
+            int threadIdx;
+            synchronized (this) {
+                inFlight++;
+                used = true;
+                threadIdx = thread;
+            }
+            try {
+                threads[threadIdx].execute(() -> {
+                    try {
+                        r.run();
+                    } finally {
+                        taskDone();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                taskDone();
+                throw e;
+            }
+        }
+
+        synchronized int destination() {
+            return target == NO_TARGET ? thread : target;
+        }
+
+        synchronized boolean isIdle() {
+            return inFlight == 0 && drained;
+        }
+
+        synchronized boolean clearUsed() {
+            boolean wasUsed = used;
+            used = false;
+            return wasUsed;
+        }
+
+        void moveTo(int threadIdx) {
+            int from;
+            int to;
+            synchronized (this) {
+                target = threadIdx == thread ? NO_TARGET : threadIdx;
+                from = switchIfQuiescent();
+                to = thread;
+            }
+            if (from >= 0) {
+                remapped(key, from, to);
+            }
+        }
+
+        void markDrained() {
+            int from;
+            int to;
+            synchronized (this) {
+                drained = true;
+                from = switchIfQuiescent();
+                to = thread;
+            }
+            if (from >= 0) {
+                remapped(key, from, to);
+            }
+        }
+
+        private void taskDone() {
+            int from;
+            int to;
+            synchronized (this) {
+                inFlight--;
+                from = switchIfQuiescent();
+                to = thread;
+            }
+            if (from >= 0) {
+                remapped(key, from, to);
+            }
+        }
+
+        /**
+         * Switch to the target thread if no task of the key is left.
+         *
+         * @return the previous thread, or -1 if the key did not switch
+         */
+        private int switchIfQuiescent() {
+            if (target == NO_TARGET || !drained || inFlight > 0) {
+                return -1;
+            }
+            int from = thread;
+            thread = target;
+            target = NO_TARGET;
+            return from;
+        }
+    }
+
+    /**
+     * Closed detection window.
+     */
+    private static final class Window {
+        final long[] keys;
+        final long[] counts;
+        final long[] errors;
+        final long samples;
+
+        Window(long[] keys, long[] counts, long[] errors, long samples) {
+            this.keys = keys;
+            this.counts = counts;
+            this.errors = errors;
+            this.samples = samples;
+        }
+
+        int indexOf(long key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        long guaranteedCount(int i) {
+            return counts[i] - errors[i];
+        }
+    }
+}
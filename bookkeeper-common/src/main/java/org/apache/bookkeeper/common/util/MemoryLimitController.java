@@ -18,25 +18,126 @@
  */
 package org.apache.bookkeeper.common.util;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
 
 /**
  * Controller for tracking the amount of memory used for some task.
+ *
+ * <p>Controllers can be arranged in a hierarchy, to share a memory budget between several consumers: the memory
+ * reserved from a controller is also reserved from its parent, and a reservation only succeeds when neither the
+ * controller nor any of its ancestors is over its limit. The limits of all the levels are checked under the lock
+ * shared by the hierarchy before reserving on any of them, so that a reservation failing on an ancestor does not
+ * make the concurrent reservations on its descendants fail too.
+ *
+ * <p>Consumers which can give back memory on demand, such as caches, register a {@link MemoryReclaimer}. When a
+ * reservation would block, the reclaimers under the controllers over their limit are asked to free memory first,
+ * so that caches shrink before the consumers get throttled.
  */
 public class MemoryLimitController {
 
+    /**
+     * Gives back memory on demand, by releasing it from the controller it was reserved from.
+     */
+    @FunctionalInterface
+    public interface MemoryReclaimer {
+
+        /**
+         * Frees memory.
+         *
+         * @param size the amount of memory to free
+         * @return the amount of memory that was freed
+         */
+        long reclaimMemory(long size);
+    }
+
+    private static final String DEFAULT_NAME = "memory";
+
+    private final String name;
+    private final MemoryLimitController parent;
+    private final List<MemoryLimitController> children = new CopyOnWriteArrayList<>();
+    private final List<MemoryReclaimer> reclaimers = new CopyOnWriteArrayList<>();
+    private volatile StatsLogger statsLogger;
+
     private final long memoryLimit;
     private final AtomicLong currentUsage = new AtomicLong();
-    private final ReentrantLock mutex = new ReentrantLock(false);
-    private final Condition condition = mutex.newCondition();
+    // shared by the whole hierarchy, as releasing memory from a controller can unblock its descendants
+    private final ReentrantLock mutex;
+    private final Condition condition;
 
     public MemoryLimitController(long memoryLimitBytes) {
+        this(DEFAULT_NAME, memoryLimitBytes, null);
+    }
+
+    public MemoryLimitController(String name, long memoryLimitBytes) {
+        this(name, memoryLimitBytes, null);
+    }
+
+    private MemoryLimitController(String name, long memoryLimitBytes, MemoryLimitController parent) {
+        this.name = parent == null ? name : parent.name + "/" + name;
         this.memoryLimit = memoryLimitBytes;
+        this.parent = parent;
+        if (parent == null) {
+            this.mutex = new ReentrantLock(false);
+            this.condition = mutex.newCondition();
+        } else {
+            this.mutex = parent.mutex;
+            this.condition = parent.condition;
+        }
+    }
+
+    /**
+     * Create a controller for a consumer of the memory of this controller.
+     *
+     * @param name name of the consumer
+     * @param memoryLimitBytes the limit of the consumer, or 0 to only be limited by this controller
+     * @return the controller of the consumer
+     */
+    public MemoryLimitController newChild(String name, long memoryLimitBytes) {
+        MemoryLimitController child = new MemoryLimitController(name, memoryLimitBytes, this);
+        children.add(child);
+        StatsLogger logger = statsLogger;
+        if (logger != null) {
+            child.exportStats(logger);
+        }
+        return child;
+    }
+
+    public void addReclaimer(MemoryReclaimer reclaimer) {
+        reclaimers.add(reclaimer);
+    }
+
+    public void removeReclaimer(MemoryReclaimer reclaimer) {
+        reclaimers.remove(reclaimer);
     }
 
     public boolean tryReserveMemory(long size) {
+        if (parent == null && children.isEmpty()) {
+            return tryReserveLocalMemory(size);
+        }
+
+        mutex.lock();
+        try {
+            for (MemoryLimitController c = this; c != null; c = c.parent) {
+                if (c.isOverLimit()) {
+                    return false;
+                }
+            }
+            for (MemoryLimitController c = this; c != null; c = c.parent) {
+                c.currentUsage.addAndGet(size);
+            }
+            return true;
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    private boolean tryReserveLocalMemory(long size) {
         while (true) {
             long current = currentUsage.get();
             long newUsage = current + size;
@@ -53,8 +154,15 @@ public class MemoryLimitController {
         }
     }
 
+    private boolean isOverLimit() {
+        // As for a single controller, one request is allowed to go over the limit
+        return memoryLimit > 0 && currentUsage.get() > memoryLimit;
+    }
+
     public void reserveMemory(long size) throws InterruptedException {
         if (!tryReserveMemory(size)) {
+            reclaimMemory(size);
+
             mutex.lock();
 
             try {
@@ -67,20 +175,122 @@ public class MemoryLimitController {
         }
     }
 
+    /**
+     * Reserve memory regardless of the limits, for memory that is allocated anyway, such as fixed size buffers. The
+     * other consumers then see the memory as used.
+     *
+     * @param size the amount of memory to reserve
+     */
+    public void forceReserveMemory(long size) {
+        currentUsage.addAndGet(size);
+        if (parent != null) {
+            parent.forceReserveMemory(size);
+        }
+    }
+
     public void releaseMemory(long size) {
+        releaseLocalMemory(size);
+        if (parent != null) {
+            parent.releaseMemory(size);
+        }
+    }
+
+    private void releaseLocalMemory(long size) {
         long newUsage = currentUsage.addAndGet(-size);
         if (newUsage + size > memoryLimit && newUsage <= memoryLimit) {
             // We just crossed the limit. Now we have more space
-            mutex.lock();
-            try {
-                condition.signalAll();
-            } finally {
-                mutex.unlock();
+            signalWaiters();
+        }
+    }
+
+    private void signalWaiters() {
+        mutex.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /**
+     * Ask the reclaimers under the controllers over their limit, from this one up to the root, to free enough
+     * memory for a reservation of the given size.
+     */
+    private void reclaimMemory(long size) {
+        for (MemoryLimitController c = this; c != null; c = c.parent) {
+            long excess = c.currentUsage.get() - c.memoryLimit;
+            if (c.memoryLimit > 0 && excess > 0) {
+                c.reclaimMemoryFromConsumers(excess + size);
+            }
+        }
+    }
+
+    private long reclaimMemoryFromConsumers(long size) {
+        long reclaimed = 0;
+        for (MemoryReclaimer reclaimer : reclaimers) {
+            if (reclaimed >= size) {
+                return reclaimed;
             }
+            reclaimed += reclaimer.reclaimMemory(size - reclaimed);
         }
+        for (MemoryLimitController child : children) {
+            if (reclaimed >= size) {
+                return reclaimed;
+            }
+            reclaimed += child.reclaimMemoryFromConsumers(size - reclaimed);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Export the usage and the limit of this controller, and of its current and future descendants, labelled with
+     * their names.
+     *
+     * @param statsLogger the stats logger to register the gauges on
+     */
+    public void exportStats(StatsLogger statsLogger) {
+        this.statsLogger = statsLogger;
+        StatsLogger consumerStatsLogger = statsLogger.scopeLabel("consumer", name);
+        consumerStatsLogger.registerGauge("usage", new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return currentUsage();
+            }
+        });
+        consumerStatsLogger.registerGauge("limit", new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return memoryLimit;
+            }
+
+            @Override
+            public Long getSample() {
+                return memoryLimit;
+            }
+        });
+        for (MemoryLimitController child : children) {
+            child.exportStats(statsLogger);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    public List<MemoryLimitController> getChildren() {
+        return children;
     }
 
     public long currentUsage() {
         return currentUsage.get();
     }
-}
\ No newline at end of file
+}
@@ -32,11 +32,14 @@ import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
@@ -55,6 +58,19 @@ import org.slf4j.MDC;
  * basic amount of ordering we want (e.g. , per ledger handle). Ordering is
  * achieved by hashing the key objects to threads by their {@link #hashCode()}
  * method.
+ *
+ * <p>By default the tasks submitted without a key are also run by one of these
+ * threads, picked at random, so they can wait behind slow ordered tasks. With
+ * {@link AbstractBuilder#unorderedWorkStealing(boolean)}, they are run by a
+ * shared work-stealing pool instead, and only the ordered tasks are bound to
+ * the per-key threads.
+ *
+ * <p>With {@link AbstractBuilder#hotKeyDetection(boolean)}, the executor samples
+ * the long ordering keys of the submitted tasks to detect the hot keys, which
+ * keep their thread busy while the other threads may be idle. With
+ * {@link AbstractBuilder#hotKeyRemapping(boolean)}, the other keys of the threads
+ * executing hot keys are spread over the threads without hot keys, each one only
+ * when none of its tasks is queued or running.
  */
 @Slf4j
 public class OrderedExecutor implements ExecutorService {
@@ -75,6 +91,11 @@ public class OrderedExecutor implements ExecutorService {
     final boolean enableBusyWait;
     // we only want thread-scoped metrics on the server-side where it can be explicitly enabled
     final boolean enableThreadScopedMetrics;
+    // pool running the unordered tasks, if they are not run by the ordered threads
+    final ForkJoinPool workStealingPool;
+    final ExecutorService unorderedExecutor;
+    // detection of the hot long ordering keys, if enabled
+    final HotKeyTracker hotKeyTracker;
 
     public static Builder newBuilder() {
         return new Builder();
@@ -87,13 +108,15 @@ public class OrderedExecutor implements ExecutorService {
 
         @Override
         public OrderedExecutor build() {
+            useVirtualThreadFactoryIfEnabled();
             if (null == threadFactory) {
                 threadFactory = new DefaultThreadFactory("bookkeeper-ordered-safe-executor");
             }
             return new OrderedExecutor(name, numThreads, threadFactory, statsLogger,
                                            traceTaskExecution, preserveMdcForTaskExecution,
                                            warnTimeMicroSec, maxTasksInQueue, enableBusyWait,
-                                           enableThreadScopedMetrics);
+                                           enableThreadScopedMetrics, unorderedWorkStealing,
+                                           effectiveHotKeyThreshold(), hotKeyRemapping, hotKeyListener);
         }
     }
 
@@ -111,6 +134,12 @@ public class OrderedExecutor implements ExecutorService {
         protected int maxTasksInQueue = NO_TASK_LIMIT;
         protected boolean enableBusyWait = false;
         protected boolean enableThreadScopedMetrics = false;
+        protected boolean useVirtualThreads = false;
+        protected boolean unorderedWorkStealing = false;
+        protected boolean hotKeyDetection = false;
+        protected double hotKeyThreshold = 0;
+        protected boolean hotKeyRemapping = false;
+        protected HotKeyListener hotKeyListener = null;
 
         public AbstractBuilder<T> name(String name) {
             this.name = name;
@@ -162,8 +191,94 @@ public class OrderedExecutor implements ExecutorService {
             return this;
         }
 
+        /**
+         * Back the executor threads with virtual threads, when running on a JDK that supports them.
+         * Each thread keeps executing the tasks of its ordering keys in order, but blocking tasks no
+         * longer hold a platform thread, so the executor can be configured with a much larger number
+         * of threads. On older JDKs the executor falls back to platform threads.
+         */
+        public AbstractBuilder<T> useVirtualThreads(boolean useVirtualThreads) {
+            this.useVirtualThreads = useVirtualThreads;
+            return this;
+        }
+
+        /**
+         * Run the tasks submitted without an ordering key on a shared work-stealing pool with as many
+         * threads as the executor, rather than on one of the ordered threads picked at random. The
+         * unordered tasks then no longer queue behind slow ordered tasks while other threads are idle.
+         * The queue limit of the executor does not apply to the pool. The delayed and periodic tasks of an
+         * {@link OrderedScheduler} still run on its threads.
+         */
+        public AbstractBuilder<T> unorderedWorkStealing(boolean unorderedWorkStealing) {
+            this.unorderedWorkStealing = unorderedWorkStealing;
+            return this;
+        }
+
+        /**
+         * Detect the hot ordering keys, by sampling the tasks submitted with a long ordering key. The hot keys
+         * are logged, counted in the stats and reported to the {@link #hotKeyListener(HotKeyListener)}.
+         */
+        public AbstractBuilder<T> hotKeyDetection(boolean hotKeyDetection) {
+            this.hotKeyDetection = hotKeyDetection;
+            return this;
+        }
+
+        /**
+         * Set the share of the submitted tasks from which a key is hot. By default a key is hot when it gets
+         * the share of a thread, one task out of the number of threads.
+         */
+        public AbstractBuilder<T> hotKeyThreshold(double hotKeyThreshold) {
+            this.hotKeyThreshold = hotKeyThreshold;
+            return this;
+        }
+
+        /**
+         * Move the keys sharing a thread with a hotter key to the threads without hot keys, and back once their
+         * thread cools down, which enables the hot key detection. A key only moves when none of its tasks is
+         * queued or running, so the tasks of a key are still executed in order, provided they are all submitted
+         * through {@link OrderedExecutor#executeOrdered(long, Runnable)} or
+         * {@link OrderedExecutor#submitOrdered(long, Callable)}: the executors returned by
+         * {@link OrderedExecutor#chooseThread(long)} do not follow the moves, and the thread returned by
+         * {@link OrderedExecutor#getThreadID(long)} only holds while a task of the key is queued or running.
+         */
+        public AbstractBuilder<T> hotKeyRemapping(boolean hotKeyRemapping) {
+            this.hotKeyRemapping = hotKeyRemapping;
+            return this;
+        }
+
+        public AbstractBuilder<T> hotKeyListener(HotKeyListener hotKeyListener) {
+            this.hotKeyListener = hotKeyListener;
+            return this;
+        }
+
+        /**
+         * Returns the hot key threshold to build the executor with, or 0 if the hot keys are not detected.
+         */
+        protected double effectiveHotKeyThreshold() {
+            if (!hotKeyDetection && !hotKeyRemapping) {
+                return 0;
+            }
+            return hotKeyThreshold > 0 ? hotKeyThreshold : 1.0 / numThreads;
+        }
+
+        protected void useVirtualThreadFactoryIfEnabled() {
+            if (!useVirtualThreads || null != threadFactory) {
+                return;
+            }
+
+            if (VirtualThreads.isSupported()) {
+                threadFactory = VirtualThreads.newThreadFactory(name);
+                // Spinning and pinning to a core make no sense for virtual threads
+                enableBusyWait = false;
+            } else {
+                log.info("Virtual threads are not supported by this JVM, executor {} falls back to platform threads",
+                        name);
+            }
+        }
+
         @SuppressWarnings("unchecked")
         public T build() {
+            useVirtualThreadFactoryIfEnabled();
             if (null == threadFactory) {
                 threadFactory = new DefaultThreadFactory(name);
             }
@@ -177,7 +292,11 @@ public class OrderedExecutor implements ExecutorService {
                 warnTimeMicroSec,
                 maxTasksInQueue,
                 enableBusyWait,
-                enableThreadScopedMetrics);
+                enableThreadScopedMetrics,
+                unorderedWorkStealing,
+                effectiveHotKeyThreshold(),
+                hotKeyRemapping,
+                hotKeyListener);
         }
     }
 
@@ -299,6 +418,10 @@ public class OrderedExecutor implements ExecutorService {
     }
 
     protected ExecutorService addExecutorDecorators(ExecutorService executor) {
+        return timedExecutor(executor);
+    }
+
+    private ExecutorService timedExecutor(ExecutorService executor) {
         return new ForwardingExecutorService() {
             @Override
             protected ExecutorService delegate() {
@@ -377,6 +500,46 @@ public class OrderedExecutor implements ExecutorService {
                                 StatsLogger statsLogger, boolean traceTaskExecution,
                                 boolean preserveMdcForTaskExecution, long warnTimeMicroSec, int maxTasksInQueue,
                                 boolean enableBusyWait, boolean enableThreadScopedMetrics) {
+        this(baseName, numThreads, threadFactory, statsLogger, traceTaskExecution, preserveMdcForTaskExecution,
+                warnTimeMicroSec, maxTasksInQueue, enableBusyWait, enableThreadScopedMetrics, false, 0, false, null);
+    }
+
+    /**
+     * Constructs Safe executor.
+     *
+     * @param unorderedWorkStealing
+     *            - whether the tasks without ordering key run on a shared work-stealing pool
+     * @see #OrderedExecutor(String, int, ThreadFactory, StatsLogger, boolean, boolean, long, int, boolean,
+     *      boolean)
+     */
+    protected OrderedExecutor(String baseName, int numThreads, ThreadFactory threadFactory,
+                                StatsLogger statsLogger, boolean traceTaskExecution,
+                                boolean preserveMdcForTaskExecution, long warnTimeMicroSec, int maxTasksInQueue,
+                                boolean enableBusyWait, boolean enableThreadScopedMetrics,
+                                boolean unorderedWorkStealing) {
+        this(baseName, numThreads, threadFactory, statsLogger, traceTaskExecution, preserveMdcForTaskExecution,
+                warnTimeMicroSec, maxTasksInQueue, enableBusyWait, enableThreadScopedMetrics, unorderedWorkStealing,
+                0, false, null);
+    }
+
+    /**
+     * Constructs Safe executor.
+     *
+     * @param hotKeyThreshold
+     *            - share of the submitted tasks from which a long ordering key is hot, 0 to not detect hot keys
+     * @param hotKeyRemapping
+     *            - whether the keys sharing a thread with a hotter key are moved to other threads
+     * @param hotKeyListener
+     *            - listener of the hot keys, may be null
+     * @see #OrderedExecutor(String, int, ThreadFactory, StatsLogger, boolean, boolean, long, int, boolean,
+     *      boolean, boolean)
+     */
+    protected OrderedExecutor(String baseName, int numThreads, ThreadFactory threadFactory,
+                                StatsLogger statsLogger, boolean traceTaskExecution,
+                                boolean preserveMdcForTaskExecution, long warnTimeMicroSec, int maxTasksInQueue,
+                                boolean enableBusyWait, boolean enableThreadScopedMetrics,
+                                boolean unorderedWorkStealing, double hotKeyThreshold, boolean hotKeyRemapping,
+                                HotKeyListener hotKeyListener) {
         checkArgument(numThreads > 0);
         checkArgument(!StringUtils.isBlank(baseName));
 
@@ -391,6 +554,8 @@ public class OrderedExecutor implements ExecutorService {
             ExecutorService thread = createSingleThreadExecutor(
                     new ThreadFactoryBuilder().setNameFormat(name + "-" + getClass().getSimpleName() + "-" + i + "-%d")
                     .setThreadFactory(threadFactory).build());
+            // the decorators hide the executor, keep it to register its metrics
+            final ExecutorService undecoratedThread = thread;
 
             if (traceTaskExecution || preserveMdcForTaskExecution) {
                 thread = addExecutorDecorators(thread);
@@ -425,11 +590,11 @@ public class OrderedExecutor implements ExecutorService {
                 throw new RuntimeException("Couldn't start thread " + i, e);
             }
 
-            if (thread instanceof SingleThreadExecutor) {
-                SingleThreadExecutor ste = (SingleThreadExecutor) thread;
+            if (undecoratedThread instanceof SingleThreadExecutor) {
+                SingleThreadExecutor ste = (SingleThreadExecutor) undecoratedThread;
                 ste.registerMetrics(statsLogger);
-            } else if (thread instanceof ThreadPoolExecutor) {
-                ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) thread;
+            } else if (undecoratedThread instanceof ThreadPoolExecutor) {
+                ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) undecoratedThread;
                 // Register gauges
                 statsLogger.scopeLabel("thread", String.valueOf(idx))
                         .registerGauge(String.format("%s-queue", name), new Gauge<Number>() {
@@ -470,6 +635,51 @@ public class OrderedExecutor implements ExecutorService {
             }
         }
 
+        if (unorderedWorkStealing) {
+            AtomicInteger workerIdx = new AtomicInteger();
+            workStealingPool = new ForkJoinPool(numThreads, pool -> {
+                ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                worker.setName(name + "-" + getClass().getSimpleName() + "-unordered-" + workerIdx.getAndIncrement());
+                return worker;
+            }, (t, e) -> log.error("Exception in unordered task of executor {}: {}", name, e.getMessage(), e),
+                    true /* asyncMode, to run the tasks in submission order */);
+            unorderedExecutor = (traceTaskExecution || preserveMdcForTaskExecution)
+                    ? timedExecutor(workStealingPool) : workStealingPool;
+
+            statsLogger.registerGauge(String.format("%s-unordered-queue", name), new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return workStealingPool.getQueuedSubmissionCount() + workStealingPool.getQueuedTaskCount();
+                }
+            });
+            statsLogger.registerGauge(String.format("%s-unordered-active-threads", name), new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return workStealingPool.getActiveThreadCount();
+                }
+            });
+        } else {
+            workStealingPool = null;
+            unorderedExecutor = null;
+        }
+
+        if (hotKeyThreshold > 0) {
+            hotKeyTracker = new HotKeyTracker(name, threads, statsLogger, hotKeyThreshold, hotKeyRemapping,
+                    hotKeyListener);
+        } else {
+            hotKeyTracker = null;
+        }
+
         statsLogger.registerGauge(String.format("%s-threads", name), new Gauge<Number>() {
             @Override
             public Number getDefaultValue() {
@@ -521,7 +731,11 @@ public class OrderedExecutor implements ExecutorService {
      * @param r
      */
     public void executeOrdered(Object orderingKey, Runnable r) {
-        chooseThread(orderingKey).execute(r);
+        if (null == orderingKey && null != unorderedExecutor) {
+            unorderedExecutor.execute(r);
+        } else {
+            chooseThread(orderingKey).execute(r);
+        }
     }
 
     /**
@@ -530,7 +744,11 @@ public class OrderedExecutor implements ExecutorService {
      * @param r
      */
     public void executeOrdered(long orderingKey, Runnable r) {
-        chooseThread(orderingKey).execute(r);
+        if (null != hotKeyTracker) {
+            hotKeyTracker.execute(orderingKey, r);
+        } else {
+            chooseThread(orderingKey).execute(r);
+        }
     }
 
     /**
@@ -539,7 +757,7 @@ public class OrderedExecutor implements ExecutorService {
      * @param r
      */
     public void executeOrdered(int orderingKey, Runnable r) {
-        chooseThread(orderingKey).execute(r);
+        executeOrdered((long) orderingKey, r);
     }
 
     public <T> ListenableFuture<T> submitOrdered(long orderingKey, Callable<T> task) {
@@ -563,6 +781,9 @@ public class OrderedExecutor implements ExecutorService {
             return threadIds[0];
         }
 
+        if (null != hotKeyTracker) {
+            return threadIds[hotKeyTracker.getThreadIdx(orderingKey)];
+        }
         return threadIds[chooseThreadIdx(orderingKey, threads.length)];
     }
 
@@ -591,6 +812,9 @@ public class OrderedExecutor implements ExecutorService {
     /**
      * skip hashcode generation in this special case.
      *
+     * <p>The thread is the home thread of the key, which does not follow the moves of the key when the hot
+     * key remapping is enabled.
+     *
      * @param orderingKey long ordering key
      * @return the thread for executing this order key
      */
@@ -602,6 +826,16 @@ public class OrderedExecutor implements ExecutorService {
         return threads[chooseThreadIdx(orderingKey, threads.length)];
     }
 
+    /**
+     * Returns the executor of the tasks submitted without ordering key.
+     */
+    private ExecutorService chooseUnorderedExecutor() {
+        if (null != unorderedExecutor) {
+            return unorderedExecutor;
+        }
+        return chooseThread();
+    }
+
     protected static int chooseThreadIdx(long orderingKey, int numThreads) {
         return MathUtils.signSafeMod(orderingKey >>> 1, numThreads);
     }
@@ -630,7 +864,7 @@ public class OrderedExecutor implements ExecutorService {
      */
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return chooseThread().submit(task);
+        return chooseUnorderedExecutor().submit(task);
     }
 
     /**
@@ -638,7 +872,7 @@ public class OrderedExecutor implements ExecutorService {
      */
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return chooseThread().submit(task, result);
+        return chooseUnorderedExecutor().submit(task, result);
     }
 
     /**
@@ -646,7 +880,7 @@ public class OrderedExecutor implements ExecutorService {
      */
     @Override
     public Future<?> submit(Runnable task) {
-        return chooseThread().submit(task);
+        return chooseUnorderedExecutor().submit(task);
     }
 
     /**
@@ -655,7 +889,7 @@ public class OrderedExecutor implements ExecutorService {
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
         throws InterruptedException {
-        return chooseThread().invokeAll(tasks);
+        return chooseUnorderedExecutor().invokeAll(tasks);
     }
 
     /**
@@ -666,7 +900,7 @@ public class OrderedExecutor implements ExecutorService {
                                          long timeout,
                                          TimeUnit unit)
         throws InterruptedException {
-        return chooseThread().invokeAll(tasks, timeout, unit);
+        return chooseUnorderedExecutor().invokeAll(tasks, timeout, unit);
     }
 
     /**
@@ -675,7 +909,7 @@ public class OrderedExecutor implements ExecutorService {
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
         throws InterruptedException, ExecutionException {
-        return chooseThread().invokeAny(tasks);
+        return chooseUnorderedExecutor().invokeAny(tasks);
     }
 
     /**
@@ -684,7 +918,7 @@ public class OrderedExecutor implements ExecutorService {
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
         throws InterruptedException, ExecutionException, TimeoutException {
-        return chooseThread().invokeAny(tasks, timeout, unit);
+        return chooseUnorderedExecutor().invokeAny(tasks, timeout, unit);
     }
 
     /**
@@ -692,7 +926,7 @@ public class OrderedExecutor implements ExecutorService {
      */
     @Override
     public void execute(Runnable command) {
-        chooseThread().execute(command);
+        chooseUnorderedExecutor().execute(command);
     }
 
 
@@ -704,6 +938,9 @@ public class OrderedExecutor implements ExecutorService {
         for (int i = 0; i < threads.length; i++) {
             threads[i].shutdown();
         }
+        if (null != workStealingPool) {
+            workStealingPool.shutdown();
+        }
     }
 
     /**
@@ -715,6 +952,9 @@ public class OrderedExecutor implements ExecutorService {
         for (ExecutorService executor : threads) {
             runnables.addAll(executor.shutdownNow());
         }
+        if (null != workStealingPool) {
+            runnables.addAll(workStealingPool.shutdownNow());
+        }
         return runnables;
     }
 
@@ -728,7 +968,7 @@ public class OrderedExecutor implements ExecutorService {
                 return false;
             }
         }
-        return true;
+        return null == workStealingPool || workStealingPool.isShutdown();
     }
 
     /**
@@ -740,6 +980,9 @@ public class OrderedExecutor implements ExecutorService {
         for (int i = 0; i < threads.length; i++) {
             ret = ret && threads[i].awaitTermination(timeout, unit);
         }
+        if (null != workStealingPool) {
+            ret = ret && workStealingPool.awaitTermination(timeout, unit);
+        }
         return ret;
     }
 
@@ -753,7 +996,7 @@ public class OrderedExecutor implements ExecutorService {
                 return false;
             }
         }
-        return true;
+        return null == workStealingPool || workStealingPool.isTerminated();
     }
 
     /**
@@ -771,6 +1014,16 @@ public class OrderedExecutor implements ExecutorService {
                 Thread.currentThread().interrupt();
             }
         }
+        if (null != workStealingPool) {
+            try {
+                if (!workStealingPool.awaitTermination(timeout, unit)) {
+                    workStealingPool.shutdownNow();
+                }
+            } catch (InterruptedException exception) {
+                workStealingPool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
 }
@@ -74,7 +74,8 @@ public class OrderedScheduler extends OrderedExecutor implements ScheduledExecut
                 preserveMdcForTaskExecution,
                 warnTimeMicroSec,
                 maxTasksInQueue,
-                enableThreadScopedMetrics);
+                enableThreadScopedMetrics,
+                unorderedWorkStealing);
         }
     }
 
@@ -95,6 +96,8 @@ public class OrderedScheduler extends OrderedExecutor implements ScheduledExecut
      *            - should we preserve MDC for task execution
      * @param warnTimeMicroSec
      *            - log long task exec warning after this interval
+     * @param unorderedWorkStealing
+     *            - whether the tasks without ordering key run on a shared work-stealing pool
      */
     private OrderedScheduler(String baseName,
                                int numThreads,
@@ -104,10 +107,11 @@ public class OrderedScheduler extends OrderedExecutor implements ScheduledExecut
                                boolean preserveMdcForTaskExecution,
                                long warnTimeMicroSec,
                                int maxTasksInQueue,
-                               boolean enableThreadScopedMetrics) {
+                               boolean enableThreadScopedMetrics,
+                               boolean unorderedWorkStealing) {
         super(baseName, numThreads, threadFactory, statsLogger, traceTaskExecution,
                 preserveMdcForTaskExecution, warnTimeMicroSec, maxTasksInQueue,
-                false /* enableBusyWait */, enableThreadScopedMetrics);
+                false /* enableBusyWait */, enableThreadScopedMetrics, unorderedWorkStealing);
     }
 
     @Override
@@ -179,7 +179,7 @@ public class SingleThreadExecutor extends AbstractExecutorService implements Exe
     @Override
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
         runner.join(unit.toMillis(timeout));
-        return runner.isAlive();
+        return !runner.isAlive();
     }
 
     public long getQueuedTasksCount() {
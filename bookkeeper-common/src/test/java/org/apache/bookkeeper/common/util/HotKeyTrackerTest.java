@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for the hot key detection and remapping of {@link OrderedExecutor}, see {@link HotKeyTracker}.
+ */
+public class HotKeyTrackerTest {
+
+    private static final int NUM_THREADS = 4;
+    private static final double THRESHOLD = 0.25;
+    private static final long HOT_KEY = 1234L;
+    private static final int NUM_COLD_KEYS = 1000;
+    private static final long TIMEOUT_MILLIS = 30_000;
+
+    private final List<Long> hotKeys = new CopyOnWriteArrayList<>();
+    private final List<Long> cooledKeys = new CopyOnWriteArrayList<>();
+    private final List<long[]> remappedKeys = new CopyOnWriteArrayList<>();
+    private final HotKeyListener listener = new HotKeyListener() {
+        @Override
+        public void onHotKey(String executorName, long key, int threadIdx, double share) {
+            assertEquals(OrderedExecutor.chooseThreadIdx(key, NUM_THREADS), threadIdx);
+            assertTrue(share >= THRESHOLD);
+            hotKeys.add(key);
+        }
+
+        @Override
+        public void onKeyCooled(String executorName, long key, int threadIdx) {
+            cooledKeys.add(key);
+        }
+
+        @Override
+        public void onKeyRemapped(String executorName, long key, int fromThreadIdx, int toThreadIdx) {
+            remappedKeys.add(new long[] { key, fromThreadIdx, toThreadIdx });
+        }
+    };
+
+    private OrderedExecutor executor;
+    private long nextColdKey = 0;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != executor) {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private OrderedExecutor newExecutor(boolean remapping) {
+        return OrderedExecutor.newBuilder()
+                .name("hot-key-test")
+                .numThreads(NUM_THREADS)
+                .hotKeyDetection(true)
+                .hotKeyThreshold(THRESHOLD)
+                .hotKeyRemapping(remapping)
+                .hotKeyListener(listener)
+                .build();
+    }
+
+    /**
+     * Returns a cold key, out of a pool of keys each getting a small share of the tasks.
+     */
+    private long coldKey() {
+        return HOT_KEY + 1 + (nextColdKey++ % NUM_COLD_KEYS);
+    }
+
+    /**
+     * Submit tasks, a batch at a time, until the condition holds. A detection window lasts at least a second.
+     */
+    private void submitUntil(BooleanSupplier condition, Runnable batch) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for the condition", System.currentTimeMillis() < deadline);
+            for (int i = 0; i < 100; i++) {
+                batch.run();
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testHotKeyDetectedAndCooled() throws Exception {
+        executor = newExecutor(false);
+
+        // the hot key gets half of the tasks, every cold key less than a thousandth
+        submitUntil(() -> !hotKeys.isEmpty(), () -> {
+            executor.executeOrdered(HOT_KEY, () -> { });
+            executor.executeOrdered(coldKey(), () -> { });
+        });
+        assertEquals(HOT_KEY, (long) hotKeys.get(0));
+
+        submitUntil(() -> !cooledKeys.isEmpty(), () -> executor.executeOrdered(coldKey(), () -> { }));
+        assertEquals(HOT_KEY, (long) cooledKeys.get(0));
+        assertEquals(1, hotKeys.size());
+        // without remapping the keys never move
+        assertTrue(remappedKeys.isEmpty());
+    }
+
+    @Test
+    public void testRemappingKeepsKeyOrder() throws Exception {
+        executor = newExecutor(true);
+        int hotThreadIdx = OrderedExecutor.chooseThreadIdx(HOT_KEY, NUM_THREADS);
+        long sharingKey = HOT_KEY + NUM_COLD_KEYS + 1;
+        while (OrderedExecutor.chooseThreadIdx(sharingKey, NUM_THREADS) != hotThreadIdx) {
+            sharingKey++;
+        }
+        SequenceChecker hot = new SequenceChecker(HOT_KEY);
+        SequenceChecker sharing = new SequenceChecker(sharingKey);
+
+        // the key sharing the thread of the hot key moves away from it, the hot key stays
+        submitUntil(() -> hot.lastThreadId != 0 && sharing.lastThreadId != 0
+                && sharing.lastThreadId != hot.lastThreadId, () -> {
+            hot.submit();
+            hot.submit();
+            sharing.submit();
+            executor.executeOrdered(coldKey(), () -> { });
+            executor.executeOrdered(coldKey(), () -> { });
+            executor.executeOrdered(coldKey(), () -> { });
+        });
+        assertEquals(HOT_KEY, (long) hotKeys.get(0));
+        long hotThreadId = hot.lastThreadId;
+
+        // once the hot key cools down, the key goes back to its thread
+        submitUntil(() -> !cooledKeys.isEmpty() && sharing.lastThreadId == hotThreadId, () -> {
+            sharing.submit();
+            for (int i = 0; i < 9; i++) {
+                executor.executeOrdered(coldKey(), () -> { });
+            }
+        });
+
+        submitUntil(() -> hot.isDone() && sharing.isDone(), () -> { });
+        hot.assertAllExecutedInOrder();
+        sharing.assertAllExecutedInOrder();
+        assertEquals(hotThreadId, hot.lastThreadId);
+        assertTrue(remappedKeys.stream().noneMatch(remap -> remap[0] == HOT_KEY));
+        for (long[] remap : remappedKeys) {
+            assertNotEquals(remap[1], remap[2]);
+        }
+    }
+
+    /**
+     * Submits numbered tasks of a key and checks that they run in the order they were submitted.
+     */
+    private class SequenceChecker {
+        private final long key;
+        private long submitted = 0;
+        // only updated by the tasks of the key, which do not run concurrently
+        private volatile long executed = 0;
+        private volatile long lastThreadId = 0;
+        private final AtomicBoolean outOfOrder = new AtomicBoolean(false);
+
+        SequenceChecker(long key) {
+            this.key = key;
+        }
+
+        void submit() {
+            long sequence = ++submitted;
+            executor.executeOrdered(key, () -> {
+                if (executed != sequence - 1) {
+                    outOfOrder.set(true);
+                }
+                executed = sequence;
+                lastThreadId = Thread.currentThread().getId();
+            });
+        }
+
+        boolean isDone() {
+            return executed == submitted;
+        }
+
+        void assertAllExecutedInOrder() {
+            assertFalse("Tasks of key " + key + " ran out of order", outOfOrder.get());
+            assertEquals(submitted, executed);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Unit test for the limits, the hierarchy and the reclaimers of {@link MemoryLimitController}.
+ */
+public class MemoryLimitControllerTest {
+
+    @Test
+    public void testStandaloneLimit() {
+        MemoryLimitController controller = new MemoryLimitController(100);
+        assertTrue(controller.tryReserveMemory(60));
+        // one request is allowed to go over the limit
+        assertTrue(controller.tryReserveMemory(60));
+        assertFalse(controller.tryReserveMemory(1));
+        assertEquals(120, controller.currentUsage());
+
+        controller.releaseMemory(60);
+        assertTrue(controller.tryReserveMemory(1));
+        assertEquals(61, controller.currentUsage());
+    }
+
+    @Test
+    public void testChildReservesOnAncestors() {
+        MemoryLimitController root = new MemoryLimitController("root", 0);
+        MemoryLimitController child = root.newChild("child", 0);
+        MemoryLimitController grandChild = child.newChild("grand-child", 0);
+
+        assertTrue(grandChild.tryReserveMemory(10));
+        assertEquals(10, grandChild.currentUsage());
+        assertEquals(10, child.currentUsage());
+        assertEquals(10, root.currentUsage());
+        assertEquals("root/child/grand-child", grandChild.getName());
+
+        grandChild.releaseMemory(10);
+        assertEquals(0, root.currentUsage());
+    }
+
+    @Test
+    public void testChildLimit() {
+        MemoryLimitController root = new MemoryLimitController("root", 0);
+        MemoryLimitController limited = root.newChild("limited", 50);
+        MemoryLimitController other = root.newChild("other", 0);
+
+        assertTrue(limited.tryReserveMemory(60));
+        assertFalse(limited.tryReserveMemory(1));
+        // the limit of a child does not apply to its siblings
+        assertTrue(other.tryReserveMemory(1000));
+        assertEquals(1060, root.currentUsage());
+    }
+
+    @Test
+    public void testParentLimitDoesNotReserveOnTheChild() {
+        MemoryLimitController root = new MemoryLimitController("root", 100);
+        MemoryLimitController first = root.newChild("first", 0);
+        MemoryLimitController second = root.newChild("second", 50);
+
+        assertTrue(first.tryReserveMemory(110));
+        // the root is over its limit, nothing is reserved on the child
+        assertFalse(second.tryReserveMemory(10));
+        assertEquals(0, second.currentUsage());
+        assertEquals(110, root.currentUsage());
+
+        first.releaseMemory(110);
+        assertTrue(second.tryReserveMemory(10));
+        assertEquals(10, root.currentUsage());
+    }
+
+    @Test
+    public void testConcurrentFailuresDoNotLeakUsage() throws Exception {
+        MemoryLimitController root = new MemoryLimitController("root", 100);
+        MemoryLimitController child = root.newChild("child", 1000);
+        MemoryLimitController filler = root.newChild("filler", 0);
+        filler.forceReserveMemory(200);
+
+        List<Thread> threads = new ArrayList<>();
+        AtomicLong reserved = new AtomicLong();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    if (child.tryReserveMemory(1)) {
+                        reserved.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the reservations all failed on the root, and left no usage on the child
+        assertEquals(0, reserved.get());
+        assertEquals(0, child.currentUsage());
+        assertEquals(200, root.currentUsage());
+    }
+
+    @Test
+    public void testForceReserveMemory() {
+        MemoryLimitController root = new MemoryLimitController("root", 100);
+        MemoryLimitController child = root.newChild("child", 10);
+
+        child.forceReserveMemory(200);
+        assertEquals(200, child.currentUsage());
+        assertEquals(200, root.currentUsage());
+        assertFalse(root.newChild("other", 0).tryReserveMemory(1));
+
+        child.releaseMemory(200);
+        assertEquals(0, root.currentUsage());
+    }
+
+    @Test(timeout = 10000)
+    public void testReserveMemoryReclaimsBeforeBlocking() throws Exception {
+        MemoryLimitController root = new MemoryLimitController("root", 100);
+        MemoryLimitController cache = root.newChild("cache", 0);
+        MemoryLimitController journal = root.newChild("journal", 0);
+
+        assertTrue(cache.tryReserveMemory(150));
+        AtomicLong reclaimRequested = new AtomicLong();
+        cache.addReclaimer(size -> {
+            reclaimRequested.set(size);
+            cache.releaseMemory(150);
+            return 150;
+        });
+
+        journal.reserveMemory(10);
+        // the excess of the root and the reservation
+        assertEquals(60, reclaimRequested.get());
+        assertEquals(0, cache.currentUsage());
+        assertEquals(10, root.currentUsage());
+    }
+
+    @Test(timeout = 10000)
+    public void testRemovedReclaimerIsNotCalled() throws Exception {
+        MemoryLimitController root = new MemoryLimitController("root", 100);
+        MemoryLimitController cache = root.newChild("cache", 0);
+        MemoryLimitController journal = root.newChild("journal", 0);
+
+        assertTrue(cache.tryReserveMemory(150));
+        AtomicBoolean reclaimed = new AtomicBoolean();
+        MemoryLimitController.MemoryReclaimer reclaimer = size -> {
+            reclaimed.set(true);
+            return 0;
+        };
+        cache.addReclaimer(reclaimer);
+        cache.removeReclaimer(reclaimer);
+
+        CountDownLatch reserving = new CountDownLatch(1);
+        CompletableFuture<Void> reserved = CompletableFuture.runAsync(() -> {
+            try {
+                reserving.countDown();
+                journal.reserveMemory(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        });
+        reserving.await();
+        Thread.sleep(100);
+        // blocked until memory is released
+        assertFalse(reserved.isDone());
+
+        cache.releaseMemory(150);
+        reserved.get(10, TimeUnit.SECONDS);
+        assertFalse(reclaimed.get());
+        assertEquals(10, root.currentUsage());
+    }
+}
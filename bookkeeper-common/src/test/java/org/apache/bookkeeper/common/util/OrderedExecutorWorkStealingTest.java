@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.common.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for the unordered tasks of {@link OrderedExecutor} and {@link OrderedScheduler} run on a
+ * work-stealing pool.
+ */
+public class OrderedExecutorWorkStealingTest {
+
+    private OrderedExecutor executor;
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != executor) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static boolean onWorkStealingPool(Thread thread) {
+        return thread instanceof ForkJoinWorkerThread;
+    }
+
+    private void assertUnorderedTasksOnPool() throws Exception {
+        assertTrue(executor.submit(() -> onWorkStealingPool(Thread.currentThread())).get());
+        CountDownLatch executed = new CountDownLatch(1);
+        executor.execute(() -> {
+            if (onWorkStealingPool(Thread.currentThread())) {
+                executed.countDown();
+            }
+        });
+        assertTrue(executed.await(10, TimeUnit.SECONDS));
+        CountDownLatch executedWithoutKey = new CountDownLatch(1);
+        executor.executeOrdered(null, () -> {
+            if (onWorkStealingPool(Thread.currentThread())) {
+                executedWithoutKey.countDown();
+            }
+        });
+        assertTrue(executedWithoutKey.await(10, TimeUnit.SECONDS));
+
+        // the ordered tasks stay on their thread
+        assertFalse(executor.chooseThread(1L).submit(() -> onWorkStealingPool(Thread.currentThread())).get());
+    }
+
+    @Test
+    public void testUnorderedTasksOnWorkStealingPool() throws Exception {
+        executor = OrderedExecutor.newBuilder().name("test").numThreads(2)
+                .unorderedWorkStealing(true).build();
+        assertUnorderedTasksOnPool();
+    }
+
+    @Test
+    public void testUnorderedTasksOnThreadsByDefault() throws Exception {
+        executor = OrderedExecutor.newBuilder().name("test").numThreads(2).build();
+        assertFalse(executor.submit(() -> onWorkStealingPool(Thread.currentThread())).get());
+    }
+
+    @Test
+    public void testSchedulerUnorderedTasksOnWorkStealingPool() throws Exception {
+        OrderedScheduler scheduler = OrderedScheduler.newSchedulerBuilder().name("test").numThreads(2)
+                .traceTaskExecution(true).unorderedWorkStealing(true).build();
+        executor = scheduler;
+        assertUnorderedTasksOnPool();
+
+        // the delayed tasks run on the scheduler threads
+        assertFalse(scheduler.schedule(() -> onWorkStealingPool(Thread.currentThread()), 1, TimeUnit.MILLISECONDS)
+                .get());
+    }
+
+    @Test
+    public void testShutdownWaitsForWorkStealingPool() throws Exception {
+        executor = OrderedExecutor.newBuilder().name("test").numThreads(2)
+                .unorderedWorkStealing(true).build();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        assertTrue(executor.isShutdown());
+        try {
+            executor.execute(() -> { });
+            fail("Unordered tasks should be rejected after shutdown");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        // the ordered threads are done, the pool is still running its task
+        assertFalse(executor.awaitTermination(100, TimeUnit.MILLISECONDS));
+        assertFalse(executor.isTerminated());
+
+        release.countDown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(executor.isTerminated());
+    }
+}
@@ -62,6 +62,8 @@ public interface BookKeeperServerStats {
     String READ_ENTRY_LONG_POLL_PRE_WAIT = "READ_ENTRY_LONG_POLL_PRE_WAIT";
     String READ_ENTRY_LONG_POLL_WAIT = "READ_ENTRY_LONG_POLL_WAIT";
     String READ_ENTRY_LONG_POLL_READ = "READ_ENTRY_LONG_POLL_READ";
+    String STREAM_READ_REQUEST = "STREAM_READ_REQUEST";
+    String STREAM_READ_ENTRY = "STREAM_READ_ENTRY";
     String WRITE_LAC_REQUEST = "WRITE_LAC_REQUEST";
     String WRITE_LAC = "WRITE_LAC";
     String READ_LAC_REQUEST = "READ_LAC_REQUEST";
@@ -71,6 +73,13 @@ public interface BookKeeperServerStats {
     String GET_LIST_OF_ENTRIES_OF_LEDGER = "GET_LIST_OF_ENTRIES_OF_LEDGER";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST = "GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST";
 
+    // Admission Control Stats
+    String ADMISSION_CONTROL_SCOPE = "admission_control";
+    String ADMISSION_CLASS_LABEL = "class";
+    String ADMISSION_QUEUE_DELAY = "ADMISSION_QUEUE_DELAY";
+    String ADMISSION_REJECTED = "ADMISSION_REJECTED";
+    String ADMISSION_IN_PROGRESS = "ADMISSION_IN_PROGRESS";
+
     // Ensemble Stats
     String WATCHER_SCOPE = "bookie_watcher";
     String REPLACE_BOOKIE_TIME = "REPLACE_BOOKIE_TIME";
@@ -177,6 +186,12 @@ public interface BookKeeperServerStats {
     String NUM_INDEX_PAGES = "NUM_INDEX_PAGES";
     String JOURNAL_FORCE_WRITE_GROUPING_COUNT = "JOURNAL_FORCE_WRITE_GROUPING_TOTAL";
 
+    // Direct memory budget Stats
+    String DIRECT_MEMORY_BUDGET_SCOPE = "direct_memory_budget";
+
+    // Allocator Stats
+    String ALLOCATOR_SCOPE = "allocator";
+
     // LedgerDirs Stats
     String LD_LEDGER_SCOPE = "ledger";
     String LD_INDEX_SCOPE = "index";
@@ -45,6 +45,20 @@ public interface Bookie {
             throws IOException, BookieException, InterruptedException;
     void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
+    // Add consecutive entries of the same ledger, journaled as a single group.
+    // The callback is invoked once per entry.
+    void addEntries(ByteBuf[] entries, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException;
+    // Whether the try operations below are able to add entries, or always give up.
+    boolean isTryAddEntrySupported();
+    // Same as addEntry, addEntries and setExplicitLac, but they give up instead of waiting for the ledger,
+    // the journal or the ledger storage, and return false. The entries are released either way.
+    boolean tryAddEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException;
+    boolean tryAddEntries(ByteBuf[] entries, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException;
+    boolean trySetExplicitLac(ByteBuf entry, WriteCallback writeCallback, Object ctx, byte[] masterKey)
+            throws IOException, BookieException;
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx);
     void setExplicitLac(ByteBuf entry, WriteCallback writeCallback, Object ctx, byte[] masterKey)
             throws IOException, InterruptedException, BookieException;
@@ -54,6 +68,9 @@ public interface Bookie {
     long getTotalDiskSpace() throws IOException;
     long getTotalFreeSpace() throws IOException;
 
+    // load signals, reported to the clients to weight the placement of new ledgers
+    int getJournalQueueLength();
+
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
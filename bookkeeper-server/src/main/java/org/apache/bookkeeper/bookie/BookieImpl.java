@@ -21,6 +21,7 @@
 
 package org.apache.bookkeeper.bookie;
 
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_INDEX_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_LEDGER_SCOPE;
@@ -63,6 +64,7 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirExcepti
 import org.apache.bookkeeper.bookie.stats.BookieStats;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
@@ -318,6 +320,14 @@ public class BookieImpl implements Bookie {
         return getLedgerDirsManager().getTotalFreeSpace(ledgerDirsManager.getAllLedgerDirs());
     }
 
+    public int getJournalQueueLength() {
+        int queueLength = 0;
+        for (Journal journal : journals) {
+            queueLength += journal.getJournalQueueLength();
+        }
+        return queueLength;
+    }
+
     public static File getCurrentDirectory(File dir) {
         return new File(dir, BookKeeperConstants.CURRENT_DIR);
     }
@@ -392,6 +402,21 @@ public class BookieImpl implements Bookie {
                       ByteBufAllocator allocator,
                       Supplier<BookieServiceInfo> bookieServiceInfoProvider)
             throws IOException, InterruptedException, BookieException {
+        this(conf, registrationManager, storage, diskChecker, ledgerDirsManager, indexDirsManager, statsLogger,
+                allocator, new MemoryLimitController(BOOKIE_SCOPE, 0), bookieServiceInfoProvider);
+    }
+
+    public BookieImpl(ServerConfiguration conf,
+                      RegistrationManager registrationManager,
+                      LedgerStorage storage,
+                      DiskChecker diskChecker,
+                      LedgerDirsManager ledgerDirsManager,
+                      LedgerDirsManager indexDirsManager,
+                      StatsLogger statsLogger,
+                      ByteBufAllocator allocator,
+                      MemoryLimitController memoryBudget,
+                      Supplier<BookieServiceInfo> bookieServiceInfoProvider)
+            throws IOException, InterruptedException, BookieException {
         this.bookieServiceInfoProvider = bookieServiceInfoProvider;
         this.statsLogger = statsLogger;
         this.conf = conf;
@@ -435,7 +460,8 @@ public class BookieImpl implements Bookie {
         journals = Lists.newArrayList();
         for (int i = 0; i < journalDirectories.size(); i++) {
             journals.add(Journal.newJournal(i, journalDirectories.get(i),
-                    conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, journalAliveListener));
+                    conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator, memoryBudget,
+                    journalAliveListener));
         }
 
         this.entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
@@ -512,6 +538,21 @@ public class BookieImpl implements Bookie {
                 ledgerDirsManager, indexDirsManager, statsLogger, allocator, bookieServiceInfoProvider);
     }
 
+    public static BookieImpl newBookieImpl(ServerConfiguration conf,
+                                           RegistrationManager registrationManager,
+                                           LedgerStorage storage,
+                                           DiskChecker diskChecker,
+                                           LedgerDirsManager ledgerDirsManager,
+                                           LedgerDirsManager indexDirsManager,
+                                           StatsLogger statsLogger,
+                                           ByteBufAllocator allocator,
+                                           MemoryLimitController memoryBudget,
+                                           Supplier<BookieServiceInfo> bookieServiceInfoProvider)
+            throws IOException, InterruptedException, BookieException {
+        return new BookieImpl(conf, registrationManager, storage, diskChecker,
+                ledgerDirsManager, indexDirsManager, statsLogger, allocator, memoryBudget, bookieServiceInfoProvider);
+    }
+
     StateManager initializeStateManager() throws IOException {
         return new BookieStateManager(conf, statsLogger, registrationManager,
                 ledgerDirsManager, bookieServiceInfoProvider);
@@ -964,19 +1005,7 @@ public class BookieImpl implements Bookie {
 
         // journal `addEntry` should happen after the entry is added to ledger storage.
         // otherwise the journal entry can potentially be rolled before the ledger is created in ledger storage.
-        if (masterKeyCache.get(ledgerId) == null) {
-            // Force the load into masterKey cache
-            byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
-            if (oldValue == null) {
-                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
-                try {
-                    getJournal(ledgerId).logAddEntry(
-                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
-                } finally {
-                    ReferenceCountUtil.release(masterKeyEntry);
-                }
-            }
-        }
+        logMasterKeyIfNeeded(ledgerId, masterKey);
 
         if (!writeDataToJournal) {
             cb.writeComplete(0, ledgerId, entryId, null, ctx);
@@ -992,6 +1021,136 @@ public class BookieImpl implements Bookie {
         getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
+    private void addEntriesInternal(LedgerDescriptor handle, ByteBuf[] entries,
+                                    boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long ledgerId = handle.getLedgerId();
+
+        // validate the whole range first, so that a bad range does not leave some of its entries added
+        checkRange(handle, entries);
+        long firstEntryId = entries[0].getLong(entries[0].readerIndex() + 8);
+
+        for (ByteBuf entry : entries) {
+            handle.addEntry(entry);
+            bookieStats.getWriteBytes().addCount(entry.readableBytes());
+        }
+
+        // journal `addEntry` should happen after the entries are added to ledger storage.
+        logMasterKeyIfNeeded(ledgerId, masterKey);
+
+        if (!writeDataToJournal) {
+            for (int i = 0; i < entries.length; i++) {
+                cb.writeComplete(0, ledgerId, firstEntryId + i, null, ctx);
+            }
+            if (ctx instanceof BookieRequestHandler) {
+                ((BookieRequestHandler) ctx).flushPendingResponse();
+            }
+            return;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Adding {} entries from {}@{}", entries.length, firstEntryId, ledgerId);
+        }
+        getJournal(ledgerId).logAddEntries(ledgerId, firstEntryId, entries, ackBeforeSync, cb, ctx);
+    }
+
+    /**
+     * Check that the entries of a range are consecutive entries of the ledger.
+     */
+    private static void checkRange(LedgerDescriptor handle, ByteBuf[] entries) throws IOException {
+        long ledgerId = handle.getLedgerId();
+        long firstEntryId = entries[0].getLong(entries[0].readerIndex() + 8);
+        for (int i = 0; i < entries.length; i++) {
+            ByteBuf entry = entries[i];
+            if (entry.getLong(entry.readerIndex()) != ledgerId) {
+                throw new IOException("Entry " + i + " of the range does not belong to ledger " + ledgerId);
+            }
+            long entryId = entry.getLong(entry.readerIndex() + 8);
+            if (entryId != firstEntryId + i) {
+                throw new IOException("Entries of the range added to ledger " + ledgerId
+                        + " are not consecutive: expected " + (firstEntryId + i) + " but got " + entryId);
+            }
+        }
+    }
+
+    /**
+     * Add consecutive entries to a ledger as specified by handle, giving up as soon as the ledger storage
+     * or the journal has no room for them.
+     */
+    private boolean tryAddEntriesInternal(LedgerDescriptor handle, ByteBuf[] entries,
+                                          boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException {
+        long ledgerId = handle.getLedgerId();
+        long firstEntryId = entries[0].getLong(entries[0].readerIndex() + 8);
+
+        for (ByteBuf entry : entries) {
+            if (!handle.tryAddEntry(entry)) {
+                return false;
+            }
+        }
+
+        // journal `addEntry` should happen after the entries are added to ledger storage.
+        if (!tryLogMasterKeyIfNeeded(ledgerId, masterKey)) {
+            return false;
+        }
+
+        if (!writeDataToJournal) {
+            for (int i = 0; i < entries.length; i++) {
+                cb.writeComplete(0, ledgerId, firstEntryId + i, null, ctx);
+            }
+            if (ctx instanceof BookieRequestHandler) {
+                ((BookieRequestHandler) ctx).flushPendingResponse();
+            }
+        } else {
+            Journal journal = getJournal(ledgerId);
+            boolean logged = entries.length == 1
+                    ? journal.tryLogAddEntry(entries[0], ackBeforeSync, cb, ctx)
+                    : journal.tryLogAddEntries(ledgerId, firstEntryId, entries, ackBeforeSync, cb, ctx);
+            if (!logged) {
+                return false;
+            }
+        }
+
+        for (ByteBuf entry : entries) {
+            bookieStats.getWriteBytes().addCount(entry.readableBytes());
+        }
+        return true;
+    }
+
+    private boolean tryLogMasterKeyIfNeeded(long ledgerId, byte[] masterKey) {
+        if (masterKeyCache.get(ledgerId) != null) {
+            return true;
+        }
+        ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
+        try {
+            if (!getJournal(ledgerId).tryLogAddEntry(
+                    masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null)) {
+                return false;
+            }
+        } finally {
+            ReferenceCountUtil.release(masterKeyEntry);
+        }
+        // a concurrent add may have logged the master key too, journaling it twice is harmless
+        masterKeyCache.putIfAbsent(ledgerId, masterKey);
+        return true;
+    }
+
+    private void logMasterKeyIfNeeded(long ledgerId, byte[] masterKey) throws InterruptedException {
+        if (masterKeyCache.get(ledgerId) == null) {
+            // Force the load into masterKey cache
+            byte[] oldValue = masterKeyCache.putIfAbsent(ledgerId, masterKey);
+            if (oldValue == null) {
+                ByteBuf masterKeyEntry = createMasterKeyEntry(ledgerId, masterKey);
+                try {
+                    getJournal(ledgerId).logAddEntry(
+                            masterKeyEntry, false /* ackBeforeSync */, new NopWriteCallback(), null);
+                } finally {
+                    ReferenceCountUtil.release(masterKeyEntry);
+                }
+            }
+        }
+    }
+
     /**
      * Add entry to a ledger, even if the ledger has previous been fenced. This should only
      * happen in bookie recovery or ledger recovery cases, where entries are being replicates
@@ -1005,9 +1164,12 @@ public class BookieImpl implements Bookie {
         int entrySize = 0;
         try {
             LedgerDescriptor handle = getLedgerForEntry(entry, masterKey);
-            synchronized (handle) {
+            handle.lock();
+            try {
                 entrySize = entry.readableBytes();
                 addEntryInternal(handle, entry, false /* ackBeforeSync */, cb, ctx, masterKey);
+            } finally {
+                handle.unlock();
             }
             success = true;
         } catch (NoWritableLedgerDirException e) {
@@ -1043,12 +1205,15 @@ public class BookieImpl implements Bookie {
         try {
             long ledgerId = entry.getLong(entry.readerIndex());
             LedgerDescriptor handle = handles.getHandle(ledgerId, masterKey);
-            synchronized (handle) {
+            handle.lock();
+            try {
                 entry.markReaderIndex();
                 handle.setExplicitLac(entry);
                 entry.resetReaderIndex();
                 explicitLACEntry = createExplicitLACEntry(ledgerId, entry);
                 getJournal(ledgerId).logAddEntry(explicitLACEntry, false /* ackBeforeSync */, writeCallback, ctx);
+            } finally {
+                handle.unlock();
             }
         } catch (NoWritableLedgerDirException e) {
             stateManager.transitionToReadOnlyMode();
@@ -1064,8 +1229,11 @@ public class BookieImpl implements Bookie {
     public ByteBuf getExplicitLac(long ledgerId) throws IOException, Bookie.NoLedgerException, BookieException {
         ByteBuf lac;
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
-        synchronized (handle) {
+        handle.lock();
+        try {
             lac = handle.getExplicitLac();
+        } finally {
+            handle.unlock();
         }
         return lac;
     }
@@ -1085,6 +1253,145 @@ public class BookieImpl implements Bookie {
         bookieStats.getForceLedgerOps().inc();
     }
 
+    @Override
+    public boolean isTryAddEntrySupported() {
+        return ledgerStorage.isTryAddEntrySupported();
+    }
+
+    /**
+     * Add entry to a ledger only if it can be done right away: the ledger is not busy with another
+     * operation, the ledger storage has room for the entry, and so does the journal.
+     *
+     * @return true if the entry was added, false if the bookie is busy
+     */
+    @Override
+    public boolean tryAddEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                               byte[] masterKey)
+            throws IOException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        boolean added = false;
+        int entrySize = 0;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entry, masterKey);
+            if (handle.tryLock()) {
+                try {
+                    if (handle.isFenced()) {
+                        throw BookieException
+                                .create(BookieException.Code.LedgerFencedException);
+                    }
+                    entrySize = entry.readableBytes();
+                    added = tryAddEntriesInternal(handle, new ByteBuf[] { entry }, ackBeforeSync, cb, ctx,
+                            masterKey);
+                } finally {
+                    handle.unlock();
+                }
+            }
+            success = true;
+            return added;
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (added) {
+                bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getAddBytesStats().registerSuccessfulValue(entrySize);
+            } else if (!success) {
+                bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getAddBytesStats().registerFailedValue(entrySize);
+            }
+
+            ReferenceCountUtil.release(entry);
+        }
+    }
+
+    /**
+     * Add consecutive entries of the same ledger only if it can be done right away, see
+     * {@link #tryAddEntry(ByteBuf, boolean, WriteCallback, Object, byte[])}. When it returns false, some of
+     * the entries may have been journaled already, and their callback is still invoked.
+     *
+     * @return true if all the entries were added, false if the bookie is busy
+     */
+    @Override
+    public boolean tryAddEntries(ByteBuf[] entries, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                                 byte[] masterKey)
+            throws IOException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        boolean added = false;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entries[0], masterKey);
+            if (handle.tryLock()) {
+                try {
+                    if (handle.isFenced()) {
+                        throw BookieException
+                                .create(BookieException.Code.LedgerFencedException);
+                    }
+                    checkRange(handle, entries);
+                    added = tryAddEntriesInternal(handle, entries, ackBeforeSync, cb, ctx, masterKey);
+                } finally {
+                    handle.unlock();
+                }
+            }
+            success = true;
+            return added;
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            for (ByteBuf entry : entries) {
+                if (added) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entry.readableBytes());
+                } else if (!success) {
+                    bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerFailedValue(entry.readableBytes());
+                }
+
+                ReferenceCountUtil.release(entry);
+            }
+        }
+    }
+
+    /**
+     * Set the explicit LAC of a ledger only if it can be done right away, see
+     * {@link #tryAddEntry(ByteBuf, boolean, WriteCallback, Object, byte[])}.
+     *
+     * @return true if the explicit LAC was set, false if the bookie is busy
+     */
+    @Override
+    public boolean trySetExplicitLac(ByteBuf entry, WriteCallback writeCallback, Object ctx, byte[] masterKey)
+            throws IOException, BookieException {
+        ByteBuf explicitLACEntry = null;
+        try {
+            long ledgerId = entry.getLong(entry.readerIndex());
+            LedgerDescriptor handle = handles.getHandle(ledgerId, masterKey);
+            if (!handle.tryLock()) {
+                return false;
+            }
+            try {
+                entry.markReaderIndex();
+                handle.setExplicitLac(entry);
+                entry.resetReaderIndex();
+                explicitLACEntry = createExplicitLACEntry(ledgerId, entry);
+                return getJournal(ledgerId).tryLogAddEntry(
+                        explicitLACEntry, false /* ackBeforeSync */, writeCallback, ctx);
+            } finally {
+                handle.unlock();
+            }
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            ReferenceCountUtil.release(entry);
+            if (explicitLACEntry != null) {
+                ReferenceCountUtil.release(explicitLACEntry);
+            }
+        }
+    }
+
     /**
      * Add entry to a ledger.
      */
@@ -1095,13 +1402,16 @@ public class BookieImpl implements Bookie {
         int entrySize = 0;
         try {
             LedgerDescriptor handle = getLedgerForEntry(entry, masterKey);
-            synchronized (handle) {
+            handle.lock();
+            try {
                 if (handle.isFenced()) {
                     throw BookieException
                             .create(BookieException.Code.LedgerFencedException);
                 }
                 entrySize = entry.readableBytes();
                 addEntryInternal(handle, entry, ackBeforeSync, cb, ctx, masterKey);
+            } finally {
+                handle.unlock();
             }
             success = true;
         } catch (NoWritableLedgerDirException e) {
@@ -1121,6 +1431,49 @@ public class BookieImpl implements Bookie {
         }
     }
 
+    /**
+     * Add consecutive entries of the same ledger. The entries are added to the ledger storage
+     * under a single acquisition of the ledger handle and then enqueued into the journal as one
+     * group, so they are persisted by the same journal flush.
+     */
+    @Override
+    public void addEntries(ByteBuf[] entries, boolean ackBeforeSync, WriteCallback cb, Object ctx,
+                           byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            LedgerDescriptor handle = getLedgerForEntry(entries[0], masterKey);
+            handle.lock();
+            try {
+                if (handle.isFenced()) {
+                    throw BookieException
+                            .create(BookieException.Code.LedgerFencedException);
+                }
+                addEntriesInternal(handle, entries, ackBeforeSync, cb, ctx, masterKey);
+            } finally {
+                handle.unlock();
+            }
+            success = true;
+        } catch (NoWritableLedgerDirException e) {
+            stateManager.transitionToReadOnlyMode();
+            throw new IOException(e);
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            for (ByteBuf entry : entries) {
+                if (success) {
+                    bookieStats.getAddEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerSuccessfulValue(entry.readableBytes());
+                } else {
+                    bookieStats.getAddEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                    bookieStats.getAddBytesStats().registerFailedValue(entry.readableBytes());
+                }
+
+                ReferenceCountUtil.release(entry);
+            }
+        }
+    }
+
     /**
      * Fences a ledger. From this point on, clients will be unable to
      * write to this ledger. Only recoveryAddEntry will be
@@ -18,6 +18,7 @@
 package org.apache.bookkeeper.bookie;
 
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.DIRECT_MEMORY_BUDGET_SCOPE;
 
 import io.netty.buffer.ByteBufAllocator;
 import java.io.File;
@@ -25,6 +26,7 @@ import java.io.IOException;
 import java.net.URI;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorBuilder;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.meta.MetadataBookieDriver;
@@ -65,14 +67,41 @@ public class BookieResources {
     }
 
     public static ByteBufAllocatorWithOomHandler createAllocator(ServerConfiguration conf) {
+        return createAllocator(conf, null);
+    }
+
+    public static ByteBufAllocatorWithOomHandler createAllocator(ServerConfiguration conf,
+                                                                 StatsLogger statsLogger) {
         return ByteBufAllocatorBuilder.create()
             .poolingPolicy(conf.getAllocatorPoolingPolicy())
             .poolingConcurrency(conf.getAllocatorPoolingConcurrency())
             .outOfMemoryPolicy(conf.getAllocatorOutOfMemoryPolicy())
             .leakDetectionPolicy(conf.getAllocatorLeakDetectionPolicy())
+            .threadCacheIdleTrimMillis(conf.getAllocatorThreadCacheIdleTrimMs())
+            .statsLogger(statsLogger)
             .build();
     }
 
+    /**
+     * Create the direct memory budget of the bookie, which the journals and the ledger storage reserve from.
+     */
+    public static MemoryLimitController createMemoryBudget(ServerConfiguration conf, StatsLogger statsLogger) {
+        MemoryLimitController memoryBudget = new MemoryLimitController(BOOKIE_SCOPE,
+                conf.getDirectMemoryBudgetSizeMb() * 1024 * 1024);
+        memoryBudget.exportStats(statsLogger.scope(DIRECT_MEMORY_BUDGET_SCOPE));
+        return memoryBudget;
+    }
+
+    /**
+     * Create the CPU affinity profile of the bookie threads and install it for the process, so that the threads
+     * created from now on are pinned to the CPUs of their role.
+     */
+    public static CpuAffinityProfile createCpuAffinityProfile(ServerConfiguration conf) {
+        CpuAffinityProfile profile = CpuAffinityProfile.fromConfiguration(conf);
+        CpuAffinityProfile.install(profile);
+        return profile;
+    }
+
     public static DiskChecker createDiskChecker(ServerConfiguration conf) {
         return new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold());
     }
@@ -99,12 +128,24 @@ public class BookieResources {
                                                     LedgerDirsManager indexDirsManager,
                                                     StatsLogger statsLogger,
                                                     ByteBufAllocator allocator) throws IOException {
+        return createLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator,
+                new MemoryLimitController(BOOKIE_SCOPE, 0));
+    }
+
+    public static LedgerStorage createLedgerStorage(ServerConfiguration conf,
+                                                    LedgerManager ledgerManager,
+                                                    LedgerDirsManager ledgerDirsManager,
+                                                    LedgerDirsManager indexDirsManager,
+                                                    StatsLogger statsLogger,
+                                                    ByteBufAllocator allocator,
+                                                    MemoryLimitController memoryBudget) throws IOException {
         // Instantiate the ledger storage implementation
         String ledgerStorageClass = conf.getLedgerStorageClass();
         log.info("Using ledger storage: {}", ledgerStorageClass);
         LedgerStorage storage = LedgerStorageFactory.createLedgerStorage(ledgerStorageClass);
 
-        storage.initialize(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator);
+        storage.initialize(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator,
+                memoryBudget);
         storage.setCheckpointSource(CheckpointSource.DEFAULT);
         return storage;
     }
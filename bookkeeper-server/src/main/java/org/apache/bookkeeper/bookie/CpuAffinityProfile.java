@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Assignment of the critical threads of the bookie to isolated CPUs, by thread role.
+ *
+ * <p>The profile maps each {@link Role} to a set of CPUs isolated by the OS, configured with
+ * {@link ServerConfiguration#setCpuAffinityCpus(Role, String)}. When they start, the threads of a role acquire the
+ * CPUs of their role in turn, so the threads of a role share its CPUs when they outnumber them. The profile of
+ * the process is installed at startup by {@link BookieResources#createCpuAffinityProfile(ServerConfiguration)},
+ * before the threads are created, and it records the CPU of each thread to report the thread to CPU layout.
+ *
+ * <p>Acquiring a CPU disables the other CPUs of its core, so the profile is rejected if two of its CPUs share a core.
+ */
+@Slf4j
+public final class CpuAffinityProfile {
+
+    /**
+     * Role of a bookie thread.
+     */
+    public enum Role {
+        JOURNAL("journal", "cpuAffinityJournalCpus"),
+        FORCE_WRITE("force-write", "cpuAffinityForceWriteCpus"),
+        NETTY_IO("netty-io", "cpuAffinityNettyIoCpus"),
+        ADD_WORKER("add-worker", "cpuAffinityAddWorkerCpus"),
+        READ_WORKER("read-worker", "cpuAffinityReadWorkerCpus"),
+        SYNC("sync", "cpuAffinitySyncThreadCpus");
+
+        private final String roleName;
+        private final String configKey;
+
+        Role(String roleName, String configKey) {
+            this.roleName = roleName;
+            this.configKey = configKey;
+        }
+
+        public String getConfigKey() {
+            return configKey;
+        }
+
+        @Override
+        public String toString() {
+            return roleName;
+        }
+    }
+
+    /**
+     * The CPUs of the host, as seen by {@link CpuAffinity}.
+     */
+    interface CpuTopology {
+        CpuTopology SYSTEM = new CpuTopology() {
+            @Override
+            public SortedSet<Integer> getIsolatedProcessors() throws IOException {
+                return CpuAffinity.getIsolatedProcessors();
+            }
+
+            @Override
+            public Set<Integer> getCpusOnSameCore(int cpu) {
+                return CpuAffinity.getCpusOnSameCore(cpu);
+            }
+        };
+
+        SortedSet<Integer> getIsolatedProcessors() throws IOException;
+
+        Set<Integer> getCpusOnSameCore(int cpu);
+    }
+
+    private static final CpuAffinityProfile NONE = new CpuAffinityProfile(new EnumMap<>(Role.class));
+
+    private static volatile CpuAffinityProfile current = NONE;
+
+    private final Map<Role, int[]> cpus;
+    private final Map<Role, AtomicInteger> nextCpuIdx = new EnumMap<>(Role.class);
+    private final List<Assignment> assignments = new CopyOnWriteArrayList<>();
+
+    private CpuAffinityProfile(Map<Role, int[]> cpus) {
+        this.cpus = cpus;
+        for (Role role : cpus.keySet()) {
+            nextCpuIdx.put(role, new AtomicInteger());
+        }
+    }
+
+    /**
+     * Build the profile configured for the bookie. The CPUs that are not isolated by the OS are left out.
+     *
+     * @param conf server configuration
+     * @return the profile, which has no CPU if none is configured or the isolated CPUs cannot be read
+     * @throws IllegalArgumentException if the CPUs of a role are malformed, or if two CPUs share a core
+     */
+    public static CpuAffinityProfile fromConfiguration(ServerConfiguration conf) {
+        return fromConfiguration(conf, CpuTopology.SYSTEM);
+    }
+
+    static CpuAffinityProfile fromConfiguration(ServerConfiguration conf, CpuTopology topology) {
+        Map<Role, SortedSet<Integer>> configured = new EnumMap<>(Role.class);
+        for (Role role : Role.values()) {
+            String roleCpus = conf.getCpuAffinityCpus(role);
+            if (StringUtils.isBlank(roleCpus)) {
+                continue;
+            }
+            try {
+                configured.put(role, CpuAffinity.parseProcessors(roleCpus));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid CPUs " + roleCpus + " in " + role.getConfigKey(), e);
+            }
+        }
+        if (configured.isEmpty()) {
+            return NONE;
+        }
+
+        SortedSet<Integer> isolated;
+        try {
+            isolated = topology.getIsolatedProcessors();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unable to read the isolated CPUs, the CPU affinity profile is ignored: {}", e.getMessage());
+            return NONE;
+        }
+
+        Map<Role, int[]> cpus = new EnumMap<>(Role.class);
+        SortedSet<Integer> used = new TreeSet<>();
+        for (Map.Entry<Role, SortedSet<Integer>> e : configured.entrySet()) {
+            Role role = e.getKey();
+            SortedSet<Integer> roleCpus = new TreeSet<>(e.getValue());
+            SortedSet<Integer> notIsolated = new TreeSet<>(roleCpus);
+            notIsolated.removeAll(isolated);
+            if (!notIsolated.isEmpty()) {
+                log.warn("CPUs {} of the {} threads are not isolated (isolated CPUs: {}), leaving them out",
+                        notIsolated, role, isolated);
+                roleCpus.removeAll(notIsolated);
+            }
+            if (roleCpus.isEmpty()) {
+                continue;
+            }
+            SortedSet<Integer> shared = new TreeSet<>(roleCpus);
+            shared.retainAll(used);
+            if (!shared.isEmpty()) {
+                log.warn("CPUs {} of the {} threads are shared with other threads", shared, role);
+            }
+            used.addAll(roleCpus);
+            cpus.put(role, roleCpus.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        for (Map.Entry<Role, int[]> e : cpus.entrySet()) {
+            for (int cpu : e.getValue()) {
+                Set<Integer> siblings;
+                try {
+                    siblings = topology.getCpusOnSameCore(cpu);
+                } catch (RuntimeException re) {
+                    log.warn("Unable to read the cores of the CPUs, the CPU affinity profile is ignored: {}",
+                            re.getMessage());
+                    return NONE;
+                }
+                for (int sibling : siblings) {
+                    if (sibling != cpu && used.contains(sibling)) {
+                        throw new IllegalArgumentException("CPU " + cpu + " of the " + e.getKey()
+                                + " threads shares its core with CPU " + sibling + " of the " + rolesOf(cpus, sibling)
+                                + " threads, which would be disabled when acquiring it");
+                    }
+                }
+            }
+        }
+        return new CpuAffinityProfile(cpus);
+    }
+
+    private static List<Role> rolesOf(Map<Role, int[]> cpus, int cpu) {
+        List<Role> roles = new ArrayList<>();
+        for (Map.Entry<Role, int[]> e : cpus.entrySet()) {
+            for (int roleCpu : e.getValue()) {
+                if (roleCpu == cpu) {
+                    roles.add(e.getKey());
+                }
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Install the profile of the process, followed by the threads created from now on.
+     */
+    public static void install(CpuAffinityProfile profile) {
+        current = profile;
+    }
+
+    /**
+     * Returns the profile of the process.
+     */
+    public static CpuAffinityProfile get() {
+        return current;
+    }
+
+    /**
+     * Acquire the next CPU of a role for the current thread, if the profile of the process has CPUs for the role.
+     * A failure to acquire the CPU is logged, and the thread keeps running on the non-isolated CPUs.
+     *
+     * @param role role of the current thread
+     * @return true if the profile has CPUs for the role, whether the CPU was acquired or not
+     */
+    public static boolean pinCurrentThread(Role role) {
+        return current.pin(role);
+    }
+
+    /**
+     * Returns a thread factory whose threads acquire the CPUs of a role when they start, or the given factory if
+     * the profile of the process has no CPU for the role.
+     */
+    public static ThreadFactory threadFactory(Role role, ThreadFactory threadFactory) {
+        return current.newThreadFactory(role, threadFactory);
+    }
+
+    /**
+     * Returns a thread factory whose threads acquire the CPUs of a role of this profile when they start, or the given
+     * factory if this profile has no CPU for the role.
+     */
+    public ThreadFactory newThreadFactory(Role role, ThreadFactory threadFactory) {
+        if (!hasCpus(role)) {
+            return threadFactory;
+        }
+        return r -> threadFactory.newThread(() -> {
+            pin(role);
+            r.run();
+        });
+    }
+
+    public boolean hasCpus(Role role) {
+        return cpus.containsKey(role);
+    }
+
+    public boolean isEmpty() {
+        return cpus.isEmpty();
+    }
+
+    private boolean pin(Role role) {
+        int[] roleCpus = cpus.get(role);
+        if (null == roleCpus) {
+            return false;
+        }
+        int cpu = roleCpus[Math.floorMod(nextCpuIdx.get(role).getAndIncrement(), roleCpus.length)];
+        String threadName = Thread.currentThread().getName();
+        try {
+            CpuAffinity.acquireCore(cpu);
+            assignments.add(new Assignment(role, threadName, cpu));
+        } catch (Throwable t) {
+            log.warn("Failed to acquire CPU {} for {} thread {}: {}", cpu, role, threadName, t.getMessage(), t);
+            assignments.add(new Assignment(role, threadName, -1));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the layout of the threads that started so far on the CPUs of their role, one line per role.
+     */
+    public List<String> getLayout() {
+        List<String> layout = new ArrayList<>();
+        for (Map.Entry<Role, int[]> e : cpus.entrySet()) {
+            List<String> threads = new ArrayList<>();
+            for (Assignment assignment : assignments) {
+                if (assignment.role == e.getKey()) {
+                    threads.add(assignment.threadName + " -> "
+                            + (assignment.cpu >= 0 ? "cpu " + assignment.cpu : "not pinned"));
+                }
+            }
+            Collections.sort(threads);
+            StringBuilder sb = new StringBuilder();
+            sb.append(e.getKey()).append(" on cpus ");
+            for (int i = 0; i < e.getValue().length; i++) {
+                sb.append(i > 0 ? "," : "").append(e.getValue()[i]);
+            }
+            sb.append(": ").append(threads.isEmpty() ? "no thread started" : String.join(", ", threads));
+            layout.add(sb.toString());
+        }
+        return layout;
+    }
+
+    private static final class Assignment {
+        final Role role;
+        final String threadName;
+        final int cpu;
+
+        Assignment(Role role, String threadName, int cpu) {
+            this.role = role;
+            this.threadName = threadName;
+            this.cpu = cpu;
+        }
+    }
+}
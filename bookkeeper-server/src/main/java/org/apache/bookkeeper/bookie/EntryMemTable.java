@@ -442,6 +442,20 @@ public class EntryMemTable implements AutoCloseable{
         return (EntryKeyValue) result;
     }
 
+    /**
+     * Get the heap usage of the entries of this EntryMemTable and of its snapshot being flushed.
+     */
+    long getMemoryUsage() {
+        return skipListSizeLimit * 2 - skipListSemaphore.availablePermits();
+    }
+
+    /**
+     * Get the maximum heap usage of the entries of this EntryMemTable and of its snapshot being flushed.
+     */
+    long getMemoryCapacity() {
+        return skipListSizeLimit * 2;
+    }
+
     /**
      * Check if the entire heap usage for this EntryMemTable exceeds limit.
      */
@@ -484,7 +484,8 @@ public class Journal implements CheckpointSource {
             LOG.info("ForceWrite Thread started");
             ThreadRegistry.register(super.getName(), 0);
 
-            if (conf.isBusyWaitEnabled()) {
+            if (!CpuAffinityProfile.pinCurrentThread(CpuAffinityProfile.Role.FORCE_WRITE)
+                    && conf.isBusyWaitEnabled()) {
                 try {
                     CpuAffinity.acquireCore();
                 } catch (Exception e) {
@@ -654,6 +655,13 @@ public class Journal implements CheckpointSource {
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
             LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator) {
+        this(journalIndex, journalDirectory, conf, ledgerDirsManager, statsLogger, allocator,
+                new MemoryLimitController(0));
+    }
+
+    public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
+            LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator,
+            MemoryLimitController memoryBudget) {
         this.allocator = allocator;
 
         StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
@@ -669,7 +677,7 @@ public class Journal implements CheckpointSource {
 
         // Adjust the journal max memory in case there are multiple journals configured.
         long journalMaxMemory = conf.getJournalMaxMemorySizeMb() / conf.getJournalDirNames().length * 1024 * 1024;
-        this.memoryLimitController = new MemoryLimitController(journalMaxMemory);
+        this.memoryLimitController = memoryBudget.newChild("journal-" + journalIndex, journalMaxMemory);
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
         this.journalDirectory = journalDirectory;
@@ -723,6 +731,14 @@ public class Journal implements CheckpointSource {
         this.journalAliveListener = journalAliveListener;
     }
 
+    public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
+                   LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger,
+                   ByteBufAllocator allocator, MemoryLimitController memoryBudget,
+                   JournalAliveListener journalAliveListener) {
+        this(journalIndex, journalDirectory, conf, ledgerDirsManager, statsLogger, allocator, memoryBudget);
+        this.journalAliveListener = journalAliveListener;
+    }
+
     @VisibleForTesting
     static Journal newJournal(int journalIndex, File journalDirectory, ServerConfiguration conf,
                                      LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger,
@@ -731,6 +747,14 @@ public class Journal implements CheckpointSource {
                 journalAliveListener);
     }
 
+    static Journal newJournal(int journalIndex, File journalDirectory, ServerConfiguration conf,
+                              LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger,
+                              ByteBufAllocator allocator, MemoryLimitController memoryBudget,
+                              JournalAliveListener journalAliveListener) {
+        return new Journal(journalIndex, journalDirectory, conf, ledgerDirsManager, statsLogger, allocator,
+                memoryBudget, journalAliveListener);
+    }
+
     JournalStats getJournalStats() {
         return this.journalStats;
     }
@@ -911,6 +935,100 @@ public class Journal implements CheckpointSource {
                 callbackTime));
     }
 
+    /**
+     * Log consecutive entries of a ledger to the journal as a single group, so that the journal
+     * thread picks them up together and they end up in the same flush.
+     *
+     * <p>The callback is invoked once for each entry.
+     */
+    public void logAddEntries(long ledgerId, long firstEntryId, ByteBuf[] entries,
+                              boolean ackBeforeSync, WriteCallback cb, Object ctx)
+            throws InterruptedException {
+        long enqueueTime = MathUtils.nowInNano();
+        long totalBytes = 0;
+        QueueEntry[] queueEntries = new QueueEntry[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            // Retain entry until it gets written to journal
+            ByteBuf entry = entries[i].retain();
+            totalBytes += entry.readableBytes();
+            queueEntries[i] = QueueEntry.create(
+                    entry, ackBeforeSync, ledgerId, firstEntryId + i, cb, ctx, enqueueTime,
+                    journalStats.getJournalAddEntryStats(),
+                    callbackTime);
+        }
+
+        journalStats.getJournalQueueSize().addCount(entries.length);
+
+        memoryLimitController.reserveMemory(totalBytes);
+
+        queue.putAll(queueEntries, 0, queueEntries.length);
+    }
+
+    /**
+     * Record an add entry operation in journal only if it can be done right away, without waiting
+     * for memory or for room in the queue.
+     *
+     * @return true if the entry was enqueued, false if the journal is busy
+     */
+    boolean tryLogAddEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx) {
+        long ledgerId = entry.getLong(entry.readerIndex() + 0);
+        long entryId = entry.getLong(entry.readerIndex() + 8);
+        if (!memoryLimitController.tryReserveMemory(entry.readableBytes())) {
+            return false;
+        }
+        if (!tryEnqueue(entry, ackBeforeSync, ledgerId, entryId, cb, ctx, MathUtils.nowInNano())) {
+            memoryLimitController.releaseMemory(entry.readableBytes());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Log consecutive entries of a ledger to the journal only if it can be done right away.
+     *
+     * <p>When it returns false, the first entries may have been enqueued already: their callback
+     * is still invoked once they are persisted.
+     *
+     * @return true if all the entries were enqueued, false if the journal is busy
+     */
+    boolean tryLogAddEntries(long ledgerId, long firstEntryId, ByteBuf[] entries,
+                             boolean ackBeforeSync, WriteCallback cb, Object ctx) {
+        long enqueueTime = MathUtils.nowInNano();
+        long totalBytes = 0;
+        for (ByteBuf entry : entries) {
+            totalBytes += entry.readableBytes();
+        }
+        if (!memoryLimitController.tryReserveMemory(totalBytes)) {
+            return false;
+        }
+        for (int i = 0; i < entries.length; i++) {
+            if (!tryEnqueue(entries[i], ackBeforeSync, ledgerId, firstEntryId + i, cb, ctx, enqueueTime)) {
+                for (int j = i; j < entries.length; j++) {
+                    memoryLimitController.releaseMemory(entries[j].readableBytes());
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean tryEnqueue(ByteBuf entry, boolean ackBeforeSync, long ledgerId, long entryId,
+                               WriteCallback cb, Object ctx, long enqueueTime) {
+        // Retain entry until it gets written to journal
+        QueueEntry qe = QueueEntry.create(
+                entry.retain(), ackBeforeSync, ledgerId, entryId, cb, ctx, enqueueTime,
+                journalStats.getJournalAddEntryStats(),
+                callbackTime);
+        if (!queue.offer(qe)) {
+            entry.release();
+            qe.recycle();
+            return false;
+        }
+        // Increment afterwards because the entry may not be enqueued
+        journalStats.getJournalQueueSize().inc();
+        return true;
+    }
+
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx) {
         queue.add(QueueEntry.create(
                 null, false /* ackBeforeSync */, ledgerId,
@@ -957,7 +1075,7 @@ public class Journal implements CheckpointSource {
         LOG.info("Starting journal on {}", journalDirectory);
         ThreadRegistry.register(journalThreadName, 0);
 
-        if (conf.isBusyWaitEnabled()) {
+        if (!CpuAffinityProfile.pinCurrentThread(CpuAffinityProfile.Role.JOURNAL) && conf.isBusyWaitEnabled()) {
             try {
                 CpuAffinity.acquireCore();
             } catch (Exception e) {
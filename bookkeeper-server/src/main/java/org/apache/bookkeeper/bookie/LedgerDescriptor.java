@@ -28,6 +28,7 @@ import io.netty.buffer.Unpooled;
 import java.io.IOException;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.bookkeeper.common.util.Watcher;
 
 /**
@@ -36,6 +37,10 @@ import org.apache.bookkeeper.common.util.Watcher;
  */
 public abstract class LedgerDescriptor {
 
+    // Serializes the adds to the ledger with its fencing. It is a lock rather than the monitor of the
+    // descriptor, so that the IO threads can give up on a busy ledger instead of waiting for it.
+    private final ReentrantLock lock = new ReentrantLock();
+
     static LedgerDescriptor create(byte[] masterKey,
                                    long ledgerId,
                                    LedgerStorage ledgerStorage) throws IOException {
@@ -60,6 +65,18 @@ public abstract class LedgerDescriptor {
         return bb;
     }
 
+    void lock() {
+        lock.lock();
+    }
+
+    boolean tryLock() {
+        return lock.tryLock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
     abstract void checkAccess(byte[] masterKey) throws BookieException, IOException;
 
     abstract long getLedgerId();
@@ -76,6 +93,12 @@ public abstract class LedgerDescriptor {
     abstract CompletableFuture<Boolean> fenceAndLogInJournal(Journal journal) throws IOException;
 
     abstract long addEntry(ByteBuf entry) throws IOException, BookieException;
+    /**
+     * Add an entry only if the ledger storage has room for it right away.
+     *
+     * @return true if the entry was added
+     */
+    abstract boolean tryAddEntry(ByteBuf entry) throws IOException, BookieException;
     abstract ByteBuf readEntry(long entryId) throws IOException, BookieException;
 
     abstract long getLastAddConfirmed() throws IOException, BookieException;
@@ -89,7 +89,16 @@ public class LedgerDescriptorImpl extends LedgerDescriptor {
     }
 
     @Override
-    synchronized CompletableFuture<Boolean> fenceAndLogInJournal(Journal journal) throws IOException {
+    CompletableFuture<Boolean> fenceAndLogInJournal(Journal journal) throws IOException {
+        lock();
+        try {
+            return fenceAndLogInJournalLocked(journal);
+        } finally {
+            unlock();
+        }
+    }
+
+    private CompletableFuture<Boolean> fenceAndLogInJournalLocked(Journal journal) throws IOException {
         boolean success = this.setFenced();
         if (success) {
             // fenced for first time, we should add the key to journal ensure we can rebuild.
@@ -121,8 +130,11 @@ public class LedgerDescriptorImpl extends LedgerDescriptor {
      */
     private CompletableFuture<Boolean> logFenceEntryInJournal(Journal journal) {
         CompletableFuture<Boolean> result;
-        synchronized (this) {
+        lock();
+        try {
             result = logFenceResult = FutureUtils.createFuture();
+        } finally {
+            unlock();
         }
         ByteBuf entry = createLedgerFenceEntry(ledgerId);
         try {
@@ -156,6 +168,17 @@ public class LedgerDescriptorImpl extends LedgerDescriptor {
         return ledgerStorage.addEntry(entry);
     }
 
+    @Override
+    boolean tryAddEntry(ByteBuf entry) throws IOException, BookieException {
+        long ledgerId = entry.getLong(entry.readerIndex());
+
+        if (ledgerId != this.ledgerId) {
+            throw new IOException("Entry for ledger " + ledgerId + " was sent to " + this.ledgerId);
+        }
+
+        return ledgerStorage.tryAddEntry(entry);
+    }
+
     @Override
     ByteBuf readEntry(long entryId) throws IOException, BookieException {
         return ledgerStorage.getEntry(ledgerId, entryId);
@@ -42,6 +42,11 @@ public class LedgerDescriptorReadOnlyImpl extends LedgerDescriptorImpl {
         throw new IOException("Invalid action on read only descriptor");
     }
 
+    @Override
+    boolean tryAddEntry(ByteBuf entry) throws IOException {
+        throw new IOException("Invalid action on read only descriptor");
+    }
+
     @Override
     void checkAccess(byte[] masterKey) throws BookieException, IOException {
         throw new IOException("Invalid action on read only descriptor");
@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.PrimitiveIterator;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -58,6 +59,26 @@ public interface LedgerStorage {
                     ByteBufAllocator allocator)
             throws IOException;
 
+    /**
+     * Initialize the LedgerStorage implementation, reserving the direct memory of its caches and buffers from the
+     * direct memory budget of the bookie.
+     *
+     * @param conf
+     * @param ledgerManager
+     * @param ledgerDirsManager
+     * @param memoryBudget direct memory budget of the bookie
+     */
+    default void initialize(ServerConfiguration conf,
+                            LedgerManager ledgerManager,
+                            LedgerDirsManager ledgerDirsManager,
+                            LedgerDirsManager indexDirsManager,
+                            StatsLogger statsLogger,
+                            ByteBufAllocator allocator,
+                            MemoryLimitController memoryBudget)
+            throws IOException {
+        initialize(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator);
+    }
+
     void setStateManager(StateManager stateManager);
     void setCheckpointSource(CheckpointSource checkpointSource);
     void setCheckpointer(Checkpointer checkpointer);
@@ -144,6 +165,34 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Read an entry only if it can be served from the in-memory caches of the storage, without
+     * blocking on disk IO. Implementations without caches always return null.
+     *
+     * @return the entry, or null if it is not cached
+     */
+    default ByteBuf getCachedEntry(long ledgerId, long entryId) throws IOException, BookieException {
+        return null;
+    }
+
+    /**
+     * Whether {@link #tryAddEntry(ByteBuf)} is able to add entries. Implementations that cannot add an entry
+     * without blocking return false.
+     */
+    default boolean isTryAddEntrySupported() {
+        return false;
+    }
+
+    /**
+     * Add an entry to the storage only if it can be done right away, without waiting for the storage to
+     * make room for it.
+     *
+     * @return true if the entry was added
+     */
+    default boolean tryAddEntry(ByteBuf entry) throws IOException, BookieException {
+        return false;
+    }
+
     /**
      * Get last add confirmed.
      *
@@ -339,6 +388,22 @@ public interface LedgerStorage {
         return Collections.emptyList();
     }
 
+    /**
+     * Get the number of bytes of entries in the write cache, waiting to be flushed.
+     * Returns 0 if the storage has no write cache.
+     */
+    default long getWriteCacheSize() {
+        return 0L;
+    }
+
+    /**
+     * Get the capacity of the write cache, in bytes.
+     * Returns 0 if the storage has no write cache.
+     */
+    default long getWriteCacheCapacity() {
+        return 0L;
+    }
+
     /**
      * Returns the primitive long iterator for entries of the ledger, stored in
      * this LedgerStorage. The returned iterator provide weakly consistent state
@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import io.netty.buffer.ByteBufAllocator;
 import java.io.IOException;
 import java.util.function.Supplier;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
 import org.apache.bookkeeper.discover.RegistrationManager;
@@ -52,8 +53,24 @@ public class ReadOnlyBookie extends BookieImpl {
                           StatsLogger statsLogger,
                           ByteBufAllocator allocator, Supplier<BookieServiceInfo> bookieServiceInfoProvider)
             throws IOException, KeeperException, InterruptedException, BookieException {
+        this(conf, registrationManager, storage, diskChecker, ledgerDirsManager, indexDirsManager, statsLogger,
+             allocator, new MemoryLimitController(BookKeeperServerStats.BOOKIE_SCOPE, 0),
+             bookieServiceInfoProvider);
+    }
+
+    public ReadOnlyBookie(ServerConfiguration conf,
+                          RegistrationManager registrationManager,
+                          LedgerStorage storage,
+                          DiskChecker diskChecker,
+                          LedgerDirsManager ledgerDirsManager,
+                          LedgerDirsManager indexDirsManager,
+                          StatsLogger statsLogger,
+                          ByteBufAllocator allocator,
+                          MemoryLimitController memoryBudget,
+                          Supplier<BookieServiceInfo> bookieServiceInfoProvider)
+            throws IOException, KeeperException, InterruptedException, BookieException {
         super(conf, registrationManager, storage, diskChecker,
-              ledgerDirsManager, indexDirsManager, statsLogger, allocator, bookieServiceInfoProvider);
+              ledgerDirsManager, indexDirsManager, statsLogger, allocator, memoryBudget, bookieServiceInfoProvider);
         if (conf.isReadOnlyModeEnabled()) {
             stateManager.forceToReadOnly();
         } else {
@@ -421,6 +421,16 @@ public class SortedLedgerStorage
         return interleavedLedgerStorage.getGarbageCollectionStatus();
     }
 
+    @Override
+    public long getWriteCacheSize() {
+        return memTable.getMemoryUsage();
+    }
+
+    @Override
+    public long getWriteCacheCapacity() {
+        return memTable.getMemoryCapacity();
+    }
+
     @Override
     public PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException {
         PrimitiveIterator.OfLong entriesInMemtableItr = memTable.getListOfEntriesOfLedger(ledgerId);
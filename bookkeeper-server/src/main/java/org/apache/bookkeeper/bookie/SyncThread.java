@@ -87,7 +87,8 @@ class SyncThread implements Checkpointer {
 
     @VisibleForTesting
     static ScheduledExecutorService newExecutor() {
-        return Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory(executorName));
+        return Executors.newSingleThreadScheduledExecutor(
+                CpuAffinityProfile.threadFactory(CpuAffinityProfile.Role.SYNC, new DefaultThreadFactory(executorName)));
     }
 
     @Override
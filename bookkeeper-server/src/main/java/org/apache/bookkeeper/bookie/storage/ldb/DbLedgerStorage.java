@@ -60,6 +60,7 @@ import org.apache.bookkeeper.bookie.storage.directentrylogger.EntryLogIdsImpl;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.bookie.storage.ldb.SingleDirectoryDbLedgerStorage.LedgerLoggerProcessor;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -124,6 +125,11 @@ public class DbLedgerStorage implements LedgerStorage {
     private int numberOfDirs;
     private List<SingleDirectoryDbLedgerStorage> ledgerStorageList;
 
+    private MemoryLimitController writeCacheMemory;
+    private MemoryLimitController entryLoggerMemory;
+    private long writeCacheMaxSize;
+    private long entryLoggerBuffersSize;
+
     private ExecutorService entryLoggerWriteExecutor = null;
     private ExecutorService entryLoggerFlushExecutor = null;
 
@@ -149,11 +155,27 @@ public class DbLedgerStorage implements LedgerStorage {
     public void initialize(ServerConfiguration conf, LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
                            LedgerDirsManager indexDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator)
             throws IOException {
+        initialize(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator,
+                new MemoryLimitController(0));
+    }
+
+    @Override
+    public void initialize(ServerConfiguration conf, LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
+                           LedgerDirsManager indexDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator,
+                           MemoryLimitController memoryBudget)
+            throws IOException {
         long writeCacheMaxSize = getLongVariableOrDefault(conf, WRITE_CACHE_MAX_SIZE_MB,
                 DEFAULT_WRITE_CACHE_MAX_SIZE_MB) * MB;
         long readCacheMaxSize = getLongVariableOrDefault(conf, READ_AHEAD_CACHE_MAX_SIZE_MB,
                 DEFAULT_READ_CACHE_MAX_SIZE_MB) * MB;
         boolean directIOEntryLogger = getBooleanVariableOrDefault(conf, DIRECT_IO_ENTRYLOGGER, false);
+        long entryLoggerBuffersSize = 0;
+        if (directIOEntryLogger) {
+            entryLoggerBuffersSize = MB * (getLongVariableOrDefault(conf,
+                    DIRECT_IO_ENTRYLOGGER_TOTAL_WRITEBUFFER_SIZE_MB, DEFAULT_DIRECT_IO_TOTAL_WRITEBUFFER_SIZE_MB)
+                    + getLongVariableOrDefault(conf,
+                    DIRECT_IO_ENTRYLOGGER_TOTAL_READBUFFER_SIZE_MB, DEFAULT_DIRECT_IO_TOTAL_READBUFFER_SIZE_MB));
+        }
 
         this.allocator = allocator;
         this.numberOfDirs = ledgerDirsManager.getAllLedgerDirs().size();
@@ -167,6 +189,23 @@ public class DbLedgerStorage implements LedgerStorage {
             throw new IOException("Read and write cache sizes exceed the configured max direct memory size");
         }
 
+        long memoryBudgetLimit = memoryBudget.getMemoryLimit();
+        if (memoryBudgetLimit > 0 && memoryBudget.currentUsage() + readCacheMaxSize + writeCacheMaxSize
+                + entryLoggerBuffersSize > memoryBudgetLimit) {
+            throw new IOException("Read and write cache and entry logger buffer sizes exceed the direct memory budget"
+                    + " of " + memoryBudgetLimit / MB + " MB");
+        }
+
+        // The write caches and the entry logger buffers are allocated upfront, while the read caches reserve their
+        // segments and give them back under memory pressure
+        this.writeCacheMaxSize = writeCacheMaxSize;
+        this.writeCacheMemory = memoryBudget.newChild("write-cache", 0);
+        writeCacheMemory.forceReserveMemory(writeCacheMaxSize);
+        this.entryLoggerBuffersSize = entryLoggerBuffersSize;
+        this.entryLoggerMemory = memoryBudget.newChild("entry-logger-buffers", 0);
+        entryLoggerMemory.forceReserveMemory(entryLoggerBuffersSize);
+        MemoryLimitController readCacheMemory = memoryBudget.newChild("read-cache", 0);
+
         if (ledgerDirsManager.getAllLedgerDirs().size() != indexDirsManager.getAllLedgerDirs().size()) {
             throw new IOException("ledger and index dirs size not matched");
         }
@@ -241,7 +280,7 @@ public class DbLedgerStorage implements LedgerStorage {
             ledgerStorageList.add(newSingleDirectoryDbLedgerStorage(conf, ledgerManager, ldm,
                 idm, entrylogger,
                 statsLogger, perDirectoryWriteCacheSize,
-                perDirectoryReadCacheSize,
+                perDirectoryReadCacheSize, writeCacheMemory, readCacheMemory,
                 readAheadCacheBatchSize, readAheadCacheBatchBytesSize));
             ldm.getListeners().forEach(ledgerDirsManager::addLedgerDirsListener);
             if (!lDirs[0].getPath().equals(iDirs[0].getPath())) {
@@ -281,11 +320,13 @@ public class DbLedgerStorage implements LedgerStorage {
     protected SingleDirectoryDbLedgerStorage newSingleDirectoryDbLedgerStorage(ServerConfiguration conf,
             LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
             EntryLogger entryLogger, StatsLogger statsLogger, long writeCacheSize, long readCacheSize,
+            MemoryLimitController writeCacheMemory, MemoryLimitController readCacheMemory,
             int readAheadCacheBatchSize, long readAheadCacheBatchBytesSize)
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager, entryLogger,
                                                   statsLogger, allocator, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize, readAheadCacheBatchBytesSize);
+                                                  writeCacheMemory, readCacheMemory, readAheadCacheBatchSize,
+                                                  readAheadCacheBatchBytesSize);
     }
 
     @Override
@@ -318,6 +359,9 @@ public class DbLedgerStorage implements LedgerStorage {
         if (entryLoggerFlushExecutor != null) {
             entryLoggerFlushExecutor.shutdown();
         }
+
+        writeCacheMemory.releaseMemory(writeCacheMaxSize);
+        entryLoggerMemory.releaseMemory(entryLoggerBuffersSize);
     }
 
     @Override
@@ -361,6 +405,22 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public ByteBuf getCachedEntry(long ledgerId, long entryId) throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getCachedEntry(ledgerId, entryId);
+    }
+
+    @Override
+    public boolean isTryAddEntrySupported() {
+        return true;
+    }
+
+    @Override
+    public boolean tryAddEntry(ByteBuf entry) throws IOException, BookieException {
+        long ledgerId = entry.getLong(entry.readerIndex());
+        return getLedgerStorage(ledgerId).tryAddEntry(entry);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -597,6 +657,16 @@ public class DbLedgerStorage implements LedgerStorage {
             .map(single -> single.getGarbageCollectionStatus().get(0)).collect(Collectors.toList());
     }
 
+    @Override
+    public long getWriteCacheSize() {
+        return ledgerStorageList.stream().mapToLong(SingleDirectoryDbLedgerStorage::getWriteCacheSize).sum();
+    }
+
+    @Override
+    public long getWriteCacheCapacity() {
+        return ledgerStorageList.stream().mapToLong(SingleDirectoryDbLedgerStorage::getWriteCacheCapacity).sum();
+    }
+
     static long getLongVariableOrDefault(ServerConfiguration conf, String keyName, long defaultValue) {
         Object obj = conf.getProperty(keyName);
         if (obj instanceof Number) {
@@ -31,8 +31,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairOffHeapHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +46,11 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>The segments are reserved on a {@link MemoryLimitController}. When the
+ * other consumers of the memory budget need memory, the oldest segments
+ * are released, and allocated again when the ring-buffer reaches them,
+ * if the budget allows it. The memory of the indexes is charged to the budget too.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
@@ -52,7 +58,8 @@ public class ReadCache implements Closeable {
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    // The indexes of a large cache have millions of entries, they are kept off-heap
+    private final List<ConcurrentLongLongPairOffHeapHashMap> cacheIndexes;
 
     private int currentSegmentIdx;
     //autoincrementa l'integer
@@ -63,13 +70,26 @@ public class ReadCache implements Closeable {
     private ByteBufAllocator allocator;
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    private final MemoryLimitController memoryBudget;
+    private final MemoryLimitController.MemoryReclaimer reclaimer = this::shrink;
+
     // costruttore chiamato se non specificata la massima dimensione del segmento
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, new MemoryLimitController(0));
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, MemoryLimitController memoryBudget) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, memoryBudget);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     MemoryLimitController memoryBudget) {
         this.allocator = allocator;
+        this.memoryBudget = memoryBudget;
         int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
 
@@ -77,18 +97,82 @@ public class ReadCache implements Closeable {
         cacheIndexes = new ArrayList<>();
 
         for (int i = 0; i < segmentsCount; i++) {
-            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
+            cacheSegments.add(allocateSegment());
+            ConcurrentLongLongPairOffHeapHashMap cacheIndex = ConcurrentLongLongPairOffHeapHashMap.newBuilder()
                     .expectedItems(4096)
                     .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .allocator(allocator)
+                    .memoryBudget(memoryBudget)
                     .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+            cacheIndexes.add(cacheIndex);
+        }
+        memoryBudget.addReclaimer(reclaimer);
+    }
+
+    /**
+     * Allocate a segment if the memory budget allows it.
+     *
+     * @return the segment, or null if the memory budget is exhausted
+     */
+    private ByteBuf allocateSegment() {
+        if (!memoryBudget.tryReserveMemory(segmentSize)) {
+            return null;
+        }
+        return Unpooled.directBuffer(segmentSize, segmentSize);
+    }
+
+    /**
+     * Release the oldest segments, except the current one, to give back memory to the memory budget.
+     *
+     * @param size the amount of memory requested
+     * @return the amount of memory released
+     */
+    long shrink(long size) {
+        // Do not wait for the readers, the memory will be asked again if it is still needed
+        if (!lock.writeLock().tryLock()) {
+            return 0;
+        }
+
+        try {
+            long released = 0;
+            int segmentsCount = cacheSegments.size();
+            for (int i = 1; i < segmentsCount && released < size; i++) {
+                int segmentIdx = (currentSegmentIdx + i) % segmentsCount;
+                ByteBuf segment = cacheSegments.get(segmentIdx);
+                if (segment != null) {
+                    cacheIndexes.get(segmentIdx).clear();
+                    cacheSegments.set(segmentIdx, null);
+                    ReferenceCountUtil.safeRelease(segment);
+                    memoryBudget.releaseMemory(segmentSize);
+                    released += segmentSize;
+                }
+            }
+            if (released > 0) {
+                log.info("Released {} bytes of read cache to the memory budget", released);
+            }
+            return released;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
     @Override
     public void close() {
-        cacheSegments.forEach(ReferenceCountUtil::safeRelease);
+        memoryBudget.removeReclaimer(reclaimer);
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < cacheSegments.size(); i++) {
+                ByteBuf segment = cacheSegments.get(i);
+                if (segment != null) {
+                    cacheSegments.set(i, null);
+                    ReferenceCountUtil.safeRelease(segment);
+                    memoryBudget.releaseMemory(segmentSize);
+                }
+            }
+            cacheIndexes.forEach(ConcurrentLongLongPairOffHeapHashMap::close);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
@@ -102,13 +186,13 @@ public class ReadCache implements Closeable {
                 log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
                 return;
             }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
+            ByteBuf segment = cacheSegments.get(currentSegmentIdx);
+            int offset = segment != null ? currentSegmentOffset.getAndAdd(alignedSize) : segmentSize;
             if (offset + entrySize > segmentSize) {
                 // Roll-over the segment (outside the read-lock)
             } else {
                 // Copy entry into read cache segment
-                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
-                        entry.readableBytes());
+                segment.setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
                 cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
                 return;
             }
@@ -122,7 +206,7 @@ public class ReadCache implements Closeable {
 
         try {
             int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
+            if (offset + entrySize > segmentSize || cacheSegments.get(currentSegmentIdx) == null) {
                 // Rollover to next segment
                 currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
                 currentSegmentOffset.set(alignedSize);
@@ -130,8 +214,20 @@ public class ReadCache implements Closeable {
                 offset = 0;
             }
 
+            ByteBuf segment = cacheSegments.get(currentSegmentIdx);
+            if (segment == null) {
+                // The segment was given back to the memory budget, allocate it again if possible
+                segment = allocateSegment();
+                if (segment == null) {
+                    // Stay on a full segment, so that the next entries go through the roll-over again
+                    currentSegmentOffset.set(segmentSize);
+                    return;
+                }
+                cacheSegments.set(currentSegmentIdx, segment);
+            }
+
             // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
+            segment.setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
             cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
         } finally {
             lock.writeLock().unlock();
@@ -197,7 +293,9 @@ public class ReadCache implements Closeable {
         try {
             long size = 0;
             for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
+                if (cacheSegments.get(i) == null) {
+                    // the segment was released
+                } else if (i == currentSegmentIdx) {
                     size += currentSegmentOffset.get();
                 } else if (!cacheIndexes.get(i).isEmpty()) {
                     size += segmentSize;
@@ -221,7 +319,10 @@ public class ReadCache implements Closeable {
         try {
             long count = 0;
             for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
+                if (cacheSegments.get(i) != null) {
+                    // the index of a released segment is empty, or closed
+                    count += cacheIndexes.get(i).size();
+                }
             }
 
             return count;
@@ -69,6 +69,7 @@ import org.apache.bookkeeper.bookie.storage.EntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -148,7 +149,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
                                           LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager,
                                           EntryLogger entryLogger, StatsLogger statsLogger, ByteBufAllocator allocator,
-                                          long writeCacheSize, long readCacheSize, int readAheadCacheBatchSize,
+                                          long writeCacheSize, long readCacheSize,
+                                          MemoryLimitController writeCacheMemory,
+                                          MemoryLimitController readCacheMemory, int readAheadCacheBatchSize,
                                           long readAheadCacheBatchBytesSize)
             throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
@@ -173,8 +176,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 .scopeLabel("indexDir", indexBaseDir);
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        // The segments of the write caches are reserved up front by DbLedgerStorage, only the indexes grow
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2, writeCacheMemory);
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2, writeCacheMemory);
         this.singleLedgerDirs = conf.getLedgerDirs().length == 1;
 
         readCacheMaxSize = readCacheSize;
@@ -188,7 +192,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        readCache = new ReadCache(allocator, readCacheMaxSize, readCacheMemory);
 
         ledgerIndex = new LedgerMetadataIndex(conf,
                 KeyValueStorageRocksDB.factory, indexBaseDir, ledgerIndexDirStatsLogger);
@@ -511,23 +515,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long absoluteTimeoutNanos = System.nanoTime() + maxThrottleTimeNanos;
 
         while (System.nanoTime() < absoluteTimeoutNanos) {
-            // Write cache is full, we need to trigger a flush so that it gets rotated
-            // If the flush has already been triggered or flush has already switched the
-            // cache, we don't need to trigger another flush
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                // Trigger an early flush in background
-                log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                        }
-                    });
-            }
+            triggerEarlyFlush();
 
             long stamp = writeCacheRotationLock.readLock();
             try {
@@ -568,15 +556,82 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
-    private ByteBuf doGetEntry(long ledgerId, long entryId) throws IOException, BookieException {
-        if (log.isDebugEnabled()) {
-            log.debug("Get Entry: {}@{}", ledgerId, entryId);
+    @Override
+    public ByteBuf getCachedEntry(long ledgerId, long entryId) {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return null;
         }
 
-        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
-            return getLastEntry(ledgerId);
+        long startTime = MathUtils.nowInNano();
+        ByteBuf entry = getEntryFromCaches(ledgerId, entryId);
+        if (entry != null) {
+            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+        }
+        return entry;
+    }
+
+    @Override
+    public boolean tryAddEntry(ByteBuf entry) throws IOException, BookieException {
+        long startTime = MathUtils.nowInNano();
+
+        long ledgerId = entry.getLong(entry.readerIndex());
+        long entryId = entry.getLong(entry.readerIndex() + 8);
+        long lac = entry.getLong(entry.readerIndex() + 16);
+
+        // Same as addEntry, without waiting for the write cache to be rotated
+        long stamp = writeCacheRotationLock.tryOptimisticRead();
+        boolean inserted = writeCache.put(ledgerId, entryId, entry);
+        if (!writeCacheRotationLock.validate(stamp)) {
+            stamp = writeCacheRotationLock.tryReadLock();
+            if (stamp == 0) {
+                return false;
+            }
+            try {
+                inserted = writeCache.put(ledgerId, entryId, entry);
+            } finally {
+                writeCacheRotationLock.unlockRead(stamp);
+            }
+        }
+
+        if (!inserted) {
+            dbLedgerStorageStats.getRejectedWriteRequests().inc();
+            triggerEarlyFlush();
+            return false;
         }
 
+        updateCachedLacIfNeeded(ledgerId, lac);
+
+        recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
+        return true;
+    }
+
+    /**
+     * The write cache is full, trigger a flush in background so that it gets rotated. If the flush has
+     * already been triggered or flush has already switched the cache, we don't need to trigger another flush.
+     */
+    private void triggerEarlyFlush() {
+        if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
+            // Trigger an early flush in background
+            log.info("Write cache is full, triggering flush");
+            executor.execute(() -> {
+                    long startTime = System.nanoTime();
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        log.error("Error during flush", e);
+                    } finally {
+                        flushExecutorTime.addLatency(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Look up an entry in the write caches and in the read cache, counting the cache hits and misses.
+     *
+     * @return the entry, or null if none of the caches has it
+     */
+    private ByteBuf getEntryFromCaches(long ledgerId, long entryId) {
         // We need to try to read from both write caches, since recent entries could be found in either of the two. The
         // write caches are already thread safe on their own, here we just need to make sure we get references to both
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
@@ -618,6 +673,22 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
+        return null;
+    }
+
+    private ByteBuf doGetEntry(long ledgerId, long entryId) throws IOException, BookieException {
+        if (log.isDebugEnabled()) {
+            log.debug("Get Entry: {}@{}", ledgerId, entryId);
+        }
+
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return getLastEntry(ledgerId);
+        }
+
+        ByteBuf entry = getEntryFromCaches(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
 
         // Read from main storage
         long entryLocation;
@@ -1127,6 +1198,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return Collections.singletonList(gcThread.getGarbageCollectionStatus());
     }
 
+    @Override
+    public long getWriteCacheSize() {
+        return writeCache.size() + writeCacheBeingFlushed.size();
+    }
+
+    @Override
+    public long getWriteCacheCapacity() {
+        return writeCacheMaxSize;
+    }
+
     /**
      * Interface which process ledger logger.
      */
@@ -31,10 +31,11 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
-import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairOffHeapHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,10 +60,8 @@ public class WriteCache implements Closeable {
         void accept(long ledgerId, long entryId, ByteBuf entry) throws IOException;
     }
 
-    private final ConcurrentLongLongPairHashMap index = ConcurrentLongLongPairHashMap.newBuilder()
-            .expectedItems(4096)
-            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-            .build();
+    // The index of a large cache has millions of entries, it is kept off-heap
+    private final ConcurrentLongLongPairOffHeapHashMap index;
 
     private final ConcurrentLongLongHashMap lastEntryMap = ConcurrentLongLongHashMap.newBuilder()
             .expectedItems(4096)
@@ -91,12 +90,30 @@ public class WriteCache implements Closeable {
     }
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, null);
+    }
+
+    /**
+     * @param indexMemory the memory budget the memory of the index is charged to, or null
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, MemoryLimitController indexMemory) {
+        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024, indexMemory);
+    }
+
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                      MemoryLimitController indexMemory) {
         checkArgument(maxSegmentSize > 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
         checkArgument(maxSegmentSize == alignedMaxSegmentSize, "Max segment size needs to be in form of 2^n");
 
         this.allocator = allocator;
+        this.index = ConcurrentLongLongPairOffHeapHashMap.newBuilder()
+                .expectedItems(4096)
+                .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                .allocator(allocator)
+                .memoryBudget(indexMemory)
+                .build();
         this.maxCacheSize = maxCacheSize;
         this.maxSegmentSize = (int) maxSegmentSize;
         this.segmentOffsetMask = maxSegmentSize - 1;
@@ -129,6 +146,7 @@ public class WriteCache implements Closeable {
         for (ByteBuf buf : cacheSegments) {
             buf.release();
         }
+        index.close();
     }
 
     public boolean put(long ledgerId, long entryId, ByteBuf entry) {
@@ -281,6 +299,13 @@ public class WriteCache implements Closeable {
         }
     }
 
+    /**
+     * Whether an entry of the given size still fits in the cache. Concurrent puts may fill the cache right after.
+     */
+    public boolean hasSpace(int size) {
+        return cacheOffset.get() + align64(size) <= maxCacheSize;
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -0,0 +1,158 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.net.BookieId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} issuing speculative requests once the bookie being read
+ * from takes longer than its expected latency.
+ *
+ * <p>The expected latency is tracked per bookie by {@link BookieReadLatencyTracker}. The policy falls back to
+ * {@code firstSpeculativeRequestTimeout} for bookies without latency history, and never waits longer than
+ * {@code maxSpeculativeRequestTimeout}. When a rate limit is set, the speculative requests away from a bookie
+ * above the rate are postponed to the next timeout, so that a slow bookie does not shift a burst of reads to
+ * the other bookies. The rate is limited per bookie, a slow bookie does not hold back the speculative requests
+ * away from the other bookies.
+ */
+class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    private final BookieReadLatencyTracker latencyTracker;
+    private final int firstSpeculativeRequestTimeout;
+    private final int maxSpeculativeRequestTimeout;
+    private final float backoffMultiplier;
+    private final int maxSpeculativeRequestRate;
+    private final ConcurrentMap<BookieId, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+    // shared by the requests whose pending bookie is unknown
+    private final RateLimiter unknownBookieRateLimiter;
+
+    AdaptiveSpeculativeRequestExecutionPolicy(BookieReadLatencyTracker latencyTracker,
+                                              int firstSpeculativeRequestTimeout,
+                                              int maxSpeculativeRequestTimeout,
+                                              float backoffMultiplier,
+                                              int maxSpeculativeRequestRate) {
+        if (backoffMultiplier <= 0) {
+            throw new IllegalArgumentException("Invalid value provided for backoffMultiplier");
+        }
+        this.latencyTracker = latencyTracker;
+        this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = maxSpeculativeRequestTimeout;
+        this.backoffMultiplier = backoffMultiplier;
+        this.maxSpeculativeRequestRate = maxSpeculativeRequestRate;
+        this.unknownBookieRateLimiter =
+                maxSpeculativeRequestRate > 0 ? RateLimiter.create(maxSpeculativeRequestRate) : null;
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                         final SpeculativeRequestExecutor requestExecutor) {
+        return scheduleSpeculativeRequest(scheduler, requestExecutor, firstSpeculativeRequestTimeout);
+    }
+
+    /**
+     * Compute the time to wait for the bookie currently read from.
+     *
+     * @param fallbackTimeoutMicros the timeout used when the bookie latency is unknown
+     */
+    private long speculativeRequestTimeoutMicros(SpeculativeRequestExecutor requestExecutor,
+                                                 long fallbackTimeoutMicros) {
+        long maxTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(maxSpeculativeRequestTimeout);
+        BookieId bookie = requestExecutor.getPendingBookie();
+        long expectedLatencyNanos = bookie == null ? -1L : latencyTracker.getExpectedLatencyNanos(bookie);
+        if (expectedLatencyNanos < 0) {
+            return Math.min(maxTimeoutMicros, fallbackTimeoutMicros);
+        }
+        return Math.max(1L, Math.min(maxTimeoutMicros, TimeUnit.NANOSECONDS.toMicros(expectedLatencyNanos)));
+    }
+
+    /**
+     * Check that the rate of speculative requests away from a bookie stays under the limit.
+     */
+    private boolean tryAcquireSpeculativeRequest(BookieId bookie) {
+        if (maxSpeculativeRequestRate <= 0) {
+            return true;
+        }
+        if (bookie == null) {
+            return unknownBookieRateLimiter.tryAcquire();
+        }
+        return rateLimiters.computeIfAbsent(bookie, ignore -> RateLimiter.create(maxSpeculativeRequestRate))
+                .tryAcquire();
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                          final SpeculativeRequestExecutor requestExecutor,
+                                                          final int fallbackTimeout) {
+        final long timeoutMicros = speculativeRequestTimeoutMicros(requestExecutor,
+                TimeUnit.MILLISECONDS.toMicros(fallbackTimeout));
+        final int nextFallbackTimeout = Math.min(maxSpeculativeRequestTimeout,
+                Math.round((float) fallbackTimeout * backoffMultiplier));
+        try {
+            return scheduler.schedule(() -> {
+                if (!tryAcquireSpeculativeRequest(requestExecutor.getPendingBookie())) {
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Postponed speculative request for {} over the rate limit", requestExecutor);
+                    }
+                    scheduleSpeculativeRequest(scheduler, requestExecutor, nextFallbackTimeout);
+                    return;
+                }
+                ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean issueNextRequest) {
+                        if (issueNextRequest) {
+                            scheduleSpeculativeRequest(scheduler, requestExecutor, nextFallbackTimeout);
+                        } else if (LOG.isTraceEnabled()) {
+                            LOG.trace("Stopped issuing speculative requests for {}, "
+                                    + "speculativeReadTimeout = {} us", requestExecutor, timeoutMicros);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable thrown) {
+                        LOG.warn("Failed to issue speculative request for {}, speculativeReadTimeout = {} us : ",
+                                requestExecutor, timeoutMicros, thrown);
+                    }
+                }, directExecutor());
+            }, timeoutMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeReadTimeout = {} us : ",
+                        requestExecutor, timeoutMicros, re);
+            }
+        }
+        return null;
+    }
+}
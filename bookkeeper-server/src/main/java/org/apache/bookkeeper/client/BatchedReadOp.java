@@ -63,8 +63,8 @@ public class BatchedReadOp extends ReadOpBase implements BatchedReadEntryCallbac
         List<BookieId> ensemble = getLedgerMetadata().getEnsembleAt(startEntryId);
         request = new SequenceReadRequest(ensemble, lh.ledgerId, startEntryId, maxCount, maxSize);
         request.read();
-        if (clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
-            speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
+        if (clientCtx.getReadSpeculativeRequestPolicy().isPresent()) {
+            speculativeTask = clientCtx.getReadSpeculativeRequestPolicy().get()
                     .initiateSpeculativeRequest(clientCtx.getScheduler(), request);
         }
     }
@@ -137,6 +137,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     // Ledger manager responsible for how to store ledger meta data
     final LedgerManagerFactory ledgerManagerFactory;
     final LedgerManager ledgerManager;
+    final LedgerMetadataCache ledgerMetadataCache;
     final LedgerIdGenerator ledgerIdGenerator;
 
     // Ensemble Placement Policy
@@ -145,6 +146,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
 
     final ClientConfiguration conf;
     final ClientInternalConf internalConf;
+    // read latency of the bookies, shared by the reads of the client
+    final BookieReadLatencyTracker bookieReadLatencyTracker;
+    final Optional<SpeculativeRequestExecutionPolicy> readSpeculativeRequestPolicy;
 
     // Close State
     boolean closed = false;
@@ -421,6 +425,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         }
 
         this.internalConf = ClientInternalConf.fromConfigAndFeatureProvider(conf, this.featureProvider);
+        this.bookieReadLatencyTracker = internalConf.newBookieReadLatencyTracker();
+        this.readSpeculativeRequestPolicy = internalConf.newReadSpeculativeRequestPolicy(bookieReadLatencyTracker);
 
         // initialize resources
         this.scheduler = OrderedScheduler.newSchedulerBuilder().numThreads(1).name("BookKeeperClientScheduler").build();
@@ -478,6 +484,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                     .poolingConcurrency(conf.getAllocatorPoolingConcurrency())
                     .outOfMemoryPolicy(conf.getAllocatorOutOfMemoryPolicy())
                     .leakDetectionPolicy(conf.getAllocatorLeakDetectionPolicy())
+                    .threadCacheIdleTrimMillis(conf.getAllocatorThreadCacheIdleTrimMs())
+                    .statsLogger(this.statsLogger.scope(BookKeeperClientStats.ALLOCATOR_SCOPE))
                     .build();
         }
 
@@ -534,6 +542,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
             throw new IOException("Failed to initialize ledger manager factory", e);
         }
         this.ledgerManager = new CleanupLedgerManager(ledgerManagerFactory.newLedgerManager());
+        this.ledgerMetadataCache = new LedgerMetadataCache(ledgerManager, conf.getLedgerMetadataCacheMaxSize(),
+                conf.getLedgerMetadataCacheTtlSeconds(), clientStats);
         this.ledgerIdGenerator = ledgerManagerFactory.newLedgerIdGenerator();
 
         this.bookieQuarantineRatio = conf.getBookieQuarantineRatio();
@@ -547,6 +557,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     BookKeeper() {
         conf = new ClientConfiguration();
         internalConf = ClientInternalConf.fromConfig(conf);
+        bookieReadLatencyTracker = internalConf.newBookieReadLatencyTracker();
+        readSpeculativeRequestPolicy = internalConf.newReadSpeculativeRequestPolicy(bookieReadLatencyTracker);
         statsLogger = NullStatsLogger.INSTANCE;
         clientStats = BookKeeperClientStats.newInstance(statsLogger);
         scheduler = null;
@@ -557,6 +569,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         mainWorkerPool = null;
         ledgerManagerFactory = null;
         ledgerManager = null;
+        ledgerMetadataCache = new LedgerMetadataCache(null, 0, 0, clientStats);
         ledgerIdGenerator = null;
         featureProvider = null;
         eventLoopGroup = null;
@@ -1450,6 +1463,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         try {
             // Close ledger manage so all pending metadata requests would be failed
             // which will reject any incoming metadata requests.
+            ledgerMetadataCache.invalidateAll();
             ledgerManager.close();
             ledgerIdGenerator.close();
         } catch (IOException ie) {
@@ -1619,6 +1633,11 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return BookKeeper.this.getLedgerManager();
             }
 
+            @Override
+            public LedgerMetadataCache getLedgerMetadataCache() {
+                return ledgerMetadataCache;
+            }
+
             @Override
             public BookieWatcher getBookieWatcher() {
                 return BookKeeper.this.getBookieWatcher();
@@ -1649,6 +1668,16 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
                 return clientStats;
             }
 
+            @Override
+            public BookieReadLatencyTracker getBookieReadLatencyTracker() {
+                return bookieReadLatencyTracker;
+            }
+
+            @Override
+            public Optional<SpeculativeRequestExecutionPolicy> getReadSpeculativeRequestPolicy() {
+                return readSpeculativeRequestPolicy;
+            }
+
             @Override
             public boolean isClientClosed() {
                 return BookKeeper.this.isClosed();
@@ -65,6 +65,11 @@ public interface BookKeeperClientStats {
     String SPECULATIVE_READ_COUNT = "SPECULATIVE_READ_COUNT";
     String READ_REQUESTS_REORDERED = "READ_REQUESTS_REORDERED";
     String GET_LIST_OF_ENTRIES_OF_LEDGER_OP = "GET_LIST_OF_ENTRIES_OF_LEDGER";
+    String LEDGER_METADATA_CACHE_HITS = "LEDGER_METADATA_CACHE_HITS";
+    String LEDGER_METADATA_CACHE_MISSES = "LEDGER_METADATA_CACHE_MISSES";
+
+    // allocator stats
+    String ALLOCATOR_SCOPE = "allocator";
 
     // per channel stats
     String CHANNEL_SCOPE = "per_channel_bookie_client";
@@ -94,6 +99,7 @@ public interface BookKeeperClientStats {
     String ACTIVE_TLS_CHANNEL_COUNTER = "ACTIVE_TLS_CHANNEL_COUNTER";
     String FAILED_CONNECTION_COUNTER = "FAILED_CONNECTION_COUNTER";
     String FAILED_TLS_HANDSHAKE_COUNTER = "FAILED_TLS_HANDSHAKE_COUNTER";
+    String CHANNEL_OUTSTANDING_REQUESTS = "OUTSTANDING_REQUESTS";
 
     // placementpolicy stats
     String NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK = "NUM_WRITABLE_BOOKIES_IN_DEFAULT_RACK";
@@ -104,6 +110,7 @@ public interface BookKeeperClientStats {
     String NUM_WRITABLE_BOOKIES_IN_DEFAULT_FAULTDOMAIN = "NUM_WRITABLE_BOOKIES_IN_DEFAULT_FAULTDOMAIN";
 
     String BOOKIE_LABEL = "bookie";
+    String CHANNEL_LABEL = "channel";
 
     OpStatsLogger getCreateOpLogger();
     OpStatsLogger getOpenOpLogger();
@@ -125,6 +132,8 @@ public interface BookKeeperClientStats {
     Counter getEnsembleChangeCounter();
     Counter getLacUpdateHitsCounter();
     Counter getLacUpdateMissesCounter();
+    Counter getLedgerMetadataCacheHitsCounter();
+    Counter getLedgerMetadataCacheMissesCounter();
     OpStatsLogger getClientChannelWriteWaitLogger();
     OpStatsLogger getWriteDelayedDueToNotEnoughFaultDomainsLatency();
     Counter getWriteDelayedDueToNotEnoughFaultDomains();
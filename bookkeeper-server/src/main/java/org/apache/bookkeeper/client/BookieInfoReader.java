@@ -17,9 +17,11 @@
  */
 package org.apache.bookkeeper.client;
 
+import com.google.common.annotations.VisibleForTesting;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -49,6 +51,10 @@ public class BookieInfoReader {
     private static final long GET_BOOKIE_INFO_REQUEST_FLAGS =
         BookkeeperProtocol.GetBookieInfoRequest.Flags.TOTAL_DISK_CAPACITY_VALUE
                                | BookkeeperProtocol.GetBookieInfoRequest.Flags.FREE_DISK_SPACE_VALUE;
+    private static final long GET_BOOKIE_LOAD_REQUEST_FLAGS =
+        BookkeeperProtocol.GetBookieInfoRequest.Flags.JOURNAL_QUEUE_LENGTH_VALUE
+                               | BookkeeperProtocol.GetBookieInfoRequest.Flags.WRITE_CACHE_USAGE_VALUE
+                               | BookkeeperProtocol.GetBookieInfoRequest.Flags.READ_QUEUE_LENGTH_VALUE;
 
     private final ScheduledExecutorService scheduler;
     private final BookKeeper bk;
@@ -62,12 +68,36 @@ public class BookieInfoReader {
     public static class BookieInfo implements WeightedObject {
         private final long freeDiskSpace;
         private final long totalDiskSpace;
+        private final long journalQueueLength;
+        private final long writeCacheSize;
+        private final long writeCacheCapacity;
+        private final long readQueueLength;
+        // whether the bookie reported its load, older bookies do not
+        private final boolean loadReported;
+        // smoothed load of the bookie relative to the other bookies, between 0 and 1
+        private final double loadScore;
         public BookieInfo() {
             this(0L, 0L);
         }
         public BookieInfo(long totalDiskSpace, long freeDiskSpace) {
+            this(totalDiskSpace, freeDiskSpace, 0L, 0L, 0L, 0L, false, 0.0);
+        }
+        public BookieInfo(long totalDiskSpace, long freeDiskSpace, long journalQueueLength,
+                          long writeCacheSize, long writeCacheCapacity, long readQueueLength) {
+            this(totalDiskSpace, freeDiskSpace, journalQueueLength, writeCacheSize, writeCacheCapacity,
+                    readQueueLength, true, 0.0);
+        }
+        private BookieInfo(long totalDiskSpace, long freeDiskSpace, long journalQueueLength,
+                           long writeCacheSize, long writeCacheCapacity, long readQueueLength,
+                           boolean loadReported, double loadScore) {
             this.totalDiskSpace = totalDiskSpace;
             this.freeDiskSpace = freeDiskSpace;
+            this.journalQueueLength = journalQueueLength;
+            this.writeCacheSize = writeCacheSize;
+            this.writeCacheCapacity = writeCacheCapacity;
+            this.readQueueLength = readQueueLength;
+            this.loadReported = loadReported;
+            this.loadScore = loadScore;
         }
         public long getFreeDiskSpace() {
             return freeDiskSpace;
@@ -75,13 +105,46 @@ public class BookieInfoReader {
         public long getTotalDiskSpace() {
             return totalDiskSpace;
         }
+        public long getJournalQueueLength() {
+            return journalQueueLength;
+        }
+        public long getWriteCacheSize() {
+            return writeCacheSize;
+        }
+        public long getWriteCacheCapacity() {
+            return writeCacheCapacity;
+        }
+        public long getReadQueueLength() {
+            return readQueueLength;
+        }
+        public boolean isLoadReported() {
+            return loadReported;
+        }
+        public double getLoadScore() {
+            return loadScore;
+        }
+        /**
+         * Returns a copy of this info with the given load score, which scales down its weight.
+         */
+        public BookieInfo withLoadScore(double loadScore) {
+            return new BookieInfo(totalDiskSpace, freeDiskSpace, journalQueueLength, writeCacheSize,
+                    writeCacheCapacity, readQueueLength, loadReported, loadScore);
+        }
         @Override
         public long getWeight() {
+            if (loadScore > 0) {
+                return (long) (freeDiskSpace * (1.0 - loadScore));
+            }
             return freeDiskSpace;
         }
         @Override
         public String toString() {
-            return "FreeDiskSpace: " + this.freeDiskSpace + " TotalDiskCapacity: " + this.totalDiskSpace;
+            return "FreeDiskSpace: " + this.freeDiskSpace + " TotalDiskCapacity: " + this.totalDiskSpace
+                    + " JournalQueueLength: " + this.journalQueueLength
+                    + " WriteCacheSize: " + this.writeCacheSize
+                    + " WriteCacheCapacity: " + this.writeCacheCapacity
+                    + " ReadQueueLength: " + this.readQueueLength
+                    + " LoadScore: " + this.loadScore;
         }
     }
 
@@ -90,7 +153,8 @@ public class BookieInfoReader {
      * Tracks the most recently reported set of bookies from BookieWatcher as well
      * as current BookieInfo for bookies we've successfully queried.
      */
-    private static class BookieInfoMap {
+    @VisibleForTesting
+    static class BookieInfoMap {
         /**
          * Contains the most recently obtained information on the contained bookies.
          * When an error happens querying a bookie, the entry is removed.
@@ -104,6 +168,13 @@ public class BookieInfoReader {
          */
         private Collection<BookieId> mostRecentlyReportedBookies = new ArrayList<>();
 
+        /**
+         * Contains the smoothed load score of the bookies, and the bookies whose info was obtained
+         * by the scan in progress.
+         */
+        private final Map<BookieId, Double> loadScores = new HashMap<>();
+        private final Set<BookieId> scannedBookies = new HashSet<>();
+
         public void updateBookies(Collection<BookieId> updatedBookieSet) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug(
@@ -111,6 +182,7 @@ public class BookieInfoReader {
                         mostRecentlyReportedBookies, updatedBookieSet);
             }
             infoMap.keySet().retainAll(updatedBookieSet);
+            loadScores.keySet().retainAll(updatedBookieSet);
             mostRecentlyReportedBookies = updatedBookieSet;
         }
 
@@ -140,6 +212,7 @@ public class BookieInfoReader {
          */
         public void clearInfo(BookieId bookie) {
             infoMap.remove(bookie);
+            loadScores.remove(bookie);
         }
 
         /**
@@ -150,6 +223,63 @@ public class BookieInfoReader {
          */
         public void gotInfo(BookieId bookie, BookieInfo info) {
             infoMap.put(bookie, info);
+            scannedBookies.add(bookie);
+        }
+
+        /**
+         * Update the load scores of the bookies scanned since the last update, and apply them to
+         * their info.
+         *
+         * <p>The load of a bookie is measured relative to the mean of the bookies, so that a load
+         * evenly spread across the cluster does not change the weights. It is smoothed across scans to
+         * avoid moving all the new ensembles away from a bookie at once. The bookies which did not
+         * report their load are left out of the mean, and keep their unweighted free disk space.
+         *
+         * @param smoothingFactor weight of the latest load in the smoothed load score
+         */
+        public void updateLoadScores(double smoothingFactor) {
+            if (scannedBookies.isEmpty()) {
+                return;
+            }
+            double meanJournalQueueLength = 0;
+            double meanReadQueueLength = 0;
+            int numReported = 0;
+            for (BookieInfo info : infoMap.values()) {
+                if (info.isLoadReported()) {
+                    meanJournalQueueLength += info.getJournalQueueLength();
+                    meanReadQueueLength += info.getReadQueueLength();
+                    numReported++;
+                }
+            }
+            if (numReported > 0) {
+                meanJournalQueueLength /= numReported;
+                meanReadQueueLength /= numReported;
+            }
+
+            for (BookieId bookie : scannedBookies) {
+                BookieInfo info = infoMap.get(bookie);
+                if (info == null) {
+                    continue;
+                }
+                if (!info.isLoadReported()) {
+                    loadScores.remove(bookie);
+                    continue;
+                }
+                double journalLoad = info.getJournalQueueLength()
+                        / (info.getJournalQueueLength() + meanJournalQueueLength + 1);
+                double writeCacheLoad = info.getWriteCacheCapacity() > 0
+                        ? Math.min(1.0, (double) info.getWriteCacheSize() / info.getWriteCacheCapacity()) : 0.0;
+                double readLoad = info.getReadQueueLength()
+                        / (info.getReadQueueLength() + meanReadQueueLength + 1);
+                double load = (journalLoad + writeCacheLoad + readLoad) / 3;
+
+                Double previousScore = loadScores.get(bookie);
+                double score = previousScore == null
+                        ? load : smoothingFactor * load + (1 - smoothingFactor) * previousScore;
+                loadScores.put(bookie, score);
+                infoMap.put(bookie, info.withLoadScore(score));
+            }
+            scannedBookies.clear();
         }
 
         /**
@@ -326,8 +456,8 @@ public class BookieInfoReader {
         }
 
         BookieClient bkc = bk.getBookieClient();
-        final long requested = BookkeeperProtocol.GetBookieInfoRequest.Flags.TOTAL_DISK_CAPACITY_VALUE
-                               | BookkeeperProtocol.GetBookieInfoRequest.Flags.FREE_DISK_SPACE_VALUE;
+        final long requested = conf.getLoadAwarePlacementEnabled()
+                ? GET_BOOKIE_INFO_REQUEST_FLAGS | GET_BOOKIE_LOAD_REQUEST_FLAGS : GET_BOOKIE_INFO_REQUEST_FLAGS;
         totalSent = 0;
         completedCnt = 0;
         errorCnt = 0;
@@ -381,6 +511,9 @@ public class BookieInfoReader {
     }
 
     void onExit() {
+        if (conf.getLoadAwarePlacementEnabled()) {
+            bookieInfoMap.updateLoadScores(conf.getLoadAwarePlacementSmoothingFactor());
+        }
         bk.placementPolicy.updateBookieInfo(bookieInfoMap.getBookieMap());
         if (errorCnt > 0) {
             if (LOG.isInfoEnabled()) {
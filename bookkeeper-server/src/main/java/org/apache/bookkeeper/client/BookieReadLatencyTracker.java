@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.bookkeeper.net.BookieId;
+
+/**
+ * Tracks the read latency of each bookie, to estimate how long a read is expected to take.
+ *
+ * <p>The estimate follows the round trip time estimator of TCP (RFC 6298): an exponentially
+ * weighted moving average of the latency, and of its mean deviation. The expected latency of a
+ * bookie is its average latency plus a number of deviations, which approximates a high latency
+ * percentile without keeping any sample.
+ */
+class BookieReadLatencyTracker {
+
+    // Weight of a new sample in the average latency
+    private static final double ALPHA = 0.125;
+    // Weight of a new sample in the latency deviation
+    private static final double BETA = 0.25;
+
+    private final double deviations;
+    private final ConcurrentMap<BookieId, LatencyEstimate> estimates = new ConcurrentHashMap<>();
+
+    BookieReadLatencyTracker(double deviations) {
+        this.deviations = deviations;
+    }
+
+    /**
+     * Record the latency of a successful read from a bookie.
+     */
+    void recordLatency(BookieId bookie, long latencyNanos) {
+        estimates.computeIfAbsent(bookie, ignore -> new LatencyEstimate()).update(latencyNanos);
+    }
+
+    /**
+     * Get the latency a read from the bookie is expected to stay under.
+     *
+     * @return the expected read latency in nanoseconds, -1 if the bookie has no latency history
+     */
+    long getExpectedLatencyNanos(BookieId bookie) {
+        LatencyEstimate estimate = estimates.get(bookie);
+        return estimate == null ? -1L : estimate.expectedLatencyNanos(deviations);
+    }
+
+    private static class LatencyEstimate {
+        private double averageNanos = -1;
+        private double deviationNanos;
+
+        synchronized void update(long latencyNanos) {
+            if (averageNanos < 0) {
+                averageNanos = latencyNanos;
+                deviationNanos = latencyNanos / 2.0;
+            } else {
+                deviationNanos = (1 - BETA) * deviationNanos + BETA * Math.abs(averageNanos - latencyNanos);
+                averageNanos = (1 - ALPHA) * averageNanos + ALPHA * latencyNanos;
+            }
+        }
+
+        synchronized long expectedLatencyNanos(double deviations) {
+            return (long) (averageNanos + deviations * deviationNanos);
+        }
+    }
+}
@@ -44,4 +44,14 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the latency a read from a bookie is expected to stay under.
+     *
+     * @param bookieSocketAddress
+     * @return expected read latency in nanoseconds, -1 if it is not tracked
+     */
+    default long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+        return -1L;
+    }
+
 }
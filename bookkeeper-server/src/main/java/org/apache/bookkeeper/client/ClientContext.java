@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import io.netty.buffer.ByteBufAllocator;
+import java.util.Optional;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -35,6 +36,7 @@ import org.apache.bookkeeper.proto.BookieClient;
 public interface ClientContext {
     ClientInternalConf getConf();
     LedgerManager getLedgerManager();
+    LedgerMetadataCache getLedgerMetadataCache();
     BookieWatcher getBookieWatcher();
     EnsemblePlacementPolicy getPlacementPolicy();
     BookieClient getBookieClient();
@@ -42,5 +44,8 @@ public interface ClientContext {
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
+    // null when neither adaptive speculative reads nor latency aware read reordering are enabled
+    BookieReadLatencyTracker getBookieReadLatencyTracker();
+    Optional<SpeculativeRequestExecutionPolicy> getReadSpeculativeRequestPolicy();
     boolean isClientClosed();
 }
@@ -31,16 +31,28 @@ class ClientInternalConf {
     final Feature disableEnsembleChangeFeature;
     final boolean delayEnsembleChange;
 
-    final Optional<SpeculativeRequestExecutionPolicy> readSpeculativeRequestPolicy;
     final Optional<SpeculativeRequestExecutionPolicy> readLACSpeculativeRequestPolicy;
 
+    final int firstSpeculativeReadTimeout;
+    final int maxSpeculativeReadTimeout;
+    final float speculativeReadTimeoutBackoffMultiplier;
+    final boolean adaptiveSpeculativeRead;
+    final float adaptiveSpeculativeReadLatencyDeviations;
+    final int speculativeReadMaxRate;
+
     final int explicitLacInterval;
     final long waitForWriteSetMs;
     final long addEntryQuorumTimeoutNanos;
+    final int addEntryTooManyRequestsMaxRetries;
+    final long addEntryTooManyRequestsRetryDelayMs;
     final boolean enableParallelRecoveryRead;
     final boolean enableReorderReadSequence;
+    final boolean enableLatencyAwareReadReorder;
     final boolean enableStickyReads;
     final int recoveryReadBatchSize;
+    final boolean enableRecoveryPipelinedRead;
+    final int recoveryPipelinedReadEntriesPerBatch;
+    final long recoveryPipelinedReadMaxInFlightBytes;
     final int throttleValue;
     final int bookieFailureHistoryExpirationMSec;
     final int maxAllowedEnsembleChanges;
@@ -49,6 +61,7 @@ class ClientInternalConf {
     final boolean useV2WireProtocol;
     final boolean enforceMinNumFaultDomainsForWrite;
     final boolean batchReadEnabled;
+    final int streamReadCredits;
     final int nettyMaxFrameSizeBytes;
 
     static ClientInternalConf defaultValues() {
@@ -68,13 +81,20 @@ class ClientInternalConf {
                                FeatureProvider featureProvider) {
         this.explicitLacInterval = conf.getExplictLacInterval();
         this.enableReorderReadSequence = conf.isReorderReadSequenceEnabled();
+        this.enableLatencyAwareReadReorder = conf.isLatencyAwareReadReorderEnabled();
         this.enableParallelRecoveryRead = conf.getEnableParallelRecoveryRead();
         this.recoveryReadBatchSize = conf.getRecoveryReadBatchSize();
+        this.enableRecoveryPipelinedRead = conf.isRecoveryPipelinedReadEnabled();
+        this.recoveryPipelinedReadEntriesPerBatch = conf.getRecoveryPipelinedReadEntriesPerBatch();
+        this.recoveryPipelinedReadMaxInFlightBytes = conf.getRecoveryPipelinedReadMaxInFlightBytes();
         this.waitForWriteSetMs = conf.getWaitTimeoutOnBackpressureMillis();
         this.addEntryQuorumTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getAddEntryQuorumTimeout());
+        this.addEntryTooManyRequestsMaxRetries = conf.getAddEntryTooManyRequestsMaxRetries();
+        this.addEntryTooManyRequestsRetryDelayMs = conf.getAddEntryTooManyRequestsRetryDelayMs();
         this.throttleValue = conf.getThrottleValue();
         this.bookieFailureHistoryExpirationMSec = conf.getBookieFailureHistoryExpirationMSec();
         this.batchReadEnabled = conf.isBatchReadEnabled();
+        this.streamReadCredits = conf.getStreamReadCredits();
         this.nettyMaxFrameSizeBytes = conf.getNettyMaxFrameSizeBytes();
         this.disableEnsembleChangeFeature = featureProvider.getFeature(conf.getDisableEnsembleChangeFeatureName());
         this.delayEnsembleChange = conf.getDelayEnsembleChange();
@@ -85,15 +105,13 @@ class ClientInternalConf {
         this.enableStickyReads = conf.isStickyReadsEnabled();
         this.enforceMinNumFaultDomainsForWrite = conf.getEnforceMinNumFaultDomainsForWrite();
 
-        if (conf.getFirstSpeculativeReadTimeout() > 0) {
-            this.readSpeculativeRequestPolicy =
-                    Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
-                                        conf.getFirstSpeculativeReadTimeout(),
-                                        conf.getMaxSpeculativeReadTimeout(),
-                                        conf.getSpeculativeReadTimeoutBackoffMultiplier()));
-        } else {
-            this.readSpeculativeRequestPolicy = Optional.<SpeculativeRequestExecutionPolicy>empty();
-        }
+        this.firstSpeculativeReadTimeout = conf.getFirstSpeculativeReadTimeout();
+        this.maxSpeculativeReadTimeout = conf.getMaxSpeculativeReadTimeout();
+        this.speculativeReadTimeoutBackoffMultiplier = conf.getSpeculativeReadTimeoutBackoffMultiplier();
+        this.adaptiveSpeculativeRead = firstSpeculativeReadTimeout > 0 && conf.isAdaptiveSpeculativeReadEnabled();
+        this.adaptiveSpeculativeReadLatencyDeviations = conf.getAdaptiveSpeculativeReadLatencyDeviations();
+        this.speculativeReadMaxRate = conf.getSpeculativeReadMaxRate();
+
         if (conf.getFirstSpeculativeReadLACTimeout() > 0) {
             this.readLACSpeculativeRequestPolicy =
                     Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
@@ -104,4 +122,41 @@ class ClientInternalConf {
             this.readLACSpeculativeRequestPolicy = Optional.<SpeculativeRequestExecutionPolicy>empty();
         }
     }
+
+    /**
+     * Create the tracker of the read latency of the bookies, shared by the reads of a client.
+     *
+     * @return the tracker, or null if neither adaptive speculative reads nor latency aware read reordering
+     *         are enabled
+     */
+    BookieReadLatencyTracker newBookieReadLatencyTracker() {
+        if (adaptiveSpeculativeRead || enableLatencyAwareReadReorder) {
+            return new BookieReadLatencyTracker(adaptiveSpeculativeReadLatencyDeviations);
+        }
+        return null;
+    }
+
+    /**
+     * Create the speculative read policy of a client.
+     *
+     * @param latencyTracker the read latency tracker of the client, used by adaptive speculative reads
+     */
+    Optional<SpeculativeRequestExecutionPolicy> newReadSpeculativeRequestPolicy(
+            BookieReadLatencyTracker latencyTracker) {
+        if (adaptiveSpeculativeRead) {
+            return Optional.of(new AdaptiveSpeculativeRequestExecutionPolicy(
+                    latencyTracker,
+                    firstSpeculativeReadTimeout,
+                    maxSpeculativeReadTimeout,
+                    speculativeReadTimeoutBackoffMultiplier,
+                    speculativeReadMaxRate));
+        } else if (firstSpeculativeReadTimeout > 0) {
+            return Optional.of(new DefaultSpeculativeRequestExecutionPolicy(
+                    firstSpeculativeReadTimeout,
+                    maxSpeculativeReadTimeout,
+                    speculativeReadTimeoutBackoffMultiplier));
+        } else {
+            return Optional.empty();
+        }
+    }
 }
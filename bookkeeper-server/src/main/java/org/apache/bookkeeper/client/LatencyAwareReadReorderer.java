@@ -0,0 +1,91 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+
+/**
+ * Picks the first replica of a read sequence with the power of two choices.
+ *
+ * <p>Two random replicas are compared by their expected wait, the number of requests pending on
+ * the bookie times its recent read latency, and the cheapest one is moved to the front of the
+ * sequence. When one of them has no latency history, they are only compared by their pending
+ * requests, so that a bookie is neither favored nor penalized for being unknown. Comparing two
+ * random replicas rather than all of them avoids sending the reads of all the clients to the same
+ * bookie until its counters catch up.
+ */
+final class LatencyAwareReadReorderer {
+
+    private LatencyAwareReadReorderer() {}
+
+    /**
+     * Move the preferred replica to the front of the read sequence.
+     *
+     * @param ensemble ensemble of the entry
+     * @param bookiesHealthInfo pending requests, latency and failures of the bookies
+     * @param writeSet read sequence, as indexes into the ensemble
+     * @return the reordered read sequence
+     */
+    static DistributionSchedule.WriteSet reorderReadSequence(List<BookieId> ensemble,
+                                                             BookiesHealthInfo bookiesHealthInfo,
+                                                             DistributionSchedule.WriteSet writeSet) {
+        int size = writeSet.size();
+        if (size < 2) {
+            return writeSet;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        BookieId firstBookie = ensemble.get(writeSet.get(first));
+        BookieId secondBookie = ensemble.get(writeSet.get(second));
+        boolean compareLatency = bookiesHealthInfo.getBookieReadLatencyNanos(firstBookie) > 0
+                && bookiesHealthInfo.getBookieReadLatencyNanos(secondBookie) > 0;
+        double firstCost = expectedWait(firstBookie, bookiesHealthInfo, compareLatency);
+        double secondCost = expectedWait(secondBookie, bookiesHealthInfo, compareLatency);
+        int best = secondCost < firstCost ? second : first;
+        if (best != 0 && Math.min(firstCost, secondCost) < Double.MAX_VALUE) {
+            writeSet.moveAndShift(best, 0);
+        }
+        return writeSet;
+    }
+
+    private static double expectedWait(BookieId bookie, BookiesHealthInfo bookiesHealthInfo,
+                                       boolean compareLatency) {
+        if (bookiesHealthInfo.getBookieFailureHistory(bookie) >= 0) {
+            return Double.MAX_VALUE;
+        }
+        long pending = bookiesHealthInfo.getBookiePendingRequests(bookie);
+        if ((pending & BookieClient.PENDINGREQ_NOTWRITABLE_MASK) != 0) {
+            // The channel is not writable, the request would wait for it to drain first
+            return Double.MAX_VALUE / 2;
+        }
+        if (!compareLatency) {
+            return pending;
+        }
+        return (double) (pending + 1) * bookiesHealthInfo.getBookieReadLatencyNanos(bookie);
+    }
+}
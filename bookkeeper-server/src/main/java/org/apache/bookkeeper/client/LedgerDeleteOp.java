@@ -76,6 +76,7 @@ class LedgerDeleteOp {
     public void initiate() {
         // Asynchronously delete the ledger from meta manager
         // When this completes, it will invoke the callback method below.
+        bk.getClientCtx().getLedgerMetadataCache().invalidate(ledgerId);
         bk.getLedgerManager().removeLedgerMetadata(ledgerId, Version.ANY)
             .whenCompleteAsync((ignore, exception) -> {
                     if (exception != null) {
@@ -52,6 +52,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.AsyncCallback.CloseCallback;
@@ -241,6 +242,12 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+                BookieReadLatencyTracker latencyTracker = clientCtx.getBookieReadLatencyTracker();
+                return latencyTracker == null ? -1L : latencyTracker.getExpectedLatencyNanos(bookieSocketAddress);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -952,6 +959,41 @@ public class LedgerHandle implements WriteHandle {
         return ledgerMetadata.getEnsembleSize() != ledgerMetadata.getWriteQuorumSize();
     }
 
+    /**
+     * Read a sequence of entries, streamed from the bookies with credit based flow control
+     * when {@link org.apache.bookkeeper.conf.ClientConfiguration#setStreamReadCredits(int)} is set.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @param consumer
+     *          consumer of the entries, invoked once per entry
+     */
+    @Override
+    public CompletableFuture<Void> readStreamAsync(long firstEntry, long lastEntry,
+                                                   Consumer<org.apache.bookkeeper.client.api.LedgerEntry> consumer) {
+        if (firstEntry < 0 || firstEntry > lastEntry || lastEntry > lastAddConfirmed || notSupportStreamRead()) {
+            // Parameters are validated, and errors reported, by the regular reads
+            return WriteHandle.super.readStreamAsync(firstEntry, lastEntry, consumer);
+        }
+        if (clientCtx.isClientClosed()) {
+            return FutureUtils.exception(BKException.create(ClientClosedException));
+        }
+        StreamReadOp op = new StreamReadOp(this, clientCtx, firstEntry, lastEntry, consumer,
+                nextEntry -> WriteHandle.super.readStreamAsync(nextEntry, lastEntry, consumer));
+        op.initiate();
+        return op.future();
+    }
+
+    private boolean notSupportStreamRead() {
+        if (clientCtx.getConf().streamReadCredits <= 0 || clientCtx.getConf().useV2WireProtocol) {
+            return true;
+        }
+        LedgerMetadata ledgerMetadata = getLedgerMetadata();
+        return ledgerMetadata.getEnsembleSize() != ledgerMetadata.getWriteQuorumSize();
+    }
+
     private CompletableFuture<LedgerEntries> batchReadEntriesInternalAsync(long startEntry, int maxCount, long maxSize,
             boolean isRecoveryRead) {
         int nettyMaxFrameSizeBytes = clientCtx.getConf().nettyMaxFrameSizeBytes;
@@ -1205,6 +1247,23 @@ public class LedgerHandle implements WriteHandle {
         return callback;
     }
 
+    /**
+     * Append an entry, with the digest of the entry already computed by the caller.
+     *
+     * @param data
+     *         the entry to be written
+     *         do not reuse the buffer, bk-client will release it appropriately
+     * @param dataDigest
+     *         the digest of the readable bytes of data
+     * @return an handle to the result, in case of success it will return the id of the newly appended entry
+     * @see #asyncAddEntry(ByteBuf, int, AddCallback, Object)
+     */
+    public CompletableFuture<Long> appendAsync(ByteBuf data, int dataDigest) {
+        SyncAddCallback callback = new SyncAddCallback();
+        asyncAddEntry(data, dataDigest, callback, null);
+        return callback;
+    }
+
     /**
      * Add entry synchronously to an open ledger. This can be used only with
      * {@link LedgerHandleAdv} returned through ledgers created with {@link
@@ -1338,6 +1397,31 @@ public class LedgerHandle implements WriteHandle {
         doAsyncAddEntry(op);
     }
 
+    /**
+     * Add entry asynchronously to an open ledger, with the digest of the entry already computed by the caller.
+     *
+     * <p>When the digest type of the ledger accepts it (CRC32C), the digest of the entry is combined with the
+     * digest of the entry metadata, rather than computed again over the entry. Otherwise the digest is ignored
+     * and the entry is added as with {@link #asyncAddEntry(ByteBuf, AddCallback, Object)}.
+     *
+     * @param data
+     *          the entry to be written
+     *          do not reuse the buffer, bk-client will release it appropriately
+     * @param dataDigest
+     *          the digest of the readable bytes of data, such as the crc32c checksum computed by
+     *          {@link com.scurrilous.circe.checksum.Crc32cIntChecksum}
+     * @param cb
+     *          object implementing callbackinterface
+     * @param ctx
+     *          some control object
+     * @see org.apache.bookkeeper.proto.checksum.DigestManager#acceptsPrecomputedDataDigest()
+     */
+    public void asyncAddEntry(ByteBuf data, int dataDigest, final AddCallback cb, final Object ctx) {
+        PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx)
+                .withPayloadDigest(dataDigest);
+        doAsyncAddEntry(op);
+    }
+
     /**
      * Add entry asynchronously to an open ledger, using an offset and range.
      * This can be used only with {@link LedgerHandleAdv} returned through
@@ -1494,6 +1578,12 @@ public class LedgerHandle implements WriteHandle {
         doAsyncAddEntry(op);
     }
 
+    void asyncRecoveryAddEntry(final ByteBuf data, final AddCallback cb, final Object ctx) {
+        PendingAddOp op = PendingAddOp.create(this, clientCtx, getCurrentEnsemble(), data, writeFlags, cb, ctx)
+                .enableRecoveryAdd();
+        doAsyncAddEntry(op);
+    }
+
     private boolean isWriteSetWritable(DistributionSchedule.WriteSet writeSet,
                                        int allowedNonWritableCount) {
         if (allowedNonWritableCount < 0) {
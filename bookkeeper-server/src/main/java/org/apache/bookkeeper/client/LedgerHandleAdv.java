@@ -293,6 +293,14 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         cb.addCompleteWithLatency(BKException.Code.IllegalOpException, this, LedgerHandle.INVALID_ENTRY_ID, 0, ctx);
     }
 
+    /**
+     * LedgerHandleAdv will not allow addEntry without providing an entryId.
+     */
+    @Override
+    public void asyncAddEntry(ByteBuf data, int dataDigest, AddCallback cb, Object ctx) {
+        cb.addCompleteWithLatency(BKException.Code.IllegalOpException, this, LedgerHandle.INVALID_ENTRY_ID, 0, ctx);
+    }
+
     /**
      * LedgerHandleAdv will not allow addEntry without providing an entryId.
      */
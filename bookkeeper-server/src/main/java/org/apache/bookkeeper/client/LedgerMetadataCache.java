@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the metadata of closed ledgers, shared by the ledgers opened by a client.
+ *
+ * <p>The metadata of a closed ledger only changes when its ensembles are replaced by
+ * re-replication, or when the ledger is deleted. The cache watches the metadata of the ledgers it
+ * holds, and updates or drops it on change. The entries also expire after a time to live, which
+ * bounds their staleness if a change is not notified. A time to live of 0 disables the expiry, the
+ * entries are then only dropped on change or when the cache is full.
+ *
+ * <p>The metadata of ledgers that are not closed is always read from the metadata store, as it is
+ * used to recover them.
+ */
+public class LedgerMetadataCache implements LedgerMetadataListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LedgerMetadataCache.class);
+
+    private final LedgerManager ledgerManager;
+    // null if the cache is disabled
+    private final Cache<Long, Versioned<LedgerMetadata>> cache;
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    LedgerMetadataCache(LedgerManager ledgerManager, long maxSize, long ttlSeconds,
+                        BookKeeperClientStats clientStats) {
+        this.ledgerManager = ledgerManager;
+        if (maxSize > 0) {
+            checkArgument(ttlSeconds >= 0, "The ledger metadata cache ttl must not be negative : %s", ttlSeconds);
+            CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder().maximumSize(maxSize);
+            if (ttlSeconds > 0) {
+                cacheBuilder.expireAfterWrite(ttlSeconds, TimeUnit.SECONDS);
+            }
+            this.cache = cacheBuilder
+                    .removalListener(this::onRemoval)
+                    .build();
+        } else {
+            this.cache = null;
+        }
+        this.hitsCounter = clientStats.getLedgerMetadataCacheHitsCounter();
+        this.missesCounter = clientStats.getLedgerMetadataCacheMissesCounter();
+    }
+
+    /**
+     * Read the metadata of a ledger, from the cache if the ledger is closed and its metadata
+     * was read before.
+     *
+     * @param ledgerId ledger id
+     * @return a future completed with the metadata of the ledger
+     */
+    public CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId) {
+        if (cache == null) {
+            return ledgerManager.readLedgerMetadata(ledgerId);
+        }
+        Versioned<LedgerMetadata> metadata = cache.getIfPresent(ledgerId);
+        if (metadata != null) {
+            hitsCounter.inc();
+            return CompletableFuture.completedFuture(metadata);
+        }
+        missesCounter.inc();
+        return ledgerManager.readLedgerMetadata(ledgerId).thenApply(readMetadata -> {
+            if (readMetadata.getValue().isClosed()
+                    && cache.asMap().putIfAbsent(ledgerId, readMetadata) == null) {
+                ledgerManager.registerLedgerMetadataListener(ledgerId, this);
+            }
+            return readMetadata;
+        });
+    }
+
+    /**
+     * Drop the cached metadata of a ledger.
+     *
+     * @param ledgerId ledger id
+     */
+    public void invalidate(long ledgerId) {
+        if (cache != null) {
+            cache.invalidate(ledgerId);
+        }
+    }
+
+    /**
+     * Drop the cached metadata of all the ledgers.
+     */
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void onChanged(long ledgerId, Versioned<LedgerMetadata> newMetadata) {
+        if (null == newMetadata || !newMetadata.getValue().isClosed()) {
+            // The ledger was deleted, or its metadata is no longer cacheable
+            invalidate(ledgerId);
+            return;
+        }
+        cache.asMap().computeIfPresent(ledgerId, (id, currentMetadata) -> {
+            if (Version.Occurred.BEFORE == currentMetadata.getVersion().compare(newMetadata.getVersion())) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Updated cached metadata of ledger {} : {}", ledgerId, newMetadata);
+                }
+                return newMetadata;
+            }
+            return currentMetadata;
+        });
+    }
+
+    private void onRemoval(RemovalNotification<Long, Versioned<LedgerMetadata>> notification) {
+        if (notification.getCause() != RemovalCause.REPLACED) {
+            ledgerManager.unregisterLedgerMetadataListener(notification.getKey(), this);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.util.HashSet;
 import java.util.List;
+import java.util.NavigableMap;
 import java.util.Set;
 import java.util.SortedMap;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
@@ -65,7 +66,9 @@ public class LedgerMetadataUtils {
 
     static List<BookieId> getLastEnsembleValue(LedgerMetadata metadata) {
         checkArgument(!metadata.getAllEnsembles().isEmpty(), "Metadata should never be created with no ensembles");
-        return metadata.getAllEnsembles().lastEntry().getValue();
+        // lastEntry() would allocate an entry on each call, and this is on the add path
+        NavigableMap<Long, ? extends List<BookieId>> ensembles = metadata.getAllEnsembles();
+        return ensembles.get(ensembles.lastKey());
     }
 
     static Long getLastEnsembleKey(LedgerMetadata metadata) {
@@ -110,7 +110,7 @@ class LedgerOpenOp {
         /**
          * Asynchronously read the ledger metadata node.
          */
-        bk.getLedgerManager().readLedgerMetadata(ledgerId)
+        bk.getClientCtx().getLedgerMetadataCache().readLedgerMetadata(ledgerId)
                 .thenAcceptAsync(this::openWithMetadata, bk.getScheduler().chooseThread(ledgerId))
                 .exceptionally(exception -> {
                     openComplete(BKException.getExceptionCode(exception), null);
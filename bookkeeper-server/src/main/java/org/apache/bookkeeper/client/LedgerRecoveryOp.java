@@ -18,9 +18,12 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayDeque;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryListener;
 import org.apache.bookkeeper.proto.checksum.DigestManager.RecoveryData;
@@ -32,11 +35,17 @@ import org.slf4j.LoggerFactory;
  * with entry-id of -1 (BookieProtocol.LAST_ADD_CONFIRMED) to all bookies. Then
  * starting from the last confirmed entry (from hints in the ledger entries),
  * it reads forward until it is not able to find a particular entry.
+ *
+ * <p>When pipelined recovery reads are enabled, the entries are read with batched reads sent ahead
+ * of the entries being added back, within a budget of bytes in flight.
  */
 class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
 
     static final Logger LOG = LoggerFactory.getLogger(LedgerRecoveryOp.class);
 
+    // Returned by addBackEntries when the recovery failed, so no more entries are read
+    private static final int ADD_BACK_FAILED = -1;
+
     final LedgerHandle lh;
     final ClientContext clientCtx;
     final CompletableFuture<LedgerHandle> promise;
@@ -49,10 +58,18 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
     // keep a copy of metadata for recovery.
     LedgerMetadata metadataForRecovery;
 
-    // EntryListener Hook
+    // EntryListener Hook, only notified of the entries read one at a time
     @VisibleForTesting
     ReadEntryListener entryListener = null;
 
+    // The following fields are used by pipelined recovery reads, and only accessed from the
+    // ordered thread of the ledger
+    private boolean pipelined;
+    private final ArrayDeque<RecoveryBatch> pendingBatches = new ArrayDeque<>();
+    private long nextEntryToBatchRead;
+    private long batchReadMaxSize;
+    private long inFlightBytes;
+
     class RecoveryReadOp extends ListenerBasedPendingReadOp {
 
         RecoveryReadOp(LedgerHandle lh,
@@ -69,6 +86,42 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
 
     }
 
+    class RecoveryBatchedReadOp extends BatchedReadOp {
+
+        RecoveryBatchedReadOp(LedgerHandle lh, ClientContext clientCtx,
+                              long startEntryId, int maxCount, long maxSize) {
+            super(lh, clientCtx, startEntryId, maxCount, maxSize, true);
+        }
+
+        @Override
+        protected LedgerMetadata getLedgerMetadata() {
+            return metadataForRecovery;
+        }
+    }
+
+    /**
+     * A batched read of a pipelined recovery.
+     */
+    private static class RecoveryBatch {
+        final long firstEntryId;
+        final int maxCount;
+        boolean done = false;
+        LedgerEntries entries;
+        int rc = BKException.Code.OK;
+
+        RecoveryBatch(long firstEntryId, int maxCount) {
+            this.firstEntryId = firstEntryId;
+            this.maxCount = maxCount;
+        }
+
+        void release() {
+            if (entries != null) {
+                entries.close();
+                entries = null;
+            }
+        }
+    }
+
     public LedgerRecoveryOp(LedgerHandle lh, ClientContext clientCtx) {
         readCount = new AtomicLong(0);
         writeCount = new AtomicLong(0);
@@ -128,7 +181,11 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
                             // keep a copy of ledger metadata before proceeding
                             // ledger recovery
                             metadataForRecovery = lh.getLedgerMetadata();
-                            doRecoveryRead();
+                            if (canPipelineRecoveryRead()) {
+                                startPipelinedRecoveryRead();
+                            } else {
+                                doRecoveryRead();
+                            }
                         } else if (rc == BKException.Code.TimeoutException) {
                             submitCallback(rc);
                         } else if (rc == BKException.Code.UnauthorizedAccessException) {
@@ -173,6 +230,133 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
         }
     }
 
+    private boolean canPipelineRecoveryRead() {
+        ClientInternalConf conf = clientCtx.getConf();
+        return conf.enableRecoveryPipelinedRead
+                && conf.useV2WireProtocol
+                && conf.batchReadEnabled
+                && metadataForRecovery.getEnsembleSize() == metadataForRecovery.getWriteQuorumSize();
+    }
+
+    private void startPipelinedRecoveryRead() {
+        clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId, () -> {
+            pipelined = true;
+            nextEntryToBatchRead = endEntryToRead + 1;
+            batchReadMaxSize = Math.min(clientCtx.getConf().nettyMaxFrameSizeBytes,
+                    clientCtx.getConf().recoveryPipelinedReadMaxInFlightBytes);
+            sendBatchReads();
+        });
+    }
+
+    /**
+     * Send batched reads ahead of the entries being added back, as long as they fit in the budget
+     * of bytes in flight.
+     */
+    private void sendBatchReads() {
+        int entriesPerBatch = Math.max(1, clientCtx.getConf().recoveryPipelinedReadEntriesPerBatch);
+        while (pipelined && !readDone && !promise.isDone()
+                && (pendingBatches.isEmpty()
+                    || inFlightBytes + batchReadMaxSize <= clientCtx.getConf().recoveryPipelinedReadMaxInFlightBytes)) {
+            RecoveryBatch batch = new RecoveryBatch(nextEntryToBatchRead, entriesPerBatch);
+            nextEntryToBatchRead += entriesPerBatch;
+            pendingBatches.addLast(batch);
+            sendBatchRead(batch);
+        }
+    }
+
+    private void sendBatchRead(RecoveryBatch batch) {
+        inFlightBytes += batchReadMaxSize;
+        RecoveryBatchedReadOp op = new RecoveryBatchedReadOp(lh, clientCtx, batch.firstEntryId, batch.maxCount,
+                batchReadMaxSize);
+        op.future().whenCompleteAsync((entries, cause) -> {
+            batch.done = true;
+            batch.entries = entries;
+            if (cause != null) {
+                batch.rc = BKException.getExceptionCode(cause);
+            }
+            onBatchReadComplete();
+        }, clientCtx.getMainWorkerPool().chooseThread(lh.ledgerId));
+        op.run();
+    }
+
+    /**
+     * Add back the entries of the completed batched reads, in the order of the entries.
+     */
+    private void onBatchReadComplete() {
+        while (!pendingBatches.isEmpty() && pendingBatches.peekFirst().done) {
+            RecoveryBatch batch = pendingBatches.pollFirst();
+            inFlightBytes -= batchReadMaxSize;
+            if (!pipelined || readDone || promise.isDone()) {
+                batch.release();
+                continue;
+            }
+
+            if (batch.rc == BKException.Code.NoSuchEntryException
+                    || batch.rc == BKException.Code.NoSuchLedgerExistsException) {
+                // no entry found. stop recovery procedure but wait until recovery add finished.
+                readDone = true;
+                if (readCount.get() == writeCount.get()) {
+                    submitCallback(BKException.Code.OK);
+                }
+            } else if (batch.rc == BKException.Code.BookieHandleNotAvailableException) {
+                // The bookies may not support batched reads, read the remaining entries one at a time
+                LOG.info("Batched recovery read of entry {} of ledger {} failed, reading the remaining entries"
+                        + " one at a time", batch.firstEntryId, lh.getId());
+                pipelined = false;
+                endEntryToRead = batch.firstEntryId - 1;
+                doRecoveryRead();
+            } else if (batch.rc != BKException.Code.OK) {
+                LOG.error("Failure {} while batch reading entries from {}, ledger: {} while recovering ledger",
+                        BKException.getMessage(batch.rc), batch.firstEntryId, lh.getId());
+                submitCallback(batch.rc);
+            } else {
+                int numEntries = addBackEntries(batch);
+                if (numEntries != ADD_BACK_FAILED && numEntries > 0 && numEntries < batch.maxCount) {
+                    // The batch was cut by its maximum size, read its remaining entries first
+                    RecoveryBatch remaining = new RecoveryBatch(batch.firstEntryId + numEntries,
+                            batch.maxCount - numEntries);
+                    pendingBatches.addFirst(remaining);
+                    sendBatchRead(remaining);
+                }
+            }
+            batch.release();
+        }
+        sendBatchReads();
+    }
+
+    /**
+     * Add back the entries of a completed batched read.
+     *
+     * @return the number of entries added back, or {@link #ADD_BACK_FAILED} if an entry could not be
+     *         added back and the recovery failed
+     */
+    private int addBackEntries(RecoveryBatch batch) {
+        int numEntries = 0;
+        for (org.apache.bookkeeper.client.api.LedgerEntry entry : batch.entries) {
+            readCount.incrementAndGet();
+            ByteBuf data = entry.getEntryBuffer();
+            int dataLength = data.readableBytes();
+            synchronized (lh) {
+                /*
+                 * We subtract the length of the data itself, since it will be added again
+                 * when processing the call to add it.
+                 */
+                lh.length = entry.getLength() - (long) dataLength;
+                // check whether entry id is expected, so we won't overwritten any entries by mistake
+                if (entry.getEntryId() != lh.lastAddPushed + 1) {
+                    LOG.error("Unexpected to recovery add entry {} as entry {} for ledger {}.",
+                            entry.getEntryId(), (lh.lastAddPushed + 1), lh.getId());
+                    submitCallback(BKException.Code.UnexpectedConditionException);
+                    return ADD_BACK_FAILED;
+                }
+            }
+            inFlightBytes += dataLength;
+            lh.asyncRecoveryAddEntry(data.retain(), this, dataLength);
+            numEntries++;
+        }
+        return numEntries;
+    }
+
     @Override
     public void onEntryComplete(int rc, LedgerHandle lh, LedgerEntry entry, Object ctx) {
         // notify entry listener on individual entries being read during ledger recovery.
@@ -244,6 +428,12 @@ class LedgerRecoveryOp implements ReadEntryListener, AddCallback {
         long numAdd = writeCount.incrementAndGet();
         if (readDone && readCount.get() == numAdd) {
             submitCallback(rc);
+        } else if (ctx instanceof Integer) {
+            // An entry of a pipelined recovery read was added back, release its bytes
+            clientCtx.getMainWorkerPool().executeOrdered(lh.ledgerId, () -> {
+                inFlightBytes -= (Integer) ctx;
+                sendBatchReads();
+            });
         }
     }
 
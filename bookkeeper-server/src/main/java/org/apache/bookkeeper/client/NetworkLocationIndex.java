@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.bookkeeper.net.BookieNode;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.net.Node;
+import org.apache.bookkeeper.net.NodeBase;
+
+/**
+ * Immutable index of the bookies of a {@link NetworkTopology} by network location, built for a version of the
+ * topology. It holds the bookies of the whole topology and of each of its scopes, the racks and their
+ * ancestors such as the zones or the regions, as arrays to pick random bookies from in constant time.
+ */
+final class NetworkLocationIndex {
+
+    private static final BookieNode[] EMPTY = new BookieNode[0];
+
+    private final NetworkTopology topology;
+    private final long version;
+    private final BookieNode[] bookies;
+    private final Map<String, BookieNode[]> bookiesByScope;
+
+    private NetworkLocationIndex(NetworkTopology topology, long version, BookieNode[] bookies,
+                                 Map<String, BookieNode[]> bookiesByScope) {
+        this.topology = topology;
+        this.version = version;
+        this.bookies = bookies;
+        this.bookiesByScope = bookiesByScope;
+    }
+
+    /**
+     * Build the index of the current bookies of a topology.
+     *
+     * @param topology network topology
+     * @return index of the bookies of the topology
+     */
+    static NetworkLocationIndex build(NetworkTopology topology) {
+        // read the version first, so that a concurrent change makes the index stale rather than missed
+        long version = topology.getVersion();
+        List<BookieNode> allBookies = new ArrayList<>();
+        Map<String, List<BookieNode>> scopes = new HashMap<>();
+        for (Node node : topology.getLeaves(NodeBase.ROOT)) {
+            if (!(node instanceof BookieNode)) {
+                continue;
+            }
+            BookieNode bookie = (BookieNode) node;
+            allBookies.add(bookie);
+            String scope = bookie.getNetworkLocation();
+            while (!NodeBase.ROOT.equals(scope)) {
+                scopes.computeIfAbsent(scope, s -> new ArrayList<>()).add(bookie);
+                scope = scope.substring(0, scope.lastIndexOf(NodeBase.PATH_SEPARATOR));
+            }
+        }
+        Map<String, BookieNode[]> bookiesByScope = new HashMap<>(scopes.size() * 2);
+        for (Map.Entry<String, List<BookieNode>> e : scopes.entrySet()) {
+            bookiesByScope.put(e.getKey(), e.getValue().toArray(EMPTY));
+        }
+        return new NetworkLocationIndex(topology, version, allBookies.toArray(EMPTY), bookiesByScope);
+    }
+
+    /**
+     * Whether the index still reflects the bookies of a topology.
+     */
+    boolean isCurrent(NetworkTopology currentTopology) {
+        return topology == currentTopology && version == currentTopology.getVersion();
+    }
+
+    /**
+     * Returns the bookies of the whole topology.
+     */
+    BookieNode[] getBookies() {
+        return bookies;
+    }
+
+    /**
+     * Returns the bookies under a scope.
+     *
+     * @param scope normalized network location
+     * @return the bookies under the scope, or null if there is no bookie under the scope
+     */
+    BookieNode[] getBookies(String scope) {
+        if (NodeBase.ROOT.equals(scope)) {
+            return bookies;
+        }
+        return bookiesByScope.get(scope);
+    }
+
+    /**
+     * Whether a bookie is under one of the given scopes.
+     *
+     * @param bookie bookie
+     * @param scopes normalized network locations
+     */
+    static boolean isUnderAnyScope(BookieNode bookie, String[] scopes) {
+        String location = bookie.getNetworkLocation();
+        for (String scope : scopes) {
+            if (location.startsWith(scope)
+                    && (location.length() == scope.length()
+                        || location.charAt(scope.length()) == NodeBase.PATH_SEPARATOR)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -29,11 +29,13 @@ import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.api.WriteFlag;
@@ -56,6 +58,8 @@ class PendingAddOp implements WriteCallback {
     private static final Logger LOG = LoggerFactory.getLogger(PendingAddOp.class);
 
     ByteBuf payload;
+    boolean hasPayloadDigest; // the digest of the payload was computed by the caller
+    int payloadDigest;
     ReferenceCounted toSend;
     AddCallbackWithLatency cb;
     Object ctx;
@@ -70,7 +74,7 @@ class PendingAddOp implements WriteCallback {
     boolean isRecoveryAdd = false;
     volatile long requestTimeNanos;
     long qwcLatency; // Quorum Write Completion Latency after response from quorum bookies.
-    Set<BookieId> addEntrySuccessBookies;
+    Set<BookieId> addEntrySuccessBookies; // only tracked when enforcing the min number of fault domains
     long writeDelayedStartTime; // min fault domains completion latency after response from ack quorum bookies
 
     long currentLedgerLength;
@@ -80,6 +84,8 @@ class PendingAddOp implements WriteCallback {
     EnumSet<WriteFlag> writeFlags;
     boolean allowFailFast = false;
     List<BookieId> ensemble;
+    // retries of the write on each overloaded bookie of the ensemble, by bookie index
+    int[] tooManyRequestsRetries;
 
     @SuppressFBWarnings("IS2_INCONSISTENT_SYNC")
     static PendingAddOp create(LedgerHandle lh, ClientContext clientCtx,
@@ -95,6 +101,8 @@ class PendingAddOp implements WriteCallback {
         op.entryId = LedgerHandle.INVALID_ENTRY_ID;
         op.currentLedgerLength = -1;
         op.payload = payload;
+        op.hasPayloadDigest = false;
+        op.payloadDigest = 0;
         op.entryLength = payload.readableBytes();
 
         op.completed = false;
@@ -105,6 +113,11 @@ class PendingAddOp implements WriteCallback {
         op.hasRun = false;
         op.requestTimeNanos = Long.MAX_VALUE;
         op.allowFailFast = false;
+        if (op.tooManyRequestsRetries == null || op.tooManyRequestsRetries.length < ensemble.size()) {
+            op.tooManyRequestsRetries = new int[ensemble.size()];
+        } else {
+            Arrays.fill(op.tooManyRequestsRetries, 0);
+        }
         op.qwcLatency = 0;
         op.writeFlags = writeFlags;
 
@@ -127,6 +140,16 @@ class PendingAddOp implements WriteCallback {
         return this;
     }
 
+    /**
+     * Use the digest of the payload computed by the caller, when the digest type of the ledger accepts it.
+     * @see org.apache.bookkeeper.proto.checksum.DigestManager#acceptsPrecomputedDataDigest()
+     */
+    PendingAddOp withPayloadDigest(int payloadDigest) {
+        this.hasPayloadDigest = true;
+        this.payloadDigest = payloadDigest;
+        return this;
+    }
+
     PendingAddOp allowFailFastOnUnwritableChannel() {
         allowFailFast = true;
         return this;
@@ -153,6 +176,42 @@ class PendingAddOp implements WriteCallback {
         ++pendingWriteRequests;
     }
 
+    /**
+     * Send the write request to the same bookie again after a delay, without replacing the bookie.
+     *
+     * @return false if the retry could not be scheduled, the bookie is then handled as failed
+     */
+    private boolean retryWriteRequest(int bookieIndex) {
+        final List<BookieId> retryEnsemble = ensemble;
+        final long delayMs = clientCtx.getConf().addEntryTooManyRequestsRetryDelayMs
+                << tooManyRequestsRetries[bookieIndex]++;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Bookie {} is overloaded, retrying write of entry ({}, {}) in {} ms",
+                    retryEnsemble.get(bookieIndex), lh.ledgerId, entryId, delayMs);
+        }
+        // keep the op from being recycled until the retry is sent
+        ++pendingWriteRequests;
+        try {
+            clientCtx.getScheduler().schedule(() -> {
+                synchronized (PendingAddOp.this) {
+                    --pendingWriteRequests;
+                    // after an ensemble change, the write was already sent to the new bookie
+                    if (callbackTriggered || toSend == null || ensemble != retryEnsemble) {
+                        maybeRecycle();
+                        return;
+                    }
+                    sendWriteRequest(ensemble, bookieIndex);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            --pendingWriteRequests;
+            LOG.warn("Could not schedule the retry of entry ({}, {}) on overloaded bookie {}",
+                    lh.ledgerId, entryId, retryEnsemble.get(bookieIndex));
+            return false;
+        }
+    }
+
     boolean maybeTimeout() {
         if (MathUtils.elapsedNanos(requestTimeNanos) >= clientCtx.getConf().addEntryQuorumTimeoutNanos) {
             timeoutQuorumWait();
@@ -166,7 +225,8 @@ class PendingAddOp implements WriteCallback {
             return;
         }
 
-        if (addEntrySuccessBookies.size() >= lh.getLedgerMetadata().getAckQuorumSize()) {
+        if (clientCtx.getConf().enforceMinNumFaultDomainsForWrite
+                && addEntrySuccessBookies.size() >= lh.getLedgerMetadata().getAckQuorumSize()) {
             // If ackQuorum number of bookies have acknowledged the write but still not complete, indicates
             // failures due to not having been written to enough fault domains. Increment corresponding
             // counter.
@@ -221,6 +281,8 @@ class PendingAddOp implements WriteCallback {
             // unset completed if this results in loss of ack quorum
             completed = false;
         }
+        // the bookie at this index was replaced, the new one has its own retries
+        tooManyRequestsRetries[bookieIndex] = 0;
 
         sendWriteRequest(ensemble, bookieIndex);
     }
@@ -243,9 +305,15 @@ class PendingAddOp implements WriteCallback {
         checkNotNull(lh.macManager);
 
         int flags = isRecoveryAdd ? FLAG_RECOVERY_ADD | FLAG_HIGH_PRIORITY : FLAG_NONE;
-        this.toSend = lh.macManager.computeDigestAndPackageForSending(
-                entryId, lh.lastAddConfirmed, currentLedgerLength,
-                payload, lh.ledgerKey, flags);
+        if (hasPayloadDigest && lh.macManager.acceptsPrecomputedDataDigest()) {
+            this.toSend = lh.macManager.computeDigestAndPackageForSending(
+                    entryId, lh.lastAddConfirmed, currentLedgerLength,
+                    payload, payloadDigest, lh.ledgerKey, flags);
+        } else {
+            this.toSend = lh.macManager.computeDigestAndPackageForSending(
+                    entryId, lh.lastAddConfirmed, currentLedgerLength,
+                    payload, lh.ledgerKey, flags);
+        }
         // ownership of RefCounted ByteBuf was passed to computeDigestAndPackageForSending
         payload = null;
 
@@ -276,7 +344,10 @@ class PendingAddOp implements WriteCallback {
         boolean ackQuorum = false;
         if (BKException.Code.OK == rc) {
             ackQuorum = ackSet.completeBookieAndCheck(bookieIndex);
-            addEntrySuccessBookies.add(ensemble.get(bookieIndex));
+            // only needed to check the fault domains of the acks, and allocates on each add
+            if (clientCtx.getConf().enforceMinNumFaultDomainsForWrite) {
+                addEntrySuccessBookies.add(ensemble.get(bookieIndex));
+            }
         }
 
         if (completed) {
@@ -333,6 +404,13 @@ class PendingAddOp implements WriteCallback {
                     ledgerId, entryId, addr);
             lh.handleUnrecoverableErrorDuringAdd(rc);
             return;
+        case BKException.Code.TooManyRequestsException:
+            // the bookie rejected the write because it is overloaded, not because it failed
+            if (tooManyRequestsRetries[bookieIndex] < clientCtx.getConf().addEntryTooManyRequestsMaxRetries
+                    && retryWriteRequest(bookieIndex)) {
+                return;
+            }
+            // fall through
         default:
             if (clientCtx.getConf().delayEnsembleChange) {
                 if (ackSet.failBookieAndCheck(bookieIndex, addr)
@@ -481,6 +559,8 @@ class PendingAddOp implements WriteCallback {
             ReferenceCountUtil.release(payload);
             payload = null;
         }
+        hasPayloadDigest = false;
+        payloadDigest = 0;
         cb = null;
         ctx = null;
         ensemble = null;
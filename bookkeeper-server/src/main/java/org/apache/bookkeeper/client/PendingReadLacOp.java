@@ -20,6 +20,7 @@ package org.apache.bookkeeper.client;
 import io.netty.buffer.ByteBuf;
 import java.util.List;
 import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
@@ -53,6 +54,7 @@ class PendingReadLacOp implements ReadLacCallback {
     final DistributionSchedule.QuorumCoverageSet coverageSet;
     long maxLac = LedgerHandle.INVALID_ENTRY_ID;
     final List<BookieId> currentEnsemble;
+    long requestTimeNanos;
 
     /*
      * Wrapper to get Lac from the request
@@ -71,11 +73,19 @@ class PendingReadLacOp implements ReadLacCallback {
     }
 
     public void initiate() {
+        requestTimeNanos = MathUtils.nowInNano();
         for (int i = 0; i < currentEnsemble.size(); i++) {
             bookieClient.readLac(currentEnsemble.get(i), lh.ledgerId, this, i);
         }
     }
 
+    private void recordReadLatency(int bookieIndex) {
+        BookieReadLatencyTracker latencyTracker = lh.clientCtx.getBookieReadLatencyTracker();
+        if (latencyTracker != null) {
+            latencyTracker.recordLatency(currentEnsemble.get(bookieIndex), MathUtils.elapsedNanos(requestTimeNanos));
+        }
+    }
+
     @Override
     public void readLacComplete(int rc, long ledgerId, final ByteBuf lacBuffer, final ByteBuf lastEntryBuffer,
             Object ctx) {
@@ -92,6 +102,7 @@ class PendingReadLacOp implements ReadLacCallback {
         }
 
         if (rc == BKException.Code.OK) {
+            recordReadLatency(bookieIndex);
             try {
                 // Each bookie may have two store LAC in two places.
                 // One is in-memory copy in FileInfo and other is
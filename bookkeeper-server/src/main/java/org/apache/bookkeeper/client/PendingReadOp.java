@@ -85,8 +85,8 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
         // read the entries.
         for (LedgerEntryRequest entry : seq) {
             entry.read();
-            if (!parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
-                speculativeTask = clientCtx.getConf().readSpeculativeRequestPolicy.get()
+            if (!parallelRead && clientCtx.getReadSpeculativeRequestPolicy().isPresent()) {
+                speculativeTask = clientCtx.getReadSpeculativeRequestPolicy().get()
                     .initiateSpeculativeRequest(clientCtx.getScheduler(), entry);
             }
         }
@@ -104,6 +104,10 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
 
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
+        if (clientCtx.getBookieReadLatencyTracker() != null) {
+            clientCtx.getBookieReadLatencyTracker().recordLatency(rctx.to,
+                    MathUtils.elapsedNanos(rctx.sentTimeNanos));
+        }
 
         buffer.retain();
         // if entry has completed don't handle twice
@@ -342,6 +346,14 @@ class PendingReadOp extends ReadOpBase implements ReadEntryCallback  {
             sendNextRead();
         }
 
+        @Override
+        public synchronized BookieId getPendingBookie() {
+            if (nextReplicaIndexToReadFrom == 0) {
+                return null;
+            }
+            return ensemble.get(writeSet.get(nextReplicaIndexToReadFrom - 1));
+        }
+
         synchronized BookieId sendNextRead() {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
                 // we are done, the read has failed from all replicas, just fail the
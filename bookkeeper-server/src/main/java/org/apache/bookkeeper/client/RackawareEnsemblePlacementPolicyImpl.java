@@ -42,6 +42,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -96,6 +97,10 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
 
     static final int RACKNAME_DISTANCE_FROM_LEAVES = 1;
 
+    // number of random bookies tried per selection from the network location index, before falling back
+    // to a scan of all the candidates
+    static final int MAX_RANDOM_PROBES_PER_BOOKIE = 16;
+
     // masks for reordering
     static final int LOCAL_MASK       = 0x01 << 24;
     static final int LOCAL_FAIL_MASK  = 0x02 << 24;
@@ -136,6 +141,10 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
 
     private String defaultRack = NetworkTopology.DEFAULT_RACK;
 
+    // index of the bookies of the topology by network location, rebuilt after the topology changed
+    private volatile NetworkLocationIndex networkLocationIndex;
+    private final Object networkLocationIndexLock = new Object();
+
     RackawareEnsemblePlacementPolicyImpl() {
         this(false);
     }
@@ -634,6 +643,15 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                                                    boolean fallbackToRandom)
             throws BKNotEnoughBookiesException {
 
+        if (!this.isWeighted) {
+            // the selected bookie is not added to the excluded bookies, as by the scan below
+            List<BookieNode> selected = new ArrayList<>(1);
+            if (probeRandomFromCluster(1, excludeRacks, new HashSet<>(excludeBookies), predicate, ensemble,
+                    selected) == 1) {
+                return selected.get(0);
+            }
+        }
+
         List<BookieNode> knownNodes = new ArrayList<>(knownBookies.values());
         Set<Node> fullExclusionBookiesList = new HashSet<Node>(excludeBookies);
         for (BookieNode knownNode : knownNodes) {
@@ -701,6 +719,12 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
      */
     protected BookieNode selectRandomFromRack(String netPath, Set<Node> excludeBookies, Predicate<BookieNode> predicate,
             Ensemble<BookieNode> ensemble) throws BKNotEnoughBookiesException {
+        if (!this.isWeighted) {
+            BookieNode bn = probeRandomFromRack(netPath, excludeBookies, predicate, ensemble);
+            if (null != bn) {
+                return bn;
+            }
+        }
         WeightedRandomSelection<BookieNode> wRSelection = null;
         List<Node> leaves = new ArrayList<Node>(topology.getLeaves(netPath));
         if (!this.isWeighted) {
@@ -750,6 +774,128 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         throw new BKNotEnoughBookiesException();
     }
 
+    /**
+     * Get the index of the bookies of the topology by network location, rebuilding it if the topology changed
+     * since it was built.
+     *
+     * @return the index, or null if the topology does not track its changes.
+     */
+    protected NetworkLocationIndex getNetworkLocationIndex() {
+        NetworkTopology currentTopology = topology;
+        if (currentTopology.getVersion() < 0) {
+            return null;
+        }
+        NetworkLocationIndex index = networkLocationIndex;
+        if (null == index || !index.isCurrent(currentTopology)) {
+            synchronized (networkLocationIndexLock) {
+                index = networkLocationIndex;
+                if (null == index || !index.isCurrent(currentTopology)) {
+                    index = NetworkLocationIndex.build(currentTopology);
+                    networkLocationIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Try to choose a random node under a given network path, by probing random bookies of the network
+     * location index rather than walking the topology. It may fail to find a node when most of the candidates
+     * are excluded, so the caller has to fall back to a scan of all the candidates.
+     *
+     * @return chosen bookie, or null if none was found.
+     */
+    private BookieNode probeRandomFromRack(String netPath, Set<Node> excludeBookies,
+                                           Predicate<BookieNode> predicate, Ensemble<BookieNode> ensemble) {
+        NetworkLocationIndex index = getNetworkLocationIndex();
+        if (null == index) {
+            return null;
+        }
+        BookieNode[] candidates;
+        String[] excludeScopes = null;
+        if (netPath.startsWith(NetworkTopologyImpl.INVERSE)) {
+            excludeScopes = netPath.substring(1).split(NetworkTopologyImpl.NODE_SEPARATOR);
+            for (int i = 0; i < excludeScopes.length; i++) {
+                excludeScopes[i] = NodeBase.normalize(excludeScopes[i]);
+                if (null == index.getBookies(excludeScopes[i])) {
+                    // not a scope of the index, e.g. the path of a single node
+                    return null;
+                }
+            }
+            candidates = index.getBookies();
+        } else {
+            candidates = index.getBookies(NodeBase.normalize(netPath));
+            if (null == candidates) {
+                return null;
+            }
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int numProbes = Math.min(candidates.length, MAX_RANDOM_PROBES_PER_BOOKIE);
+        for (int i = 0; i < numProbes; i++) {
+            BookieNode bn = candidates[random.nextInt(candidates.length)];
+            if ((null != excludeScopes && NetworkLocationIndex.isUnderAnyScope(bn, excludeScopes))
+                    || excludeBookies.contains(bn)
+                    || !predicate.apply(bn, ensemble)) {
+                continue;
+            }
+            // got a good candidate
+            if (ensemble.addNode(bn)) {
+                // add the candidate to exclude set
+                excludeBookies.add(bn);
+            }
+            return bn;
+        }
+        return null;
+    }
+
+    /**
+     * Try to choose random known bookies from the whole cluster, by probing random bookies of the network
+     * location index. It may select fewer bookies than asked when most of the candidates are excluded, so the
+     * caller has to select the remaining bookies from a scan of all the candidates.
+     *
+     * @param numBookies
+     *          number of bookies to choose
+     * @param excludeRacks
+     *          racks to exclude, or null
+     * @param excludeBookies
+     *          bookies to exclude, the chosen bookies are added to it
+     * @param selected
+     *          list the chosen bookies are added to
+     * @return the number of bookies chosen.
+     */
+    private int probeRandomFromCluster(int numBookies,
+                                       Set<String> excludeRacks,
+                                       Set<Node> excludeBookies,
+                                       Predicate<BookieNode> predicate,
+                                       Ensemble<BookieNode> ensemble,
+                                       List<BookieNode> selected) {
+        NetworkLocationIndex index = getNetworkLocationIndex();
+        if (null == index) {
+            return 0;
+        }
+        BookieNode[] candidates = index.getBookies();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int numProbes = Math.min(candidates.length, MAX_RANDOM_PROBES_PER_BOOKIE) * numBookies;
+        int numSelected = 0;
+        for (int i = 0; i < numProbes && numSelected < numBookies; i++) {
+            BookieNode bn = candidates[random.nextInt(candidates.length)];
+            // the topology may still hold bookies which left the cluster, see StabilizeNetworkTopology
+            if (knownBookies.get(bn.getAddr()) != bn
+                    || (null != excludeRacks && excludeRacks.contains(bn.getNetworkLocation()))
+                    || excludeBookies.contains(bn)
+                    || (enforceDurability && !predicate.apply(bn, ensemble))) {
+                continue;
+            }
+            if (ensemble.addNode(bn)) {
+                excludeBookies.add(bn);
+                selected.add(bn);
+                ++numSelected;
+            }
+        }
+        return numSelected;
+    }
+
     /**
      * Choose a random node from whole cluster.
      *
@@ -776,6 +922,13 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                                                     Predicate<BookieNode> predicate,
                                                     Ensemble<BookieNode> ensemble)
         throws BKNotEnoughBookiesException {
+        List<BookieNode> newBookies = new ArrayList<BookieNode>(numBookies);
+        if (bookiesToSelectFrom == null && !isWeighted) {
+            numBookies -= probeRandomFromCluster(numBookies, null, excludeBookies, predicate, ensemble, newBookies);
+            if (numBookies == 0) {
+                return newBookies;
+            }
+        }
         WeightedRandomSelection<BookieNode> wRSelection = null;
         if (bookiesToSelectFrom == null) {
             // If the list is null, we need to select from the entire knownBookies set
@@ -807,7 +960,6 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         BookieNode bookie;
-        List<BookieNode> newBookies = new ArrayList<BookieNode>(numBookies);
         Iterator<BookieNode> it = bookiesToSelectFrom.iterator();
         Set<BookieNode> bookiesSeenSoFar = new HashSet<BookieNode>();
         while (numBookies > 0) {
@@ -91,6 +91,9 @@ class ReadLastConfirmedAndEntryOp implements BookkeeperInternalCallbacks.ReadEnt
             } else {
                 this.orderedEnsemble = writeSet.copy();
             }
+            if (clientCtx.getConf().enableLatencyAwareReadReorder) {
+                LatencyAwareReadReorderer.reorderReadSequence(ensemble, lh.getBookiesHealthInfo(), orderedEnsemble);
+            }
         }
 
         @Override
@@ -550,6 +553,18 @@ class ReadLastConfirmedAndEntryOp implements BookkeeperInternalCallbacks.ReadEnt
         cb.readLastConfirmedAndEntryComplete(rc, lastAddConfirmed, entry);
     }
 
+    private void recordReadLatency(ReadLastConfirmedAndEntryContext rCtx) {
+        BookieReadLatencyTracker latencyTracker = clientCtx.getBookieReadLatencyTracker();
+        if (latencyTracker == null) {
+            return;
+        }
+        // only record the responses the bookie answered without waiting for the lac to advance,
+        // the time spent in the long poll is not read latency.
+        if (!rCtx.getLongPollWaited().orElse(true)) {
+            latencyTracker.recordLatency(rCtx.getBookieAddress(), MathUtils.elapsedNanos(rCtx.getSentTimeNanos()));
+        }
+    }
+
     @Override
     public void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx) {
         if (LOG.isTraceEnabled()) {
@@ -573,6 +588,7 @@ class ReadLastConfirmedAndEntryOp implements BookkeeperInternalCallbacks.ReadEnt
             hasValidResponse = true;
 
             if (entryId != BookieProtocol.LAST_ADD_CONFIRMED) {
+                recordReadLatency(rCtx);
                 buffer.retain();
                 if (!requestComplete.get() && request.complete(rCtx.getBookieIndex(), bookie, buffer, entryId)) {
                     // callback immediately
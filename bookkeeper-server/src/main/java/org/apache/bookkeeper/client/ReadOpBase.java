@@ -31,6 +31,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks;
 import org.slf4j.Logger;
@@ -135,6 +136,9 @@ public abstract class ReadOpBase implements Runnable {
             } else {
                 writeSet = lh.getWriteSetForReadOperation(eId);
             }
+            if (clientCtx.getConf().enableLatencyAwareReadReorder && !clientCtx.getConf().enableStickyReads) {
+                LatencyAwareReadReorderer.reorderReadSequence(ensemble, lh.getBookiesHealthInfo(), writeSet);
+            }
         }
 
         public void close() {
@@ -272,12 +276,14 @@ public abstract class ReadOpBase implements Runnable {
         final int bookieIndex;
         final BookieId to;
         final PendingReadOp.LedgerEntryRequest entry;
+        final long sentTimeNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, PendingReadOp.LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sentTimeNanos = MathUtils.nowInNano();
         }
 
         @Override
@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client;
 
 import com.google.common.util.concurrent.ListenableFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define an executor for issuing speculative requests.
@@ -39,4 +40,14 @@ public interface SpeculativeRequestExecutor {
      * @return whether more speculative requests should be issued
      */
     ListenableFuture<Boolean> issueSpeculativeRequest();
+
+    /**
+     * Returns the bookie the last request was sent to, which latency aware policies use to decide
+     * when to issue the next speculative request.
+     *
+     * @return the bookie the request is pending on, or null if unknown
+     */
+    default BookieId getPendingBookie() {
+        return null;
+    }
 }
@@ -0,0 +1,209 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadFlowControl;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams a sequence of entries from the bookies, passing them to a consumer as they arrive.
+ *
+ * <p>Each ensemble segment of the sequence is streamed from a single bookie, so it is only used
+ * for ledgers whose bookies all store all the entries (ensemble size equal to write quorum size).
+ * The credits granted to the bookie are renewed as the consumer returns, so a slow consumer
+ * slows down the bookie instead of buffering entries. If a stream fails, the remaining entries
+ * are streamed from the next bookie, and once all the bookies failed they are read with regular
+ * read requests.
+ */
+class StreamReadOp implements StreamReadEntryCallback {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final long lastEntryId;
+    private final Consumer<LedgerEntry> consumer;
+    private final LongFunction<CompletableFuture<Void>> fallbackRead;
+    private final int credits;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private long requestTimeNanos;
+
+    // The following fields are only accessed by the callbacks, ordered by ledger
+    private long nextEntryId;
+    private long segmentLastEntryId;
+    private List<BookieId> ensemble;
+    private int failedStreams;
+    private int consumedSinceLastGrant;
+    private Object currentStream;
+
+    StreamReadOp(LedgerHandle lh, ClientContext clientCtx, long firstEntryId, long lastEntryId,
+                 Consumer<LedgerEntry> consumer, LongFunction<CompletableFuture<Void>> fallbackRead) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.nextEntryId = firstEntryId;
+        this.lastEntryId = lastEntryId;
+        this.consumer = consumer;
+        this.fallbackRead = fallbackRead;
+        this.credits = clientCtx.getConf().streamReadCredits;
+    }
+
+    CompletableFuture<Void> future() {
+        return future;
+    }
+
+    void initiate() {
+        this.requestTimeNanos = MathUtils.nowInNano();
+        startSegment();
+    }
+
+    private void startSegment() {
+        NavigableMap<Long, ? extends List<BookieId>> ensembles = lh.getLedgerMetadata().getAllEnsembles();
+        Map.Entry<Long, ? extends List<BookieId>> segment = ensembles.floorEntry(nextEntryId);
+        Long nextSegmentFirstEntryId = ensembles.higherKey(nextEntryId);
+        ensemble = segment.getValue();
+        segmentLastEntryId = nextSegmentFirstEntryId == null
+                ? lastEntryId : Math.min(lastEntryId, nextSegmentFirstEntryId - 1);
+        failedStreams = 0;
+        startStream();
+    }
+
+    private void startStream() {
+        DistributionSchedule.WriteSet writeSet = lh.getWriteSetForReadOperation(nextEntryId);
+        BookieId bookie;
+        try {
+            bookie = ensemble.get(writeSet.get(failedStreams % writeSet.size()));
+        } finally {
+            writeSet.recycle();
+        }
+        // Identifies the callbacks of the current stream, to ignore the late ones of a failed stream
+        currentStream = new Object();
+        consumedSinceLastGrant = 0;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Streaming entries {}-{} of ledger {} from bookie {}",
+                    nextEntryId, segmentLastEntryId, lh.ledgerId, bookie);
+        }
+        clientCtx.getBookieClient().streamReadEntries(bookie, lh.ledgerId, nextEntryId, segmentLastEntryId,
+                credits, this, currentStream);
+    }
+
+    @Override
+    public void readEntryComplete(long ledgerId, long entryId, ByteBuf buffer,
+                                  StreamReadFlowControl flowControl, Object ctx) {
+        if (ctx != currentStream || future.isDone()) {
+            return;
+        }
+        if (entryId != nextEntryId) {
+            flowControl.cancel();
+            streamFailed(BKException.Code.UnexpectedConditionException);
+            return;
+        }
+
+        LedgerEntryImpl entry = LedgerEntryImpl.create(lh.ledgerId, entryId);
+        buffer.retain();
+        try {
+            ByteBuf content = lh.macManager.verifyDigestAndReturnData(entryId, buffer);
+            /*
+             * The length is a long and it is the last field of the metadata of an entry.
+             * Consequently, we have to subtract 8 from METADATA_LENGTH to get the length.
+             */
+            entry.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+            entry.setEntryBuf(content);
+        } catch (BKException.BKDigestMatchException e) {
+            buffer.release();
+            entry.close();
+            clientCtx.getClientStats().getReadOpDmCounter().inc();
+            flowControl.cancel();
+            streamFailed(BKException.Code.DigestMatchException);
+            return;
+        }
+
+        nextEntryId++;
+        try {
+            consumer.accept(entry);
+        } catch (Throwable t) {
+            flowControl.cancel();
+            complete(t);
+            return;
+        }
+
+        if (++consumedSinceLastGrant >= Math.max(1, credits / 2)) {
+            flowControl.grantCredits(consumedSinceLastGrant);
+            consumedSinceLastGrant = 0;
+        }
+    }
+
+    @Override
+    public void streamComplete(int rc, long ledgerId, long streamNextEntryId, Object ctx) {
+        if (ctx != currentStream || future.isDone()) {
+            return;
+        }
+        if (rc == BKException.Code.OK && nextEntryId > segmentLastEntryId) {
+            if (nextEntryId > lastEntryId) {
+                complete(null);
+            } else {
+                startSegment();
+            }
+        } else {
+            streamFailed(rc == BKException.Code.OK ? BKException.Code.ReadException : rc);
+        }
+    }
+
+    private void streamFailed(int rc) {
+        failedStreams++;
+        if (failedStreams < ensemble.size()) {
+            LOG.warn("Stream read of ledger {} failed at entry {} : {}, retrying from another bookie",
+                    lh.ledgerId, nextEntryId, BKException.getMessage(rc));
+            startStream();
+            return;
+        }
+
+        LOG.warn("Stream read of ledger {} failed at entry {} on all bookies : {}, reading the remaining entries",
+                lh.ledgerId, nextEntryId, BKException.getMessage(rc));
+        currentStream = null;
+        fallbackRead.apply(nextEntryId).whenComplete((ignore, cause) -> complete(cause));
+    }
+
+    private void complete(Throwable cause) {
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        if (cause == null) {
+            clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.complete(null);
+        } else {
+            clientCtx.getClientStats().getReadOpLogger().registerFailedEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.completeExceptionally(cause);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.bookkeeper.client;
 import io.netty.buffer.ByteBuf;
 import java.util.List;
 import org.apache.bookkeeper.client.ReadLastConfirmedOp.LastConfirmedDataCallback;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.proto.BookieProtocol;
@@ -45,6 +46,7 @@ class TryReadLastConfirmedOp implements ReadEntryCallback {
     volatile boolean completed = false;
     RecoveryData maxRecoveredData;
     final List<BookieId> currentEnsemble;
+    long requestTimeNanos;
 
     TryReadLastConfirmedOp(LedgerHandle lh, BookieClient bookieClient,
                            List<BookieId> ensemble, LastConfirmedDataCallback cb, long lac) {
@@ -57,6 +59,7 @@ class TryReadLastConfirmedOp implements ReadEntryCallback {
     }
 
     public void initiate() {
+        requestTimeNanos = MathUtils.nowInNano();
         for (int i = 0; i < currentEnsemble.size(); i++) {
             bookieClient.readEntry(currentEnsemble.get(i),
                                    lh.ledgerId,
@@ -65,6 +68,13 @@ class TryReadLastConfirmedOp implements ReadEntryCallback {
         }
     }
 
+    private void recordReadLatency(int bookieIndex) {
+        BookieReadLatencyTracker latencyTracker = lh.clientCtx.getBookieReadLatencyTracker();
+        if (latencyTracker != null) {
+            latencyTracker.recordLatency(currentEnsemble.get(bookieIndex), MathUtils.elapsedNanos(requestTimeNanos));
+        }
+    }
+
     @Override
     public void readEntryComplete(int rc, long ledgerId, long entryId, ByteBuf buffer, Object ctx) {
         if (LOG.isTraceEnabled()) {
@@ -75,6 +85,7 @@ class TryReadLastConfirmedOp implements ReadEntryCallback {
         int bookieIndex = (Integer) ctx;
         numResponsesPending--;
         if (BKException.Code.OK == rc) {
+            recordReadLatency(bookieIndex);
             try {
                 RecoveryData recoveryData = lh.macManager.verifyDigestAndReturnLastConfirmed(buffer);
                 if (LOG.isTraceEnabled()) {
@@ -0,0 +1,119 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.BatchedRecordsImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * The records of a sequence of entries written by a {@link BatchingWriteHandle}.
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface BatchedRecords extends AutoCloseable, Iterable<BatchedRecords.Record> {
+
+    /**
+     * A record read from a ledger.
+     */
+    interface Record {
+
+        /**
+         * Returns the position of the record in the ledger.
+         *
+         * @return the position of the record
+         */
+        RecordPosition getPosition();
+
+        /**
+         * Returns the content of the record. The buffer is only valid until the containing
+         * {@link BatchedRecords} is closed, and should not be released.
+         *
+         * @return the content of the record
+         */
+        ByteBuf getData();
+
+        /**
+         * Returns the content of the record as a byte array.
+         *
+         * @return a copy of the content of the record
+         */
+        byte[] getDataAsBytes();
+    }
+
+    /**
+     * Unpack the records of the given entries. The entries are closed when the returned
+     * records are closed.
+     *
+     * @param entries entries written by a {@link BatchingWriteHandle}
+     * @return the records of the entries
+     * @throws IllegalArgumentException if one of the entries is not a batch of records
+     */
+    static BatchedRecords unpack(LedgerEntries entries) {
+        return BatchedRecordsImpl.unpack(entries);
+    }
+
+    /**
+     * Read and unpack the records of a sequence of entries asynchronously.
+     *
+     * @param handle the handle to read the entries from
+     * @param firstEntry id of the first entry of the sequence
+     * @param lastEntry id of the last entry of the sequence, inclusive
+     * @return an handle to the records of the entries
+     */
+    static CompletableFuture<BatchedRecords> readAsync(ReadHandle handle, long firstEntry, long lastEntry) {
+        return handle.readAsync(firstEntry, lastEntry).thenApply(BatchedRecords::unpack);
+    }
+
+    /**
+     * Get the number of records.
+     *
+     * @return the number of records
+     */
+    int size();
+
+    /**
+     * Get the record at a given position.
+     *
+     * @param position the position of the record
+     * @return the record, null if there is no record at this position
+     */
+    Record getRecord(RecordPosition position);
+
+    /**
+     * Get an iterator over the records, in the order they were appended.
+     *
+     * @return an iterator of the records
+     */
+    @Override
+    Iterator<Record> iterator();
+
+    /**
+     * Close to release the entries of the records.
+     */
+    @Override
+    void close();
+}
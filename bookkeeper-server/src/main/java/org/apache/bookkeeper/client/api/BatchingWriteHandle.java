@@ -0,0 +1,123 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.BatchingWriteHandleImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Write records to a ledger, packing many of them into each entry.
+ *
+ * <p>Small records are buffered and written together as a single framed entry, once the batch
+ * reaches its maximum size or number of records, or once the first record of the batch waited for
+ * the linger time. Writing one entry per batch instead of one entry per record saves the per entry
+ * costs of the client and of the bookies.
+ *
+ * <p>The records are read back with {@link BatchedRecords#readAsync(ReadHandle, long, long)}, which
+ * unpacks the entries and exposes the {@link RecordPosition} of each record.
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface BatchingWriteHandle extends Handle {
+
+    /**
+     * Create a builder of a batching handle writing to the given handle.
+     *
+     * @param handle the handle the batches are written to
+     * @return the builder
+     */
+    static BatchingWriteHandleBuilder newBuilder(WriteHandle handle) {
+        return new BatchingWriteHandleImpl.Builder(handle);
+    }
+
+    /**
+     * Add a record asynchronously to the ledger.
+     *
+     * @param record the record to be written. Its reference count will be decremented by 1 once
+     *               it is copied into the batch, do not reuse the buffer
+     * @return a completable future completed with the position of the record once its batch is
+     *         written to the ledger
+     */
+    CompletableFuture<RecordPosition> appendAsync(ByteBuf record);
+
+    /**
+     * Add a record asynchronously to the ledger.
+     *
+     * @param record array of bytes to be written
+     * @return a completable future completed with the position of the record once its batch is
+     *         written to the ledger
+     */
+    default CompletableFuture<RecordPosition> appendAsync(byte[] record) {
+        return appendAsync(Unpooled.wrappedBuffer(record));
+    }
+
+    /**
+     * Add a record synchronously to the ledger.
+     *
+     * <p>The call waits for the batch of the record to be written, so records appended
+     * synchronously from a single thread are only batched with the records of other threads.
+     *
+     * @param record the record to be written
+     * @return the position of the record
+     */
+    default RecordPosition append(ByteBuf record) throws BKException, InterruptedException {
+        return FutureUtils.<RecordPosition, BKException>result(appendAsync(record), BKException.HANDLER);
+    }
+
+    /**
+     * Write the records buffered so far without waiting for the batch to fill up.
+     *
+     * @return a completable future completed once all the records appended before the call are
+     *         written to the ledger
+     */
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * Write the records buffered so far and wait for them to be written.
+     */
+    default void flush() throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(flushAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Get the number of records buffered and not written yet.
+     *
+     * @return the number of buffered records
+     */
+    int getPendingRecords();
+
+    /**
+     * Flush the buffered records, then close the underlying write handle.
+     *
+     * <p>Records appended after the handle is closed fail.
+     *
+     * @return an handle to access the result of the operation
+     */
+    @Override
+    CompletableFuture<Void> closeAsync();
+}
@@ -0,0 +1,87 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBufAllocator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Builder of {@link BatchingWriteHandle}.
+ *
+ * @since 4.18
+ */
+@Public
+@Unstable
+public interface BatchingWriteHandleBuilder {
+
+    /**
+     * Set the maximum size of a batch, in bytes. A batch is written as soon as it reaches it, and a
+     * record larger than it is written alone in its entry. Default is 128KB.
+     *
+     * @param maxBatchSize the maximum size of a batch
+     * @return the builder itself
+     */
+    BatchingWriteHandleBuilder withMaxBatchSize(int maxBatchSize);
+
+    /**
+     * Set the maximum number of records of a batch. Default is 1000.
+     *
+     * @param maxBatchRecords the maximum number of records of a batch
+     * @return the builder itself
+     */
+    BatchingWriteHandleBuilder withMaxBatchRecords(int maxBatchRecords);
+
+    /**
+     * Set the time a batch waits for more records before being written. With a linger time of 0,
+     * the default, each record is written right away in its own batch.
+     *
+     * @param lingerTime the linger time
+     * @param unit the unit of the linger time
+     * @return the builder itself
+     */
+    BatchingWriteHandleBuilder withLingerTime(long lingerTime, TimeUnit unit);
+
+    /**
+     * Set the scheduler writing the batches after the linger time. Required if a linger time is set.
+     *
+     * @param scheduler the scheduler
+     * @return the builder itself
+     */
+    BatchingWriteHandleBuilder withScheduler(ScheduledExecutorService scheduler);
+
+    /**
+     * Set the allocator of the batch buffers. Default is {@link ByteBufAllocator#DEFAULT}.
+     *
+     * @param allocator the allocator
+     * @return the builder itself
+     */
+    BatchingWriteHandleBuilder withAllocator(ByteBufAllocator allocator);
+
+    /**
+     * Create the batching handle.
+     *
+     * @return the batching handle
+     */
+    BatchingWriteHandle build();
+}
@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Default implementation of {@link ReadHandle#readStreamAsync(long, long, Consumer)}, reading the range in chunks
+ * of regular reads. The read of a chunk is only issued once the previous chunk was passed to the consumer.
+ */
+final class ChunkedStreamRead {
+
+    static final int CHUNK_SIZE = 100;
+
+    private final ReadHandle handle;
+    private final long lastEntry;
+    private final Consumer<LedgerEntry> consumer;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    private ChunkedStreamRead(ReadHandle handle, long lastEntry, Consumer<LedgerEntry> consumer) {
+        this.handle = handle;
+        this.lastEntry = lastEntry;
+        this.consumer = consumer;
+    }
+
+    static CompletableFuture<Void> read(ReadHandle handle, long firstEntry, long lastEntry,
+                                        Consumer<LedgerEntry> consumer) {
+        ChunkedStreamRead streamRead = new ChunkedStreamRead(handle, lastEntry, consumer);
+        streamRead.readChunk(firstEntry);
+        return streamRead.future;
+    }
+
+    private void readChunk(long chunkFirst) {
+        // compared as a difference, as chunkFirst + CHUNK_SIZE may overflow
+        final long chunkLast = lastEntry - chunkFirst < CHUNK_SIZE ? lastEntry : chunkFirst + CHUNK_SIZE - 1;
+        handle.readAsync(chunkFirst, chunkLast).whenComplete((entries, cause) -> {
+            if (null != cause) {
+                future.completeExceptionally(cause);
+                return;
+            }
+            try (LedgerEntries ledgerEntries = entries) {
+                for (LedgerEntry entry : ledgerEntries) {
+                    consumer.accept(entry.duplicate());
+                }
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+                return;
+            }
+            if (chunkLast == lastEntry) {
+                future.complete(null);
+            } else {
+                readChunk(chunkLast + 1);
+            }
+        });
+    }
+}
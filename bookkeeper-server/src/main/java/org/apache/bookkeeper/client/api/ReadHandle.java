@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client.api;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
@@ -91,6 +92,45 @@ public interface ReadHandle extends Handle {
         return FutureUtils.result(batchReadAsync(startEntry, maxCount, maxSize), BKException.HANDLER);
     }
 
+    /**
+     * Read a sequence of entries asynchronously, passing each entry to the consumer as soon as
+     * it is read, in order.
+     *
+     * <p>Unlike {@link #readAsync(long, long)} the entries are not accumulated in memory before
+     * being returned, and the client only asks for more entries as the consumer keeps up with
+     * them. The consumer owns the entries it receives and is responsible for closing them.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @param consumer
+     *          consumer of the entries, invoked once per entry
+     * @return an handle completed once all the entries were passed to the consumer
+     */
+    default CompletableFuture<Void> readStreamAsync(long firstEntry, long lastEntry,
+                                                    Consumer<LedgerEntry> consumer) {
+        return ChunkedStreamRead.read(this, firstEntry, lastEntry, consumer);
+    }
+
+    /**
+     * Read a sequence of entries synchronously, passing each entry to the consumer as soon as
+     * it is read, in order.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @param consumer
+     *          consumer of the entries, invoked once per entry
+     * @see #readStreamAsync(long, long, Consumer)
+     */
+    default void readStream(long firstEntry, long lastEntry, Consumer<LedgerEntry> consumer)
+            throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(readStreamAsync(firstEntry, lastEntry, consumer),
+                                              BKException.HANDLER);
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -0,0 +1,140 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static org.apache.bookkeeper.client.impl.BatchingWriteHandleImpl.BATCH_HEADER_SIZE;
+import static org.apache.bookkeeper.client.impl.BatchingWriteHandleImpl.BATCH_MAGIC;
+import static org.apache.bookkeeper.client.impl.BatchingWriteHandleImpl.RECORD_HEADER_SIZE;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.bookkeeper.client.api.BatchedRecords;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.RecordPosition;
+
+/**
+ * Batched records implementation. The records are slices of the entries they were unpacked from.
+ */
+public class BatchedRecordsImpl implements BatchedRecords {
+
+    private static final Comparator<Record> POSITION_COMPARATOR = Comparator.comparing(Record::getPosition);
+
+    private final LedgerEntries entries;
+    private final List<Record> records;
+
+    private BatchedRecordsImpl(LedgerEntries entries, List<Record> records) {
+        this.entries = entries;
+        this.records = records;
+    }
+
+    /**
+     * Unpack the records of entries written by a {@link BatchingWriteHandleImpl}.
+     *
+     * @param entries the entries, closed if they cannot be unpacked
+     * @return the records of the entries
+     */
+    public static BatchedRecordsImpl unpack(LedgerEntries entries) {
+        List<Record> records = new ArrayList<>();
+        try {
+            for (LedgerEntry entry : entries) {
+                unpackEntry(entry, records);
+            }
+        } catch (RuntimeException e) {
+            entries.close();
+            throw e;
+        }
+        return new BatchedRecordsImpl(entries, records);
+    }
+
+    private static void unpackEntry(LedgerEntry entry, List<Record> records) {
+        ByteBuf buffer = entry.getEntryBuffer();
+        int offset = buffer.readerIndex();
+        int end = buffer.writerIndex();
+        if (end - offset < BATCH_HEADER_SIZE || buffer.getInt(offset) != BATCH_MAGIC) {
+            throw new IllegalArgumentException("Entry " + entry.getEntryId() + " of ledger "
+                    + entry.getLedgerId() + " is not a batch of records");
+        }
+        int numRecords = buffer.getInt(offset + 4);
+        offset += BATCH_HEADER_SIZE;
+        for (int i = 0; i < numRecords; i++) {
+            int length = end - offset >= RECORD_HEADER_SIZE ? buffer.getInt(offset) : -1;
+            offset += RECORD_HEADER_SIZE;
+            if (length < 0 || length > end - offset) {
+                throw new IllegalArgumentException("Batch of records in entry " + entry.getEntryId()
+                        + " of ledger " + entry.getLedgerId() + " is corrupted at record " + i);
+            }
+            records.add(new RecordImpl(new RecordPosition(entry.getEntryId(), i), buffer.slice(offset, length)));
+            offset += length;
+        }
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public Record getRecord(RecordPosition position) {
+        int index = Collections.binarySearch(records, new RecordImpl(position, null), POSITION_COMPARATOR);
+        return index >= 0 ? records.get(index) : null;
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return Collections.unmodifiableList(records).iterator();
+    }
+
+    @Override
+    public void close() {
+        entries.close();
+    }
+
+    private static class RecordImpl implements Record {
+        private final RecordPosition position;
+        private final ByteBuf data;
+
+        RecordImpl(RecordPosition position, ByteBuf data) {
+            this.position = position;
+            this.data = data;
+        }
+
+        @Override
+        public RecordPosition getPosition() {
+            return position;
+        }
+
+        @Override
+        public ByteBuf getData() {
+            return data;
+        }
+
+        @Override
+        public byte[] getDataAsBytes() {
+            return ByteBufUtil.getBytes(data);
+        }
+    }
+}
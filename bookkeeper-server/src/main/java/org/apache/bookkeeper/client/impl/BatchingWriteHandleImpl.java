@@ -0,0 +1,328 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.BatchingWriteHandle;
+import org.apache.bookkeeper.client.api.BatchingWriteHandleBuilder;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Batching write handle implementation.
+ *
+ * <p>A batch is written as a single entry made of a header, the magic number and the number of
+ * records, followed by each record prefixed with its length. The batches are written in the order
+ * they are completed, so the records get positions in the order they were appended.
+ *
+ * <p>The completed batches are queued under the monitor and written to the ledger outside of it, by
+ * one thread at a time, so that appending to the ledger never blocks the threads adding records.
+ */
+public class BatchingWriteHandleImpl implements BatchingWriteHandle {
+
+    static final int BATCH_MAGIC = 0x42524331; // "BRC1"
+    static final int BATCH_HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 4;
+
+    private static final int INITIAL_BATCH_CAPACITY = 4096;
+
+    private final WriteHandle handle;
+    private final int maxBatchSize;
+    private final int maxBatchRecords;
+    private final long lingerNanos;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufAllocator allocator;
+
+    // The following fields are guarded by this
+    private ByteBuf batch;
+    private List<CompletableFuture<RecordPosition>> batchFutures = new ArrayList<>();
+    // Identifies the current batch, for the linger task of a batch already written
+    private long batchSequence = 0;
+    private ScheduledFuture<?> lingerTask;
+    private CompletableFuture<Void> lastBatchWrite = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> closeFuture;
+    // The batches completed and not yet written to the ledger, in order
+    private final Queue<CompletedBatch> completedBatches = new ArrayDeque<>();
+    // Whether a thread is writing the completed batches
+    private boolean writingBatches = false;
+
+    private BatchingWriteHandleImpl(Builder builder) {
+        this.handle = builder.handle;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.maxBatchRecords = builder.maxBatchRecords;
+        this.lingerNanos = builder.lingerNanos;
+        this.scheduler = builder.scheduler;
+        this.allocator = builder.allocator;
+    }
+
+    @Override
+    public CompletableFuture<RecordPosition> appendAsync(ByteBuf record) {
+        CompletableFuture<RecordPosition> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closeFuture != null) {
+                record.release();
+                future.completeExceptionally(BKException.create(BKException.Code.LedgerClosedException));
+                return future;
+            }
+
+            int recordSize = RECORD_HEADER_SIZE + record.readableBytes();
+            if (batch != null && batch.readableBytes() + recordSize > maxBatchSize) {
+                completeBatch();
+            }
+            if (batch == null) {
+                startBatch(recordSize);
+            }
+            batch.writeInt(record.readableBytes());
+            batch.writeBytes(record, record.readerIndex(), record.readableBytes());
+            record.release();
+            batchFutures.add(future);
+
+            // Without a linger time nothing else would write the batch, it is written right away
+            if (lingerNanos == 0 || batchFutures.size() >= maxBatchRecords || batch.readableBytes() >= maxBatchSize) {
+                completeBatch();
+            }
+        }
+        writeCompletedBatches();
+        return future;
+    }
+
+    private void startBatch(int firstRecordSize) {
+        int capacity = Math.max(BATCH_HEADER_SIZE + firstRecordSize,
+                Math.min(INITIAL_BATCH_CAPACITY, maxBatchSize));
+        batch = allocator.buffer(capacity);
+        batch.writeInt(BATCH_MAGIC);
+        // Number of records, set when the batch is written
+        batch.writeInt(0);
+        if (lingerNanos > 0) {
+            final long sequence = batchSequence;
+            lingerTask = scheduler.schedule(() -> lingerExpired(sequence), lingerNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void lingerExpired(long sequence) {
+        synchronized (this) {
+            if (sequence != batchSequence || batch == null) {
+                return;
+            }
+            completeBatch();
+        }
+        writeCompletedBatches();
+    }
+
+    /**
+     * Queue the current batch to be written, must be called with the monitor held.
+     */
+    private void completeBatch() {
+        CompletedBatch completed = new CompletedBatch(batch, batchFutures);
+        batch = null;
+        batchFutures = new ArrayList<>(completed.futures.size());
+        batchSequence++;
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+
+        completed.entry.setInt(4, completed.futures.size());
+        completedBatches.add(completed);
+        lastBatchWrite = completed.written;
+    }
+
+    /**
+     * Write the completed batches to the ledger, must be called without the monitor held.
+     *
+     * <p>Only one thread writes at a time, so that the batches get their entry ids in the order
+     * they were completed. The batches completed meanwhile are written by the same thread.
+     */
+    private void writeCompletedBatches() {
+        synchronized (this) {
+            if (writingBatches) {
+                return;
+            }
+            writingBatches = true;
+        }
+        while (true) {
+            CompletedBatch completed;
+            synchronized (this) {
+                completed = completedBatches.poll();
+                if (completed == null) {
+                    writingBatches = false;
+                    return;
+                }
+            }
+            completed.write();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Void> flushFuture;
+        synchronized (this) {
+            if (batch != null) {
+                completeBatch();
+            }
+            flushFuture = lastBatchWrite;
+        }
+        writeCompletedBatches();
+        return flushFuture;
+    }
+
+    @Override
+    public synchronized int getPendingRecords() {
+        return batchFutures.size();
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            if (closeFuture == null) {
+                if (batch != null) {
+                    completeBatch();
+                }
+                // The failures of the last batch are reported to its records
+                closeFuture = lastBatchWrite
+                        .exceptionally(cause -> null)
+                        .thenCompose(ignore -> handle.closeAsync());
+            }
+            future = closeFuture;
+        }
+        writeCompletedBatches();
+        return future;
+    }
+
+    @Override
+    public long getId() {
+        return handle.getId();
+    }
+
+    @Override
+    public LedgerMetadata getLedgerMetadata() {
+        return handle.getLedgerMetadata();
+    }
+
+    /**
+     * A batch waiting to be written to the ledger.
+     */
+    private class CompletedBatch {
+        final ByteBuf entry;
+        final List<CompletableFuture<RecordPosition>> futures;
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+
+        CompletedBatch(ByteBuf entry, List<CompletableFuture<RecordPosition>> futures) {
+            this.entry = entry;
+            this.futures = futures;
+        }
+
+        void write() {
+            CompletableFuture<Long> write;
+            try {
+                write = handle.appendAsync(entry);
+            } catch (RuntimeException e) {
+                write = FutureUtils.exception(e);
+            }
+            write.whenComplete((entryId, cause) -> {
+                for (int i = 0; i < futures.size(); i++) {
+                    if (cause == null) {
+                        futures.get(i).complete(new RecordPosition(entryId, i));
+                    } else {
+                        futures.get(i).completeExceptionally(cause);
+                    }
+                }
+                if (cause == null) {
+                    written.complete(null);
+                } else {
+                    written.completeExceptionally(cause);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builder of {@link BatchingWriteHandleImpl}.
+     */
+    public static class Builder implements BatchingWriteHandleBuilder {
+        private final WriteHandle handle;
+        private int maxBatchSize = 128 * 1024;
+        private int maxBatchRecords = 1000;
+        private long lingerNanos = 0;
+        private ScheduledExecutorService scheduler;
+        private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+
+        public Builder(WriteHandle handle) {
+            this.handle = checkNotNull(handle, "handle");
+        }
+
+        @Override
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        @Override
+        public Builder withMaxBatchRecords(int maxBatchRecords) {
+            this.maxBatchRecords = maxBatchRecords;
+            return this;
+        }
+
+        @Override
+        public Builder withLingerTime(long lingerTime, TimeUnit unit) {
+            this.lingerNanos = unit.toNanos(lingerTime);
+            return this;
+        }
+
+        @Override
+        public Builder withScheduler(ScheduledExecutorService scheduler) {
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        @Override
+        public Builder withAllocator(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        @Override
+        public BatchingWriteHandle build() {
+            checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+            checkArgument(maxBatchRecords > 0, "maxBatchRecords must be positive");
+            checkArgument(lingerNanos >= 0, "lingerTime must not be negative");
+            checkArgument(lingerNanos == 0 || scheduler != null, "a scheduler is required with a linger time");
+            checkNotNull(allocator, "allocator");
+            return new BatchingWriteHandleImpl(this);
+        }
+    }
+}
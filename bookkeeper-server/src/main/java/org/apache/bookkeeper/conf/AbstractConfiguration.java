@@ -184,6 +184,7 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String ALLOCATOR_POOLING_CONCURRENCY = "allocatorPoolingConcurrency";
     protected static final String ALLOCATOR_OOM_POLICY = "allocatorOutOfMemoryPolicy";
     protected static final String ALLOCATOR_LEAK_DETECTION_POLICY = "allocatorLeakDetectionPolicy";
+    protected static final String ALLOCATOR_THREAD_CACHE_IDLE_TRIM_MS = "allocatorThreadCacheIdleTrimMs";
 
     // option to limit stats logging
     public static final String LIMIT_STATS_LOGGING = "limitStatsLogging";
@@ -1175,6 +1176,29 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Return the time after which the allocator trims the thread-local cache of an idle thread.
+     *
+     * <p>Default is 0, which never trims the thread caches on idleness.
+     */
+    public long getAllocatorThreadCacheIdleTrimMs() {
+        return this.getLong(ALLOCATOR_THREAD_CACHE_IDLE_TRIM_MS, 0L);
+    }
+
+    /**
+     * Trim the thread-local cache of the allocator of a thread that did not allocate for the given time, to give back
+     * to the pool the memory cached by threads that are mostly idle. The event loop threads trim their cache from a
+     * periodic task, the other threads when they allocate again.
+     *
+     * @param idleTrimMs
+     *            the idle time in milliseconds, 0 to never trim the thread caches on idleness
+     * @return configuration object.
+     */
+    public T setAllocatorThreadCacheIdleTrimMs(long idleTrimMs) {
+        this.setProperty(ALLOCATOR_THREAD_CACHE_IDLE_TRIM_MS, idleTrimMs);
+        return getThis();
+    }
+
     /**
      * Return whether the busy-wait is enabled for BookKeeper and Netty IO threads.
      *
@@ -31,6 +31,7 @@ import org.apache.bookkeeper.client.api.BookKeeperBuilder;
 import org.apache.bookkeeper.common.util.ReflectionUtils;
 import org.apache.bookkeeper.discover.RegistrationClient;
 import org.apache.bookkeeper.discover.ZKRegistrationClient;
+import org.apache.bookkeeper.proto.ChannelSelectionPolicy;
 import org.apache.bookkeeper.replication.Auditor;
 import org.apache.commons.configuration.ConfigurationException;
 
@@ -50,6 +51,10 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     // Passwd
     protected static final String PASSWD = "passwd";
 
+    // Ledger metadata cache
+    protected static final String LEDGER_METADATA_CACHE_MAX_SIZE = "ledgerMetadataCacheMaxSize";
+    protected static final String LEDGER_METADATA_CACHE_TTL_SECONDS = "ledgerMetadataCacheTtlSeconds";
+
     // Client TLS (@deprecated since 4.7.0)
     /**
      * @deprecated Use {@link #TLS_KEYSTORE_TYPE}
@@ -97,7 +102,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String CLIENT_CONNECT_TIMEOUT_MILLIS = "clientConnectTimeoutMillis";
     protected static final String CLIENT_TCP_USER_TIMEOUT_MILLIS = "clientTcpUserTimeoutMillis";
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
+    protected static final String CHANNEL_SELECTION_POLICY = "channelSelectionPolicy";
     protected static final String USE_V2_WIRE_PROTOCOL = "useV2WireProtocol";
+    protected static final String RANGE_ADD_MAX_ENTRIES = "rangeAddMaxEntries";
     protected static final String NETTY_USE_POOLED_BUFFERS = "nettyUsePooledBuffers";
 
     // Read Parameters
@@ -107,19 +114,30 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_ENABLED = "adaptiveSpeculativeReadEnabled";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_LATENCY_DEVIATIONS =
+        "adaptiveSpeculativeReadLatencyDeviations";
+    protected static final String SPECULATIVE_READ_MAX_RATE = "speculativeReadMaxRate";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadLACTimeoutBackoffMultiplier";
     protected static final String ENABLE_PARALLEL_RECOVERY_READ = "enableParallelRecoveryRead";
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
+    protected static final String RECOVERY_PIPELINED_READ_ENABLED = "recoveryPipelinedReadEnabled";
+    protected static final String RECOVERY_PIPELINED_READ_ENTRIES_PER_BATCH = "recoveryPipelinedReadEntriesPerBatch";
+    protected static final String RECOVERY_PIPELINED_READ_MAX_IN_FLIGHT_BYTES =
+        "recoveryPipelinedReadMaxInFlightBytes";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
+    protected static final String LATENCY_AWARE_READ_REORDER_ENABLED = "latencyAwareReadReorderEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
     protected static final String RECOVERY_BATCH_READ_ENABLED = "recoveryBatchReadEnabled";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
     protected static final String MAX_ALLOWED_ENSEMBLE_CHANGES = "maxNumEnsembleChanges";
+    protected static final String ADD_ENTRY_TOO_MANY_REQUESTS_MAX_RETRIES = "addEntryTooManyRequestsMaxRetries";
+    protected static final String ADD_ENTRY_TOO_MANY_REQUESTS_RETRY_DELAY_MS = "addEntryTooManyRequestsRetryDelayMs";
     // Timeout Setting
     protected static final String ADD_ENTRY_TIMEOUT_SEC = "addEntryTimeoutSec";
     protected static final String ADD_ENTRY_QUORUM_TIMEOUT_SEC = "addEntryQuorumTimeoutSec";
@@ -143,6 +161,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     // Bookie info poll interval
     protected static final String DISK_WEIGHT_BASED_PLACEMENT_ENABLED = "diskWeightBasedPlacementEnabled";
+    protected static final String LOAD_AWARE_PLACEMENT_ENABLED = "loadAwarePlacementEnabled";
+    protected static final String LOAD_AWARE_PLACEMENT_SMOOTHING_FACTOR = "loadAwarePlacementSmoothingFactor";
     protected static final String GET_BOOKIE_INFO_INTERVAL_SECONDS = "getBookieInfoIntervalSeconds";
     protected static final String GET_BOOKIE_INFO_RETRY_INTERVAL_SECONDS = "getBookieInfoRetryIntervalSeconds";
     protected static final String BOOKIE_MAX_MULTIPLE_FOR_WEIGHTED_PLACEMENT =
@@ -206,6 +226,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     //For batch read api, it the batch read is not stable, we can fail back to single read by this config.
     protected static final String BATCH_READ_ENABLED = "batchReadEnabled";
 
+    // Number of entries a bookie can push in a stream read before the reader grants more, 0 to disable
+    protected static final String STREAM_READ_CREDITS = "streamReadCredits";
+
     /**
      * Construct a default client-side configuration.
      */
@@ -279,6 +302,57 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the maximum number of ledgers whose metadata is cached by the client.
+     *
+     * @return the maximum size of the ledger metadata cache
+     * @see #setLedgerMetadataCacheMaxSize(long)
+     */
+    public long getLedgerMetadataCacheMaxSize() {
+        return getLong(LEDGER_METADATA_CACHE_MAX_SIZE, 0);
+    }
+
+    /**
+     * Set the maximum number of ledgers whose metadata is cached by the client.
+     *
+     * <p>The metadata of closed ledgers is cached when they are opened, so that opening them again
+     * does not read it from the metadata store. The client watches the metadata of the cached
+     * ledgers, and updates or drops it when it changes or when the ledger is deleted. A value of 0,
+     * the default, disables the cache.
+     *
+     * @param maxSize the maximum size of the ledger metadata cache
+     * @return client configuration.
+     */
+    public ClientConfiguration setLedgerMetadataCacheMaxSize(long maxSize) {
+        setProperty(LEDGER_METADATA_CACHE_MAX_SIZE, maxSize);
+        return this;
+    }
+
+    /**
+     * Get the time the metadata of a ledger stays in the ledger metadata cache.
+     *
+     * @return the time to live of the ledger metadata cache entries, in seconds
+     * @see #setLedgerMetadataCacheTtlSeconds(long)
+     */
+    public long getLedgerMetadataCacheTtlSeconds() {
+        return getLong(LEDGER_METADATA_CACHE_TTL_SECONDS, 300);
+    }
+
+    /**
+     * Set the time the metadata of a ledger stays in the ledger metadata cache after it was read.
+     *
+     * <p>It bounds the staleness of the cached metadata, in case a change is not notified to the
+     * client, e.g. because its metadata store session expired. A value of 0 disables the expiry.
+     * Default is 300 seconds.
+     *
+     * @param ttlSeconds the time to live of the ledger metadata cache entries, in seconds
+     * @return client configuration.
+     */
+    public ClientConfiguration setLedgerMetadataCacheTtlSeconds(long ttlSeconds) {
+        setProperty(LEDGER_METADATA_CACHE_TTL_SECONDS, ttlSeconds);
+        return this;
+    }
+
     /**
      * Get digest type used in bookkeeper admin.
      *
@@ -581,6 +655,35 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the policy selecting the connection of a request, among the connections to a bookie.
+     *
+     * @return the channel selection policy.
+     */
+    public ChannelSelectionPolicy getChannelSelectionPolicy() {
+        return ChannelSelectionPolicy.valueOf(getString(CHANNEL_SELECTION_POLICY,
+                ChannelSelectionPolicy.LEDGER.toString()));
+    }
+
+    /**
+     * Set the policy selecting the connection of a request, among the {@link #getNumChannelsPerBookie()}
+     * connections to a bookie.
+     *
+     * <p>With the default {@link ChannelSelectionPolicy#LEDGER} policy, a connection is picked by the
+     * ledger id of the request, so a few busy ledgers can overload one connection while the others are
+     * idle. {@link ChannelSelectionPolicy#LEAST_OUTSTANDING} and
+     * {@link ChannelSelectionPolicy#POWER_OF_TWO_CHOICES} pick the connection with the fewest outstanding
+     * requests instead. With the v2 protocol, the adds of a ledger still use the connection of the ledger.
+     *
+     * @param policy
+     *          the channel selection policy.
+     * @return client configuration.
+     */
+    public ClientConfiguration setChannelSelectionPolicy(ChannelSelectionPolicy policy) {
+        setProperty(CHANNEL_SELECTION_POLICY, policy.toString());
+        return this;
+    }
+
     /**
      * Use older Bookkeeper wire protocol (no protobuf).
      *
@@ -602,6 +705,34 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of consecutive entries of a ledger that are sent to a bookie in a single
+     * range add request. A value lower than 2 disables range add requests.
+     *
+     * @return the max number of entries of a range add request
+     */
+    public int getRangeAddMaxEntries() {
+        return getInt(RANGE_ADD_MAX_ENTRIES, 1);
+    }
+
+    /**
+     * Set the max number of consecutive entries of a ledger that are sent to a bookie in a single
+     * range add request.
+     *
+     * <p>With the v3 wire protocol, the adds of a ledger that are queued on a connection at the
+     * same time are coalesced into a single request, which the bookie enqueues into its journal
+     * as one group and acknowledges with a single response. It must only be enabled when all the
+     * bookies support range add requests. It has no effect with the v2 wire protocol.
+     *
+     * @param rangeAddMaxEntries
+     *          max number of entries of a range add request, lower than 2 to disable it
+     * @return client configuration.
+     */
+    public ClientConfiguration setRangeAddMaxEntries(int rangeAddMaxEntries) {
+        setProperty(RANGE_ADD_MAX_ENTRIES, rangeAddMaxEntries);
+        return this;
+    }
+
     /**
      * Get the socket read timeout. This is the number of
      * seconds we wait without hearing a response from a bookie
@@ -1044,6 +1175,80 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the speculative read timeouts adapt to the read latency of each bookie.
+     *
+     * @return true if adaptive speculative reads are enabled. Default false.
+     */
+    public boolean isAdaptiveSpeculativeReadEnabled() {
+        return getBoolean(ADAPTIVE_SPECULATIVE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable adaptive speculative reads.
+     *
+     * <p>When enabled, the client keeps an exponentially weighted moving average of the read
+     * latency of each bookie, and of its deviation. A speculative read is sent once the bookie
+     * being read from takes longer than its expected latency, instead of after the fixed
+     * {@link #getFirstSpeculativeReadTimeout()}, which is only used for the bookies without
+     * latency history. The timeouts are still bounded by {@link #getMaxSpeculativeReadTimeout()}.
+     *
+     * @param enabled
+     *          flag to enable/disable adaptive speculative reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadEnabled(boolean enabled) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the number of latency deviations above the average latency of a bookie after which
+     * an adaptive speculative read is sent.
+     *
+     * @return the number of latency deviations. Default 4.
+     */
+    public float getAdaptiveSpeculativeReadLatencyDeviations() {
+        return getFloat(ADAPTIVE_SPECULATIVE_READ_LATENCY_DEVIATIONS, 4.0f);
+    }
+
+    /**
+     * Set the number of latency deviations above the average latency of a bookie after which
+     * an adaptive speculative read is sent. A higher value targets a higher latency percentile,
+     * and sends less speculative reads.
+     *
+     * @param deviations
+     *          number of latency deviations.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadLatencyDeviations(float deviations) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_LATENCY_DEVIATIONS, deviations);
+        return this;
+    }
+
+    /**
+     * Get the max number of adaptive speculative reads sent per second.
+     *
+     * @return the max rate of speculative reads. Default 0, unlimited.
+     */
+    public int getSpeculativeReadMaxRate() {
+        return getInt(SPECULATIVE_READ_MAX_RATE, 0);
+    }
+
+    /**
+     * Set the max number of adaptive speculative reads sent per second, so that the bookies are
+     * not overloaded by speculative reads when one of them slows down. The speculative reads
+     * above this rate are postponed to the next speculative read timeout.
+     *
+     * @param rate
+     *          max rate of speculative reads, 0 for unlimited.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadMaxRate(int rate) {
+        setProperty(SPECULATIVE_READ_MAX_RATE, rate);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1146,6 +1351,78 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If pipelined recovery reads are enabled or not.
+     *
+     * @return true if pipelined recovery reads are enabled, otherwise false.
+     * @see #setRecoveryPipelinedReadEnabled(boolean)
+     */
+    public boolean isRecoveryPipelinedReadEnabled() {
+        return getBoolean(RECOVERY_PIPELINED_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable pipelined recovery reads.
+     *
+     * <p>If this flag is enabled, ledger recovery reads the entries past the last add confirmed with
+     * batched reads, keeping several of them in flight ahead of the entries being added back, up to
+     * {@link #getRecoveryPipelinedReadMaxInFlightBytes()}. It only applies with the v2 wire protocol
+     * and {@link #isBatchReadEnabled()}, to ledgers whose ensemble size is equal to their write
+     * quorum size. Other ledgers are recovered reading {@link #getRecoveryReadBatchSize()} entries
+     * at a time.
+     *
+     * @param enabled the flag to enable/disable pipelined recovery reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setRecoveryPipelinedReadEnabled(boolean enabled) {
+        setProperty(RECOVERY_PIPELINED_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of entries of each batched read of a pipelined recovery.
+     *
+     * @return the maximum number of entries of each batched recovery read.
+     */
+    public int getRecoveryPipelinedReadEntriesPerBatch() {
+        return getInt(RECOVERY_PIPELINED_READ_ENTRIES_PER_BATCH, 100);
+    }
+
+    /**
+     * Set the maximum number of entries of each batched read of a pipelined recovery.
+     *
+     * @param entries the maximum number of entries of each batched recovery read.
+     * @return client configuration.
+     */
+    public ClientConfiguration setRecoveryPipelinedReadEntriesPerBatch(int entries) {
+        setProperty(RECOVERY_PIPELINED_READ_ENTRIES_PER_BATCH, entries);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of bytes a pipelined recovery keeps in flight.
+     *
+     * @return the maximum number of bytes in flight of a pipelined recovery.
+     */
+    public long getRecoveryPipelinedReadMaxInFlightBytes() {
+        return getLong(RECOVERY_PIPELINED_READ_MAX_IN_FLIGHT_BYTES, 32 * 1024 * 1024);
+    }
+
+    /**
+     * Set the maximum number of bytes a pipelined recovery keeps in flight.
+     *
+     * <p>It bounds both the maximum size of the batched reads in flight and the size of the entries
+     * read and not added back yet. A new batched read is only sent when it fits in the budget, and
+     * at least one is always in flight. Default is 32MB.
+     *
+     * @param maxBytes the maximum number of bytes in flight of a pipelined recovery.
+     * @return client configuration.
+     */
+    public ClientConfiguration setRecoveryPipelinedReadMaxInFlightBytes(long maxBytes) {
+        setProperty(RECOVERY_PIPELINED_READ_MAX_IN_FLIGHT_BYTES, maxBytes);
+        return this;
+    }
+
     /**
      * If reorder read sequence enabled or not.
      *
@@ -1176,6 +1453,35 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If latency aware read reordering is enabled or not.
+     *
+     * @return true if latency aware read reordering is enabled, otherwise false.
+     */
+    public boolean isLatencyAwareReadReorderEnabled() {
+        return getBoolean(LATENCY_AWARE_READ_REORDER_ENABLED, false);
+    }
+
+    /**
+     * Enable/disable latency aware reordering of the read sequence.
+     *
+     * <p>If this flag is enabled, the client picks the first replica to read from by comparing two
+     * random replicas of the read sequence (power of two choices), and preferring the one with the
+     * lowest product of pending requests and recent read latency. Replicas with recent read failures
+     * are not picked. The order of the other replicas, as decided by the placement policy when
+     * {@link #isReorderReadSequenceEnabled()}, is kept. It does not apply to regular reads when
+     * {@link #isStickyReadsEnabled()}, so that they keep reading from the same bookie.
+     *
+     * <p>It applies to regular, batched and long poll reads.
+     *
+     * @param enabled the flag to enable/disable latency aware read reordering.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setLatencyAwareReadReorderEnabled(boolean enabled) {
+        setProperty(LATENCY_AWARE_READ_REORDER_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * If read operation should be sticky to a single bookie or not.
      *
@@ -1590,6 +1896,51 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Return whether load aware placement is enabled.
+     * @return
+     */
+    public boolean getLoadAwarePlacementEnabled() {
+        return getBoolean(LOAD_AWARE_PLACEMENT_ENABLED, false);
+    }
+
+    /**
+     * Set whether or not load aware placement is enabled.
+     *
+     * <p>When enabled, the bookie info poll also reads the journal queue length, the write cache
+     * usage and the read queue length of the bookies, and the weight of a bookie is scaled down by
+     * its load relative to the other bookies. It only takes effect when disk weight based placement
+     * is enabled.
+     *
+     * @param isEnabled - boolean indicating enabled or not
+     * @return client configuration
+     */
+    public ClientConfiguration setLoadAwarePlacementEnabled(boolean isEnabled) {
+        setProperty(LOAD_AWARE_PLACEMENT_ENABLED, isEnabled);
+        return this;
+    }
+
+    /**
+     * Return the smoothing factor of the load of bookies used by load aware placement.
+     * @return smoothing factor
+     */
+    public double getLoadAwarePlacementSmoothingFactor() {
+        return getDouble(LOAD_AWARE_PLACEMENT_SMOOTHING_FACTOR, 0.3);
+    }
+
+    /**
+     * Set the smoothing factor of the load of bookies used by load aware placement, between 0 and 1.
+     * It is the weight of the latest load read from a bookie in its smoothed load, the higher it is
+     * the faster the placement reacts to load changes.
+     *
+     * @param smoothingFactor smoothing factor
+     * @return client configuration
+     */
+    public ClientConfiguration setLoadAwarePlacementSmoothingFactor(double smoothingFactor) {
+        setProperty(LOAD_AWARE_PLACEMENT_SMOOTHING_FACTOR, smoothingFactor);
+        return this;
+    }
+
     /**
      * Set the time interval between successive polls for bookie get info.
      *
@@ -1993,6 +2344,52 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max number of times a write rejected by an overloaded bookie, with a too-many-requests
+     * response, is sent again to the same bookie before the bookie is handled as failed.
+     *
+     * @return the max number of retries of a write on an overloaded bookie, default 5.
+     */
+    public int getAddEntryTooManyRequestsMaxRetries() {
+        return getInt(ADD_ENTRY_TOO_MANY_REQUESTS_MAX_RETRIES, 5);
+    }
+
+    /**
+     * Set the max number of times a write rejected by an overloaded bookie is sent again to the same
+     * bookie. The retries are counted for each bookie of the write set of an entry. 0 replaces an
+     * overloaded bookie right away, as any failed bookie.
+     *
+     * @param maxRetries
+     *          max number of retries of a write on an overloaded bookie
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryTooManyRequestsMaxRetries(int maxRetries) {
+        setProperty(ADD_ENTRY_TOO_MANY_REQUESTS_MAX_RETRIES, maxRetries);
+        return this;
+    }
+
+    /**
+     * Get the delay before the first retry of a write rejected by an overloaded bookie.
+     *
+     * @return the delay of the first retry in milliseconds, default 10.
+     */
+    public long getAddEntryTooManyRequestsRetryDelayMs() {
+        return getLong(ADD_ENTRY_TOO_MANY_REQUESTS_RETRY_DELAY_MS, 10);
+    }
+
+    /**
+     * Set the delay before the first retry of a write rejected by an overloaded bookie. The delay
+     * doubles on each following retry on the same bookie.
+     *
+     * @param delayMs
+     *          delay of the first retry in milliseconds
+     * @return client configuration.
+     */
+    public ClientConfiguration setAddEntryTooManyRequestsRetryDelayMs(long delayMs) {
+        setProperty(ADD_ENTRY_TOO_MANY_REQUESTS_RETRY_DELAY_MS, delayMs);
+        return this;
+    }
+
     /**
      * Option to use Netty Pooled ByteBufs.
      *
@@ -2107,6 +2504,32 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return getBoolean(BATCH_READ_ENABLED, true);
     }
 
+    /**
+     * Set the number of entries a bookie can push to the reader in a stream read before the
+     * reader grants more. The reader grants new credits as the entries are consumed, so this is
+     * the max number of entries buffered per stream. A value of 0 disables stream reads, in which
+     * case {@link org.apache.bookkeeper.client.api.ReadHandle#readStreamAsync} reads the entries
+     * with regular read requests. Stream reads require the v3 wire protocol and bookies that
+     * support them.
+     *
+     * @param credits number of entries in flight per stream read, 0 to disable stream reads
+     * @return client configuration.
+     */
+    public ClientConfiguration setStreamReadCredits(int credits) {
+        setProperty(STREAM_READ_CREDITS, credits);
+        return this;
+    }
+
+    /**
+     * Get the number of entries a bookie can push to the reader in a stream read before the
+     * reader grants more.
+     *
+     * @return number of entries in flight per stream read, 0 if stream reads are disabled
+     */
+    public int getStreamReadCredits() {
+        return getInt(STREAM_READ_CREDITS, 0);
+    }
+
     @Override
     protected ClientConfiguration getThis() {
         return this;
@@ -25,6 +25,7 @@ import com.google.common.collect.Lists;
 import java.io.File;
 import java.net.URL;
 import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.CpuAffinityProfile;
 import org.apache.bookkeeper.bookie.FileChannelProvider;
 import org.apache.bookkeeper.bookie.InterleavedLedgerStorage;
 import org.apache.bookkeeper.bookie.LedgerStorage;
@@ -150,12 +151,15 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
     protected static final String JOURNAL_QUEUE_SIZE = "journalQueueSize";
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
+    protected static final String DIRECT_MEMORY_BUDGET_SIZE_MB = "directMemoryBudgetSizeMb";
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
     protected static final String JOURNAL_REUSE_FILES = "journalReuseFiles";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
+    protected static final String MAX_STREAM_READS_PER_CHANNEL = "maxStreamReadsPerChannel";
+    protected static final String MAX_STREAM_READS_IN_PROGRESS_LIMIT = "maxStreamReadsInProgressLimit";
     protected static final String CLOSE_CHANNEL_ON_RESPONSE_TIMEOUT = "closeChannelOnResponseTimeout";
     protected static final String WAIT_TIMEOUT_ON_RESPONSE_BACKPRESSURE = "waitTimeoutOnResponseBackpressureMs";
 
@@ -229,6 +233,18 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String SHARD_PER_CORE_REQUEST_PROCESSING_ENABLED = "shardPerCoreRequestProcessingEnabled";
+    protected static final String READ_WORKER_VIRTUAL_THREADS_ENABLED = "readWorkerVirtualThreadsEnabled";
+    protected static final String WORKER_HOT_LEDGER_DETECTION_ENABLED = "workerHotLedgerDetectionEnabled";
+    protected static final String WORKER_HOT_LEDGER_THRESHOLD = "workerHotLedgerThreshold";
+    protected static final String WORKER_HOT_LEDGER_REMAPPING_ENABLED = "workerHotLedgerRemappingEnabled";
+
+    // Admission control parameters
+    protected static final String ADMISSION_CONTROL_ENABLED = "admissionControlEnabled";
+    protected static final String ADMISSION_CONTROL_MAX_REQUESTS_IN_PROGRESS = "admissionControlMaxRequestsInProgress";
+    protected static final String ADMISSION_CONTROL_MIN_REQUESTS_PER_CLASS = "admissionControlMinRequestsPerClass";
+    protected static final String ADMISSION_CONTROL_CLASSIFIER = "admissionControlClassifier";
+    protected static final String ADMISSION_CONTROL_CLASS_WEIGHTS = "admissionControlClassWeights";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -971,6 +987,33 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getLong(JOURNAL_MAX_MEMORY_SIZE_MB, defaultValue);
     }
 
+    /**
+     * Set the amount of direct memory shared by the journals and the ledger storage of the bookie.
+     *
+     * @param directMemoryBudgetSizeMb
+     *            the amount of direct memory shared by the journals and the ledger storage
+     * @return server configuration.
+     */
+    public ServerConfiguration setDirectMemoryBudgetSizeMb(long directMemoryBudgetSizeMb) {
+        this.setProperty(DIRECT_MEMORY_BUDGET_SIZE_MB, directMemoryBudgetSizeMb);
+        return this;
+    }
+
+    /**
+     * Get the amount of direct memory shared by the journals and the ledger storage of the bookie.
+     *
+     * <p>The journals, the ledger storage caches and the entry logger buffers reserve their memory from this budget,
+     * on top of their own limits. When it is exhausted, the read cache gives back memory before the journals get
+     * throttled.
+     *
+     * @return the amount of direct memory shared by the journals and the ledger storage, or 0 for no limit
+     */
+    public long getDirectMemoryBudgetSizeMb() {
+        // Default is the max direct memory (and convert to MB).
+        long defaultValue = io.netty.util.internal.PlatformDependent.estimateMaxDirectMemory() / 1024 / 1024;
+        return this.getLong(DIRECT_MEMORY_BUDGET_SIZE_MB, defaultValue);
+    }
+
     /**
      * Set PageCache flush interval in second.
      *
@@ -1072,6 +1115,55 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get max number of stream reads in progress on a single client connection. 0 == unlimited.
+     *
+     * <p>A stream read is in progress until all its entries are sent, including while it waits for
+     * credits from the client.
+     *
+     * @return Max number of stream reads in progress per connection.
+     */
+    public int getMaxStreamReadsPerChannel() {
+        return this.getInt(MAX_STREAM_READS_PER_CHANNEL, 16);
+    }
+
+    /**
+     * Set max number of stream reads in progress on a single client connection. 0 == unlimited.
+     *
+     * @param value
+     *          max number of stream reads in progress per connection.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxStreamReadsPerChannel(int value) {
+        this.setProperty(MAX_STREAM_READS_PER_CHANNEL, value);
+        return this;
+    }
+
+    /**
+     * Get max number of stream reads in progress on the bookie. 0 == unlimited.
+     *
+     * <p>The stream reads spend most of their time waiting for credits from the clients, they are not
+     * counted against {@link #getMaxReadsInProgressLimit()} nor the admission control, but against
+     * this limit.
+     *
+     * @return Max number of stream reads in progress.
+     */
+    public int getMaxStreamReadsInProgressLimit() {
+        return this.getInt(MAX_STREAM_READS_IN_PROGRESS_LIMIT, 0);
+    }
+
+    /**
+     * Set max number of stream reads in progress on the bookie. 0 == unlimited.
+     *
+     * @param value
+     *          max number of stream reads in progress.
+     * @return server configuration.
+     */
+    public ServerConfiguration setMaxStreamReadsInProgressLimit(int value) {
+        this.setProperty(MAX_STREAM_READS_IN_PROGRESS_LIMIT, value);
+        return this;
+    }
+
     /**
      * Configures action in case if server timed out sending response to the client.
      * true == close the channel and drop response
@@ -2033,6 +2125,275 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(READ_WORKER_THREADS_THROTTLING_ENABLED, true);
     }
 
+    /**
+     * Enable the shard-per-core request processing mode. In this mode every Netty IO thread owns a shard of
+     * the ledger id space and is pinned to an isolated CPU core: the add, write LAC and force requests of a
+     * ledger are only executed by the owning IO thread, in the order they were received, and reads are served
+     * inline when the entry is found in the ledger storage caches. The IO threads never wait: an add is
+     * rejected with a too many requests error when no add permit is available right away, the ledger is busy,
+     * or the journal or the write cache is full, and the reads of entries that are not cached are handed off
+     * to the read worker threads. There are no add worker threads in this mode, and it requires a ledger
+     * storage that can add entries without blocking, such as the DbLedgerStorage.
+     *
+     * @param enabled
+     *          whether to enable shard-per-core request processing
+     * @return server configuration
+     */
+    public ServerConfiguration setShardPerCoreRequestProcessingEnabled(boolean enabled) {
+        setProperty(SHARD_PER_CORE_REQUEST_PROCESSING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the shard-per-core request processing mode is enabled.
+     *
+     * @see #setShardPerCoreRequestProcessingEnabled(boolean)
+     * @return true if shard-per-core request processing is enabled
+     */
+    public boolean isShardPerCoreRequestProcessingEnabled() {
+        return getBoolean(SHARD_PER_CORE_REQUEST_PROCESSING_ENABLED, false);
+    }
+
+    /**
+     * Back the read and long poll worker threads with virtual threads, when the bookie runs on a JDK
+     * that supports them. Reads of the same ledger are still executed in order, but reads blocked on
+     * disk do not hold a platform thread, so the number of read and long poll worker threads can be
+     * raised well above the number of cores. On older JDKs platform threads are used.
+     *
+     * @param enabled
+     *          whether to use virtual threads for the read and long poll workers
+     * @return server configuration
+     */
+    public ServerConfiguration setReadWorkerVirtualThreadsEnabled(boolean enabled) {
+        setProperty(READ_WORKER_VIRTUAL_THREADS_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the read and long poll worker threads are backed by virtual threads.
+     *
+     * @see #setReadWorkerVirtualThreadsEnabled(boolean)
+     * @return true if virtual threads are used for the read and long poll workers
+     */
+    public boolean isReadWorkerVirtualThreadsEnabled() {
+        return getBoolean(READ_WORKER_VIRTUAL_THREADS_ENABLED, false);
+    }
+
+    /**
+     * Enable the detection of the hot ledgers of the add and read worker threads. The requests of a ledger are
+     * executed in order by one worker thread, so a hot ledger keeps its thread busy while the other threads may
+     * be idle. The hot ledgers are logged and counted in the worker thread pool stats.
+     *
+     * @param enabled
+     *          whether to detect the hot ledgers of the add and read worker threads
+     * @return server configuration
+     */
+    public ServerConfiguration setWorkerHotLedgerDetectionEnabled(boolean enabled) {
+        setProperty(WORKER_HOT_LEDGER_DETECTION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the hot ledgers of the add and read worker threads are detected.
+     *
+     * @see #setWorkerHotLedgerDetectionEnabled(boolean)
+     * @return true if the hot ledgers of the add and read worker threads are detected
+     */
+    public boolean isWorkerHotLedgerDetectionEnabled() {
+        return getBoolean(WORKER_HOT_LEDGER_DETECTION_ENABLED, false);
+    }
+
+    /**
+     * Set the share of the requests of a worker thread pool from which a ledger is hot. 0 means that a ledger
+     * is hot when it gets the share of one thread of the pool.
+     *
+     * @param threshold
+     *          share of the requests, between 0 and 1
+     * @return server configuration
+     */
+    public ServerConfiguration setWorkerHotLedgerThreshold(double threshold) {
+        setProperty(WORKER_HOT_LEDGER_THRESHOLD, threshold);
+        return this;
+    }
+
+    /**
+     * Get the share of the requests of a worker thread pool from which a ledger is hot.
+     *
+     * @see #setWorkerHotLedgerThreshold(double)
+     * @return share of the requests from which a ledger is hot, 0 for the share of one thread
+     */
+    public double getWorkerHotLedgerThreshold() {
+        return getDouble(WORKER_HOT_LEDGER_THRESHOLD, 0);
+    }
+
+    /**
+     * Move the other ledgers of the add and read worker threads executing hot ledgers to the threads without hot
+     * ledgers, which enables the hot ledger detection. A ledger only moves when none of its requests is queued
+     * or in progress, so the requests of a ledger are still executed in order.
+     *
+     * @param enabled
+     *          whether to move the ledgers away from the threads executing hot ledgers
+     * @return server configuration
+     */
+    public ServerConfiguration setWorkerHotLedgerRemappingEnabled(boolean enabled) {
+        setProperty(WORKER_HOT_LEDGER_REMAPPING_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the ledgers are moved away from the add and read worker threads executing hot ledgers.
+     *
+     * @see #setWorkerHotLedgerRemappingEnabled(boolean)
+     * @return true if the ledgers are moved away from the threads executing hot ledgers
+     */
+    public boolean isWorkerHotLedgerRemappingEnabled() {
+        return getBoolean(WORKER_HOT_LEDGER_REMAPPING_ENABLED, false);
+    }
+
+    /**
+     * Set the CPUs the threads of a role are pinned to, such as <code>2,3</code> or <code>4-7</code>. The CPUs
+     * have to be isolated by the OS, with the <code>isolcpus</code> kernel parameter. The threads of the role
+     * acquire its CPUs in turn when they start, and take precedence over the busy-wait CPU affinity.
+     *
+     * @param role
+     *          role of the threads
+     * @param cpus
+     *          list of CPU ids and ranges of CPU ids, or null to not pin the threads of the role
+     * @return server configuration
+     */
+    public ServerConfiguration setCpuAffinityCpus(CpuAffinityProfile.Role role, String cpus) {
+        setProperty(role.getConfigKey(), cpus);
+        return this;
+    }
+
+    /**
+     * Get the CPUs the threads of a role are pinned to.
+     *
+     * @see #setCpuAffinityCpus(CpuAffinityProfile.Role, String)
+     * @return list of CPU ids and ranges of CPU ids, or null if the threads of the role are not pinned
+     */
+    public String getCpuAffinityCpus(CpuAffinityProfile.Role role) {
+        // the list delimiter splits the CPU lists
+        String[] cpus = getStringArray(role.getConfigKey());
+        return cpus.length == 0 ? null : String.join(",", cpus);
+    }
+
+    /**
+     * Enable the request admission control. When enabled, the add and read requests in progress are
+     * shared among the request classes (client hosts or authenticated principals) proportionally to
+     * their weights, and requests of a class over its share are rejected right away with
+     * a too-many-requests response, which clients retry on the same bookie.
+     *
+     * @param enabled
+     *          whether to enable request admission control
+     * @return server configuration
+     */
+    public ServerConfiguration setAdmissionControlEnabled(boolean enabled) {
+        setProperty(ADMISSION_CONTROL_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get whether the request admission control is enabled.
+     *
+     * @see #setAdmissionControlEnabled(boolean)
+     * @return true if request admission control is enabled
+     */
+    public boolean isAdmissionControlEnabled() {
+        return getBoolean(ADMISSION_CONTROL_ENABLED, false);
+    }
+
+    /**
+     * Set the number of add and read requests in progress shared among all the request classes
+     * by the admission control.
+     *
+     * @param maxRequests
+     *          max number of requests in progress
+     * @return server configuration
+     */
+    public ServerConfiguration setAdmissionControlMaxRequestsInProgress(int maxRequests) {
+        setProperty(ADMISSION_CONTROL_MAX_REQUESTS_IN_PROGRESS, maxRequests);
+        return this;
+    }
+
+    /**
+     * Get the number of add and read requests in progress shared among all the request classes
+     * by the admission control.
+     *
+     * @return max number of requests in progress
+     */
+    public int getAdmissionControlMaxRequestsInProgress() {
+        return getInt(ADMISSION_CONTROL_MAX_REQUESTS_IN_PROGRESS, 10000);
+    }
+
+    /**
+     * Set the number of requests in progress that every request class is always allowed, regardless
+     * of its fair share.
+     *
+     * @param minRequests
+     *          min number of requests in progress per class
+     * @return server configuration
+     */
+    public ServerConfiguration setAdmissionControlMinRequestsPerClass(int minRequests) {
+        setProperty(ADMISSION_CONTROL_MIN_REQUESTS_PER_CLASS, minRequests);
+        return this;
+    }
+
+    /**
+     * Get the number of requests in progress that every request class is always allowed.
+     *
+     * @return min number of requests in progress per class
+     */
+    public int getAdmissionControlMinRequestsPerClass() {
+        return getInt(ADMISSION_CONTROL_MIN_REQUESTS_PER_CLASS, 16);
+    }
+
+    /**
+     * Set how requests are grouped into classes by the admission control: {@code connection} groups the
+     * requests by client host, {@code principal} by the principal authenticated by the auth provider.
+     *
+     * @param classifier
+     *          the request classifier, either {@code connection} or {@code principal}
+     * @return server configuration
+     */
+    public ServerConfiguration setAdmissionControlClassifier(String classifier) {
+        setProperty(ADMISSION_CONTROL_CLASSIFIER, classifier);
+        return this;
+    }
+
+    /**
+     * Get how requests are grouped into classes by the admission control.
+     *
+     * @see #setAdmissionControlClassifier(String)
+     * @return the request classifier
+     */
+    public String getAdmissionControlClassifier() {
+        return getString(ADMISSION_CONTROL_CLASSIFIER, "connection");
+    }
+
+    /**
+     * Set the weights of the request classes, as a list of {@code class:weight} pairs. Classes that
+     * are not listed have weight 1.
+     *
+     * @param weights
+     *          the class weights
+     * @return server configuration
+     */
+    public ServerConfiguration setAdmissionControlClassWeights(String[] weights) {
+        setProperty(ADMISSION_CONTROL_CLASS_WEIGHTS, weights);
+        return this;
+    }
+
+    /**
+     * Get the weights of the request classes.
+     *
+     * @see #setAdmissionControlClassWeights(String[])
+     * @return the class weights, as {@code class:weight} pairs
+     */
+    public String[] getAdmissionControlClassWeights() {
+        return getStringArray(ADMISSION_CONTROL_CLASS_WEIGHTS);
+    }
+
 
 
     /**
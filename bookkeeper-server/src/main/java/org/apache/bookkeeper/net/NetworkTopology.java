@@ -90,4 +90,14 @@ public interface NetworkTopology {
      * @return number of available nodes
      */
     int countNumOfAvailableNodes(String scope, Collection<Node> excludedNodes);
+
+    /**
+     * Returns the version of the network topology, which changes each time a node is added or removed.
+     * It allows to cache views of the topology, and to know when they are stale.
+     *
+     * @return version of the network topology, or -1 if the topology does not track its changes.
+     */
+    default long getVersion() {
+        return -1L;
+    }
 }
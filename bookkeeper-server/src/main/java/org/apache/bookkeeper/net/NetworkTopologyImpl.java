@@ -21,10 +21,15 @@ import com.google.common.base.Strings;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.slf4j.Logger;
@@ -373,6 +378,66 @@ public class NetworkTopologyImpl implements NetworkTopology {
         }
     } // end of InnerNode
 
+    /**
+     * Immutable view of the topology, for the lookups to run without locking.
+     */
+    private static final class Snapshot {
+        private final InnerNode root;
+        private final int numOfRacks;
+        // the nodes of the topology by path, the root being at ROOT
+        private final Map<String, Node> nodes = new HashMap<>();
+        // the children and the leaves of the inner nodes, by path
+        private final Map<String, List<Node>> children = new HashMap<>();
+        private final Map<String, List<Node>> leaves = new HashMap<>();
+        // the parent of each node of the topology
+        private final Map<Node, Node> parents = new IdentityHashMap<>();
+
+        Snapshot(InnerNode root, int numOfRacks) {
+            this.root = root;
+            this.numOfRacks = numOfRacks;
+            addInnerNode(root, NodeBase.ROOT);
+        }
+
+        private List<Node> addInnerNode(InnerNode innerNode, String path) {
+            nodes.put(path, innerNode);
+            children.put(path, Collections.unmodifiableList(new ArrayList<>(innerNode.getChildren())));
+            List<Node> innerNodeLeaves = new ArrayList<>(innerNode.getNumOfLeaves());
+            for (Node child : innerNode.getChildren()) {
+                parents.put(child, innerNode);
+                String childPath = NodeBase.getPath(child);
+                if (child instanceof InnerNode) {
+                    innerNodeLeaves.addAll(addInnerNode((InnerNode) child, childPath));
+                } else {
+                    nodes.put(childPath, child);
+                    innerNodeLeaves.add(child);
+                }
+            }
+            leaves.put(path, Collections.unmodifiableList(innerNodeLeaves));
+            return innerNodeLeaves;
+        }
+
+        int getNumOfLeaves() {
+            return leaves.get(NodeBase.ROOT).size();
+        }
+
+        /**
+         * Returns the depth of a node in the topology, or -1 if the node is not in the topology.
+         */
+        int getDepth(Node node) {
+            if (node == root) {
+                return 0;
+            }
+            int depth = 0;
+            for (Node n = node; n != root; n = parents.get(n)) {
+                if (null == n) {
+                    return -1;
+                }
+                depth++;
+            }
+            return depth;
+        }
+    }
+
     /**
      * The root cluster map.
      */
@@ -389,9 +454,18 @@ public class NetworkTopologyImpl implements NetworkTopology {
      * The lock used to manage access.
      */
     protected ReadWriteLock netlock = new ReentrantReadWriteLock();
+    /**
+     * The current snapshot of the topology, rebuilt by each change under the write lock.
+     */
+    private volatile Snapshot snapshot;
+    /**
+     * Incremented each time a node is added or removed.
+     */
+    private final AtomicLong version = new AtomicLong();
 
     public NetworkTopologyImpl() {
         clusterMap = new InnerNode(InnerNode.ROOT);
+        snapshot = new Snapshot(clusterMap, numOfRacks);
     }
 
     /**
@@ -406,7 +480,6 @@ public class NetworkTopologyImpl implements NetworkTopology {
         if (node == null) {
             return;
         }
-        String oldTopoStr = this.toString();
         if (node instanceof InnerNode) {
             throw new IllegalArgumentException("Not allow to add an inner node: " + NodeBase.getPath(node));
         }
@@ -414,7 +487,7 @@ public class NetworkTopologyImpl implements NetworkTopology {
         netlock.writeLock().lock();
         try {
             if ((depthOfAllLeaves != -1) && (depthOfAllLeaves != newDepth)) {
-                LOG.error("Error: can't add leaf node {} at depth {} to topology:\n{}", node, newDepth, oldTopoStr);
+                LOG.error("Error: can't add leaf node {} at depth {} to topology:\n{}", node, newDepth, this);
                 throw new InvalidTopologyException("Invalid network topology. "
                         + "You cannot have a rack and a non-rack node at the same level of the network topology.");
             }
@@ -426,6 +499,7 @@ public class NetworkTopologyImpl implements NetworkTopology {
             }
             if (clusterMap.add(node)) {
                 LOG.info("Adding a new node: " + NodeBase.getPath(node));
+                version.incrementAndGet();
                 if (rack == null) {
                     numOfRacks++;
                 }
@@ -439,13 +513,19 @@ public class NetworkTopologyImpl implements NetworkTopology {
                 LOG.debug("NetworkTopology became:\n" + this);
             }
         } finally {
-            netlock.writeLock().unlock();
+            try {
+                // the tree may have changed, even if the node was not added or removed
+                snapshot = new Snapshot(clusterMap, numOfRacks);
+            } finally {
+                netlock.writeLock().unlock();
+            }
         }
     }
 
     /**
      * Return a reference to the node given its string representation.
-     * Default implementation delegates to {@link #getNode(String)}.
+     * Default implementation looks up the node in the tree being changed, rather than in the snapshot
+     * read by {@link #getNode(String)}.
      *
      * <p>To be overridden in subclasses for specific NetworkTopology
      * implementations, as alternative to overriding the full {@link #add(Node)}
@@ -459,7 +539,26 @@ public class NetworkTopologyImpl implements NetworkTopology {
      * @see #getNode(String)
      */
     protected Node getNodeForNetworkLocation(Node node) {
-        return getNode(node.getNetworkLocation());
+        return getNodeFromTree(node.getNetworkLocation());
+    }
+
+    /**
+     * Look up a node in the tree, to be called with the lock held.
+     */
+    private Node getNodeFromTree(String loc) {
+        loc = NodeBase.normalize(loc);
+        if (!NodeBase.ROOT.equals(loc)) {
+            loc = loc.substring(1);
+        }
+        return clusterMap.getLoc(loc);
+    }
+
+    /**
+     * Returns the current snapshot of the topology. The lookups never lock, the snapshot is rebuilt and
+     * published by the changes.
+     */
+    private Snapshot getSnapshot() {
+        return snapshot;
     }
 
     /**
@@ -468,20 +567,11 @@ public class NetworkTopologyImpl implements NetworkTopology {
      * @return a newly allocated list with all the node's children
      */
     public List<Node> getDatanodesInRack(String loc) {
-        netlock.readLock().lock();
-        try {
-            loc = NodeBase.normalize(loc);
-            if (!NodeBase.ROOT.equals(loc)) {
-                loc = loc.substring(1);
-            }
-            InnerNode rack = (InnerNode) clusterMap.getLoc(loc);
-            if (rack == null) {
-                return null;
-            }
-            return new ArrayList<Node>(rack.getChildren());
-        } finally {
-            netlock.readLock().unlock();
+        List<Node> children = getSnapshot().children.get(NodeBase.normalize(loc));
+        if (children == null) {
+            return null;
         }
+        return new ArrayList<Node>(children);
     }
 
     /**
@@ -501,7 +591,8 @@ public class NetworkTopologyImpl implements NetworkTopology {
         netlock.writeLock().lock();
         try {
             if (clusterMap.remove(node)) {
-                InnerNode rack = (InnerNode) getNode(node.getNetworkLocation());
+                version.incrementAndGet();
+                InnerNode rack = (InnerNode) getNodeFromTree(node.getNetworkLocation());
                 if (rack == null) {
                     numOfRacks--;
                 }
@@ -513,7 +604,12 @@ public class NetworkTopologyImpl implements NetworkTopology {
                 LOG.debug("NetworkTopology became:\n" + this);
             }
         } finally {
-            netlock.writeLock().unlock();
+            try {
+                // the tree may have changed, even if the node was not added or removed
+                snapshot = new Snapshot(clusterMap, numOfRacks);
+            } finally {
+                netlock.writeLock().unlock();
+            }
         }
     }
 
@@ -528,18 +624,7 @@ public class NetworkTopologyImpl implements NetworkTopology {
         if (node == null) {
             return false;
         }
-        netlock.readLock().lock();
-        try {
-            Node parent = node.getParent();
-            for (int level = node.getLevel(); parent != null && level > 0; parent = parent.getParent(), level--) {
-                if (parent == clusterMap) {
-                    return true;
-                }
-            }
-        } finally {
-            netlock.readLock().unlock();
-        }
-        return false;
+        return getSnapshot().parents.containsKey(node);
     }
 
     /**
@@ -551,16 +636,11 @@ public class NetworkTopologyImpl implements NetworkTopology {
      */
     @Override
     public Node getNode(String loc) {
-        netlock.readLock().lock();
-        try {
-            loc = NodeBase.normalize(loc);
-            if (!NodeBase.ROOT.equals(loc)) {
-                loc = loc.substring(1);
-            }
-            return clusterMap.getLoc(loc);
-        } finally {
-            netlock.readLock().unlock();
-        }
+        return getNode(getSnapshot(), loc);
+    }
+
+    private static Node getNode(Snapshot snapshot, String loc) {
+        return snapshot.nodes.get(NodeBase.normalize(loc));
     }
 
     /**
@@ -580,22 +660,12 @@ public class NetworkTopologyImpl implements NetworkTopology {
     /** @return the total number of racks */
     @Override
     public int getNumOfRacks() {
-        netlock.readLock().lock();
-        try {
-            return numOfRacks;
-        } finally {
-            netlock.readLock().unlock();
-        }
+        return getSnapshot().numOfRacks;
     }
 
     /** @return the total number of leaf nodes */
     public int getNumOfLeaves() {
-        netlock.readLock().lock();
-        try {
-            return clusterMap.getNumOfLeaves();
-        } finally {
-            netlock.readLock().unlock();
-        }
+        return getSnapshot().getNumOfLeaves();
     }
 
     /**
@@ -613,37 +683,33 @@ public class NetworkTopologyImpl implements NetworkTopology {
         if (node1 == node2) {
             return 0;
         }
-        Node n1 = node1, n2 = node2;
-        int dis = 0;
-        netlock.readLock().lock();
-        try {
-            int level1 = node1.getLevel(), level2 = node2.getLevel();
-            while (n1 != null && level1 > level2) {
-                n1 = n1.getParent();
-                level1--;
-                dis++;
-            }
-            while (n2 != null && level2 > level1) {
-                n2 = n2.getParent();
-                level2--;
-                dis++;
-            }
-            while (n1 != null && n2 != null && n1.getParent() != n2.getParent()) {
-                n1 = n1.getParent();
-                n2 = n2.getParent();
-                dis += 2;
-            }
-        } finally {
-            netlock.readLock().unlock();
-        }
-        if (n1 == null) {
+        Snapshot current = getSnapshot();
+        int level1 = current.getDepth(node1), level2 = current.getDepth(node2);
+        if (level1 < 0) {
             LOG.warn("The cluster does not contain node: {}", NodeBase.getPath(node1));
             return Integer.MAX_VALUE;
         }
-        if (n2 == null) {
+        if (level2 < 0) {
             LOG.warn("The cluster does not contain node: {}", NodeBase.getPath(node2));
             return Integer.MAX_VALUE;
         }
+        Node n1 = node1, n2 = node2;
+        int dis = 0;
+        while (level1 > level2) {
+            n1 = current.parents.get(n1);
+            level1--;
+            dis++;
+        }
+        while (level2 > level1) {
+            n2 = current.parents.get(n2);
+            level2--;
+            dis++;
+        }
+        while (current.parents.get(n1) != current.parents.get(n2)) {
+            n1 = current.parents.get(n1);
+            n2 = current.parents.get(n2);
+            dis += 2;
+        }
         return dis + 2;
     }
 
@@ -660,12 +726,7 @@ public class NetworkTopologyImpl implements NetworkTopology {
             return false;
         }
 
-        netlock.readLock().lock();
-        try {
-            return isSameParents(node1, node2);
-        } finally {
-            netlock.readLock().unlock();
-        }
+        return isSameParents(node1, node2);
     }
 
     /**
@@ -696,7 +757,8 @@ public class NetworkTopologyImpl implements NetworkTopology {
      * @see #isOnSameRack(Node, Node)
      */
     protected boolean isSameParents(Node node1, Node node2) {
-        return node1.getParent() == node2.getParent();
+        Snapshot current = getSnapshot();
+        return current.parents.get(node1) == current.parents.get(node2);
     }
 
     private static final Random r = new Random();
@@ -710,19 +772,15 @@ public class NetworkTopologyImpl implements NetworkTopology {
      * @return the chosen node
      */
     public Node chooseRandom(String scope) {
-        netlock.readLock().lock();
-        try {
-            if (scope.startsWith(INVERSE)) {
-                return chooseRandom(NodeBase.ROOT, scope.substring(1));
-            } else {
-                return chooseRandom(scope, null);
-            }
-        } finally {
-            netlock.readLock().unlock();
+        Snapshot current = getSnapshot();
+        if (scope.startsWith(INVERSE)) {
+            return chooseRandom(current, NodeBase.ROOT, scope.substring(1));
+        } else {
+            return chooseRandom(current, scope, null);
         }
     }
 
-    private Node chooseRandom(String scope, String excludedScope) {
+    private Node chooseRandom(Snapshot current, String scope, String excludedScope) {
         if (excludedScope != null) {
             if (scope.startsWith(excludedScope)) {
                 return null;
@@ -731,24 +789,22 @@ public class NetworkTopologyImpl implements NetworkTopology {
                 excludedScope = null;
             }
         }
-        Node node = getNode(scope);
+        Node node = getNode(current, scope);
         if (!(node instanceof InnerNode)) {
             return node;
         }
-        InnerNode innerNode = (InnerNode) node;
-        int numOfDatanodes = innerNode.getNumOfLeaves();
+        List<Node> leaves = current.leaves.get(NodeBase.normalize(scope));
         if (excludedScope == null) {
-            node = null;
-        } else {
-            node = getNode(excludedScope);
-            if (!(node instanceof InnerNode)) {
-                numOfDatanodes -= 1;
-            } else {
-                numOfDatanodes -= ((InnerNode) node).getNumOfLeaves();
+            return leaves.get(r.nextInt(leaves.size()));
+        }
+        Set<Node> excludedLeaves = doGetLeaves(current, excludedScope);
+        List<Node> candidates = new ArrayList<>(leaves.size());
+        for (Node leaf : leaves) {
+            if (!excludedLeaves.contains(leaf)) {
+                candidates.add(leaf);
             }
         }
-        int leaveIndex = r.nextInt(numOfDatanodes);
-        return innerNode.getLeaf(leaveIndex, node);
+        return candidates.get(r.nextInt(candidates.size()));
     }
 
     /**
@@ -756,45 +812,43 @@ public class NetworkTopologyImpl implements NetworkTopology {
      * @param scope a path string
      * @return leaves nodes under specific scope
      */
-    private Set<Node> doGetLeaves(String scope) {
-        Node node = getNode(scope);
-        Set<Node> leafNodes = new HashSet<Node>();
+    private static Set<Node> doGetLeaves(Snapshot current, String scope) {
+        Node node = getNode(current, scope);
         if (node == null) {
-            return leafNodes;
+            return new HashSet<Node>();
         }
 
         if (!(node instanceof InnerNode)) {
+            Set<Node> leafNodes = new HashSet<Node>();
             leafNodes.add(node);
+            return leafNodes;
         } else {
-            InnerNode innerNode = (InnerNode) node;
-            for (int i = 0; i < innerNode.getNumOfLeaves(); i++) {
-                leafNodes.add(innerNode.getLeaf(i, null));
-            }
+            return new HashSet<Node>(current.leaves.get(NodeBase.normalize(scope)));
         }
-        return leafNodes;
     }
 
     @Override
     public Set<Node> getLeaves(String scope) {
-        netlock.readLock().lock();
-        try {
-            if (scope.startsWith(INVERSE)) {
-                Set<Node> allNodes = doGetLeaves(NodeBase.ROOT);
-                String[] excludeScopes = scope.substring(1).split(NODE_SEPARATOR);
-                Set<Node> excludeNodes = new HashSet<Node>();
-                Arrays.stream(excludeScopes).forEach((excludeScope) -> {
-                    excludeNodes.addAll(doGetLeaves(excludeScope));
-                });
-                allNodes.removeAll(excludeNodes);
-                return allNodes;
-            } else {
-                return doGetLeaves(scope);
-            }
-        } finally {
-            netlock.readLock().unlock();
+        Snapshot current = getSnapshot();
+        if (scope.startsWith(INVERSE)) {
+            Set<Node> allNodes = doGetLeaves(current, NodeBase.ROOT);
+            String[] excludeScopes = scope.substring(1).split(NODE_SEPARATOR);
+            Set<Node> excludeNodes = new HashSet<Node>();
+            Arrays.stream(excludeScopes).forEach((excludeScope) -> {
+                excludeNodes.addAll(doGetLeaves(current, excludeScope));
+            });
+            allNodes.removeAll(excludeNodes);
+            return allNodes;
+        } else {
+            return doGetLeaves(current, scope);
         }
     }
 
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
     @Override
     public int countNumOfAvailableNodes(String scope, Collection<Node> excludedNodes) {
         boolean isExcluded = false;
@@ -804,26 +858,22 @@ public class NetworkTopologyImpl implements NetworkTopology {
         }
         scope = NodeBase.normalize(scope);
         int count = 0; // the number of nodes in both scope & excludedNodes
-        netlock.readLock().lock();
-        try {
-            for (Node node : excludedNodes) {
-                if ((NodeBase.getPath(node) + NodeBase.PATH_SEPARATOR_STR).startsWith(scope
-                        + NodeBase.PATH_SEPARATOR_STR)) {
-                    count++;
-                }
-            }
-            Node n = getNode(scope);
-            int scopeNodeCount = 0;
-            if (n instanceof InnerNode) {
-                scopeNodeCount = ((InnerNode) n).getNumOfLeaves();
+        for (Node node : excludedNodes) {
+            if ((NodeBase.getPath(node) + NodeBase.PATH_SEPARATOR_STR).startsWith(scope
+                    + NodeBase.PATH_SEPARATOR_STR)) {
+                count++;
             }
-            if (isExcluded) {
-                return clusterMap.getNumOfLeaves() - scopeNodeCount - excludedNodes.size() + count;
-            } else {
-                return scopeNodeCount - count;
-            }
-        } finally {
-            netlock.readLock().unlock();
+        }
+        Snapshot current = getSnapshot();
+        Node n = getNode(current, scope);
+        int scopeNodeCount = 0;
+        if (n instanceof InnerNode) {
+            scopeNodeCount = current.leaves.get(scope).size();
+        }
+        if (isExcluded) {
+            return current.getNumOfLeaves() - scopeNodeCount - excludedNodes.size() + count;
+        } else {
+            return scopeNodeCount - count;
         }
     }
 
@@ -833,18 +883,19 @@ public class NetworkTopologyImpl implements NetworkTopology {
     @Override
     public String toString() {
         // print the number of racks
+        Snapshot current = getSnapshot();
         StringBuilder tree = new StringBuilder();
         tree.append("Number of racks: ");
-        tree.append(numOfRacks);
+        tree.append(current.numOfRacks);
         tree.append("\n");
         // print the number of leaves
-        int numOfLeaves = getNumOfLeaves();
+        List<Node> leaves = current.leaves.get(NodeBase.ROOT);
         tree.append("Expected number of leaves:");
-        tree.append(numOfLeaves);
+        tree.append(leaves.size());
         tree.append("\n");
         // print nodes
-        for (int i = 0; i < numOfLeaves; i++) {
-            tree.append(NodeBase.getPath(clusterMap.getLeaf(i, null)));
+        for (Node leaf : leaves) {
+            tree.append(NodeBase.getPath(leaf));
             tree.append("\n");
         }
         return tree.toString();
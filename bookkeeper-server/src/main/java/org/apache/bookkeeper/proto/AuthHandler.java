@@ -29,6 +29,7 @@ import io.netty.channel.ChannelDuplexHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.Queue;
@@ -136,6 +137,14 @@ class AuthHandler {
 
                     NettyChannelUtil.writeAndFlushWithVoidPromise(ctx.channel(), builder.build());
                 }
+            } else if (msg instanceof PayloadMessageV3) {
+                BookkeeperProtocol.Request req = (BookkeeperProtocol.Request) ((PayloadMessageV3) msg).getMessage();
+                ReferenceCountUtil.release(msg);
+                BookkeeperProtocol.Response.Builder builder = BookkeeperProtocol.Response.newBuilder()
+                    .setHeader(req.getHeader())
+                    .setStatus(BookkeeperProtocol.StatusCode.EUA);
+
+                NettyChannelUtil.writeAndFlushWithVoidPromise(ctx.channel(), builder.build());
             } else {
                 // close the channel, junk coming over it
                 ctx.channel().close();
@@ -274,6 +283,10 @@ class AuthHandler {
 
             if (authenticated) {
                 super.channelRead(ctx, msg);
+            } else if (msg instanceof PayloadMessageV3) {
+                LOG.warn("dropping received message {} from bookie {}", msg, ctx.channel());
+                // entries are not expected before the authentication completes
+                ReferenceCountUtil.release(msg);
             } else if (msg instanceof BookkeeperProtocol.Response) {
                 BookkeeperProtocol.Response resp = (BookkeeperProtocol.Response) msg;
                 if (null == resp.getHeader().getOperation()) {
@@ -366,7 +379,7 @@ class AuthHandler {
                     } else {
                         waitingForAuth.add(msg);
                     }
-                } else if (msg instanceof ByteBuf || msg instanceof ByteBufList) {
+                } else if (msg instanceof ByteBuf || msg instanceof ByteBufList || msg instanceof PayloadMessageV3) {
                     waitingForAuth.add(msg);
                 } else {
                     LOG.info("[{}] dropping write of message {}", ctx.channel(), msg);
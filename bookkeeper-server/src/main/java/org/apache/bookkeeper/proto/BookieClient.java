@@ -31,6 +31,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallba
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
@@ -222,6 +223,22 @@ public interface BookieClient {
             int maxCount, long maxSize, BatchedReadEntryCallback cb, Object ctx,
             int flags, byte[] masterKey, boolean allowFastFail);
 
+    /**
+     * Stream the entries of a ledger from bookie at address {@code address}. The bookie pushes
+     * the entries one by one, and never has more entries in flight than the credits granted by
+     * the reader.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param firstEntryId id of the first entry of the stream
+     * @param lastEntryId id of the last entry of the stream, inclusive
+     * @param credits number of entries the bookie can send before the reader grants more
+     * @param cb the callback notified of each entry and of the completion of the stream
+     * @param ctx a context object passed to the callback
+     */
+    void streamReadEntries(BookieId address, long ledgerId, long firstEntryId, long lastEntryId,
+                           int credits, StreamReadEntryCallback cb, Object ctx);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -61,6 +61,7 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.stats.NullStatsLogger;
@@ -205,7 +206,8 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                     return null;
                 }
                 PerChannelBookieClientPool newClientPool =
-                    new DefaultPerChannelBookieClientPool(conf, this, addr, numConnectionsPerBookie);
+                    new DefaultPerChannelBookieClientPool(conf, this, addr, numConnectionsPerBookie,
+                            conf.getLimitStatsLogging() ? NullStatsLogger.INSTANCE : statsLogger);
                 PerChannelBookieClientPool oldClientPool = channels.putIfAbsent(addr, newClientPool);
                 if (null == oldClientPool) {
                     clientPool = newClientPool;
@@ -323,7 +325,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                     ledgerId, null);
             return futureResult;
         }
-        client.obtain((rc, pcbc) -> {
+        client.obtainUnordered((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 try {
                     executor.executeOrdered(ledgerId, () ->
@@ -368,6 +370,18 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }
     }
 
+    private void completeStreamRead(final int rc,
+            final long ledgerId,
+            final long nextEntryId,
+            final StreamReadEntryCallback cb,
+            final Object ctx) {
+        try {
+            executor.executeOrdered(ledgerId, () -> cb.streamComplete(rc, ledgerId, nextEntryId, ctx));
+        } catch (RejectedExecutionException ree) {
+            cb.streamComplete(getRc(BKException.Code.InterruptedException), ledgerId, nextEntryId, ctx);
+        }
+    }
+
     private static class ChannelReadyForAddEntryCallback
         implements GenericCallback<PerChannelBookieClient> {
         private final Handle<ChannelReadyForAddEntryCallback> recyclerHandle;
@@ -457,7 +471,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                     ctx);
             return;
         }
-        client.obtain((rc, pcbc) -> {
+        client.obtainUnordered((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 try {
                     executor.executeOrdered(ledgerId,
@@ -495,7 +509,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
-        client.obtain((rc, pcbc) -> {
+        client.obtainUnordered((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 completeRead(rc, ledgerId, entryId, null, cb, ctx);
             } else {
@@ -515,7 +529,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
-        client.obtain((rc, pcbc) -> {
+        client.obtainUnordered((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 completeBatchRead(rc, ledgerId, startEntryId, null, cb, ctx);
             } else {
@@ -525,6 +539,25 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
         }, ledgerId);
     }
 
+    @Override
+    public void streamReadEntries(final BookieId address, final long ledgerId, final long firstEntryId,
+            final long lastEntryId, final int credits, final StreamReadEntryCallback cb, final Object ctx) {
+        final PerChannelBookieClientPool client = lookupClient(address);
+        if (client == null) {
+            completeStreamRead(getRc(BKException.Code.BookieHandleNotAvailableException),
+                    ledgerId, firstEntryId, cb, ctx);
+            return;
+        }
+
+        client.obtainUnordered((rc, pcbc) -> {
+            if (rc != BKException.Code.OK) {
+                completeStreamRead(rc, ledgerId, firstEntryId, cb, ctx);
+            } else {
+                pcbc.streamReadEntries(ledgerId, firstEntryId, lastEntryId, credits, cb, ctx);
+            }
+        }, ledgerId);
+    }
+
     @Override
     public void readEntryWaitForLACUpdate(final BookieId addr,
                                           final long ledgerId,
@@ -541,7 +574,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
             return;
         }
 
-        client.obtain((rc, pcbc) -> {
+        client.obtainUnordered((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 completeRead(rc, ledgerId, entryId, null, cb, ctx);
             } else {
@@ -560,7 +593,7 @@ public class BookieClientImpl implements BookieClient, PerChannelBookieClientFac
                     ctx);
             return;
         }
-        client.obtain((rc, pcbc) -> {
+        client.obtainUnordered((rc, pcbc) -> {
             if (rc != BKException.Code.OK) {
                 try {
                     executor.execute(() -> cb.getBookieInfoComplete(rc, new BookieInfo(), ctx));
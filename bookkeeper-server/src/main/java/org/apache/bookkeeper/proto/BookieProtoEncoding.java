@@ -20,10 +20,12 @@
  */
 package org.apache.bookkeeper.proto;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.ExtensionRegistry;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.ByteBufInputStream;
@@ -432,11 +434,42 @@ public class BookieProtoEncoding {
 
         @Override
         public Object decode(ByteBuf packet) throws Exception {
-            return BookkeeperProtocol.Request.parseFrom(new ByteBufInputStream(packet), extensionRegistry);
+            ByteBuf payload = readPayload(packet, ADD_REQUEST_PAYLOAD_TAG, ADD_REQUEST_BODY_TAG);
+            if (payload == null) {
+                return BookkeeperProtocol.Request.parseFrom(new ByteBufInputStream(packet), extensionRegistry);
+            }
+            try {
+                // the add request misses its body, which is carried by the payload
+                BookkeeperProtocol.Request request = BookkeeperProtocol.Request.parser()
+                        .parsePartialFrom(new ByteBufInputStream(packet), extensionRegistry);
+                checkInitializedExceptBody(request);
+                return new PayloadMessageV3(request, payload);
+            } catch (InvalidProtocolBufferException e) {
+                payload.release();
+                throw e;
+            }
+        }
+
+        /**
+         * The partial parse skips the checks of the required fields, check all of them but the body of
+         * the add request.
+         */
+        private static void checkInitializedExceptBody(BookkeeperProtocol.Request request)
+                throws InvalidProtocolBufferException {
+            if (!request.hasAddRequest() || !request.toBuilder()
+                    .setAddRequest(request.getAddRequest().toBuilder().setBody(ByteString.EMPTY).buildPartial())
+                    .buildPartial()
+                    .isInitialized()) {
+                throw new InvalidProtocolBufferException("Add request with a payload misses required fields");
+            }
         }
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
+            if (msg instanceof PayloadMessageV3) {
+                return serializeProtobuf((PayloadMessageV3) msg, ADD_REQUEST_PAYLOAD_TAG, ADD_REQUEST_BODY_TAG,
+                        allocator);
+            }
             BookkeeperProtocol.Request request = (BookkeeperProtocol.Request) msg;
             return serializeProtobuf(request, allocator);
         }
@@ -455,18 +488,146 @@ public class BookieProtoEncoding {
 
         @Override
         public Object decode(ByteBuf packet) throws Exception {
-            return BookkeeperProtocol.Response.parseFrom(new ByteBufInputStream(packet),
-                                                         extensionRegistry);
+            ByteBuf payload = readPayload(packet, READ_RESPONSE_PAYLOAD_TAG, READ_RESPONSE_BODY_TAG);
+            if (payload == null) {
+                return BookkeeperProtocol.Response.parseFrom(new ByteBufInputStream(packet),
+                                                             extensionRegistry);
+            }
+            try {
+                return new PayloadMessageV3(BookkeeperProtocol.Response.parseFrom(new ByteBufInputStream(packet),
+                                                                                  extensionRegistry), payload);
+            } catch (InvalidProtocolBufferException e) {
+                payload.release();
+                throw e;
+            }
         }
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
+            if (msg instanceof PayloadMessageV3) {
+                return serializeProtobuf((PayloadMessageV3) msg, READ_RESPONSE_PAYLOAD_TAG, READ_RESPONSE_BODY_TAG,
+                        allocator);
+            }
             BookkeeperProtocol.Response response = (BookkeeperProtocol.Response) msg;
             return serializeProtobuf(response, allocator);
         }
 
     }
 
+    private static final int ADD_REQUEST_PAYLOAD_TAG =
+            lengthDelimitedTag(BookkeeperProtocol.Request.ADDREQUEST_FIELD_NUMBER);
+    private static final int ADD_REQUEST_BODY_TAG =
+            lengthDelimitedTag(BookkeeperProtocol.AddRequest.BODY_FIELD_NUMBER);
+    private static final int READ_RESPONSE_PAYLOAD_TAG =
+            lengthDelimitedTag(BookkeeperProtocol.Response.READRESPONSE_FIELD_NUMBER);
+    private static final int READ_RESPONSE_BODY_TAG =
+            lengthDelimitedTag(BookkeeperProtocol.ReadResponse.BODY_FIELD_NUMBER);
+
+    private static int lengthDelimitedTag(int fieldNumber) {
+        return (fieldNumber << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    }
+
+    /**
+     * Serialize a message and its payload as a first occurrence of the payload field only holding the body,
+     * followed by the message. Large payloads are passed on as references instead of being copied.
+     */
+    private static Object serializeProtobuf(PayloadMessageV3 msg, int payloadTag, int bodyTag,
+                                            ByteBufAllocator allocator) {
+        ByteBuf payload = msg.content();
+        try {
+            int payloadSize = payload.readableBytes();
+            int bodySize = CodedOutputStream.computeUInt32SizeNoTag(bodyTag)
+                    + CodedOutputStream.computeUInt32SizeNoTag(payloadSize) + payloadSize;
+            int headerSize = CodedOutputStream.computeUInt32SizeNoTag(payloadTag)
+                    + CodedOutputStream.computeUInt32SizeNoTag(bodySize) + bodySize - payloadSize;
+            int messageSize = msg.getMessage().getSerializedSize();
+            int size = headerSize + payloadSize + messageSize;
+            boolean isSmallEntry = payloadSize < SMALL_ENTRY_SIZE_THRESHOLD;
+
+            int bufferSize = 4 /* frame size */ + headerSize + (isSmallEntry ? payloadSize + messageSize : 0);
+            ByteBuf buf = allocator.directBuffer(bufferSize, bufferSize);
+            buf.writeInt(size);
+            writeRawVarint32(buf, payloadTag);
+            writeRawVarint32(buf, bodySize);
+            writeRawVarint32(buf, bodyTag);
+            writeRawVarint32(buf, payloadSize);
+            if (isSmallEntry) {
+                buf.writeBytes(payload, payload.readerIndex(), payloadSize);
+                writeProtobuf(msg.getMessage(), buf);
+                msg.release();
+                return buf;
+            } else {
+                ByteBuf messageBuf = allocator.directBuffer(messageSize, messageSize);
+                writeProtobuf(msg.getMessage(), messageBuf);
+                ByteBufList byteBufList = ByteBufList.get(buf, payload);
+                byteBufList.add(messageBuf);
+                return byteBufList;
+            }
+        } catch (RuntimeException e) {
+            msg.release();
+            throw e;
+        }
+    }
+
+    private static void writeProtobuf(MessageLite msg, ByteBuf buf) {
+        int size = msg.getSerializedSize();
+        try {
+            msg.writeTo(CodedOutputStream.newInstance(buf.nioBuffer(buf.writerIndex(), size)));
+        } catch (IOException e) {
+            // This is in-memory serialization, should not fail
+            throw new RuntimeException(e);
+        }
+        buf.writerIndex(buf.writerIndex() + size);
+    }
+
+    private static void writeRawVarint32(ByteBuf buf, int value) {
+        while ((value & ~0x7F) != 0) {
+            buf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.writeByte(value);
+    }
+
+    /**
+     * Read the payload of a packet starting with an occurrence of the payload field only holding the body, as
+     * written for a {@link PayloadMessageV3}.
+     *
+     * @return a retained slice of the body, with the packet positioned on the rest of the message, or null if the
+     *         packet does not start with a payload, in which case the packet is left untouched
+     */
+    private static ByteBuf readPayload(ByteBuf packet, int payloadTag, int bodyTag) {
+        int readerIndex = packet.readerIndex();
+        if (readRawVarint32(packet) == payloadTag) {
+            int bodySize = readRawVarint32(packet);
+            int bodyEnd = packet.readerIndex() + bodySize;
+            if (bodySize > 0 && bodyEnd <= packet.writerIndex() && readRawVarint32(packet) == bodyTag) {
+                int payloadSize = readRawVarint32(packet);
+                if (payloadSize >= 0 && packet.readerIndex() + payloadSize == bodyEnd) {
+                    ByteBuf payload = packet.retainedSlice(packet.readerIndex(), payloadSize);
+                    packet.readerIndex(bodyEnd);
+                    return payload;
+                }
+            }
+        }
+        packet.readerIndex(readerIndex);
+        return null;
+    }
+
+    /**
+     * Read a varint of up to 32 bits, returning -1 if the packet does not hold one.
+     */
+    private static int readRawVarint32(ByteBuf buf) {
+        int result = 0;
+        for (int shift = 0; shift < 32 && buf.isReadable(); shift += 7) {
+            byte b = buf.readByte();
+            result |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        return -1;
+    }
+
     private static ByteBuf serializeProtobuf(MessageLite msg, ByteBufAllocator allocator) {
         int size = msg.getSerializedSize();
         int frameSize = size + 4;
@@ -514,7 +675,7 @@ public class BookieProtoEncoding {
             }
             if (msg instanceof ByteBuf || msg instanceof ByteBufList) {
                 ctx.write(msg, promise);
-            } else if (msg instanceof BookkeeperProtocol.Request) {
+            } else if (msg instanceof BookkeeperProtocol.Request || msg instanceof PayloadMessageV3) {
                 ctx.write(reqV3.encode(msg, ctx.alloc()), promise);
             } else if (msg instanceof BookieProtocol.Request) {
                 ctx.write(reqPreV3.encode(msg, ctx.alloc()), promise);
@@ -593,7 +754,7 @@ public class BookieProtoEncoding {
 
             if (msg instanceof ByteBuf) {
                 ctx.write(msg, promise);
-            } else if (msg instanceof BookkeeperProtocol.Response) {
+            } else if (msg instanceof BookkeeperProtocol.Response || msg instanceof PayloadMessageV3) {
                 ctx.write(repV3.encode(msg, ctx.alloc()), promise);
             } else if (msg instanceof BookieProtocol.Response) {
                 ctx.write(repPreV3.encode(msg, ctx.alloc()), promise);
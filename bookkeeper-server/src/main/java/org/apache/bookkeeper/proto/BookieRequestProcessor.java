@@ -28,24 +28,40 @@ import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.AttributeKey;
 import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 import lombok.AccessLevel;
 import lombok.Getter;
 import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
 import org.apache.bookkeeper.auth.AuthToken;
 import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.CpuAffinityProfile;
+import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -67,6 +83,9 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookieRequestProcessor.class);
 
+    private static final AttributeKey<ConcurrentMap<Long, StreamReadEntryProcessorV3>> STREAM_READS =
+            AttributeKey.valueOf("bookieStreamReads");
+
     /**
      * The server configuration. We use this for getting the number of add and read
      * worker threads.
@@ -119,6 +138,8 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     final Semaphore addsSemaphore;
     final Semaphore readsSemaphore;
+    // stream reads mostly wait for credits, they have their own limit rather than hold read permits
+    final Semaphore streamReadsSemaphore;
 
     final ChannelGroup allChannels;
 
@@ -130,6 +151,26 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    private final int maxStreamReadsPerChannel;
+
+    /**
+     * In shard-per-core mode every IO thread owns a shard of the ledgers: the add requests of a ledger are
+     * only executed by the owning IO thread, and they are rejected rather than wait for the bookie. Reads
+     * are served inline from the ledger storage caches, the other reads are handed off to the read thread
+     * pool.
+     */
+    private final boolean shardPerCoreEnabled;
+
+    /**
+     * The IO threads of each event loop group, indexed by ledger shard.
+     */
+    private final ConcurrentMap<EventLoopGroup, EventExecutor[]> ledgerShards = new ConcurrentHashMap<>();
+
+    /**
+     * Per-class admission control of add and read requests, null if disabled.
+     */
+    private final RequestAdmissionController admissionController;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
                                   SecurityHandlerFactory shFactory, ByteBufAllocator allocator,
                                   ChannelGroup allChannels) throws SecurityException {
@@ -140,16 +181,31 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.maxStreamReadsPerChannel = serverCfg.getMaxStreamReadsPerChannel();
+        if (serverCfg.isShardPerCoreRequestProcessingEnabled() && !bookie.isTryAddEntrySupported()) {
+            LOG.warn("Shard-per-core request processing is disabled: the ledger storage {} cannot add entries"
+                    + " without blocking", serverCfg.getLedgerStorageClass());
+            this.shardPerCoreEnabled = false;
+        } else {
+            this.shardPerCoreEnabled = serverCfg.isShardPerCoreRequestProcessingEnabled();
+        }
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
                 serverCfg.getMaxPendingReadRequestPerThread(),
-                statsLogger);
-        this.writeThreadPool = createExecutor(
+                statsLogger,
+                serverCfg.isReadWorkerVirtualThreadsEnabled(),
+                true,
+                CpuAffinityProfile.Role.READ_WORKER);
+        // In shard-per-core mode, the IO threads execute the adds
+        this.writeThreadPool = shardPerCoreEnabled ? null : createExecutor(
                 this.serverCfg.getNumAddWorkerThreads(),
                 "BookieWriteThreadPool",
                 serverCfg.getMaxPendingAddRequestPerThread(),
-                statsLogger);
+                statsLogger,
+                false,
+                true,
+                CpuAffinityProfile.Role.ADD_WORKER);
         if (serverCfg.getNumLongPollWorkerThreads() <= 0 && readThreadPool != null) {
             this.longPollThreadPool = this.readThreadPool;
         } else {
@@ -160,12 +216,15 @@ public class BookieRequestProcessor implements RequestProcessor {
             this.longPollThreadPool = createExecutor(
                 numThreads,
                 "BookieLongPollThread",
-                OrderedExecutor.NO_TASK_LIMIT, statsLogger);
+                OrderedExecutor.NO_TASK_LIMIT, statsLogger,
+                serverCfg.isReadWorkerVirtualThreadsEnabled(), false, null);
         }
+        // In shard-per-core mode, the recovery adds and the fencing reads need a thread that can block
         this.highPriorityThreadPool = createExecutor(
-                this.serverCfg.getNumHighPriorityWorkerThreads(),
+                shardPerCoreEnabled ? Math.max(1, this.serverCfg.getNumHighPriorityWorkerThreads())
+                        : this.serverCfg.getNumHighPriorityWorkerThreads(),
                 "BookieHighPriorityThread",
-                OrderedExecutor.NO_TASK_LIMIT, statsLogger);
+                OrderedExecutor.NO_TASK_LIMIT, statsLogger, false, false, null);
         this.shFactory = shFactory;
         if (shFactory != null) {
             shFactory.init(NodeType.Server, serverCfg, allocator);
@@ -204,10 +263,23 @@ public class BookieRequestProcessor implements RequestProcessor {
 
         int maxReads = serverCfg.getMaxReadsInProgressLimit();
         readsSemaphore = maxReads > 0 ? new Semaphore(maxReads, true) : null;
+
+        int maxStreamReads = serverCfg.getMaxStreamReadsInProgressLimit();
+        streamReadsSemaphore = maxStreamReads > 0 ? new Semaphore(maxStreamReads) : null;
+
+        admissionController = serverCfg.isAdmissionControlEnabled()
+                ? new RequestAdmissionController(serverCfg, statsLogger) : null;
     }
 
     protected void onAddRequestStart(Channel channel) {
-        if (addsSemaphore != null) {
+        onAddRequestStart(channel, false);
+    }
+
+    /**
+     * Track an add request that starts, waiting for an add permit unless the caller already acquired it.
+     */
+    protected void onAddRequestStart(Channel channel, boolean permitAcquired) {
+        if (addsSemaphore != null && !permitAcquired) {
             if (!addsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
                 channel.config().setAutoRead(false);
@@ -221,17 +293,37 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         }
         requestStats.trackAddRequest();
+        if (admissionController != null) {
+            admissionController.onRequestStart(channel);
+        }
     }
 
-    protected void onAddRequestFinish() {
+    protected void onAddRequestFinish(Channel channel) {
         requestStats.untrackAddRequest();
         if (addsSemaphore != null) {
             addsSemaphore.release();
         }
+        if (admissionController != null) {
+            admissionController.onRequestFinish(channel);
+        }
     }
 
     protected void onReadRequestStart(Channel channel) {
-        if (readsSemaphore != null) {
+        onReadRequestStart(channel, false);
+    }
+
+    protected void onReadRequestStart(Channel channel, boolean permitAcquired) {
+        onReadRequestStart(channel, permitAcquired, true);
+    }
+
+    /**
+     * Track a read request that starts, waiting for a read permit unless the caller already acquired it.
+     *
+     * @param admissionControlled whether the request counts against the admission control quota of its class,
+     *                            which long poll reads do not as they mostly wait for new entries
+     */
+    protected void onReadRequestStart(Channel channel, boolean permitAcquired, boolean admissionControlled) {
+        if (readsSemaphore != null && !permitAcquired) {
             if (!readsSemaphore.tryAcquire()) {
                 final long throttlingStartTimeNanos = MathUtils.nowInNano();
                 channel.config().setAutoRead(false);
@@ -245,13 +337,47 @@ public class BookieRequestProcessor implements RequestProcessor {
             }
         }
         requestStats.trackReadRequest();
+        if (admissionController != null && admissionControlled) {
+            admissionController.onRequestStart(channel);
+        }
     }
 
-    protected void onReadRequestFinish() {
+    protected void onReadRequestFinish(Channel channel) {
+        onReadRequestFinish(channel, true);
+    }
+
+    protected void onReadRequestFinish(Channel channel, boolean admissionControlled) {
         requestStats.untrackReadRequest();
         if (readsSemaphore != null) {
             readsSemaphore.release();
         }
+        if (admissionController != null && admissionControlled) {
+            admissionController.onRequestFinish(channel);
+        }
+    }
+
+    protected void onRequestScheduled(Channel channel, long enqueueNanos) {
+        if (admissionController != null) {
+            admissionController.onRequestScheduled(channel, enqueueNanos);
+        }
+    }
+
+    /**
+     * Check a new add or read request against the admission control quota of its class. High priority
+     * requests (recovery, fencing) and long poll reads are always admitted.
+     */
+    private boolean admitRequest(Channel channel, boolean alwaysAdmit) {
+        return admissionController == null || alwaysAdmit || admissionController.tryAdmit(channel);
+    }
+
+    /**
+     * Give back the admission control slot of a request admitted by {@link #admitRequest(Channel, boolean)}
+     * which is dropped before its processor is created.
+     */
+    private void cancelAdmission(Channel channel) {
+        if (admissionController != null) {
+            admissionController.cancelAdmission(channel);
+        }
     }
 
     @VisibleForTesting
@@ -281,10 +407,19 @@ public class BookieRequestProcessor implements RequestProcessor {
             int numThreads,
             String nameFormat,
             int maxTasksInQueue,
-            StatsLogger statsLogger) {
+            StatsLogger statsLogger,
+            boolean useVirtualThreads,
+            boolean ledgerWorkers,
+            CpuAffinityProfile.Role cpuAffinityRole) {
         if (numThreads <= 0) {
             return null;
         } else {
+            ThreadFactory threadFactory = null;
+            // virtual threads are not bound to a platform thread to pin
+            if (null != cpuAffinityRole && !useVirtualThreads
+                    && CpuAffinityProfile.get().hasCpus(cpuAffinityRole)) {
+                threadFactory = CpuAffinityProfile.threadFactory(cpuAffinityRole, new DefaultThreadFactory(nameFormat));
+            }
             return OrderedExecutor.newBuilder()
                     .numThreads(numThreads)
                     .name(nameFormat)
@@ -293,6 +428,12 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .statsLogger(statsLogger)
                     .maxTasksInQueue(maxTasksInQueue)
                     .enableThreadScopedMetrics(true)
+                    .useVirtualThreads(useVirtualThreads)
+                    .threadFactory(threadFactory)
+                    // only the add and read workers execute all the requests of a ledger through executeOrdered
+                    .hotKeyDetection(ledgerWorkers && serverCfg.isWorkerHotLedgerDetectionEnabled())
+                    .hotKeyThreshold(serverCfg.getWorkerHotLedgerThreshold())
+                    .hotKeyRemapping(ledgerWorkers && serverCfg.isWorkerHotLedgerRemappingEnabled())
                     .build();
         }
     }
@@ -307,6 +448,11 @@ public class BookieRequestProcessor implements RequestProcessor {
     @Override
     public void processRequest(Object msg, BookieRequestHandler requestHandler) {
         Channel channel = requestHandler.ctx().channel();
+        ByteBuf payload = null;
+        if (msg instanceof PayloadMessageV3) {
+            payload = ((PayloadMessageV3) msg).content();
+            msg = ((PayloadMessageV3) msg).getMessage();
+        }
         // If we can decode this packet as a Request protobuf packet, process
         // it as a version 3 packet. Else, just use the old protocol.
         if (msg instanceof BookkeeperProtocol.Request) {
@@ -314,9 +460,17 @@ public class BookieRequestProcessor implements RequestProcessor {
             restoreMdcContextFromRequest(r);
             try {
                 BookkeeperProtocol.BKPacketHeader header = r.getHeader();
+                if (payload != null && header.getOperation() != BookkeeperProtocol.OperationType.ADD_ENTRY) {
+                    // only the add requests carry a payload
+                    payload.release();
+                    payload = null;
+                }
                 switch (header.getOperation()) {
                     case ADD_ENTRY:
-                        processAddRequestV3(r, requestHandler);
+                        processAddRequestV3(r, payload, requestHandler);
+                        break;
+                    case RANGE_ADD_ENTRY:
+                        processRangeAddRequestV3(r, requestHandler);
                         break;
                     case READ_ENTRY:
                         processReadRequestV3(r, requestHandler);
@@ -353,6 +507,12 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case GET_LIST_OF_ENTRIES_OF_LEDGER:
                         processGetListOfEntriesOfLedgerProcessorV3(r, requestHandler);
                         break;
+                    case STREAM_READ_ENTRY:
+                        processStreamReadRequestV3(r, requestHandler);
+                        break;
+                    case STREAM_READ_CREDIT:
+                        processStreamReadCreditRequestV3(r, requestHandler);
+                        break;
                     default:
                         LOG.info("Unknown operation type {}", header.getOperation());
                         final BookkeeperProtocol.Response response =
@@ -421,11 +581,17 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private void processWriteLacRequestV3(final BookkeeperProtocol.Request r,
                                           final BookieRequestHandler requestHandler) {
+        if (shardPerCoreEnabled) {
+            executeOnShard(requestHandler, r.getWriteLacRequest().getLedgerId(),
+                    new WriteLacProcessorV3(r, requestHandler, this, true));
+            return;
+        }
+
         WriteLacProcessorV3 writeLac = new WriteLacProcessorV3(r, requestHandler, this);
         if (null == writeThreadPool) {
             writeLac.run();
         } else {
-            writeThreadPool.executeOrdered(r.getAddRequest().getLedgerId(), writeLac);
+            writeThreadPool.executeOrdered(r.getWriteLacRequest().getLedgerId(), writeLac);
         }
     }
 
@@ -435,12 +601,17 @@ public class BookieRequestProcessor implements RequestProcessor {
         if (null == readThreadPool) {
             readLac.run();
         } else {
-            readThreadPool.executeOrdered(r.getAddRequest().getLedgerId(), readLac);
+            readThreadPool.executeOrdered(r.getReadLacRequest().getLedgerId(), readLac);
         }
     }
 
-    private void processAddRequestV3(final BookkeeperProtocol.Request r, final BookieRequestHandler requestHandler) {
-        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, requestHandler, this);
+    private void processAddRequestV3(final BookkeeperProtocol.Request r, final ByteBuf payload,
+                                     final BookieRequestHandler requestHandler) {
+        final Channel channel = requestHandler.ctx().channel();
+        if (!admitRequest(channel, RequestUtils.isHighPriority(r))) {
+            rejectAddRequestV3(channel, r, payload);
+            return;
+        }
 
         final OrderedExecutor threadPool;
         if (RequestUtils.isHighPriority(r)) {
@@ -449,6 +620,18 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = writeThreadPool;
         }
 
+        if (shardPerCoreEnabled && !RequestUtils.isHighPriority(r)) {
+            if (tryAcquireAddPermit()) {
+                executeOnShard(requestHandler, r.getAddRequest().getLedgerId(),
+                        new WriteEntryProcessorV3(r, payload, requestHandler, this, true));
+            } else {
+                cancelAdmission(channel);
+                rejectAddRequestV3(channel, r, payload);
+            }
+            return;
+        }
+
+        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, payload, requestHandler, this);
         if (null == threadPool) {
             write.run();
         } else {
@@ -459,6 +642,7 @@ public class BookieRequestProcessor implements RequestProcessor {
                     LOG.debug("Failed to process request to add entry at {}:{}. Too many pending requests",
                               r.getAddRequest().getLedgerId(), r.getAddRequest().getEntryId());
                 }
+                ReferenceCountUtil.release(payload);
                 getRequestStats().getAddEntryRejectedCounter().inc();
                 BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
                         .setLedgerId(r.getAddRequest().getLedgerId())
@@ -474,10 +658,61 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeAddRequestV3(final BookkeeperProtocol.Request r,
+                                          final BookieRequestHandler requestHandler) {
+        final Channel channel = requestHandler.ctx().channel();
+        final BookkeeperProtocol.RangeAddRequest rangeAddRequest = r.getRangeAddRequest();
+        if (!admitRequest(channel, RequestUtils.isHighPriority(r))) {
+            rejectRangeAddRequestV3(channel, r);
+            return;
+        }
+
+        final OrderedExecutor threadPool;
+        if (RequestUtils.isHighPriority(r)) {
+            threadPool = highPriorityThreadPool;
+        } else {
+            threadPool = writeThreadPool;
+        }
+
+        if (shardPerCoreEnabled && !RequestUtils.isHighPriority(r)) {
+            if (tryAcquireAddPermit()) {
+                executeOnShard(requestHandler, rangeAddRequest.getLedgerId(),
+                        new RangeAddEntryProcessorV3(r, requestHandler, this, true));
+            } else {
+                cancelAdmission(channel);
+                rejectRangeAddRequestV3(channel, r);
+            }
+            return;
+        }
+
+        RangeAddEntryProcessorV3 write = new RangeAddEntryProcessorV3(r, requestHandler, this);
+        if (null == threadPool) {
+            write.run();
+        } else {
+            try {
+                threadPool.executeOrdered(rangeAddRequest.getLedgerId(), write);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to add {} entries at {}:{}. Too many pending requests",
+                              rangeAddRequest.getBodyCount(), rangeAddRequest.getLedgerId(),
+                              rangeAddRequest.getFirstEntryId());
+                }
+                getRequestStats().getAddEntryRejectedCounter().inc();
+                write.sendRangeAddResponse(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            }
+        }
+    }
+
     private void processForceLedgerRequestV3(final BookkeeperProtocol.Request r,
                                              final BookieRequestHandler requestHandler) {
         ForceLedgerProcessorV3 forceLedger = new ForceLedgerProcessorV3(r, requestHandler, this);
 
+        // The force request is ordered after the adds of the ledger that were received before it
+        if (shardPerCoreEnabled && !RequestUtils.isHighPriority(r)) {
+            executeOnShard(requestHandler, r.getForceLedgerRequest().getLedgerId(), forceLedger);
+            return;
+        }
+
         final OrderedExecutor threadPool;
         if (RequestUtils.isHighPriority(r)) {
             threadPool = highPriorityThreadPool;
@@ -513,9 +748,36 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     private void processReadRequestV3(final BookkeeperProtocol.Request r, final BookieRequestHandler requestHandler) {
+        final Channel channel = requestHandler.ctx().channel();
+        boolean alwaysAdmit = RequestUtils.isHighPriority(r)
+                || RequestUtils.isLongPollReadRequest(r.getReadRequest())
+                || hasFlag(r.getReadRequest(), BookkeeperProtocol.ReadRequest.Flag.FENCE_LEDGER);
+        if (!admitRequest(channel, alwaysAdmit)) {
+            rejectReadRequestV3(channel, r);
+            return;
+        }
+
         ExecutorService fenceThread = null == highPriorityThreadPool ? null :
                 highPriorityThreadPool.chooseThread(requestHandler.ctx());
 
+        // alwaysAdmit covers the high priority, fencing and long poll reads, which are never served inline
+        if (shardPerCoreEnabled && !alwaysAdmit) {
+            final long ledgerId = r.getReadRequest().getLedgerId();
+            ByteBuf cachedEntry = tryStartInlineRead(ledgerId, r.getReadRequest().getEntryId());
+            if (null != cachedEntry) {
+                new ReadEntryProcessorV3(r, requestHandler, this, fenceThread, cachedEntry).run();
+                return;
+            } else if (null != readThreadPool) {
+                executeOnWorker(readThreadPool, ledgerId,
+                        () -> new ReadEntryProcessorV3(r, requestHandler, this, fenceThread),
+                        () -> {
+                            cancelAdmission(channel);
+                            rejectReadRequestV3(channel, r);
+                        });
+                return;
+            }
+        }
+
         final ReadEntryProcessorV3 read;
         final OrderedExecutor threadPool;
         if (RequestUtils.isLongPollReadRequest(r.getReadRequest())) {
@@ -560,7 +822,8 @@ public class BookieRequestProcessor implements RequestProcessor {
                     .setReadResponse(readResponse);
                 BookkeeperProtocol.Response resp = response.build();
                 read.sendResponse(readResponse.getStatus(), resp, requestStats.getReadRequestStats());
-                onReadRequestFinish();
+                onReadRequestFinish(requestHandler.ctx().channel(),
+                        !RequestUtils.isLongPollReadRequest(r.getReadRequest()));
             }
         }
     }
@@ -643,8 +906,131 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processStreamReadRequestV3(final BookkeeperProtocol.Request r,
+                                            final BookieRequestHandler requestHandler) {
+        final Channel channel = requestHandler.ctx().channel();
+        ConcurrentMap<Long, StreamReadEntryProcessorV3> streamReads = getStreamReads(channel);
+        if (maxStreamReadsPerChannel > 0 && streamReads.size() >= maxStreamReadsPerChannel) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Rejecting stream read on channel {}: {} stream reads in progress", channel,
+                        streamReads.size());
+            }
+            rejectStreamReadRequestV3(channel, r, BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            return;
+        }
+        // a stream holds its slot until it is done, so it never waits for one on the IO thread
+        if (null != streamReadsSemaphore && !streamReadsSemaphore.tryAcquire()) {
+            rejectStreamReadRequestV3(channel, r, BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+            return;
+        }
+
+        StreamReadEntryProcessorV3 streamRead = new StreamReadEntryProcessorV3(r, requestHandler, this);
+        if (null != streamReads.putIfAbsent(streamRead.getStreamTxnId(), streamRead)) {
+            // a stream with the same txn id is in progress
+            streamRead.cancel();
+            rejectStreamReadRequestV3(channel, r, BookkeeperProtocol.StatusCode.EBADREQ);
+            return;
+        }
+        if (!channel.isOpen()) {
+            // the streams of the channel may have been cancelled already
+            streamRead.cancel();
+            return;
+        }
+        if (streamRead.schedule()) {
+            scheduleStreamRead(streamRead);
+        }
+    }
+
+    private void rejectStreamReadRequestV3(Channel channel, BookkeeperProtocol.Request r,
+                                           BookkeeperProtocol.StatusCode status) {
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        BookkeeperProtocol.StreamReadRequest streamReadRequest = r.getStreamReadRequest();
+        BookkeeperProtocol.StreamReadResponse.Builder streamReadResponse =
+                BookkeeperProtocol.StreamReadResponse.newBuilder()
+                        .setStatus(status)
+                        .setLedgerId(streamReadRequest.getLedgerId())
+                        .setEntryId(streamReadRequest.getFirstEntryId())
+                        .setLast(true);
+        writeAndFlush(channel, BookkeeperProtocol.Response.newBuilder()
+                .setHeader(r.getHeader())
+                .setStatus(streamReadResponse.getStatus())
+                .setStreamReadResponse(streamReadResponse)
+                .build());
+    }
+
+    private void processStreamReadCreditRequestV3(final BookkeeperProtocol.Request r,
+                                                  final BookieRequestHandler requestHandler) {
+        BookkeeperProtocol.StreamReadCreditRequest creditRequest = r.getStreamReadCreditRequest();
+        StreamReadEntryProcessorV3 streamRead =
+                getStreamReads(requestHandler.ctx().channel()).get(creditRequest.getStreamTxnId());
+        if (null == streamRead) {
+            // The stream already completed
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ignoring credits for unknown stream read {}", creditRequest.getStreamTxnId());
+            }
+            return;
+        }
+
+        if (creditRequest.getCancel()) {
+            streamRead.cancel();
+        } else if (streamRead.grantCredits(creditRequest.getCredits())) {
+            scheduleStreamRead(streamRead);
+        }
+    }
+
+    private static ConcurrentMap<Long, StreamReadEntryProcessorV3> getStreamReads(Channel channel) {
+        ConcurrentMap<Long, StreamReadEntryProcessorV3> streamReads = channel.attr(STREAM_READS).get();
+        if (null == streamReads) {
+            streamReads = new ConcurrentHashMap<>();
+            ConcurrentMap<Long, StreamReadEntryProcessorV3> existing = channel.attr(STREAM_READS)
+                    .setIfAbsent(streamReads);
+            if (null != existing) {
+                streamReads = existing;
+            } else {
+                // the streams waiting for credits would otherwise hold their slots forever
+                final ConcurrentMap<Long, StreamReadEntryProcessorV3> channelStreamReads = streamReads;
+                channel.closeFuture().addListener(
+                        future -> channelStreamReads.values().forEach(StreamReadEntryProcessorV3::cancel));
+            }
+        }
+        return streamReads;
+    }
+
+    void scheduleStreamRead(StreamReadEntryProcessorV3 streamRead) {
+        if (null == readThreadPool) {
+            // Run on the event loop rather than inline, as the stream reschedules itself
+            streamRead.requestHandler.ctx().channel().eventLoop().execute(streamRead);
+            return;
+        }
+        try {
+            readThreadPool.executeOrdered(streamRead.getLedgerId(), streamRead);
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to schedule stream read of ledger {}. Too many pending requests",
+                          streamRead.getLedgerId());
+            }
+            getRequestStats().getReadEntryRejectedCounter().inc();
+            streamRead.reject();
+        }
+    }
+
+    void onStreamReadFinished(StreamReadEntryProcessorV3 streamRead) {
+        final Channel channel = streamRead.requestHandler.ctx().channel();
+        getStreamReads(channel).remove(streamRead.getStreamTxnId(), streamRead);
+        if (null != streamReadsSemaphore) {
+            streamReadsSemaphore.release();
+        }
+    }
+
     private void processAddRequest(final BookieProtocol.ParsedAddRequest r, final BookieRequestHandler requestHandler) {
-        WriteEntryProcessor write = WriteEntryProcessor.create(r, requestHandler, this);
+        final Channel channel = requestHandler.ctx().channel();
+        if (!admitRequest(channel, r.isHighPriority())) {
+            getRequestStats().getAddEntryRejectedCounter().inc();
+            writeAndFlush(channel, ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r));
+            r.release();
+            r.recycle();
+            return;
+        }
 
         // If it's a high priority add (usually as part of recovery process), we want to make sure it gets
         // executed as fast as possible, so bypass the normal writeThreadPool and execute in highPriorityThreadPool
@@ -655,6 +1041,21 @@ public class BookieRequestProcessor implements RequestProcessor {
             threadPool = writeThreadPool;
         }
 
+        if (shardPerCoreEnabled && !r.isHighPriority()) {
+            if (tryAcquireAddPermit()) {
+                executeOnShard(requestHandler, r.getLedgerId(),
+                        WriteEntryProcessor.create(r, requestHandler, this, true));
+            } else {
+                cancelAdmission(channel);
+                getRequestStats().getAddEntryRejectedCounter().inc();
+                writeAndFlush(channel, ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r));
+                r.release();
+                r.recycle();
+            }
+            return;
+        }
+
+        WriteEntryProcessor write = WriteEntryProcessor.create(r, requestHandler, this);
         if (null == threadPool) {
             write.run();
         } else {
@@ -679,8 +1080,43 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     private void processReadRequest(final BookieProtocol.ReadRequest r, final BookieRequestHandler requestHandler) {
+        final Channel channel = requestHandler.ctx().channel();
+        if (!admitRequest(channel, r.isHighPriority() || r.isFencing())) {
+            getRequestStats().getReadEntryRejectedCounter().inc();
+            writeAndFlush(channel, ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r));
+            r.recycle();
+            return;
+        }
+
         ExecutorService fenceThreadPool =
                 null == highPriorityThreadPool ? null : highPriorityThreadPool.chooseThread(requestHandler.ctx());
+
+        if (shardPerCoreEnabled && !(r.isHighPriority() || r.isFencing())) {
+            boolean batchedRead = r instanceof BookieProtocol.BatchedReadRequest;
+            ByteBuf cachedEntry = batchedRead ? null : tryStartInlineRead(r.getLedgerId(), r.getEntryId());
+            if (null != cachedEntry) {
+                ReadEntryProcessor.create(r, requestHandler, this, fenceThreadPool, throttleReadResponses,
+                        cachedEntry).run();
+                return;
+            } else if (null != readThreadPool) {
+                executeOnWorker(readThreadPool, r.getLedgerId(),
+                        () -> batchedRead
+                                ? BatchedReadEntryProcessor.create((BookieProtocol.BatchedReadRequest) r,
+                                        requestHandler, this, fenceThreadPool, throttleReadResponses,
+                                        serverCfg.getMaxBatchReadSize())
+                                : ReadEntryProcessor.create(r, requestHandler, this, fenceThreadPool,
+                                        throttleReadResponses),
+                        () -> {
+                            cancelAdmission(channel);
+                            getRequestStats().getReadEntryRejectedCounter().inc();
+                            writeAndFlush(channel,
+                                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r));
+                            r.recycle();
+                        });
+                return;
+            }
+        }
+
         ReadEntryProcessor read = r instanceof BookieProtocol.BatchedReadRequest
                 ? BatchedReadEntryProcessor.create((BookieProtocol.BatchedReadRequest) r, requestHandler,
                 this, fenceThreadPool, throttleReadResponses, serverCfg.getMaxBatchReadSize())
@@ -712,12 +1148,129 @@ public class BookieRequestProcessor implements RequestProcessor {
                     BookieProtocol.ETOOMANYREQUESTS,
                     ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
                     requestStats.getReadRequestStats());
-                onReadRequestFinish();
+                onReadRequestFinish(requestHandler.ctx().channel());
                 read.recycle();
             }
         }
     }
 
+    /**
+     * In shard-per-core mode, execute a write request on the IO thread owning the shard of the ledger, inline
+     * if the request was received on that thread. All the write requests of a ledger go through its owner,
+     * so they are executed in the order they were received.
+     */
+    private void executeOnShard(BookieRequestHandler requestHandler, long ledgerId, Runnable task) {
+        EventLoopGroup eventLoopGroup = requestHandler.ctx().channel().eventLoop().parent();
+        if (null == eventLoopGroup) {
+            task.run();
+            return;
+        }
+
+        EventExecutor[] shards = ledgerShards.computeIfAbsent(eventLoopGroup, group -> {
+            List<EventExecutor> executors = new ArrayList<>();
+            group.forEach(executors::add);
+            return executors.toArray(new EventExecutor[0]);
+        });
+        EventExecutor shardOwner = shards[MathUtils.signSafeMod(ledgerId, shards.length)];
+        if (shardOwner.inEventLoop()) {
+            task.run();
+        } else {
+            shardOwner.execute(task);
+        }
+    }
+
+    /**
+     * In shard-per-core mode, hand a request that could block the IO threads to a worker thread pool. The
+     * processor of the request is created by the worker thread, as creating it may wait for a permit.
+     */
+    private void executeOnWorker(OrderedExecutor threadPool, long ledgerId, Supplier<Runnable> processor,
+                                 Runnable onRejected) {
+        try {
+            threadPool.executeOrdered(ledgerId, () -> processor.get().run());
+        } catch (RejectedExecutionException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Failed to process request of ledger {}. Too many pending requests", ledgerId);
+            }
+            onRejected.run();
+        }
+    }
+
+    /**
+     * In shard-per-core mode, acquire an add permit for a request without waiting for it. The caller holds the
+     * add permit when this returns true.
+     */
+    private boolean tryAcquireAddPermit() {
+        return null == addsSemaphore || addsSemaphore.tryAcquire();
+    }
+
+    /**
+     * In shard-per-core mode, read an entry from the ledger storage caches in a single lookup, to serve the read
+     * on the IO thread. The caller holds the read permit when an entry is returned.
+     *
+     * @return the entry, or null if the read has to be executed by the read thread pool
+     */
+    private ByteBuf tryStartInlineRead(long ledgerId, long entryId) {
+        if (null != readsSemaphore && !readsSemaphore.tryAcquire()) {
+            return null;
+        }
+        ByteBuf entry = null;
+        try {
+            LedgerStorage ledgerStorage = bookie.getLedgerStorage();
+            if (ledgerStorage.ledgerExists(ledgerId)) {
+                entry = ledgerStorage.getCachedEntry(ledgerId, entryId);
+            }
+        } catch (IOException | BookieException e) {
+            // the read thread pool reports the error
+        }
+        if (null == entry && null != readsSemaphore) {
+            readsSemaphore.release();
+        }
+        return entry;
+    }
+
+    private void rejectAddRequestV3(Channel channel, BookkeeperProtocol.Request r, ByteBuf payload) {
+        ReferenceCountUtil.release(payload);
+        getRequestStats().getAddEntryRejectedCounter().inc();
+        BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
+                .setLedgerId(r.getAddRequest().getLedgerId())
+                .setEntryId(r.getAddRequest().getEntryId())
+                .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+        writeAndFlush(channel, BookkeeperProtocol.Response.newBuilder()
+                .setHeader(r.getHeader())
+                .setStatus(addResponse.getStatus())
+                .setAddResponse(addResponse)
+                .build());
+    }
+
+    private void rejectRangeAddRequestV3(Channel channel, BookkeeperProtocol.Request r) {
+        BookkeeperProtocol.RangeAddRequest rangeAddRequest = r.getRangeAddRequest();
+        getRequestStats().getAddEntryRejectedCounter().inc();
+        BookkeeperProtocol.RangeAddResponse.Builder rangeAddResponse =
+                BookkeeperProtocol.RangeAddResponse.newBuilder()
+                        .setLedgerId(rangeAddRequest.getLedgerId())
+                        .setFirstEntryId(rangeAddRequest.getFirstEntryId())
+                        .setNumEntries(rangeAddRequest.getBodyCount())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+        writeAndFlush(channel, BookkeeperProtocol.Response.newBuilder()
+                .setHeader(r.getHeader())
+                .setStatus(rangeAddResponse.getStatus())
+                .setRangeAddResponse(rangeAddResponse)
+                .build());
+    }
+
+    private void rejectReadRequestV3(Channel channel, BookkeeperProtocol.Request r) {
+        getRequestStats().getReadEntryRejectedCounter().inc();
+        BookkeeperProtocol.ReadResponse.Builder readResponse = BookkeeperProtocol.ReadResponse.newBuilder()
+                .setLedgerId(r.getReadRequest().getLedgerId())
+                .setEntryId(r.getReadRequest().getEntryId())
+                .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS);
+        writeAndFlush(channel, BookkeeperProtocol.Response.newBuilder()
+                .setHeader(r.getHeader())
+                .setStatus(readResponse.getStatus())
+                .setReadResponse(readResponse)
+                .build());
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
@@ -232,6 +232,40 @@ public class BookkeeperInternalCallbacks {
         void readEntriesComplete(int rc, long ledgerId, long startEntryId, ByteBufList bufList, Object ctx);
     }
 
+    /**
+     * Flow control of a stream read, through which the reader lets the bookie push more entries.
+     */
+    public interface StreamReadFlowControl {
+        /**
+         * Allow the bookie to send {@code credits} more entries.
+         */
+        void grantCredits(int credits);
+
+        /**
+         * Stop the stream. No more callback is invoked for it.
+         */
+        void cancel();
+    }
+
+    /**
+     * Declaration of a callback implementation for calls from BookieClient objects.
+     * Such calls are for the entries pushed by stream read operations.
+     */
+    public interface StreamReadEntryCallback {
+        /**
+         * An entry of the stream was received. The buffer is only valid during the call.
+         */
+        void readEntryComplete(long ledgerId, long entryId, ByteBuf buffer, StreamReadFlowControl flowControl,
+                               Object ctx);
+
+        /**
+         * The stream completed, either because all the entries were received or because of a failure.
+         *
+         * @param nextEntryId the first entry of the range that was not received
+         */
+        void streamComplete(int rc, long ledgerId, long nextEntryId, Object ctx);
+    }
+
     /**
      * Listener on entries responded.
      */
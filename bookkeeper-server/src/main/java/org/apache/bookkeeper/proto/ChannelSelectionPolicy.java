@@ -0,0 +1,49 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+/**
+ * Policies to select the connection of a request, among the connections of the client to a bookie.
+ *
+ * <p>Whatever the policy, the adds, force and write lac requests of a ledger stay on the same
+ * connection with the v2 protocol, whose responses are matched to the requests by ledger and
+ * entry ids.
+ */
+public enum ChannelSelectionPolicy {
+
+    /**
+     * The connection is picked by the ledger id of the request, so all the requests of a ledger
+     * use the same connection.
+     */
+    LEDGER,
+
+    /**
+     * The connection with the fewest outstanding requests is picked. On a tie, the connection of
+     * the ledger is preferred.
+     */
+    LEAST_OUTSTANDING,
+
+    /**
+     * The connection with the fewest outstanding requests is picked between the connection of the
+     * ledger and another random connection.
+     */
+    POWER_OF_TWO_CHOICES
+}
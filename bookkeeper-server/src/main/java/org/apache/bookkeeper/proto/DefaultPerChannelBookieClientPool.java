@@ -22,12 +22,16 @@ package org.apache.bookkeeper.proto;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.client.BookKeeperClientStats;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.tls.SecurityException;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory;
 import org.apache.bookkeeper.tls.SecurityProviderFactoryFactory;
@@ -35,8 +39,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *  Provide a simple round-robin style channel pool. We could improve it later to do more
- *  fantastic things.
+ *  Provide a simple channel pool. The channel of an operation is picked by its key, or by the
+ *  {@link ChannelSelectionPolicy} for the operations which do not need to stay on the channel of their key.
  */
 class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         GenericCallback<PerChannelBookieClient> {
@@ -52,16 +56,29 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
     final ClientConfiguration conf;
     SecurityHandlerFactory shFactory;
 
+    final ChannelSelectionPolicy selectionPolicy;
+    // With the v2 protocol, the ordered operations of a key stay on the channel of the key
+    final boolean keyOrderedClients;
+
+    final StatsLogger statsLogger;
+    final Gauge<Long>[] outstandingGauges;
+    // the gauges are registered when the pool is initialized
+    volatile boolean gaugesRegistered = false;
+
     final AtomicInteger counter = new AtomicInteger(0);
     final AtomicLong errorCounter = new AtomicLong(0);
 
     DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
                                       BookieId address,
-                                      int coreSize) throws SecurityException {
+                                      int coreSize, StatsLogger statsLogger) throws SecurityException {
         checkArgument(coreSize > 0);
         this.factory = factory;
         this.address = address;
         this.conf = conf;
+        this.selectionPolicy = conf.getChannelSelectionPolicy();
+        this.keyOrderedClients = conf.getUseV2WireProtocol();
+        this.statsLogger = statsLogger.scope(BookKeeperClientStats.CHANNEL_SCOPE)
+                .scopeLabel(BookKeeperClientStats.BOOKIE_LABEL, address.toString());
 
         this.shFactory = SecurityProviderFactoryFactory.getSecurityProviderFactory(conf.getTLSProviderFactoryClass());
 
@@ -78,6 +95,35 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         } else {
             this.clientsV3Enforced = this.clients;
         }
+
+        this.outstandingGauges = newOutstandingGauges();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Gauge<Long>[] newOutstandingGauges() {
+        int numGauges = clients == clientsV3Enforced ? clients.length : 2 * clients.length;
+        Gauge<Long>[] gauges = new Gauge[numGauges];
+        for (int i = 0; i < numGauges; i++) {
+            PerChannelBookieClient pcbc = i < clients.length ? clients[i] : clientsV3Enforced[i - clients.length];
+            gauges[i] = new Gauge<Long>() {
+                @Override
+                public Long getDefaultValue() {
+                    return 0L;
+                }
+
+                @Override
+                public Long getSample() {
+                    return pcbc.getNumPendingCompletionRequests();
+                }
+            };
+        }
+        return gauges;
+    }
+
+    private StatsLogger channelStatsLogger(int gaugeIndex) {
+        String channel = gaugeIndex < clients.length
+                ? String.valueOf(gaugeIndex) : "v3-" + (gaugeIndex - clients.length);
+        return statsLogger.scopeLabel(BookKeeperClientStats.CHANNEL_LABEL, channel);
     }
 
     @Override
@@ -87,27 +133,66 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     @Override
     public void initialize() {
+        for (int i = 0; i < outstandingGauges.length; i++) {
+            channelStatsLogger(i).registerGauge(BookKeeperClientStats.CHANNEL_OUTSTANDING_REQUESTS,
+                    outstandingGauges[i]);
+        }
+        gaugesRegistered = true;
         for (PerChannelBookieClient pcbc : this.clients) {
             pcbc.connectIfNeededAndDoOp(this);
         }
     }
 
     private PerChannelBookieClient getClient(long key) {
-        return getClient(key, false);
+        return getClient(key, false, true);
     }
 
-    private PerChannelBookieClient getClient(long key, PerChannelBookieClient[] pcbc) {
+    private PerChannelBookieClient getClient(long key, PerChannelBookieClient[] pcbc, boolean ordered) {
         if (1 == pcbc.length) {
             return pcbc[0];
         }
         int idx = MathUtils.signSafeMod(key, pcbc.length);
-        return pcbc[idx];
+        if (ordered && keyOrderedClients && pcbc == clients) {
+            return pcbc[idx];
+        }
+        switch (selectionPolicy) {
+        case LEAST_OUTSTANDING:
+            return getLeastOutstandingClient(pcbc, idx);
+        case POWER_OF_TWO_CHOICES:
+            int other = ThreadLocalRandom.current().nextInt(pcbc.length - 1);
+            if (other >= idx) {
+                other++;
+            }
+            return isLessLoaded(pcbc[other], pcbc[idx]) ? pcbc[other] : pcbc[idx];
+        default:
+            return pcbc[idx];
+        }
     }
-    private PerChannelBookieClient getClient(long key, boolean forceUseV3) {
+
+    private PerChannelBookieClient getClient(long key, boolean forceUseV3, boolean ordered) {
         if (forceUseV3) {
-            return getClient(key, clientsV3Enforced);
+            return getClient(key, clientsV3Enforced, ordered);
         }
-        return getClient(key, clients);
+        return getClient(key, clients, ordered);
+    }
+
+    private static PerChannelBookieClient getLeastOutstandingClient(PerChannelBookieClient[] pcbc, int keyIdx) {
+        // start from the channel of the key, so it is kept on a tie
+        PerChannelBookieClient leastLoaded = pcbc[keyIdx];
+        for (int i = 1; i < pcbc.length; i++) {
+            PerChannelBookieClient client = pcbc[(keyIdx + i) % pcbc.length];
+            if (isLessLoaded(client, leastLoaded)) {
+                leastLoaded = client;
+            }
+        }
+        return leastLoaded;
+    }
+
+    private static boolean isLessLoaded(PerChannelBookieClient client, PerChannelBookieClient other) {
+        if (client.isWritable() != other.isWritable()) {
+            return client.isWritable();
+        }
+        return client.getNumPendingCompletionRequests() < other.getNumPendingCompletionRequests();
     }
 
     @Override
@@ -117,12 +202,31 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     @Override
     public void obtain(GenericCallback<PerChannelBookieClient> callback, long key, boolean forceUseV3) {
-        getClient(key, forceUseV3).connectIfNeededAndDoOp(callback);
+        getClient(key, forceUseV3, true).connectIfNeededAndDoOp(callback);
+    }
+
+    @Override
+    public void obtainUnordered(GenericCallback<PerChannelBookieClient> callback, long key) {
+        obtainUnordered(callback, key, false);
+    }
+
+    @Override
+    public void obtainUnordered(GenericCallback<PerChannelBookieClient> callback, long key, boolean forceUseV3) {
+        getClient(key, forceUseV3, false).connectIfNeededAndDoOp(callback);
     }
 
     @Override
     public boolean isWritable(long key) {
-        return getClient(key).isWritable();
+        if (keyOrderedClients || selectionPolicy == ChannelSelectionPolicy.LEDGER) {
+            return getClient(key).isWritable();
+        }
+        // the operations of the key go to a writable channel if there is one
+        for (PerChannelBookieClient pcbc : clients) {
+            if (pcbc.isWritable()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -152,6 +256,12 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     @Override
     public void close(boolean wait) {
+        if (gaugesRegistered) {
+            for (int i = 0; i < outstandingGauges.length; i++) {
+                channelStatsLogger(i).unregisterGauge(BookKeeperClientStats.CHANNEL_OUTSTANDING_REQUESTS,
+                        outstandingGauges[i]);
+            }
+        }
         for (int i = 0; i < clients.length; i++) {
             clients[i].close(wait);
             if (clients != clientsV3Enforced) {
@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto;
 
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoResponse;
@@ -70,6 +71,17 @@ public class GetBookieInfoProcessorV3 extends PacketProcessorBaseV3 implements R
                 totalDiskSpace = requestProcessor.getBookie().getTotalDiskSpace();
                 getBookieInfoResponse.setTotalDiskCapacity(totalDiskSpace);
             }
+            if ((requested & GetBookieInfoRequest.Flags.JOURNAL_QUEUE_LENGTH_VALUE) != 0) {
+                getBookieInfoResponse.setJournalQueueLength(requestProcessor.getBookie().getJournalQueueLength());
+            }
+            if ((requested & GetBookieInfoRequest.Flags.WRITE_CACHE_USAGE_VALUE) != 0) {
+                LedgerStorage ledgerStorage = requestProcessor.getBookie().getLedgerStorage();
+                getBookieInfoResponse.setWriteCacheSize(ledgerStorage.getWriteCacheSize());
+                getBookieInfoResponse.setWriteCacheCapacity(ledgerStorage.getWriteCacheCapacity());
+            }
+            if ((requested & GetBookieInfoRequest.Flags.READ_QUEUE_LENGTH_VALUE) != 0) {
+                getBookieInfoResponse.setReadQueueLength(requestProcessor.getRequestStats().readsInProgressCount());
+            }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("FreeDiskSpace info is " + freeDiskSpace + " totalDiskSpace is: " + totalDiskSpace);
             }
@@ -89,6 +89,8 @@ class LongPollReadEntryProcessorV3 extends ReadEntryProcessorV3 implements Watch
             } else {
                 long knownLAC = requestProcessor.bookie.readLastAddConfirmed(ledgerId);
                 readResponseBuilder.setMaxLAC(knownLAC);
+                // the entry is only read after waiting when the lac did not advance before the request
+                readResponseBuilder.setLongPollWaited(shouldReadEntry());
                 if (knownLAC > previousLAC) {
                     entryId = previousLAC + 1;
                     readResponseBuilder.setMaxLAC(knownLAC);
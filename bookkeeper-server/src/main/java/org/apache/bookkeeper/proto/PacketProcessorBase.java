@@ -68,7 +68,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
 
     protected void sendWriteReqResponse(int rc, Object response, OpStatsLogger statsLogger) {
         sendResponse(rc, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(requestHandler.ctx().channel());
     }
 
     protected void sendReadReqResponse(int rc, Object response, OpStatsLogger statsLogger, boolean throttle) {
@@ -77,7 +77,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
         } else {
             sendResponse(rc, response, statsLogger);
         }
-        requestProcessor.onReadRequestFinish();
+        requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
     }
 
     protected void sendResponse(int rc, Object response, OpStatsLogger statsLogger) {
@@ -86,7 +86,9 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
 
         Channel channel = requestHandler.ctx().channel();
 
-        if (timeOut >= 0 && !channel.isWritable()) {
+        // An IO thread cannot wait for a channel to become writable, as it may be the thread flushing it: the
+        // responses sent from the IO threads are queued in the channel instead
+        if (timeOut >= 0 && !channel.isWritable() && !channel.eventLoop().inEventLoop()) {
             if (!requestProcessor.isBlacklisted(channel)) {
                 synchronized (channel) {
                     if (!channel.isWritable() && !requestProcessor.isBlacklisted(channel)) {
@@ -176,6 +178,7 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
 
     @Override
     public void run() {
+        requestProcessor.onRequestScheduled(requestHandler.ctx().channel(), enqueueNanos);
         if (request instanceof BookieProtocol.ReadRequest) {
             requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats()
                     .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
@@ -190,12 +193,12 @@ abstract class PacketProcessorBase<T extends Request> implements Runnable {
                          ResponseBuilder.buildErrorResponse(BookieProtocol.EBADVERSION, request),
                          requestProcessor.getRequestStats().getReadRequestStats());
             if (request instanceof BookieProtocol.ReadRequest) {
-                requestProcessor.onReadRequestFinish();
+                requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
             }
             if (request instanceof BookieProtocol.ParsedAddRequest) {
                 ((BookieProtocol.ParsedAddRequest) request).release();
                 request.recycle();
-                requestProcessor.onAddRequestFinish();
+                requestProcessor.onAddRequestFinish(requestHandler.ctx().channel());
             }
             return;
         }
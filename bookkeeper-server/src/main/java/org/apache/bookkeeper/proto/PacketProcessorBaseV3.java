@@ -20,9 +20,11 @@
  */
 package org.apache.bookkeeper.proto;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.bookkeeper.common.util.MathUtils;
@@ -52,12 +54,26 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
         this.enqueueNanos = MathUtils.nowInNano();
     }
 
+    /**
+     * Send a response to the request. A null {@code statsLogger} skips recording the request latency,
+     * for requests that send several responses.
+     */
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        sendResponse(code, response, statsLogger, null);
+    }
+
+    /**
+     * Send a response whose message wraps {@code body} without copying it. The response owns the body, which is
+     * released once the response is written or dropped.
+     */
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger, ByteBuf body) {
         final long writeNanos = MathUtils.nowInNano();
 
         Channel channel = requestHandler.ctx().channel();
         final long timeOut = requestProcessor.getWaitTimeoutOnBackpressureMillis();
-        if (timeOut >= 0 && !channel.isWritable()) {
+        // An IO thread cannot wait for a channel to become writable, as it may be the thread flushing it: the
+        // responses sent from the IO threads are queued in the channel instead
+        if (timeOut >= 0 && !channel.isWritable() && !channel.eventLoop().inEventLoop()) {
             if (!requestProcessor.isBlacklisted(channel)) {
                 synchronized (channel) {
                     if (!channel.isWritable() && !requestProcessor.isBlacklisted(channel)) {
@@ -82,7 +98,11 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                         StringUtils.requestToString(request));
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
-                statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                if (null != statsLogger) {
+                    statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                }
+                ReferenceCountUtil.release(response);
+                ReferenceCountUtil.release(body);
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
@@ -92,6 +112,7 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
             channel.writeAndFlush(response).addListener(new ChannelFutureListener() {
                 @Override
                 public void operationComplete(ChannelFuture future) throws Exception {
+                    ReferenceCountUtil.release(body);
                     long writeElapsedNanos = MathUtils.elapsedNanos(writeNanos);
                     if (!future.isSuccess()) {
                         requestProcessor.getRequestStats().getChannelWriteStats()
@@ -100,6 +121,9 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
                         requestProcessor.getRequestStats().getChannelWriteStats()
                                 .registerSuccessfulEvent(writeElapsedNanos, TimeUnit.NANOSECONDS);
                     }
+                    if (null == statsLogger) {
+                        return;
+                    }
                     if (StatusCode.EOK == code) {
                         statsLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
                     } else {
@@ -110,6 +134,8 @@ public abstract class PacketProcessorBaseV3 implements Runnable {
         } else {
             log.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
+            ReferenceCountUtil.release(response);
+            ReferenceCountUtil.release(body);
         }
     }
 
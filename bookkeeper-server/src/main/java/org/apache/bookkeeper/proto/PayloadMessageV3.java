@@ -0,0 +1,73 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.MessageLite;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * A protocol version 3 {@link BookkeeperProtocol.Request} carrying an add request, or
+ * {@link BookkeeperProtocol.Response} carrying a read response, whose entry body is held as a {@link ByteBuf}
+ * next to the protobuf message rather than as a {@link com.google.protobuf.ByteString} inside it.
+ *
+ * <p>On the wire, the body is written as a first occurrence of the add request, or read response, field that only
+ * holds the body, followed by the message without the body. Protobuf merges the two occurrences, so a peer
+ * parsing the whole packet sees the usual message, while {@link BookieProtoEncoding} writes the body from, and
+ * reads it into, a {@link ByteBuf} without copying it.
+ *
+ * <p>The reference count of the message is the one of its payload: whoever receives the message owns the
+ * payload and has to release it.
+ */
+public final class PayloadMessageV3 extends DefaultByteBufHolder {
+
+    private final MessageLite message;
+
+    public PayloadMessageV3(BookkeeperProtocol.Request request, ByteBuf payload) {
+        this((MessageLite) request, payload);
+    }
+
+    public PayloadMessageV3(BookkeeperProtocol.Response response, ByteBuf payload) {
+        this((MessageLite) response, payload);
+    }
+
+    private PayloadMessageV3(MessageLite message, ByteBuf payload) {
+        super(payload);
+        this.message = message;
+    }
+
+    /**
+     * Returns the message, which does not have the body of its add request or read response set.
+     */
+    public MessageLite getMessage() {
+        return message;
+    }
+
+    @Override
+    public PayloadMessageV3 replace(ByteBuf content) {
+        return new PayloadMessageV3(message, content);
+    }
+
+    @Override
+    public String toString() {
+        return "PayloadMessageV3(" + message.getClass().getSimpleName() + ", payload=" + content() + ")";
+    }
+}
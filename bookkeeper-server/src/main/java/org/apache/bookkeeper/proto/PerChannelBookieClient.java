@@ -83,8 +83,10 @@ import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiPredicate;
@@ -112,6 +114,8 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StartTLSCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadFlowControl;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
@@ -125,6 +129,8 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerRe
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetListOfEntriesOfLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadLacResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
@@ -132,6 +138,9 @@ import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StreamReadCreditRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StreamReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StreamReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.WriteLacRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.WriteLacResponse;
 import org.apache.bookkeeper.stats.Counter;
@@ -145,6 +154,7 @@ import org.apache.bookkeeper.tls.SecurityHandlerFactory.NodeType;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.StringUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentOpenHashMap;
 import org.apache.bookkeeper.util.collections.SynchronizedHashMultiMap;
 import org.slf4j.Logger;
@@ -186,10 +196,20 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     final int maxFrameSize;
     final long getBookieInfoTimeoutNanos;
     final int startTLSTimeout;
+    final int rangeAddMaxEntries;
 
+    // Adds waiting on this connection to be coalesced into range add requests
+    private final List<PendingRangeAdd> pendingRangeAdds = new ArrayList<>();
+
+    // Completions of the requests identified by (ledgerId, entryId, operation), only used by the v2 protocol
     private final ConcurrentOpenHashMap<CompletionKey, CompletionValue> completionObjects =
             ConcurrentOpenHashMap.<CompletionKey, CompletionValue>newBuilder().autoShrink(true).build();
 
+    // Completions of the requests identified by a txnId, which is unique on this client. Keyed by the txnId
+    // itself, so that looking up a response does not allocate a key
+    private final ConcurrentLongHashMap<CompletionValue> txnCompletionObjects =
+            ConcurrentLongHashMap.<CompletionValue>newBuilder().autoShrink(true).build();
+
     // Map that hold duplicated read requests. The idea is to only use this map (synchronized) when there is a duplicate
     // read request for the same ledgerId/entryId
     private final SynchronizedHashMultiMap<CompletionKey, CompletionValue> completionObjectsV2Conflicts =
@@ -403,6 +423,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         this.getBookieInfoTimeoutNanos = TimeUnit.SECONDS.toNanos(conf.getBookieInfoTimeout());
         this.startTLSTimeout = conf.getStartTLSTimeout();
         this.useV2WireProtocol = conf.getUseV2WireProtocol();
+        this.rangeAddMaxEntries = conf.getRangeAddMaxEntries();
         this.preserveMdcForTaskExecution = conf.getPreserveMdcForTaskExecution();
 
         this.authProviderFactory = authProviderFactory;
@@ -527,7 +548,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     protected long getNumPendingCompletionRequests() {
-        return completionObjects.size();
+        return completionObjects.size() + txnCompletionObjects.size();
     }
 
     protected ChannelFuture connect() {
@@ -691,7 +712,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new TxnCompletionKey(txnId,
                                                                 OperationType.WRITE_LAC);
         // writeLac is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new WriteLacCompletion(completionKey, cb,
                                                      ctx, ledgerId));
 
@@ -733,7 +754,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         final CompletionKey completionKey = new TxnCompletionKey(txnId,
                                                                 OperationType.FORCE_LEDGER);
         // force is mostly like addEntry hence uses addEntryTimeout
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new ForceLedgerCompletion(completionKey, cb,
                                                      ctx, ledgerId));
 
@@ -791,50 +812,108 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 request = ByteBufList.clone((ByteBufList) toSend);
             }
         } else {
-            final long txnId = getTxnId();
-            completionKey = new TxnCompletionKey(txnId, OperationType.ADD_ENTRY);
-
-            // Build the request and calculate the total size to be included in the packet.
-            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
-                    .setVersion(ProtocolVersion.VERSION_THREE)
-                    .setOperation(OperationType.ADD_ENTRY)
-                    .setTxnId(txnId);
-            if (((short) options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
-                headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
-            }
-
-            ByteString body = null;
             ByteBufList bufToSend = (ByteBufList) toSend;
 
-            if (bufToSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
-                        bufToSend.readableBytes());
-            } else {
-                for (int i = 0; i < bufToSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
+            if (rangeAddMaxEntries > 1) {
+                ByteString body = null;
+                if (bufToSend.hasArray()) {
+                    body = UnsafeByteOperations.unsafeWrap(bufToSend.array(), bufToSend.arrayOffset(),
+                            bufToSend.readableBytes());
+                } else {
+                    for (int i = 0; i < bufToSend.size(); i++) {
+                        ByteString piece = UnsafeByteOperations.unsafeWrap(bufToSend.getBuffer(i).nioBuffer());
+                        // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
+                        body = (body == null) ? piece : body.concat(piece);
+                    }
                 }
+                enqueueRangeAdd(new PendingRangeAdd(ledgerId, masterKey, entryId, body, cb, ctx, options,
+                        allowFastFail, writeFlags));
+            } else {
+                addEntryV3(ledgerId, masterKey, entryId, null, retainedPayload(bufToSend), cb, ctx, options,
+                        allowFastFail, writeFlags);
             }
-            AddRequest.Builder addBuilder = AddRequest.newBuilder()
-                    .setLedgerId(ledgerId)
-                    .setEntryId(entryId)
-                    .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
+            return;
+        }
 
-            if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
-                addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
-            }
+        putCompletionKeyValue(completionKey,
+                              acquireAddCompletion(completionKey,
+                                                   cb, ctx, ledgerId, entryId));
+        final Channel c = channel;
+        if (c == null) {
+            // Manually release the binary data(variable "request") that we manually created when it can not be sent out
+            // because the channel is switching.
+            errorOut(completionKey);
+            ReferenceCountUtil.release(request);
+            return;
+        } else {
+            // addEntry times out on backpressure
+            writeAndFlush(c, completionKey, request, allowFastFail);
+        }
+    }
 
-            if (!writeFlags.isEmpty()) {
-                // add flags only if needed, in order to be able to talk with old bookies
-                addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
-            }
+    /**
+     * Returns the buffers of an entry as a single buffer holding a reference of each of them, to send the entry
+     * as the payload of an add request without copying it.
+     */
+    private static ByteBuf retainedPayload(ByteBufList toSend) {
+        if (toSend.size() == 1) {
+            return toSend.getBuffer(0).retainedSlice();
+        }
+        ByteBuf[] buffers = new ByteBuf[toSend.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = toSend.getBuffer(i).retainedSlice();
+        }
+        return Unpooled.wrappedBuffer(buffers);
+    }
+
+    /**
+     * Send an add request, with the entry either set as the body of the request, or sent as a payload next to
+     * it whose reference is passed on.
+     */
+    private void addEntryV3(final long ledgerId, byte[] masterKey, final long entryId, ByteString body,
+                            ByteBuf payload, WriteCallback cb, Object ctx, final int options,
+                            boolean allowFastFail, final EnumSet<WriteFlag> writeFlags) {
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = acquireTxnKey(txnId, OperationType.ADD_ENTRY);
 
+        // Build the request and calculate the total size to be included in the packet.
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.ADD_ENTRY)
+                .setTxnId(txnId);
+        if (((short) options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+        }
+
+        AddRequest.Builder addBuilder = AddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey));
+        if (payload == null) {
+            addBuilder.setBody(body);
+        }
+
+        if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
+            addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
+        }
+
+        if (!writeFlags.isEmpty()) {
+            // add flags only if needed, in order to be able to talk with old bookies
+            addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
+        }
+
+        final Object request;
+        if (payload == null) {
             request = withRequestContext(Request.newBuilder())
                     .setHeader(headerBuilder)
                     .setAddRequest(addBuilder)
                     .build();
+        } else {
+            // the body is carried by the payload
+            request = new PayloadMessageV3(withRequestContext(Request.newBuilder())
+                    .setHeader(headerBuilder)
+                    .setAddRequest(addBuilder.buildPartial())
+                    .buildPartial(), payload);
         }
 
         putCompletionKeyValue(completionKey,
@@ -842,8 +921,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                    cb, ctx, ledgerId, entryId));
         final Channel c = channel;
         if (c == null) {
-            // Manually release the binary data(variable "request") that we manually created when it can not be sent out
-            // because the channel is switching.
             errorOut(completionKey);
             ReferenceCountUtil.release(request);
             return;
@@ -853,6 +930,137 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    /**
+     * An add waiting to be sent, possibly together with the following entries of the same ledger.
+     */
+    private static class PendingRangeAdd {
+        final long ledgerId;
+        final byte[] masterKey;
+        final long entryId;
+        final ByteString body;
+        final WriteCallback cb;
+        final Object ctx;
+        final int options;
+        final boolean allowFastFail;
+        final EnumSet<WriteFlag> writeFlags;
+
+        PendingRangeAdd(long ledgerId, byte[] masterKey, long entryId, ByteString body, WriteCallback cb,
+                        Object ctx, int options, boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            this.ledgerId = ledgerId;
+            this.masterKey = masterKey;
+            this.entryId = entryId;
+            this.body = body;
+            this.cb = cb;
+            this.ctx = ctx;
+            this.options = options;
+            this.allowFastFail = allowFastFail;
+            this.writeFlags = writeFlags;
+        }
+
+        /**
+         * Whether this add can be sent in the same range add request of the previous one.
+         */
+        boolean follows(PendingRangeAdd previous) {
+            return ledgerId == previous.ledgerId
+                    && entryId == previous.entryId + 1
+                    && options == previous.options
+                    && allowFastFail == previous.allowFastFail
+                    && writeFlags.equals(previous.writeFlags);
+        }
+    }
+
+    private void enqueueRangeAdd(PendingRangeAdd add) {
+        final Channel c = channel;
+        if (c == null) {
+            addEntryV3(add.ledgerId, add.masterKey, add.entryId, add.body, null, add.cb, add.ctx, add.options,
+                    add.allowFastFail, add.writeFlags);
+            return;
+        }
+
+        boolean scheduleFlush;
+        synchronized (pendingRangeAdds) {
+            scheduleFlush = pendingRangeAdds.isEmpty();
+            pendingRangeAdds.add(add);
+        }
+        if (scheduleFlush) {
+            // The adds queued until the event loop runs the flush are coalesced together. Writes
+            // issued from outside the event loop are handed over to it anyway, so this does not
+            // add any latency.
+            try {
+                c.eventLoop().execute(this::flushRangeAdds);
+            } catch (RejectedExecutionException e) {
+                flushRangeAdds();
+            }
+        }
+    }
+
+    private void flushRangeAdds() {
+        final PendingRangeAdd[] adds;
+        synchronized (pendingRangeAdds) {
+            adds = pendingRangeAdds.toArray(new PendingRangeAdd[0]);
+            pendingRangeAdds.clear();
+        }
+
+        int start = 0;
+        while (start < adds.length) {
+            int end = start + 1;
+            while (end < adds.length && end - start < rangeAddMaxEntries && adds[end].follows(adds[end - 1])) {
+                end++;
+            }
+            if (end - start == 1) {
+                PendingRangeAdd add = adds[start];
+                addEntryV3(add.ledgerId, add.masterKey, add.entryId, add.body, null, add.cb, add.ctx, add.options,
+                        add.allowFastFail, add.writeFlags);
+            } else {
+                rangeAddEntriesV3(adds, start, end);
+            }
+            start = end;
+        }
+    }
+
+    private void rangeAddEntriesV3(PendingRangeAdd[] adds, int start, int end) {
+        final PendingRangeAdd first = adds[start];
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.RANGE_ADD_ENTRY);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.RANGE_ADD_ENTRY)
+                .setTxnId(txnId);
+        if (((short) first.options & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+            headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+        }
+
+        RangeAddRequest.Builder rangeAddBuilder = RangeAddRequest.newBuilder()
+                .setLedgerId(first.ledgerId)
+                .setFirstEntryId(first.entryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(first.masterKey));
+        AddCompletion[] completions = new AddCompletion[end - start];
+        for (int i = start; i < end; i++) {
+            rangeAddBuilder.addBody(adds[i].body);
+            completions[i - start] = acquireAddCompletion(completionKey, adds[i].cb, adds[i].ctx,
+                    adds[i].ledgerId, adds[i].entryId);
+        }
+
+        if (((short) first.options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
+            rangeAddBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
+        }
+
+        if (!first.writeFlags.isEmpty()) {
+            rangeAddBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(first.writeFlags));
+        }
+
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setRangeAddRequest(rangeAddBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new RangeAddCompletion(first.ledgerId, first.entryId, completions));
+        // addEntry times out on backpressure
+        writeAndFlush(channel, completionKey, request, first.allowFastFail);
+    }
+
     public void readLac(final long ledgerId, ReadLacCallback cb, Object ctx) {
         Object request = null;
         CompletionKey completionKey = null;
@@ -885,7 +1093,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     public void getListOfEntriesOfLedger(final long ledgerId, GetListOfEntriesOfLedgerCallback cb) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_LIST_OF_ENTRIES_OF_LEDGER);
-        completionObjects.put(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
+        putCompletionKeyValue(completionKey, new GetListOfEntriesOfLedgerCompletion(completionKey, cb, ledgerId));
 
         // Build the request.
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder().setVersion(ProtocolVersion.VERSION_THREE)
@@ -1051,10 +1259,51 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
 
+    /**
+     * Stream the entries of a ledger from {@code firstEntryId} to {@code lastEntryId} included.
+     * The bookie sends at most {@code credits} entries, the reader lets it send more through the
+     * {@link StreamReadFlowControl} passed with each entry.
+     */
+    public void streamReadEntries(final long ledgerId,
+                                  final long firstEntryId,
+                                  final long lastEntryId,
+                                  final int credits,
+                                  StreamReadEntryCallback cb,
+                                  Object ctx) {
+        if (useV2WireProtocol) {
+            LOG.error("Stream read is not supported by the v2 protocol, ledger {}", ledgerId);
+            executor.executeOrdered(ledgerId,
+                    () -> cb.streamComplete(BKException.Code.IllegalOpException, ledgerId, firstEntryId, ctx));
+            return;
+        }
+
+        final long txnId = getTxnId();
+        final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.STREAM_READ_ENTRY);
+
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.STREAM_READ_ENTRY)
+                .setTxnId(txnId);
+        StreamReadRequest.Builder streamReadBuilder = StreamReadRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId)
+                .setLastEntryId(lastEntryId)
+                .setCredits(credits);
+        final Request request = withRequestContext(Request.newBuilder())
+                .setHeader(headerBuilder)
+                .setStreamReadRequest(streamReadBuilder)
+                .build();
+
+        putCompletionKeyValue(completionKey,
+                              new StreamReadCompletion(completionKey, txnId, cb, ctx, ledgerId, firstEntryId,
+                                                       credits));
+        writeAndFlush(channel, completionKey, request);
+    }
+
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new GetBookieInfoCompletion(
                                       completionKey, cb, ctx));
 
@@ -1079,9 +1328,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return value.maybeTimeout();
     };
 
+    private static final ConcurrentLongHashMap.LongObjectPredicate<CompletionValue> txnTimeoutCheck =
+        (txnId, value) -> value.maybeTimeout();
+
     public void checkTimeoutOnPendingOperations() {
         int timedOutOperations = completionObjects.removeIf(timeoutCheck);
 
+        timedOutOperations += txnCompletionObjects.removeIf(txnTimeoutCheck);
+
         timedOutOperations += completionObjectsV2Conflicts.removeIf(timeoutCheck);
 
         if (timedOutOperations > 0) {
@@ -1201,11 +1455,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         try {
             final long startTime = MathUtils.nowInNano();
+            // The key may be recycled by the time the write completes, only its txnId is safe to use then
+            final long txnId = key instanceof TxnCompletionKey ? ((TxnCompletionKey) key).txnId : NO_TXN_ID;
 
             ChannelPromise promise = channel.newPromise().addListener(future -> {
                 if (future.isSuccess()) {
                     nettyOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
-                    CompletionValue completion = completionObjects.get(key);
+                    CompletionValue completion = txnId != NO_TXN_ID
+                            ? txnCompletionObjects.get(txnId) : completionObjects.get(key);
                     if (completion != null) {
                         completion.setOutstanding();
                     }
@@ -1227,12 +1484,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = getCompletionValue(key);
         if (completion != null) {
             completion.errorOut();
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut());
         }
     }
 
@@ -1240,12 +1494,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         if (LOG.isDebugEnabled()) {
             LOG.debug("Removing completion key: {}", key);
         }
-        CompletionValue completion = completionObjects.remove(key);
+        CompletionValue completion = getCompletionValue(key);
         if (completion != null) {
             completion.errorOut(rc);
-        } else {
-            // If there's no completion object here, try in the multimap
-            completionObjectsV2Conflicts.removeAny(key).ifPresent(c -> c.errorOut(rc));
         }
     }
 
@@ -1282,6 +1533,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         for (CompletionKey key : completionObjects.keys()) {
             errorOut(key, rc);
         }
+        for (long txnId : txnCompletionObjects.keys()) {
+            CompletionValue completion = txnCompletionObjects.remove(txnId);
+            if (completion != null) {
+                completion.errorOut(rc);
+            }
+        }
     }
 
     void recordError() {
@@ -1394,7 +1651,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             readV2Response(response);
         } else if (msg instanceof Response) {
             Response response = (Response) msg;
-            readV3Response(response);
+            readV3Response(response, null);
+        } else if (msg instanceof PayloadMessageV3) {
+            PayloadMessageV3 payloadMessage = (PayloadMessageV3) msg;
+            readV3Response((Response) payloadMessage.getMessage(), payloadMessage.content());
         } else {
             ctx.fireChannelRead(msg);
         }
@@ -1404,14 +1664,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         OperationType operationType = getOperationType(response.getOpCode());
         StatusCode status = getStatusCodeFromErrorCode(response.errorCode);
 
-        CompletionKey key;
+        CompletionValue completionValue;
         if (OperationType.BATCH_READ_ENTRY == operationType) {
-            key = new TxnCompletionKey(((BookieProtocol.BatchedReadResponse) response).getRequestId(), operationType);
+            completionValue = txnCompletionObjects.remove(
+                    ((BookieProtocol.BatchedReadResponse) response).getRequestId());
         } else {
-            key = acquireV2Key(response.ledgerId, response.entryId, operationType);
+            CompletionKey key = acquireV2Key(response.ledgerId, response.entryId, operationType);
+            completionValue = getCompletionValue(key);
+            key.release();
         }
-        CompletionValue completionValue = getCompletionValue(key);
-        key.release();
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1525,11 +1786,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    private void readV3Response(final Response response) {
+    private void readV3Response(final Response response, final ByteBuf payload) {
         final BKPacketHeader header = response.getHeader();
 
-        final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
-        final CompletionValue completionValue = completionObjects.get(key);
+        final long txnId = header.getTxnId();
+        final CompletionValue completionValue = txnCompletionObjects.get(txnId);
 
         if (null == completionValue) {
             // Unexpected response, so log it. The txnId should have been present.
@@ -1537,13 +1798,22 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 LOG.debug("Unexpected response received from bookie : " + bookieId + " for type : "
                         + header.getOperation() + " and txnId : " + header.getTxnId());
             }
+            ReferenceCountUtil.release(payload);
         } else {
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey, new Runnable() {
                 @Override
                 public void run() {
                     completionValue.restoreMdcContext();
-                    completionValue.handleV3Response(response);
+                    if (null == payload) {
+                        completionValue.handleV3Response(response);
+                    } else {
+                        try {
+                            completionValue.handleV3Response(response, payload);
+                        } finally {
+                            payload.release();
+                        }
+                    }
                 }
 
                 @Override
@@ -1553,9 +1823,13 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                          completionValue.ledgerId, completionValue.entryId);
                 }
             });
+            if (!completionValue.isLastResponse(response)) {
+                // More responses are expected for this request
+                return;
+            }
         }
 
-        completionObjects.remove(key);
+        txnCompletionObjects.remove(txnId);
     }
 
     void initTLSHandshake() {
@@ -1760,6 +2034,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         public abstract void handleV3Response(
                 BookkeeperProtocol.Response response);
+
+        /**
+         * Handle a response received with the body of its read response as a payload. The payload is released
+         * once this method returns.
+         */
+        public void handleV3Response(BookkeeperProtocol.Response response, ByteBuf payload) {
+            handleV3Response(response);
+        }
+
+        /**
+         * Whether the response completes the request. Only streaming requests receive several responses.
+         */
+        boolean isLastResponse(BookkeeperProtocol.Response response) {
+            return true;
+        }
     }
 
     // visible for testing
@@ -1973,17 +2262,24 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
             BookieProtocol.ReadResponse readResponse = (BookieProtocol.ReadResponse) response;
             handleReadResponse(ledgerId, entryId, status, readResponse.getData(),
-                               INVALID_ENTRY_ID, -1L);
+                               INVALID_ENTRY_ID, -1L, null);
         }
 
         @Override
         public void handleV3Response(BookkeeperProtocol.Response response) {
+            handleV3Response(response, null);
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response, ByteBuf payload) {
             readEntryOutstanding.dec();
             ReadResponse readResponse = response.getReadResponse();
             StatusCode status = response.getStatus() == StatusCode.EOK
                 ? readResponse.getStatus() : response.getStatus();
             ByteBuf buffer = Unpooled.EMPTY_BUFFER;
-            if (readResponse.hasBody()) {
+            if (null != payload) {
+                buffer = payload;
+            } else if (readResponse.hasBody()) {
                 buffer = Unpooled.wrappedBuffer(readResponse.getBody().asReadOnlyByteBuffer());
             }
             long maxLAC = INVALID_ENTRY_ID;
@@ -1994,11 +2290,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             if (readResponse.hasLacUpdateTimestamp()) {
                 lacUpdateTimestamp = readResponse.getLacUpdateTimestamp();
             }
+            Boolean longPollWaited = readResponse.hasLongPollWaited() ? readResponse.getLongPollWaited() : null;
             handleReadResponse(readResponse.getLedgerId(),
                                readResponse.getEntryId(),
-                               status, buffer, maxLAC, lacUpdateTimestamp);
-            ReferenceCountUtil.release(
-                    buffer); // meaningless using unpooled, but client may expect to hold the last reference
+                               status, buffer, maxLAC, lacUpdateTimestamp, longPollWaited);
+            if (null == payload) {
+                ReferenceCountUtil.release(
+                        buffer); // meaningless using unpooled, but client may expect to hold the last reference
+            }
         }
 
         private void handleReadResponse(long ledgerId,
@@ -2006,7 +2305,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                         StatusCode status,
                                         ByteBuf buffer,
                                         long maxLAC, // max known lac piggy-back from bookies
-                                        long lacUpdateTimestamp) { // the timestamp when the lac is updated.
+                                        long lacUpdateTimestamp, // the timestamp when the lac is updated.
+                                        Boolean longPollWaited) { // null if the bookie did not tell
             int readableBytes = buffer.readableBytes();
             if (LOG.isDebugEnabled()) {
                 logResponse(status, "ledger", ledgerId, "entry", entryId, "entryLength", readableBytes);
@@ -2020,6 +2320,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             if (lacUpdateTimestamp > -1L && (ctx instanceof ReadLastConfirmedAndEntryContext)) {
                 ((ReadLastConfirmedAndEntryContext) ctx).setLacUpdateTimestamp(lacUpdateTimestamp);
             }
+            if (null != longPollWaited && (ctx instanceof ReadLastConfirmedAndEntryContext)) {
+                ((ReadLastConfirmedAndEntryContext) ctx).setLongPollWaited(longPollWaited);
+            }
             cb.readEntryComplete(rc, ledgerId, entryId, buffer.slice(), ctx);
         }
     }
@@ -2207,9 +2510,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
 
             int rc = convertStatus(status, BKException.Code.ReadException);
-            cb.getBookieInfoComplete(rc,
-                                     new BookieInfo(totalDiskSpace,
-                                                    freeDiskSpace), ctx);
+            BookieInfo bookieInfo;
+            if (getBookieInfoResponse.hasJournalQueueLength()
+                    && getBookieInfoResponse.hasWriteCacheCapacity()
+                    && getBookieInfoResponse.hasReadQueueLength()) {
+                bookieInfo = new BookieInfo(totalDiskSpace,
+                                            freeDiskSpace,
+                                            getBookieInfoResponse.getJournalQueueLength(),
+                                            getBookieInfoResponse.getWriteCacheSize(),
+                                            getBookieInfoResponse.getWriteCacheCapacity(),
+                                            getBookieInfoResponse.getReadQueueLength());
+            } else {
+                // the load was not requested, or the bookie does not report it
+                bookieInfo = new BookieInfo(totalDiskSpace, freeDiskSpace);
+            }
+            cb.getBookieInfoComplete(rc, bookieInfo, ctx);
         }
     }
 
@@ -2374,17 +2689,212 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
-    // visable for testing
-    CompletionKey newCompletionKey(long txnId, OperationType operationType) {
-        return new TxnCompletionKey(txnId, operationType);
+    /**
+     * Completion of a stream read request, which receives one response per entry of the stream.
+     */
+    class StreamReadCompletion extends CompletionValue implements StreamReadFlowControl {
+        final CompletionKey key;
+        final long txnId;
+        final StreamReadEntryCallback cb;
+        // Credits granted to the bookie and not yet used by an entry
+        final AtomicLong outstandingCredits;
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        volatile long lastResponseNanos;
+        volatile long nextEntryId;
+
+        StreamReadCompletion(CompletionKey key, long txnId, StreamReadEntryCallback cb, Object ctx,
+                             long ledgerId, long firstEntryId, int credits) {
+            super("StreamRead", ctx, ledgerId, firstEntryId, readEntryOpLogger, readTimeoutOpLogger);
+            this.key = key;
+            this.txnId = txnId;
+            this.cb = cb;
+            this.outstandingCredits = new AtomicLong(credits);
+            this.lastResponseNanos = startTime;
+            this.nextEntryId = firstEntryId;
+        }
+
+        @Override
+        boolean maybeTimeout() {
+            // A stream only times out when the bookie is idle while it has credits to send entries
+            if (outstandingCredits.get() > 0
+                    && MathUtils.elapsedNanos(lastResponseNanos) >= readEntryTimeoutNanos) {
+                timeout();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(() -> complete(rc));
+        }
+
+        @Override
+        boolean isLastResponse(BookkeeperProtocol.Response response) {
+            return response.getStatus() != StatusCode.EOK
+                    || response.getStreamReadResponse().getLast();
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            lastResponseNanos = MathUtils.nowInNano();
+            StreamReadResponse streamReadResponse = response.getStreamReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? streamReadResponse.getStatus() : response.getStatus();
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "entry", streamReadResponse.getEntryId());
+            }
+
+            if (status == StatusCode.EOK && streamReadResponse.hasBody() && !completed.get()) {
+                outstandingCredits.decrementAndGet();
+                nextEntryId = streamReadResponse.getEntryId() + 1;
+                ByteBuf buffer = Unpooled.wrappedBuffer(streamReadResponse.getBody().asReadOnlyByteBuffer());
+                cb.readEntryComplete(ledgerId, streamReadResponse.getEntryId(), buffer, this, ctx);
+                ReferenceCountUtil.release(buffer);
+            }
+            if (status != StatusCode.EOK || streamReadResponse.getLast()) {
+                complete(convertStatus(status, BKException.Code.ReadException));
+            }
+        }
+
+        private void complete(int rc) {
+            if (completed.compareAndSet(false, true)) {
+                logOpResult(rc);
+                cb.streamComplete(rc, ledgerId, nextEntryId, ctx);
+            }
+        }
+
+        @Override
+        public void grantCredits(int credits) {
+            if (completed.get()) {
+                return;
+            }
+            outstandingCredits.addAndGet(credits);
+            lastResponseNanos = MathUtils.nowInNano();
+            sendCreditRequest(StreamReadCreditRequest.newBuilder()
+                    .setStreamTxnId(txnId)
+                    .setCredits(credits));
+        }
+
+        @Override
+        public void cancel() {
+            if (completed.compareAndSet(false, true)) {
+                removeCompletionValue(key, this);
+                sendCreditRequest(StreamReadCreditRequest.newBuilder()
+                        .setStreamTxnId(txnId)
+                        .setCancel(true));
+            }
+        }
+
+        private void sendCreditRequest(StreamReadCreditRequest.Builder creditRequest) {
+            final Channel c = channel;
+            if (c == null) {
+                // The stream fails with the channel
+                return;
+            }
+            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                    .setVersion(ProtocolVersion.VERSION_THREE)
+                    .setOperation(OperationType.STREAM_READ_CREDIT)
+                    .setTxnId(getTxnId());
+            c.writeAndFlush(Request.newBuilder()
+                    .setHeader(headerBuilder)
+                    .setStreamReadCreditRequest(creditRequest)
+                    .build(), c.voidPromise());
+        }
+    }
+
+    /**
+     * Completion of a range add request, completing the adds of all the entries of the range.
+     */
+    class RangeAddCompletion extends CompletionValue {
+        final AddCompletion[] completions;
+
+        RangeAddCompletion(long ledgerId, long firstEntryId, AddCompletion[] completions) {
+            super("RangeAdd", null, ledgerId, firstEntryId, addEntryOpLogger, addTimeoutOpLogger);
+            this.completions = completions;
+        }
+
+        @Override
+        boolean maybeTimeout() {
+            if (MathUtils.elapsedNanos(startTime) >= addEntryTimeoutNanos) {
+                timeout();
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            for (AddCompletion completion : completions) {
+                completion.errorOut(rc);
+            }
+        }
+
+        @Override
+        public void setOutstanding() {
+            addEntryOutstanding.addCount(completions.length);
+        }
+
+        @Override
+        public void handleV3Response(
+                BookkeeperProtocol.Response response) {
+            addEntryOutstanding.addCount(-completions.length);
+            RangeAddResponse rangeAddResponse = response.getRangeAddResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? rangeAddResponse.getStatus() : response.getStatus();
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "firstEntry", entryId, "entries", completions.length);
+            }
+            for (AddCompletion completion : completions) {
+                completion.handleResponse(completion.ledgerId, completion.entryId, status);
+            }
+        }
+    }
+
+    private static final long NO_TXN_ID = -1L;
+
+    private final Recycler<TxnCompletionKey> txnKeyRecycler = new Recycler<TxnCompletionKey>() {
+            @Override
+            protected TxnCompletionKey newObject(Recycler.Handle<TxnCompletionKey> handle) {
+                return new TxnCompletionKey(handle);
+            }
+        };
+
+    /**
+     * Acquire a recycled key, only for completions releasing their key once, like {@link AddCompletion}.
+     */
+    TxnCompletionKey acquireTxnKey(long txnId, OperationType operationType) {
+        TxnCompletionKey key = txnKeyRecycler.get();
+        key.txnId = txnId;
+        key.operationType = operationType;
+        return key;
     }
 
     class TxnCompletionKey extends CompletionKey {
-        final long txnId;
+        private final Handle<TxnCompletionKey> recyclerHandle;
+        long txnId;
 
         public TxnCompletionKey(long txnId, OperationType operationType) {
             super(operationType);
             this.txnId = txnId;
+            this.recyclerHandle = null;
+        }
+
+        private TxnCompletionKey(Handle<TxnCompletionKey> handle) {
+            super(null);
+            this.recyclerHandle = handle;
         }
 
         @Override
@@ -2406,6 +2916,12 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             return String.format("TxnId(%d), OperationType(%s)", txnId, operationType);
         }
 
+        @Override
+        public void release() {
+            if (recyclerHandle != null) {
+                recyclerHandle.recycle(this);
+            }
+        }
     }
 
     abstract class CompletionKey {
@@ -2452,6 +2968,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     private void putCompletionKeyValue(CompletionKey key, CompletionValue value) {
+        if (key instanceof TxnCompletionKey) {
+            txnCompletionObjects.put(((TxnCompletionKey) key).txnId, value);
+            return;
+        }
         CompletionValue existingValue = completionObjects.putIfAbsent(key, value);
         if (existingValue != null) { // will only happen for V2 keys, as V3 have unique txnid
             // There's a pending read request on same ledger/entry. Use the multimap to track all of them
@@ -2460,6 +2980,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     private CompletionValue getCompletionValue(CompletionKey key) {
+        if (key instanceof TxnCompletionKey) {
+            return txnCompletionObjects.remove(((TxnCompletionKey) key).txnId);
+        }
         CompletionValue completionValue = completionObjects.remove(key);
         if (completionValue == null) {
             // If there's no completion object here, try in the multimap
@@ -2468,6 +2991,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         return completionValue;
     }
 
+    private boolean removeCompletionValue(CompletionKey key, CompletionValue value) {
+        if (key instanceof TxnCompletionKey) {
+            return txnCompletionObjects.remove(((TxnCompletionKey) key).txnId, value);
+        }
+        return completionObjects.remove(key, value)
+                || completionObjectsV2Conflicts.removeIf((k, v) -> k.equals(key) && v == value) > 0;
+    }
+
     private long getTxnId() {
         return txnIdGenerator.incrementAndGet();
     }
@@ -2697,7 +3228,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         assert state == ConnectionState.CONNECTING;
         final long txnId = getTxnId();
         final CompletionKey completionKey = new TxnCompletionKey(txnId, OperationType.START_TLS);
-        completionObjects.put(completionKey,
+        putCompletionKeyValue(completionKey,
                               new StartTLSCompletion(completionKey));
         BookkeeperProtocol.Request.Builder h = withRequestContext(BookkeeperProtocol.Request.newBuilder());
         BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
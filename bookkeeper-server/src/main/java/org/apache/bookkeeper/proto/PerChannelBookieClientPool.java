@@ -50,6 +50,31 @@ public interface PerChannelBookieClientPool {
      */
     void obtain(GenericCallback<PerChannelBookieClient> callback, long key, boolean forceUseV3);
 
+    /**
+     * Obtain a channel from channel pool to execute an operation which does not need to be sent on
+     * the same channel as the other operations of the same key, such as a read.
+     *
+     * @param callback
+     *          callback to return channel from channel pool.
+     */
+    default void obtainUnordered(GenericCallback<PerChannelBookieClient> callback, long key) {
+        obtain(callback, key);
+    }
+
+    /**
+     * Obtain a channel from channel pool by version to execute an operation which does not need to be
+     * sent on the same channel as the other operations of the same key, such as a read.
+     *
+     * @param callback
+     *          callback to return channel from channel pool
+     * @param forceUseV3
+     *          whether or not use v3 protocol for connection
+     */
+    default void obtainUnordered(GenericCallback<PerChannelBookieClient> callback, long key,
+                                 boolean forceUseV3) {
+        obtain(callback, key, forceUseV3);
+    }
+
     /**
      * Returns status of a client.
      * It is suggested to delay/throttle requests to this channel if isWritable is false.
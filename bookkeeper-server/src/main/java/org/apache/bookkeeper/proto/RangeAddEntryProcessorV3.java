@@ -0,0 +1,254 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieException.OperationRejectedException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes a {@link RangeAddRequest}, carrying consecutive entries of a single ledger.
+ *
+ * <p>The entries are added to the bookie together and enqueued into the journal as one group.
+ * A single {@link RangeAddResponse} is sent once all of them are acknowledged, or as soon as
+ * one of them fails.
+ */
+class RangeAddEntryProcessorV3 extends PacketProcessorBaseV3 {
+    private static final Logger logger = LoggerFactory.getLogger(RangeAddEntryProcessorV3.class);
+
+    private final AtomicBoolean responseSent = new AtomicBoolean(false);
+
+    // whether the processor runs on an IO thread, and gives up rather than wait for the bookie
+    private final boolean nonBlocking;
+
+    public RangeAddEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
+                                    BookieRequestProcessor requestProcessor) {
+        this(request, requestHandler, requestProcessor, false);
+    }
+
+    /**
+     * Create a processor for a range add request.
+     *
+     * @param nonBlocking whether the processor runs on an IO thread: the caller already acquired the add
+     *                    permit of the request, and the add is rejected rather than wait for the bookie
+     */
+    public RangeAddEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
+                                    BookieRequestProcessor requestProcessor, boolean nonBlocking) {
+        super(request, requestHandler, requestProcessor);
+        this.nonBlocking = nonBlocking;
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(), nonBlocking);
+    }
+
+    // Returns null if there is no exception thrown
+    private StatusCode addEntries() {
+        final long startTimeNanos = MathUtils.nowInNano();
+        RangeAddRequest rangeAddRequest = request.getRangeAddRequest();
+        final long ledgerId = rangeAddRequest.getLedgerId();
+        final long firstEntryId = rangeAddRequest.getFirstEntryId();
+        final int numEntries = rangeAddRequest.getBodyCount();
+
+        if (!isVersionCompatible()) {
+            return StatusCode.EBADVERSION;
+        }
+
+        if (numEntries == 0) {
+            return StatusCode.EBADREQ;
+        }
+
+        // The bookie checks that the entries are consecutive, starting from the first body. The response
+        // acknowledges the range by its first entry id, which must then be the one of the first body.
+        ByteBuffer firstBody = rangeAddRequest.getBody(0).asReadOnlyByteBuffer();
+        if (firstBody.remaining() < 2 * Long.BYTES || firstBody.getLong(firstBody.position() + Long.BYTES)
+                != firstEntryId) {
+            logger.warn("The first entry of the range added to ledger {} is not entry {}", ledgerId, firstEntryId);
+            return StatusCode.EBADREQ;
+        }
+
+        if (requestProcessor.getBookie().isReadOnly()
+            && !(RequestUtils.isHighPriority(request)
+                    && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
+            logger.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            return StatusCode.EREADONLY;
+        }
+
+        final AtomicInteger remaining = new AtomicInteger(numEntries);
+        BookkeeperInternalCallbacks.WriteCallback wcb = new BookkeeperInternalCallbacks.WriteCallback() {
+            @Override
+            public void writeComplete(int rc, long ledgerId, long entryId,
+                                      BookieId addr, Object ctx) {
+                if (BookieProtocol.EOK == rc) {
+                    requestProcessor.getRequestStats().getAddEntryStats()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                } else {
+                    requestProcessor.getRequestStats().getAddEntryStats()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+                }
+
+                switch (rc) {
+                    case BookieProtocol.EOK:
+                        if (remaining.decrementAndGet() == 0) {
+                            sendRangeAddResponse(StatusCode.EOK);
+                        }
+                        break;
+                    case BookieProtocol.EIO:
+                        sendRangeAddResponse(StatusCode.EIO);
+                        break;
+                    default:
+                        sendRangeAddResponse(StatusCode.EUA);
+                        break;
+                }
+            }
+        };
+        final EnumSet<WriteFlag> writeFlags;
+        if (rangeAddRequest.hasWriteFlags()) {
+            writeFlags = WriteFlag.getWriteFlags(rangeAddRequest.getWriteFlags());
+        } else {
+            writeFlags = WriteFlag.NONE;
+        }
+        final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        StatusCode status = null;
+        byte[] masterKey = rangeAddRequest.getMasterKey().toByteArray();
+        ByteBuf[] entriesToAdd = new ByteBuf[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            entriesToAdd[i] = Unpooled.wrappedBuffer(rangeAddRequest.getBody(i).asReadOnlyByteBuffer());
+        }
+        try {
+            if (RequestUtils.hasFlag(rangeAddRequest, AddRequest.Flag.RECOVERY_ADD)) {
+                for (ByteBuf entryToAdd : entriesToAdd) {
+                    requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb,
+                            requestHandler.ctx().channel(), masterKey);
+                }
+                status = StatusCode.EOK;
+            } else if (nonBlocking) {
+                // when it gives up, the entries already journaled are acknowledged after the response was sent
+                if (requestProcessor.getBookie().tryAddEntries(entriesToAdd, ackBeforeSync, wcb,
+                        requestHandler.ctx().channel(), masterKey)) {
+                    status = StatusCode.EOK;
+                } else {
+                    requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+                    status = StatusCode.ETOOMANYREQUESTS;
+                }
+            } else {
+                requestProcessor.getBookie().addEntries(entriesToAdd, ackBeforeSync, wcb,
+                        requestHandler.ctx().channel(), masterKey);
+                status = StatusCode.EOK;
+            }
+        } catch (OperationRejectedException e) {
+            requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+            // Avoid to log each occurence of this exception as this can happen when the ledger storage is
+            // unable to keep up with the write rate.
+            if (logger.isDebugEnabled()) {
+                logger.debug("Operation rejected while writing {}", request, e);
+            }
+            status = StatusCode.ETOOMANYREQUESTS;
+        } catch (IOException e) {
+            logger.error("Error writing {} entries from entry:{} to ledger:{}",
+                    numEntries, firstEntryId, ledgerId, e);
+            status = StatusCode.EIO;
+        } catch (BookieException.LedgerFencedException e) {
+            logger.error("Ledger fenced while writing {} entries from entry:{} to ledger:{}",
+                    numEntries, firstEntryId, ledgerId, e);
+            status = StatusCode.EFENCED;
+        } catch (BookieException e) {
+            logger.error("Unauthorized access to ledger:{} while writing {} entries from entry:{}",
+                    ledgerId, numEntries, firstEntryId, e);
+            status = StatusCode.EUA;
+        } catch (Throwable t) {
+            logger.error("Unexpected exception while writing {} entries from {}@{} : ",
+                    numEntries, firstEntryId, ledgerId, t);
+            // some bad request which cause unexpected exception
+            status = StatusCode.EBADREQ;
+        }
+
+        // If everything is okay, we return null so that the calling function
+        // doesn't return a response back to the caller.
+        if (!status.equals(StatusCode.EOK)) {
+            return status;
+        }
+        return null;
+    }
+
+    void sendRangeAddResponse(StatusCode status) {
+        // The first failure, or the last successful entry, completes the whole range
+        if (!responseSent.compareAndSet(false, true)) {
+            return;
+        }
+        RangeAddRequest rangeAddRequest = request.getRangeAddRequest();
+        RangeAddResponse.Builder rangeAddResponse = RangeAddResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(rangeAddRequest.getLedgerId())
+                .setFirstEntryId(rangeAddRequest.getFirstEntryId())
+                .setNumEntries(rangeAddRequest.getBodyCount());
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(status)
+                .setRangeAddResponse(rangeAddResponse);
+        Response resp = response.build();
+        sendResponse(status, resp, requestProcessor.getRequestStats().getAddRequestStats());
+    }
+
+    @Override
+    public void run() {
+        requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        requestProcessor.onRequestScheduled(requestHandler.ctx().channel(), enqueueNanos);
+        StatusCode status = addEntries();
+        if (null != status) {
+            // This means there was an error and we should send this back.
+            sendRangeAddResponse(status);
+        }
+    }
+
+    @Override
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        super.sendResponse(code, response, statsLogger);
+        requestProcessor.onAddRequestFinish(requestHandler.ctx().channel());
+    }
+
+    /**
+     * this toString method filters out body and masterKey from the output.
+     * masterKey contains the password of the ledger and body is customer data,
+     * so it is not appropriate to have these in logs or system output.
+     */
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -42,17 +42,35 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
 
     protected ExecutorService fenceThreadPool;
     protected boolean throttleReadResponses;
+    // entry already read from the ledger storage caches, owned by this processor
+    private ByteBuf cachedEntry;
 
     public static ReadEntryProcessor create(ReadRequest request,
                                             BookieRequestHandler requestHandler,
                                             BookieRequestProcessor requestProcessor,
                                             ExecutorService fenceThreadPool,
                                             boolean throttleReadResponses) {
+        return create(request, requestHandler, requestProcessor, fenceThreadPool, throttleReadResponses, null);
+    }
+
+    /**
+     * Create a processor for a read request.
+     *
+     * @param cachedEntry the entry if the caller already read it from the ledger storage caches, in which case the
+     *                    caller also acquired the read permit of the request, or null
+     */
+    public static ReadEntryProcessor create(ReadRequest request,
+                                            BookieRequestHandler requestHandler,
+                                            BookieRequestProcessor requestProcessor,
+                                            ExecutorService fenceThreadPool,
+                                            boolean throttleReadResponses,
+                                            ByteBuf cachedEntry) {
         ReadEntryProcessor rep = RECYCLER.get();
         rep.init(request, requestHandler, requestProcessor);
         rep.fenceThreadPool = fenceThreadPool;
         rep.throttleReadResponses = throttleReadResponses;
-        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+        rep.cachedEntry = cachedEntry;
+        requestProcessor.onReadRequestStart(requestHandler.ctx().channel(), null != cachedEntry);
         return rep;
     }
 
@@ -65,7 +83,7 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
-            requestProcessor.onReadRequestFinish();
+            requestProcessor.onReadRequestFinish(requestHandler.ctx().channel());
             recycle();
             return;
         }
@@ -128,6 +146,11 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
     }
 
     protected ReferenceCounted readData() throws Exception {
+        if (null != cachedEntry) {
+            ByteBuf entry = cachedEntry;
+            cachedEntry = null;
+            return entry;
+        }
         return requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
     }
 
@@ -200,6 +223,9 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
 
     void recycle() {
         request.recycle();
+        // the cached entry is left over if the request was dropped before reading it
+        ReferenceCountUtil.release(cachedEntry);
+        cachedEntry = null;
         super.reset();
         if (this.recyclerHandle != null) {
             this.recyclerHandle.recycle(this);
@@ -18,7 +18,6 @@
 package org.apache.bookkeeper.proto;
 
 import com.google.common.base.Stopwatch;
-import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.util.ReferenceCountUtil;
@@ -48,10 +47,19 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
 
     private CompletableFuture<Boolean> fenceResult = null;
 
+    // body of the entry read, sent as the payload of the next response
+    private ByteBuf payload = null;
+
     protected final ReadRequest readRequest;
     protected final long ledgerId;
     protected final long entryId;
 
+    // entry already read from the ledger storage caches, owned by this processor
+    private ByteBuf cachedEntry;
+
+    // long poll reads are not counted by the admission control
+    private final boolean admissionControlled;
+
     // Stats
     protected final OpStatsLogger readStats;
     protected final OpStatsLogger reqStats;
@@ -60,10 +68,27 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                                 BookieRequestHandler requestHandler,
                                 BookieRequestProcessor requestProcessor,
                                 ExecutorService fenceThreadPool) {
-        super(request, requestHandler, requestProcessor);
-        requestProcessor.onReadRequestStart(requestHandler.ctx().channel());
+        this(request, requestHandler, requestProcessor, fenceThreadPool, null);
+    }
 
+    /**
+     * Create a processor for a read request.
+     *
+     * @param cachedEntry the entry if the caller already read it from the ledger storage caches, in which case the
+     *                    caller also acquired the read permit of the request, or null
+     */
+    public ReadEntryProcessorV3(Request request,
+                                BookieRequestHandler requestHandler,
+                                BookieRequestProcessor requestProcessor,
+                                ExecutorService fenceThreadPool,
+                                ByteBuf cachedEntry) {
+        super(request, requestHandler, requestProcessor);
+        this.cachedEntry = cachedEntry;
         this.readRequest = request.getReadRequest();
+        this.admissionControlled = !RequestUtils.isLongPollReadRequest(readRequest);
+        requestProcessor.onReadRequestStart(requestHandler.ctx().channel(), null != cachedEntry,
+                admissionControlled);
+
         this.ledgerId = readRequest.getLedgerId();
         this.entryId = readRequest.getEntryId();
         if (RequestUtils.isFenceRequest(this.readRequest)) {
@@ -170,13 +195,19 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                                      boolean readLACPiggyBack,
                                      Stopwatch startTimeSw)
         throws IOException, BookieException {
-        ByteBuf entryBody = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+        ByteBuf entryBody;
+        if (null != cachedEntry && entryId == this.entryId) {
+            entryBody = cachedEntry;
+            cachedEntry = null;
+        } else {
+            entryBody = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+        }
         if (null != fenceResult) {
             handleReadResultForFenceRead(entryBody, readResponseBuilder, entryId, startTimeSw);
             return null;
         } else {
+            boolean success = false;
             try {
-                readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
                 if (readLACPiggyBack) {
                     readResponseBuilder.setEntryId(entryId);
                 } else {
@@ -185,9 +216,14 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 }
                 registerSuccessfulEvent(readStats, startTimeSw);
                 readResponseBuilder.setStatus(StatusCode.EOK);
-                return readResponseBuilder.build();
+                ReadResponse readResponse = readResponseBuilder.build();
+                payload = entryBody;
+                success = true;
+                return readResponse;
             } finally {
-                ReferenceCountUtil.release(entryBody);
+                if (!success) {
+                    ReferenceCountUtil.release(entryBody);
+                }
             }
         }
     }
@@ -250,15 +286,18 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     public void run() {
         requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
             MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        requestProcessor.onRequestScheduled(requestHandler.ctx().channel(), enqueueNanos);
         if (!requestHandler.ctx().channel().isOpen()) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Dropping read request for closed channel: {}", requestHandler.ctx().channel());
             }
-            requestProcessor.onReadRequestFinish();
+            releaseCachedEntry();
+            requestProcessor.onReadRequestFinish(requestHandler.ctx().channel(), admissionControlled);
             return;
         }
 
         if (!isVersionCompatible()) {
+            releaseCachedEntry();
             ReadResponse readResponse = ReadResponse.newBuilder()
                 .setLedgerId(ledgerId)
                 .setEntryId(entryId)
@@ -271,6 +310,11 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         executeOp();
     }
 
+    private void releaseCachedEntry() {
+        ReferenceCountUtil.release(cachedEntry);
+        cachedEntry = null;
+    }
+
     protected void executeOp() {
         ReadResponse readResponse = getReadResponse();
         if (null != readResponse) {
@@ -285,16 +329,15 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         if (!fenceResult) {
             status = StatusCode.EIO;
             registerFailedEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
+            if (null != entryBody) {
+                ReferenceCountUtil.release(entryBody);
+            }
         } else {
             status = StatusCode.EOK;
-            readResponse.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+            payload = entryBody;
             registerSuccessfulEvent(requestProcessor.getRequestStats().getFenceReadWaitStats(), lastPhaseStartTime);
         }
 
-        if (null != entryBody) {
-            ReferenceCountUtil.release(entryBody);
-        }
-
         readResponse.setStatus(status);
     }
 
@@ -324,10 +367,15 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 .setHeader(getHeader())
                 .setStatus(readResponse.getStatus())
                 .setReadResponse(readResponse);
+        Object msg = response.build();
+        if (null != payload) {
+            msg = new PayloadMessageV3((Response) msg, payload);
+            payload = null;
+        }
         sendResponse(response.getStatus(),
-                     response.build(),
+                     msg,
                      reqStats);
-        requestProcessor.onReadRequestFinish();
+        requestProcessor.onReadRequestFinish(requestHandler.ctx().channel(), admissionControlled);
     }
 
     //
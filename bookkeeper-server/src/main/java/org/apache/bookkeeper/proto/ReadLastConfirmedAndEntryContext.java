@@ -19,6 +19,7 @@ package org.apache.bookkeeper.proto;
 
 import java.util.Optional;
 import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
 
@@ -29,12 +30,16 @@ public class ReadLastConfirmedAndEntryContext implements ReadEntryCallbackCtx {
 
     final int bookieIndex;
     final BookieId bookie;
+    final long sentTimeNanos;
     long lac = LedgerHandle.INVALID_ENTRY_ID;
     Optional<Long> lacUpdateTimestamp = Optional.empty();
+    // unknown with the bookies which do not tell whether they waited
+    Optional<Boolean> longPollWaited = Optional.empty();
 
     public ReadLastConfirmedAndEntryContext(int bookieIndex, BookieId bookie) {
         this.bookieIndex = bookieIndex;
         this.bookie = bookie;
+        this.sentTimeNanos = MathUtils.nowInNano();
     }
 
     public int getBookieIndex() {
@@ -45,6 +50,10 @@ public class ReadLastConfirmedAndEntryContext implements ReadEntryCallbackCtx {
         return bookie;
     }
 
+    public long getSentTimeNanos() {
+        return sentTimeNanos;
+    }
+
     @Override
     public void setLastAddConfirmed(long lac) {
         this.lac = lac;
@@ -63,4 +72,15 @@ public class ReadLastConfirmedAndEntryContext implements ReadEntryCallbackCtx {
         this.lacUpdateTimestamp = Optional.of(lacUpdateTimestamp);
     }
 
+    /**
+     * Whether the bookie waited for the lac to advance before responding.
+     */
+    public Optional<Boolean> getLongPollWaited() {
+        return longPollWaited;
+    }
+
+    public void setLongPollWaited(boolean longPollWaited) {
+        this.longPollWaited = Optional.of(longPollWaited);
+    }
+
 }
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADMISSION_CLASS_LABEL;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADMISSION_CONTROL_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADMISSION_IN_PROGRESS;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADMISSION_QUEUE_DELAY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADMISSION_REJECTED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.auth.BookKeeperPrincipal;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.Gauge;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control of the add and read requests of a bookie, with weighted fairness across
+ * request classes.
+ *
+ * <p>Requests are grouped into classes, either by client host or by the principal authenticated
+ * by the {@link AuthHandler}. The requests in progress are shared among the classes that
+ * currently have requests in progress, proportionally to their weights. A request of a class that
+ * already uses its whole share is rejected right away, so that a single greedy client cannot fill
+ * the worker queues and delay the requests of every other client.
+ *
+ * <p>An admitted request reserves its slot in the class right away. The slot is taken over by the
+ * request when it starts, or given back with {@link #cancelAdmission(Channel)} if the request is
+ * dropped before starting. A class is dropped, along with its stats, once its last channel is
+ * closed and it has no requests in progress.
+ */
+@StatsDoc(
+    name = ADMISSION_CONTROL_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Bookie request admission control stats"
+)
+class RequestAdmissionController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestAdmissionController.class);
+
+    private static final AttributeKey<AdmissionClass> ADMISSION_CLASS =
+            AttributeKey.valueOf("bookieAdmissionClass");
+
+    static final String CLASSIFIER_CONNECTION = "connection";
+    static final String CLASSIFIER_PRINCIPAL = "principal";
+
+    private static final String UNKNOWN_CLASS = "unknown";
+
+    private final int maxRequestsInProgress;
+    private final int minRequestsPerClass;
+    private final boolean classifyByPrincipal;
+    private final Map<String, Integer> classWeights;
+    private final StatsLogger statsLogger;
+
+    private final ConcurrentMap<String, AdmissionClass> classes = new ConcurrentHashMap<>();
+
+    /**
+     * Sum of the weights of the classes with requests in progress.
+     */
+    private final AtomicLong activeWeights = new AtomicLong(0);
+
+    /**
+     * A class of requests sharing the same quota.
+     */
+    class AdmissionClass {
+        final String name;
+        final int weight;
+        final AtomicInteger inProgress = new AtomicInteger(0);
+        /**
+         * Slots reserved by the admitted requests which did not start yet, counted in inProgress.
+         */
+        final AtomicInteger reserved = new AtomicInteger(0);
+        /**
+         * Open channels of the class, only updated while holding the entry of the class in the classes map.
+         */
+        final AtomicInteger channels = new AtomicInteger(0);
+
+        @StatsDoc(
+            name = ADMISSION_QUEUE_DELAY,
+            help = "operation stats of the delay between the admission and the execution of the requests of a class"
+        )
+        final OpStatsLogger queueDelayStats;
+        @StatsDoc(
+            name = ADMISSION_REJECTED,
+            help = "Counter for the requests of a class rejected by the admission control"
+        )
+        final Counter rejectedCounter;
+
+        private final StatsLogger classStatsLogger;
+        private final Gauge<Number> inProgressGauge;
+
+        AdmissionClass(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+            this.classStatsLogger = statsLogger.scopeLabel(ADMISSION_CLASS_LABEL, name);
+            this.queueDelayStats = classStatsLogger.getOpStatsLogger(ADMISSION_QUEUE_DELAY);
+            this.rejectedCounter = classStatsLogger.getCounter(ADMISSION_REJECTED);
+            this.inProgressGauge = new Gauge<Number>() {
+                @Override
+                public Number getDefaultValue() {
+                    return 0;
+                }
+
+                @Override
+                public Number getSample() {
+                    return inProgress.get();
+                }
+            };
+            classStatsLogger.registerGauge(ADMISSION_IN_PROGRESS, inProgressGauge);
+        }
+
+        boolean isIdle() {
+            return channels.get() == 0 && inProgress.get() == 0;
+        }
+
+        void unregisterStats() {
+            classStatsLogger.unregisterGauge(ADMISSION_IN_PROGRESS, inProgressGauge);
+        }
+
+        /**
+         * The number of requests in progress the class is allowed, given the classes currently active.
+         */
+        int fairShare(int inProgress) {
+            long weights = activeWeights.get();
+            if (inProgress == 0) {
+                // the class is not accounted in the active weights yet
+                weights += weight;
+            }
+            long share = maxRequestsInProgress * (long) weight / Math.max(weights, weight);
+            return (int) Math.max(share, minRequestsPerClass);
+        }
+    }
+
+    RequestAdmissionController(ServerConfiguration conf, StatsLogger statsLogger) {
+        this.maxRequestsInProgress = conf.getAdmissionControlMaxRequestsInProgress();
+        this.minRequestsPerClass = conf.getAdmissionControlMinRequestsPerClass();
+        this.classifyByPrincipal = CLASSIFIER_PRINCIPAL.equalsIgnoreCase(conf.getAdmissionControlClassifier());
+        this.classWeights = parseClassWeights(conf.getAdmissionControlClassWeights());
+        this.statsLogger = statsLogger.scope(ADMISSION_CONTROL_SCOPE);
+        LOG.info("Request admission control enabled: maxRequestsInProgress={}, minRequestsPerClass={},"
+                + " classifier={}, weights={}", maxRequestsInProgress, minRequestsPerClass,
+                classifyByPrincipal ? CLASSIFIER_PRINCIPAL : CLASSIFIER_CONNECTION, classWeights);
+    }
+
+    private static Map<String, Integer> parseClassWeights(String[] weights) {
+        Map<String, Integer> result = new HashMap<>();
+        if (weights == null) {
+            return result;
+        }
+        for (String classWeight : weights) {
+            int idx = classWeight.lastIndexOf(':');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Invalid admission control class weight: " + classWeight);
+            }
+            int weight = Integer.parseInt(classWeight.substring(idx + 1).trim());
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Invalid admission control class weight: " + classWeight);
+            }
+            result.put(classWeight.substring(0, idx).trim(), weight);
+        }
+        return result;
+    }
+
+    /**
+     * Check whether a new request received on the channel is within the quota of its class.
+     *
+     * @return true if the request can be processed, false if it must be rejected
+     */
+    boolean tryAdmit(Channel channel) {
+        AdmissionClass admissionClass = getAdmissionClass(channel);
+        while (true) {
+            int inProgress = admissionClass.inProgress.get();
+            if (inProgress >= admissionClass.fairShare(inProgress)) {
+                break;
+            }
+            if (admissionClass.inProgress.compareAndSet(inProgress, inProgress + 1)) {
+                if (inProgress == 0) {
+                    activeWeights.addAndGet(admissionClass.weight);
+                }
+                admissionClass.reserved.incrementAndGet();
+                return true;
+            }
+        }
+
+        admissionClass.rejectedCounter.inc();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Rejecting request of class {} on channel {}: {} requests in progress",
+                    admissionClass.name, channel, admissionClass.inProgress.get());
+        }
+        return false;
+    }
+
+    /**
+     * Give back the slot reserved by {@link #tryAdmit(Channel)} for a request which is dropped before starting.
+     */
+    void cancelAdmission(Channel channel) {
+        AdmissionClass admissionClass = getAdmissionClass(channel);
+        // if another request of the class took over the reservation, that request owns the slot now
+        if (takeReservation(admissionClass)) {
+            release(admissionClass);
+        }
+    }
+
+    void onRequestStart(Channel channel) {
+        AdmissionClass admissionClass = getAdmissionClass(channel);
+        if (!takeReservation(admissionClass) && admissionClass.inProgress.getAndIncrement() == 0) {
+            activeWeights.addAndGet(admissionClass.weight);
+        }
+    }
+
+    void onRequestFinish(Channel channel) {
+        release(getAdmissionClass(channel));
+    }
+
+    private static boolean takeReservation(AdmissionClass admissionClass) {
+        while (true) {
+            int reserved = admissionClass.reserved.get();
+            if (reserved == 0) {
+                return false;
+            }
+            if (admissionClass.reserved.compareAndSet(reserved, reserved - 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void release(AdmissionClass admissionClass) {
+        if (admissionClass.inProgress.decrementAndGet() == 0) {
+            activeWeights.addAndGet(-admissionClass.weight);
+            if (admissionClass.channels.get() == 0) {
+                maybeRemoveClass(admissionClass);
+            }
+        }
+    }
+
+    void onRequestScheduled(Channel channel, long enqueueNanos) {
+        getAdmissionClass(channel).queueDelayStats
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private AdmissionClass getAdmissionClass(Channel channel) {
+        AdmissionClass admissionClass = channel.attr(ADMISSION_CLASS).get();
+        if (admissionClass == null) {
+            admissionClass = registerChannel(channel);
+        }
+        return admissionClass;
+    }
+
+    private AdmissionClass registerChannel(Channel channel) {
+        AdmissionClass admissionClass = classes.compute(classify(channel), (name, existing) -> {
+            AdmissionClass c = null != existing
+                    ? existing : new AdmissionClass(name, classWeights.getOrDefault(name, 1));
+            c.channels.incrementAndGet();
+            return c;
+        });
+        AdmissionClass existing = channel.attr(ADMISSION_CLASS).setIfAbsent(admissionClass);
+        if (existing != null) {
+            unregisterChannel(admissionClass);
+            return existing;
+        }
+        channel.closeFuture().addListener(future -> unregisterChannel(admissionClass));
+        return admissionClass;
+    }
+
+    private void unregisterChannel(AdmissionClass admissionClass) {
+        classes.computeIfPresent(admissionClass.name, (name, c) -> {
+            if (c != admissionClass) {
+                return c;
+            }
+            c.channels.decrementAndGet();
+            return removeIfIdle(c);
+        });
+    }
+
+    private void maybeRemoveClass(AdmissionClass admissionClass) {
+        classes.computeIfPresent(admissionClass.name, (name, c) -> c == admissionClass ? removeIfIdle(c) : c);
+    }
+
+    private static AdmissionClass removeIfIdle(AdmissionClass admissionClass) {
+        if (!admissionClass.isIdle()) {
+            return admissionClass;
+        }
+        admissionClass.unregisterStats();
+        return null;
+    }
+
+    @VisibleForTesting
+    int getNumClasses() {
+        return classes.size();
+    }
+
+    private String classify(Channel channel) {
+        if (classifyByPrincipal) {
+            AuthHandler.ServerSideHandler authHandler = channel.pipeline().get(AuthHandler.ServerSideHandler.class);
+            if (authHandler != null && authHandler.connectionPeer != null) {
+                BookKeeperPrincipal principal = authHandler.connectionPeer.getAuthorizedId();
+                if (principal != null) {
+                    return principal.getName();
+                }
+            }
+            return BookKeeperPrincipal.ANONYMOUS.getName();
+        }
+
+        SocketAddress remoteAddress = channel.remoteAddress();
+        if (remoteAddress instanceof InetSocketAddress) {
+            return ((InetSocketAddress) remoteAddress).getHostString();
+        } else if (remoteAddress != null) {
+            return remoteAddress.toString();
+        } else {
+            return UNKNOWN_CLASS;
+        }
+    }
+}
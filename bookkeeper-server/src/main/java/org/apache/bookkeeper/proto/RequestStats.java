@@ -51,6 +51,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAST_ENTRY_NOENTRY_ERROR;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.STREAM_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.STREAM_READ_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.WRITE_THREAD_QUEUED_LATENCY;
@@ -246,6 +248,17 @@ public class RequestStats {
             parent = GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST
     )
     final OpStatsLogger getListOfEntriesOfLedgerStats;
+    @StatsDoc(
+            name = STREAM_READ_REQUEST,
+            help = "request stats of StreamRead on a bookie, from the request to the last entry sent"
+    )
+    final OpStatsLogger streamReadRequestStats;
+    @StatsDoc(
+            name = STREAM_READ_ENTRY,
+            help = "operation stats of reading the entries of a StreamRead",
+            parent = STREAM_READ_REQUEST
+    )
+    final OpStatsLogger streamReadEntryStats;
 
     public RequestStats(StatsLogger statsLogger) {
         this.addEntryStats = statsLogger.getThreadScopedOpStatsLogger(ADD_ENTRY);
@@ -278,6 +291,8 @@ public class RequestStats {
         this.readEntryBlockedStats = statsLogger.getOpStatsLogger(READ_ENTRY_BLOCKED_WAIT);
 
         this.getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER);
+        this.streamReadRequestStats = statsLogger.getOpStatsLogger(STREAM_READ_REQUEST);
+        this.streamReadEntryStats = statsLogger.getOpStatsLogger(STREAM_READ_ENTRY);
         this.getListOfEntriesOfLedgerRequestStats =
                 statsLogger.getOpStatsLogger(GET_LIST_OF_ENTRIES_OF_LEDGER_REQUEST);
 
@@ -382,4 +397,8 @@ public class RequestStats {
         return maxReadsInProgress.get();
     }
 
+    int readsInProgressCount() {
+        return readsInProgress.get();
+    }
+
 }
@@ -0,0 +1,256 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.UnsafeByteOperations;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StreamReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StreamReadResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pushes the entries of a {@link StreamReadRequest} to the client, one response per entry.
+ *
+ * <p>The bookie only sends as many entries as the credits granted by the client, which grants
+ * more credits as it consumes them. When it runs out of credits the processor gives its read
+ * thread back, and it is scheduled again as soon as new credits arrive.
+ *
+ * <p>A stream holds a stream read slot, rather than a read permit, from the moment it is accepted until it is
+ * done, which is reported exactly once to
+ * {@link BookieRequestProcessor#onStreamReadFinished(StreamReadEntryProcessorV3)}.
+ */
+class StreamReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamReadEntryProcessorV3.class);
+
+    // Entries sent before yielding the read thread to the other requests of the pool
+    private static final int MAX_ENTRIES_PER_RUN = 64;
+
+    private final long ledgerId;
+    private final long lastEntryId;
+    private final AtomicInteger credits;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    // Only accessed by the scheduled run
+    private long nextEntryId;
+
+    StreamReadEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
+                               BookieRequestProcessor requestProcessor) {
+        super(request, requestHandler, requestProcessor);
+        StreamReadRequest streamReadRequest = request.getStreamReadRequest();
+        this.ledgerId = streamReadRequest.getLedgerId();
+        this.nextEntryId = streamReadRequest.getFirstEntryId();
+        this.lastEntryId = streamReadRequest.getLastEntryId();
+        this.credits = new AtomicInteger(streamReadRequest.getCredits());
+    }
+
+    long getLedgerId() {
+        return ledgerId;
+    }
+
+    long getStreamTxnId() {
+        return request.getHeader().getTxnId();
+    }
+
+    /**
+     * Allow the stream to send more entries.
+     *
+     * @return true if the stream needs to be scheduled to send them
+     */
+    boolean grantCredits(int newCredits) {
+        credits.addAndGet(newCredits);
+        return !done.get() && scheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Claim the processor for its first run.
+     */
+    boolean schedule() {
+        return scheduled.compareAndSet(false, true);
+    }
+
+    void cancel() {
+        markDone();
+    }
+
+    /**
+     * Mark the stream as done.
+     *
+     * @return false if the stream was already done
+     */
+    private boolean markDone() {
+        if (!done.compareAndSet(false, true)) {
+            return false;
+        }
+        requestProcessor.onStreamReadFinished(this);
+        return true;
+    }
+
+    /**
+     * Terminate the stream because the read thread pool rejected it.
+     */
+    void reject() {
+        finish(StatusCode.ETOOMANYREQUESTS, nextEntryId);
+    }
+
+    @Override
+    public void run() {
+        final Channel channel = requestHandler.ctx().channel();
+        int sent = 0;
+        while (!done.get() && credits.get() > 0 && sent < MAX_ENTRIES_PER_RUN) {
+            if (!isVersionCompatible()) {
+                finish(StatusCode.EBADVERSION, nextEntryId);
+                return;
+            }
+            if (!channel.isOpen()) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Stopping stream read of ledger {} for closed channel: {}", ledgerId, channel);
+                }
+                finish(null, nextEntryId);
+                return;
+            }
+            if (nextEntryId > lastEntryId) {
+                // Empty range
+                finish(StatusCode.EOK, lastEntryId);
+                return;
+            }
+
+            StatusCode status = sendEntry(nextEntryId);
+            if (StatusCode.EOK != status) {
+                finish(status, nextEntryId);
+                return;
+            }
+            if (nextEntryId == lastEntryId) {
+                if (!markDone()) {
+                    return;
+                }
+                requestProcessor.getRequestStats().getStreamReadRequestStats()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                return;
+            }
+            nextEntryId++;
+            credits.decrementAndGet();
+            sent++;
+        }
+
+        scheduled.set(false);
+        // Credits granted while releasing the processor
+        if (!done.get() && credits.get() > 0 && scheduled.compareAndSet(false, true)) {
+            requestProcessor.scheduleStreamRead(this);
+        }
+    }
+
+    private StatusCode sendEntry(long entryId) {
+        final long startTimeNanos = MathUtils.nowInNano();
+        StatusCode status;
+        ByteBuf entryBody = null;
+        try {
+            entryBody = requestProcessor.getBookie().readEntry(ledgerId, entryId);
+            // the response wraps the entry, which is released once the response is written
+            StreamReadResponse.Builder streamReadResponse = StreamReadResponse.newBuilder()
+                    .setStatus(StatusCode.EOK)
+                    .setLedgerId(ledgerId)
+                    .setEntryId(entryId)
+                    .setBody(UnsafeByteOperations.unsafeWrap(entryBody.nioBuffer()));
+            if (entryId == lastEntryId) {
+                streamReadResponse.setLast(true);
+            }
+            requestProcessor.getRequestStats().getStreamReadEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            Response response = Response.newBuilder()
+                    .setHeader(getHeader())
+                    .setStatus(StatusCode.EOK)
+                    .setStreamReadResponse(streamReadResponse)
+                    .build();
+            ByteBuf body = entryBody;
+            entryBody = null;
+            sendResponse(StatusCode.EOK, response, null, body);
+            return StatusCode.EOK;
+        } catch (Bookie.NoLedgerException e) {
+            LOG.info("No ledger found while streaming entry: {} from ledger: {}", entryId, ledgerId);
+            status = StatusCode.ENOLEDGER;
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while streaming entry: {} from ledger: {}", entryId, ledgerId);
+            }
+            status = StatusCode.ENOENTRY;
+        } catch (IOException e) {
+            LOG.error("IOException while streaming entry: {} from ledger {} ", entryId, ledgerId, e);
+            status = StatusCode.EIO;
+        } catch (BookieException.DataUnknownException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entry: {} from ledger {}", entryId, ledgerId);
+            }
+            status = StatusCode.EUNKNOWNLEDGERSTATE;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while streaming entry:{} in request from address: {}",
+                    ledgerId, entryId, requestHandler.ctx().channel().remoteAddress());
+            status = StatusCode.EUA;
+        } finally {
+            ReferenceCountUtil.release(entryBody);
+        }
+        requestProcessor.getRequestStats().getStreamReadEntryStats()
+                .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        return status;
+    }
+
+    /**
+     * Terminate the stream, sending the last response unless {@code status} is null.
+     */
+    private void finish(StatusCode status, long entryId) {
+        if (!markDone()) {
+            // cancelled by the client
+            return;
+        }
+        if (null == status) {
+            requestProcessor.getRequestStats().getStreamReadRequestStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+            return;
+        }
+        StreamReadResponse.Builder streamReadResponse = StreamReadResponse.newBuilder()
+                .setStatus(status)
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setLast(true);
+        sendResponse(status, Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(status)
+                .setStreamReadResponse(streamReadResponse)
+                .build(), requestProcessor.getRequestStats().getStreamReadRequestStats());
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
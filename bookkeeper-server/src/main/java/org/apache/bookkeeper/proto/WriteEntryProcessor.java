@@ -39,18 +39,33 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
     private static final Logger LOG = LoggerFactory.getLogger(WriteEntryProcessor.class);
 
     long startTimeNanos;
+    // whether the processor runs on an IO thread, and gives up rather than wait for the bookie
+    boolean nonBlocking;
 
     @Override
     protected void reset() {
         super.reset();
         startTimeNanos = -1L;
+        nonBlocking = false;
     }
 
     public static WriteEntryProcessor create(ParsedAddRequest request, BookieRequestHandler requestHandler,
                                              BookieRequestProcessor requestProcessor) {
+        return create(request, requestHandler, requestProcessor, false);
+    }
+
+    /**
+     * Create a processor for an add request.
+     *
+     * @param nonBlocking whether the processor runs on an IO thread: the caller already acquired the add
+     *                    permit of the request, and the add is rejected rather than wait for the bookie
+     */
+    public static WriteEntryProcessor create(ParsedAddRequest request, BookieRequestHandler requestHandler,
+                                             BookieRequestProcessor requestProcessor, boolean nonBlocking) {
         WriteEntryProcessor wep = RECYCLER.get();
         wep.init(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        wep.nonBlocking = nonBlocking;
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(), nonBlocking);
         return wep;
     }
 
@@ -75,6 +90,12 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
         try {
             if (request.isRecoveryAdd()) {
                 requestProcessor.getBookie().recoveryAddEntry(addData, this, requestHandler, request.getMasterKey());
+            } else if (nonBlocking) {
+                if (!requestProcessor.getBookie().tryAddEntry(addData, false, this,
+                        requestHandler, request.getMasterKey())) {
+                    requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+                    rc = BookieProtocol.ETOOMANYREQUESTS;
+                }
             } else {
                 requestProcessor.getBookie().addEntry(addData, false, this,
                         requestHandler, request.getMasterKey());
@@ -127,7 +148,7 @@ class WriteEntryProcessor extends PacketProcessorBase<ParsedAddRequest> implemen
         }
 
         requestHandler.prepareSendResponseV2(rc, request);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(requestHandler.ctx().channel());
 
         request.recycle();
         recycle();
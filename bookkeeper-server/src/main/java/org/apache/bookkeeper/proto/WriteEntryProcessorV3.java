@@ -22,6 +22,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.concurrent.TimeUnit;
@@ -42,10 +43,33 @@ import org.slf4j.LoggerFactory;
 class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     private static final Logger logger = LoggerFactory.getLogger(WriteEntryProcessorV3.class);
 
+    // body of the add request when it was received as a payload, owned by this processor
+    private final ByteBuf payload;
+    // whether the processor runs on an IO thread, and gives up rather than wait for the bookie
+    private final boolean nonBlocking;
+
     public WriteEntryProcessorV3(Request request, BookieRequestHandler requestHandler,
                                  BookieRequestProcessor requestProcessor) {
+        this(request, null, requestHandler, requestProcessor);
+    }
+
+    public WriteEntryProcessorV3(Request request, ByteBuf payload, BookieRequestHandler requestHandler,
+                                 BookieRequestProcessor requestProcessor) {
+        this(request, payload, requestHandler, requestProcessor, false);
+    }
+
+    /**
+     * Create a processor for an add request.
+     *
+     * @param nonBlocking whether the processor runs on an IO thread: the caller already acquired the add
+     *                    permit of the request, and the add is rejected rather than wait for the bookie
+     */
+    public WriteEntryProcessorV3(Request request, ByteBuf payload, BookieRequestHandler requestHandler,
+                                 BookieRequestProcessor requestProcessor, boolean nonBlocking) {
         super(request, requestHandler, requestProcessor);
-        requestProcessor.onAddRequestStart(requestHandler.ctx().channel());
+        this.payload = payload;
+        this.nonBlocking = nonBlocking;
+        requestProcessor.onAddRequestStart(requestHandler.ctx().channel(), nonBlocking);
     }
 
     // Returns null if there is no exception thrown
@@ -60,6 +84,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
                 .setEntryId(entryId);
 
         if (!isVersionCompatible()) {
+            ReferenceCountUtil.release(payload);
             addResponse.setStatus(StatusCode.EBADVERSION);
             return addResponse.build();
         }
@@ -68,6 +93,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
             && !(RequestUtils.isHighPriority(request)
                     && requestProcessor.getBookie().isAvailableForHighPriorityWrites())) {
             logger.warn("BookieServer is running as readonly mode, so rejecting the request from the client!");
+            ReferenceCountUtil.release(payload);
             addResponse.setStatus(StatusCode.EREADONLY);
             return addResponse.build();
         }
@@ -114,16 +140,27 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
         StatusCode status = null;
         byte[] masterKey = addRequest.getMasterKey().toByteArray();
-        ByteBuf entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
+        // the bookie releases the entry once added
+        ByteBuf entryToAdd = payload != null
+                ? payload : Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
         try {
             if (RequestUtils.hasFlag(addRequest, AddRequest.Flag.RECOVERY_ADD)) {
                 requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb,
                         requestHandler.ctx().channel(), masterKey);
+                status = StatusCode.EOK;
+            } else if (nonBlocking) {
+                if (requestProcessor.getBookie().tryAddEntry(entryToAdd, ackBeforeSync, wcb,
+                        requestHandler.ctx().channel(), masterKey)) {
+                    status = StatusCode.EOK;
+                } else {
+                    requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
+                    status = StatusCode.ETOOMANYREQUESTS;
+                }
             } else {
                 requestProcessor.getBookie().addEntry(entryToAdd, ackBeforeSync, wcb,
                         requestHandler.ctx().channel(), masterKey);
+                status = StatusCode.EOK;
             }
-            status = StatusCode.EOK;
         } catch (OperationRejectedException e) {
             requestProcessor.getRequestStats().getAddEntryRejectedCounter().inc();
             // Avoid to log each occurence of this exception as this can happen when the ledger storage is
@@ -164,6 +201,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     public void run() {
         requestProcessor.getRequestStats().getWriteThreadQueuedLatency()
                 .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+        requestProcessor.onRequestScheduled(requestHandler.ctx().channel(), enqueueNanos);
         AddResponse addResponse = getAddResponse();
         if (null != addResponse) {
             // This means there was an error and we should send this back.
@@ -180,7 +218,7 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     @Override
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
         super.sendResponse(code, response, statsLogger);
-        requestProcessor.onAddRequestFinish();
+        requestProcessor.onAddRequestFinish(requestHandler.ctx().channel());
     }
 
     /**
@@ -39,9 +39,18 @@ import org.slf4j.LoggerFactory;
 class WriteLacProcessorV3 extends PacketProcessorBaseV3 implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(WriteLacProcessorV3.class);
 
+    // whether the processor runs on an IO thread, and gives up rather than wait for the bookie
+    private final boolean nonBlocking;
+
     public WriteLacProcessorV3(Request request, BookieRequestHandler requestHandler,
                              BookieRequestProcessor requestProcessor) {
+        this(request, requestHandler, requestProcessor, false);
+    }
+
+    public WriteLacProcessorV3(Request request, BookieRequestHandler requestHandler,
+                             BookieRequestProcessor requestProcessor, boolean nonBlocking) {
         super(request, requestHandler, requestProcessor);
+        this.nonBlocking = nonBlocking;
     }
 
     // Returns null if there is no exception thrown
@@ -102,9 +111,16 @@ class WriteLacProcessorV3 extends PacketProcessorBaseV3 implements Runnable {
         byte[] masterKey = writeLacRequest.getMasterKey().toByteArray();
 
         try {
-            requestProcessor.bookie.setExplicitLac(Unpooled.wrappedBuffer(lacToAdd),
-                    writeCallback, requestHandler, masterKey);
-            status = StatusCode.EOK;
+            if (!nonBlocking) {
+                requestProcessor.bookie.setExplicitLac(Unpooled.wrappedBuffer(lacToAdd),
+                        writeCallback, requestHandler, masterKey);
+                status = StatusCode.EOK;
+            } else if (requestProcessor.bookie.trySetExplicitLac(Unpooled.wrappedBuffer(lacToAdd),
+                    writeCallback, requestHandler, masterKey)) {
+                status = StatusCode.EOK;
+            } else {
+                status = StatusCode.ETOOMANYREQUESTS;
+            }
         } catch (IOException e) {
             logger.error("Error saving lac {} for ledger:{}",
                     lac, ledgerId, e);
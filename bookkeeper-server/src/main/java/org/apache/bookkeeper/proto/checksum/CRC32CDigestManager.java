@@ -55,6 +55,16 @@ class CRC32CDigestManager extends DigestManager {
         return Crc32cIntChecksum.resumeChecksum(digest, buffer, offset, len);
     }
 
+    @Override
+    int combine(int digest, int dataDigest, long dataLength) {
+        return Crc32cIntChecksum.combineChecksums(digest, dataDigest, dataLength);
+    }
+
+    @Override
+    public boolean acceptsPrecomputedDataDigest() {
+        return true;
+    }
+
     @Override
     boolean acceptsMemoryAddressBuffer() {
         return Crc32cIntChecksum.acceptsMemoryAddressBuffer();
@@ -72,6 +72,16 @@ public abstract class DigestManager {
         }
     }
 
+    /**
+     * Combines the digest of some data with the digest of the data that follows it, computed on its own.
+     * Only called when {@link #acceptsPrecomputedDataDigest()} returns true, which the digest types must
+     * override along with this method.
+     */
+    int combine(int digest, int dataDigest, long dataLength) {
+        throw new UnsupportedOperationException("Precomputed data digest is not supported by "
+                + getClass().getSimpleName());
+    }
+
     abstract void populateValueAndReset(int digest, ByteBuf buffer);
 
     abstract boolean isInt32Digest();
@@ -118,14 +128,66 @@ public abstract class DigestManager {
     public ReferenceCounted computeDigestAndPackageForSending(long entryId, long lastAddConfirmed, long length,
                                                               ByteBuf data, byte[] masterKey, int flags) {
         if (this.useV2Protocol) {
-            return computeDigestAndPackageForSendingV2(entryId, lastAddConfirmed, length, data, masterKey, flags);
+            return computeDigestAndPackageForSendingV2(entryId, lastAddConfirmed, length, data, false, 0, masterKey,
+                    flags);
+        } else {
+            return computeDigestAndPackageForSendingV3(entryId, lastAddConfirmed, length, data, false, 0);
+        }
+    }
+
+    /**
+     * Whether the digest of the entry payload can be supplied to
+     * {@link #computeDigestAndPackageForSending(long, long, long, ByteBuf, int, byte[], int)}, rather than computed
+     * from the payload. This is the case for the CRC32C digest, where the digest of the payload is the crc32c
+     * checksum of the payload, as computed by {@link com.scurrilous.circe.checksum.Crc32cIntChecksum}.
+     */
+    public boolean acceptsPrecomputedDataDigest() {
+        return false;
+    }
+
+    /**
+     * Computes the digest for an entry, whose payload digest is already known, and put bytes together for
+     * sending. The payload is not read to compute the digest, only the entry metadata is: the digest of the
+     * metadata is combined with the given digest of the payload.
+     *
+     * <p>Producers which already have the checksum of a large payload, or computed it by blocks in parallel and
+     * combined the checksums of the blocks, save going through the whole payload again.
+     *
+     * @param entryId
+     * @param lastAddConfirmed
+     * @param length
+     * @param data
+     * @param dataDigest digest of the readable bytes of the data
+     * @return
+     * @throws IllegalStateException if the digest type does not accept a precomputed payload digest
+     * @see #acceptsPrecomputedDataDigest()
+     */
+    public ReferenceCounted computeDigestAndPackageForSending(long entryId, long lastAddConfirmed, long length,
+                                                              ByteBuf data, int dataDigest, byte[] masterKey,
+                                                              int flags) {
+        if (!acceptsPrecomputedDataDigest()) {
+            throw new IllegalStateException("Precomputed data digest is not supported by "
+                    + getClass().getSimpleName());
+        }
+        if (this.useV2Protocol) {
+            return computeDigestAndPackageForSendingV2(entryId, lastAddConfirmed, length, data, true, dataDigest,
+                    masterKey, flags);
+        } else {
+            return computeDigestAndPackageForSendingV3(entryId, lastAddConfirmed, length, data, true, dataDigest);
+        }
+    }
+
+    private int updateData(int digest, ByteBuf data, boolean hasDataDigest, int dataDigest) {
+        if (hasDataDigest) {
+            return combine(digest, dataDigest, data.readableBytes());
         } else {
-            return computeDigestAndPackageForSendingV3(entryId, lastAddConfirmed, length, data);
+            return update(digest, data, data.readerIndex(), data.readableBytes());
         }
     }
 
     private ReferenceCounted computeDigestAndPackageForSendingV2(long entryId, long lastAddConfirmed, long length,
-                                                                 ByteBuf data, byte[] masterKey, int flags) {
+                                                                 ByteBuf data, boolean hasDataDigest,
+                                                                 int dataDigest, byte[] masterKey, int flags) {
         boolean isSmallEntry = data.readableBytes() < BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD;
 
         int headersSize = 4 // Request header
@@ -151,7 +213,7 @@ public abstract class DigestManager {
 
         // Compute checksum over the headers
         int digest = update(0, buf, buf.readerIndex(), buf.readableBytes());
-        digest = update(digest, data, data.readerIndex(), data.readableBytes());
+        digest = updateData(digest, data, hasDataDigest, dataDigest);
 
         populateValueAndReset(digest, buf);
 
@@ -168,7 +230,7 @@ public abstract class DigestManager {
     }
 
     private ByteBufList computeDigestAndPackageForSendingV3(long entryId, long lastAddConfirmed, long length,
-                                                            ByteBuf data) {
+                                                            ByteBuf data, boolean hasDataDigest, int dataDigest) {
         ByteBuf headersBuffer = Unpooled.buffer(METADATA_LENGTH + macCodeLength);
         headersBuffer.writeLong(ledgerId);
         headersBuffer.writeLong(entryId);
@@ -176,7 +238,7 @@ public abstract class DigestManager {
         headersBuffer.writeLong(length);
 
         int digest = update(0, headersBuffer, 0, METADATA_LENGTH);
-        digest = update(digest, data, data.readerIndex(), data.readableBytes());
+        digest = updateData(digest, data, hasDataDigest, dataDigest);
         populateValueAndReset(digest, headersBuffer);
         return ByteBufList.get(headersBuffer, data);
     }
@@ -47,6 +47,16 @@ public class DummyDigestManager extends DigestManager {
         return 0;
     }
 
+    @Override
+    int combine(int digest, int dataDigest, long dataLength) {
+        return 0;
+    }
+
+    @Override
+    public boolean acceptsPrecomputedDataDigest() {
+        return true;
+    }
+
     @Override
     void populateValueAndReset(int digest, ByteBuf buffer) {}
 
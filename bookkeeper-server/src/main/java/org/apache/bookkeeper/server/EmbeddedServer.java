@@ -22,6 +22,7 @@
 package org.apache.bookkeeper.server;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ALLOCATOR_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_INDEX_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_LEDGER_SCOPE;
@@ -50,6 +51,7 @@ import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.BookieResources;
 import org.apache.bookkeeper.bookie.CookieValidation;
+import org.apache.bookkeeper.bookie.CpuAffinityProfile;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.LedgerStorage;
 import org.apache.bookkeeper.bookie.ReadOnlyBookie;
@@ -69,6 +71,7 @@ import org.apache.bookkeeper.common.component.AutoCloseableLifecycleComponent;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher;
 import org.apache.bookkeeper.common.component.LifecycleComponentStack;
 import org.apache.bookkeeper.common.component.RxSchedulerLifecycleComponent;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
 import org.apache.bookkeeper.discover.RegistrationManager;
@@ -81,6 +84,7 @@ import org.apache.bookkeeper.server.conf.BookieConfiguration;
 import org.apache.bookkeeper.server.http.BKHttpServiceProvider;
 import org.apache.bookkeeper.server.service.AutoRecoveryService;
 import org.apache.bookkeeper.server.service.BookieService;
+import org.apache.bookkeeper.server.service.CpuAffinityService;
 import org.apache.bookkeeper.server.service.HttpService;
 import org.apache.bookkeeper.server.service.ScrubberService;
 import org.apache.bookkeeper.server.service.StatsProviderService;
@@ -301,6 +305,9 @@ public class EmbeddedServer {
 
             StatsLogger rootStatsLogger = statsProvider.getStatsLogger("");
 
+            // pin the bookie threads created from now on to the CPUs of their role
+            CpuAffinityProfile cpuAffinityProfile = BookieResources.createCpuAffinityProfile(conf.getServerConf());
+
             // 2. Build metadata driver
             if (metadataDriver == null) {
                 if (ledgerManagerFactory == null || registrationManager == null) {
@@ -342,7 +349,8 @@ public class EmbeddedServer {
 
             ByteBufAllocatorWithOomHandler allocatorWithOomHandler;
             if (allocator == null) {
-                allocatorWithOomHandler = BookieResources.createAllocator(conf.getServerConf());
+                allocatorWithOomHandler = BookieResources.createAllocator(conf.getServerConf(),
+                        bookieStats.scope(ALLOCATOR_SCOPE));
                 allocator = allocatorWithOomHandler;
             } else {
                 if (allocator instanceof ByteBufAllocatorWithOomHandler) {
@@ -352,6 +360,9 @@ public class EmbeddedServer {
                 }
             }
 
+            MemoryLimitController memoryBudget = BookieResources.createMemoryBudget(conf.getServerConf(),
+                    bookieStats);
+
             if (uncleanShutdownDetection == null) {
                 uncleanShutdownDetection = new UncleanShutdownDetectionImpl(ledgerDirsManager);
             }
@@ -383,7 +394,7 @@ public class EmbeddedServer {
                                 rxScheduler, rxExecutor));
 
                 storage = BookieResources.createLedgerStorage(conf.getServerConf(), ledgerManager,
-                        ledgerDirsManager, indexDirsManager, bookieStats, allocator);
+                        ledgerDirsManager, indexDirsManager, bookieStats, allocator, memoryBudget);
 
                 EntryCopier copier = new EntryCopierImpl(bookieId,
                         ((org.apache.bookkeeper.client.BookKeeper) bkc).getClientCtx().getBookieClient(),
@@ -409,7 +420,7 @@ public class EmbeddedServer {
                 cookieValidation.checkCookies(storageDirectoriesFromConf(conf.getServerConf()));
                 // storage should be created after legacy validation or it will fail (it would find ledger dirs)
                 storage = BookieResources.createLedgerStorage(conf.getServerConf(), ledgerManager,
-                        ledgerDirsManager, indexDirsManager, bookieStats, allocator);
+                        ledgerDirsManager, indexDirsManager, bookieStats, allocator, memoryBudget);
             }
 
             Bookie bookie;
@@ -417,13 +428,13 @@ public class EmbeddedServer {
                 bookie = new ReadOnlyBookie(conf.getServerConf(), registrationManager, storage,
                         diskChecker,
                         ledgerDirsManager, indexDirsManager,
-                        bookieStats, allocator,
+                        bookieStats, allocator, memoryBudget,
                         bookieServiceInfoProvider);
             } else {
                 bookie = newBookieImpl(conf.getServerConf(), registrationManager, storage,
                         diskChecker,
                         ledgerDirsManager, indexDirsManager,
-                        bookieStats, allocator,
+                        bookieStats, allocator, memoryBudget,
                         bookieServiceInfoProvider);
             }
 
@@ -496,6 +507,14 @@ public class EmbeddedServer {
                 }
             }
 
+            // 10. report the CPUs acquired by the bookie threads, after the other components started them
+            if (!cpuAffinityProfile.isEmpty()) {
+                CpuAffinityService cpuAffinityService = new CpuAffinityService(conf, rootStatsLogger,
+                        cpuAffinityProfile);
+                serverBuilder.addComponent(cpuAffinityService);
+                log.info("Load lifecycle component : {}", cpuAffinityService.getName());
+            }
+
             return new EmbeddedServer(serverBuilder.build(), statsProvider, registrationManager, ledgerManagerFactory,
                     diskChecker, ledgerDirsManager, indexDirsManager, bookieService, autoRecoveryService,
                     dataIntegrityService, httpService);
@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.server.service;
+
+import java.io.IOException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.CpuAffinityProfile;
+import org.apache.bookkeeper.server.component.ServerLifecycleComponent;
+import org.apache.bookkeeper.server.conf.BookieConfiguration;
+import org.apache.bookkeeper.stats.StatsLogger;
+
+/**
+ * A {@link ServerLifecycleComponent} that reports the CPUs acquired by the bookie threads once they started.
+ */
+@Slf4j
+public class CpuAffinityService extends ServerLifecycleComponent {
+
+    public static final String NAME = "cpu-affinity";
+
+    private final CpuAffinityProfile profile;
+
+    public CpuAffinityService(BookieConfiguration conf, StatsLogger statsLogger, CpuAffinityProfile profile) {
+        super(NAME, conf, statsLogger);
+        this.profile = profile;
+    }
+
+    @Override
+    protected void doStart() {
+        log.info("CPU affinity layout:");
+        for (String line : profile.getLayout()) {
+            log.info("  {}", line);
+        }
+    }
+
+    @Override
+    protected void doStop() {
+        // no-op
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        // no-op
+    }
+}
@@ -23,9 +23,11 @@ import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.incubator.channel.uring.IOUring;
 import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
 import java.util.concurrent.ThreadFactory;
 import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.CpuAffinityProfile;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -43,19 +45,36 @@ public class EventLoopUtil {
     private static final String ENABLE_IO_URING = "enable.io_uring";
 
     public static EventLoopGroup getClientEventLoopGroup(ClientConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isBusyWaitEnabled());
     }
 
-    public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+    public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory,
+                                                         CpuAffinityProfile cpuAffinityProfile) {
+        if (cpuAffinityProfile.hasCpus(CpuAffinityProfile.Role.NETTY_IO)) {
+            // The IO threads are pinned to the CPUs of their role by the affinity profile, start them right away
+            // so that the layout of the bookie threads is known once it started
+            EventLoopGroup eventLoopGroup = getEventLoopGroup(
+                    cpuAffinityProfile.newThreadFactory(CpuAffinityProfile.Role.NETTY_IO, threadFactory),
+                    conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(), false);
+            for (EventExecutor executor : eventLoopGroup) {
+                executor.submit(() -> {
+                }).syncUninterruptibly();
+            }
+            return eventLoopGroup;
+        }
+        // In shard-per-core mode the IO threads execute the request processing inline, so they are pinned to
+        // isolated cores even when busy-wait is not enabled
+        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isBusyWaitEnabled() || conf.isShardPerCoreRequestProcessingEnabled());
     }
 
     public static EventLoopGroup getServerAcceptorGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumAcceptorThreads(), false);
+        return getEventLoopGroup(threadFactory, conf.getServerNumAcceptorThreads(), false, false);
     }
 
     private static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory,
-            int numThreads, boolean enableBusyWait) {
+            int numThreads, boolean enableBusyWait, boolean enableCpuAffinity) {
         if (!SystemUtils.IS_OS_LINUX) {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
@@ -70,26 +89,19 @@ public class EventLoopUtil {
             return new IOUringEventLoopGroup(numThreads, threadFactory);
         } else {
             try {
+                EpollEventLoopGroup eventLoopGroup;
                 if (!enableBusyWait) {
                     // Regular Epoll based event loop
-                    return new EpollEventLoopGroup(numThreads, threadFactory);
+                    eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory);
+                } else {
+                    // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
+                    // context switches
+                    eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
+                            () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
                 }
 
-                // With low latency setting, put the Netty event loop on busy-wait loop to reduce cost of
-                // context switches
-                EpollEventLoopGroup eventLoopGroup = new EpollEventLoopGroup(numThreads, threadFactory,
-                        () -> (selectSupplier, hasTasks) -> SelectStrategy.BUSY_WAIT);
-
-                // Enable CPU affinity on IO threads
-                for (int i = 0; i < numThreads; i++) {
-                    eventLoopGroup.next().submit(() -> {
-                        try {
-                            CpuAffinity.acquireCore();
-                        } catch (Throwable t) {
-                            log.warn("Failed to acquire CPU core for thread {} err {} {}",
-                                    Thread.currentThread().getName(), t.getMessage(), t);
-                        }
-                    });
+                if (enableCpuAffinity) {
+                    acquireCores(eventLoopGroup);
                 }
 
                 return eventLoopGroup;
@@ -99,4 +111,20 @@ public class EventLoopUtil {
             }
         }
     }
+
+    /**
+     * Enable CPU affinity on the IO threads of the event loop group.
+     */
+    private static void acquireCores(EventLoopGroup eventLoopGroup) {
+        for (EventExecutor executor : eventLoopGroup) {
+            executor.submit(() -> {
+                try {
+                    CpuAffinity.acquireCore();
+                } catch (Throwable t) {
+                    log.warn("Failed to acquire CPU core for thread {} err {} {}",
+                            Thread.currentThread().getName(), t.getMessage(), t);
+                }
+            });
+        }
+    }
 }
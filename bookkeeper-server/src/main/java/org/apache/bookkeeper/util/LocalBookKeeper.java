@@ -47,6 +47,7 @@ import org.apache.bookkeeper.bookie.UncleanShutdownDetection;
 import org.apache.bookkeeper.bookie.UncleanShutdownDetectionImpl;
 import org.apache.bookkeeper.common.allocator.ByteBufAllocatorWithOomHandler;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
 import org.apache.bookkeeper.discover.BookieServiceInfo.Endpoint;
@@ -526,9 +527,10 @@ public class LocalBookKeeper implements AutoCloseable {
                     conf, diskChecker, NullStatsLogger.INSTANCE);
             LedgerDirsManager indexDirsManager = BookieResources.createIndexDirsManager(
                     conf, diskChecker, NullStatsLogger.INSTANCE, ledgerDirsManager);
+            MemoryLimitController memoryBudget = BookieResources.createMemoryBudget(conf, NullStatsLogger.INSTANCE);
             LedgerStorage storage = BookieResources.createLedgerStorage(
                     conf, ledgerManager, ledgerDirsManager, indexDirsManager,
-                    NullStatsLogger.INSTANCE, allocator);
+                    NullStatsLogger.INSTANCE, allocator, memoryBudget);
 
             CookieValidation cookieValidation = new LegacyCookieValidation(conf, registrationManager);
             cookieValidation.checkCookies(storageDirectoriesFromConf(conf));
@@ -542,7 +544,8 @@ public class LocalBookKeeper implements AutoCloseable {
             componentInfoPublisher.startupFinished();
             bookie = new BookieImpl(conf, registrationManager, storage, diskChecker,
                                     ledgerDirsManager, indexDirsManager,
-                                    NullStatsLogger.INSTANCE, allocator, bookieServiceInfoProvider);
+                                    NullStatsLogger.INSTANCE, allocator, memoryBudget,
+                                    bookieServiceInfoProvider);
             server = new BookieServer(conf, bookie, NullStatsLogger.INSTANCE, allocator,
                                       shutdownManager);
         }
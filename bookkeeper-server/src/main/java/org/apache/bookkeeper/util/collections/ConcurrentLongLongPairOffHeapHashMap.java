@@ -0,0 +1,774 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.BiConsumerLongPair;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Concurrent hash map where both keys and values are composed of pairs of longs, which keeps its tables in
+ * direct memory.
+ *
+ * <p>(long,long) --&gt; (long,long)
+ *
+ * <p>Same as {@link ConcurrentLongLongPairHashMap}, but the tables of the sections are direct buffers allocated
+ * from the given allocator, so that large maps do not add to the heap the GC has to go through. The map
+ * <strong>MUST</strong> be closed to release its memory. The tables can be charged to a
+ * {@link MemoryLimitController}, which sees them as used memory until they are released.
+ *
+ * <p>As in {@link ConcurrentLongLongPairHashMap}, the lookups read the table optimistically and validate each bucket
+ * they read, falling back to the read lock of the section if the table was modified. A resize retires the previous
+ * table of a section and only releases it, and gives its memory back to the budget, on the next resize, so that a
+ * lookup still reading the previous table does not read released memory. The map must not be closed while it is
+ * being read.
+ *
+ * <p>Any operation on the map after it is closed throws an {@link IllegalStateException}.
+ *
+ * <p>Keys <strong>MUST</strong> be &gt;= 0.
+ * <br>
+ * <b>WARN: method forEach do not guarantee thread safety, nor do the keys, values and asMap method.</b>
+ */
+public class ConcurrentLongLongPairOffHeapHashMap implements AutoCloseable {
+
+    private static final long EmptyKey = -1L;
+    private static final long DeletedKey = -2L;
+
+    private static final long ValueNotFound = -1L;
+
+    private static final int DefaultExpectedItems = 256;
+    private static final int DefaultConcurrencyLevel = 16;
+
+    private static final float DefaultMapFillFactor = 0.66f;
+    private static final float DefaultMapIdleFactor = 0.15f;
+
+    private static final float DefaultExpandFactor = 2;
+    private static final float DefaultShrinkFactor = 2;
+
+    private static final boolean DefaultAutoShrink = false;
+
+    private final Section[] sections;
+    private volatile boolean closed = false;
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of ConcurrentLongLongPairOffHeapHashMap.
+     */
+    public static class Builder {
+        int expectedItems = DefaultExpectedItems;
+        int concurrencyLevel = DefaultConcurrencyLevel;
+        float mapFillFactor = DefaultMapFillFactor;
+        float mapIdleFactor = DefaultMapIdleFactor;
+        float expandFactor = DefaultExpandFactor;
+        float shrinkFactor = DefaultShrinkFactor;
+        boolean autoShrink = DefaultAutoShrink;
+        ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+        MemoryLimitController memoryBudget = null;
+
+        public Builder expectedItems(int expectedItems) {
+            this.expectedItems = expectedItems;
+            return this;
+        }
+
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public Builder mapFillFactor(float mapFillFactor) {
+            this.mapFillFactor = mapFillFactor;
+            return this;
+        }
+
+        public Builder mapIdleFactor(float mapIdleFactor) {
+            this.mapIdleFactor = mapIdleFactor;
+            return this;
+        }
+
+        public Builder expandFactor(float expandFactor) {
+            this.expandFactor = expandFactor;
+            return this;
+        }
+
+        public Builder shrinkFactor(float shrinkFactor) {
+            this.shrinkFactor = shrinkFactor;
+            return this;
+        }
+
+        public Builder autoShrink(boolean autoShrink) {
+            this.autoShrink = autoShrink;
+            return this;
+        }
+
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        /**
+         * Charge the memory of the tables to the given memory budget.
+         */
+        public Builder memoryBudget(MemoryLimitController memoryBudget) {
+            this.memoryBudget = memoryBudget;
+            return this;
+        }
+
+        public ConcurrentLongLongPairOffHeapHashMap build() {
+            return new ConcurrentLongLongPairOffHeapHashMap(expectedItems, concurrencyLevel,
+                    mapFillFactor, mapIdleFactor, autoShrink, expandFactor, shrinkFactor, allocator, memoryBudget);
+        }
+    }
+
+    private ConcurrentLongLongPairOffHeapHashMap(int expectedItems, int concurrencyLevel,
+                                                 float mapFillFactor, float mapIdleFactor,
+                                                 boolean autoShrink, float expandFactor, float shrinkFactor,
+                                                 ByteBufAllocator allocator, MemoryLimitController memoryBudget) {
+        checkArgument(expectedItems > 0);
+        checkArgument(concurrencyLevel > 0);
+        checkArgument(expectedItems >= concurrencyLevel);
+        checkArgument(mapFillFactor > 0 && mapFillFactor < 1);
+        checkArgument(mapIdleFactor > 0 && mapIdleFactor < 1);
+        checkArgument(mapFillFactor > mapIdleFactor);
+        checkArgument(expandFactor > 1);
+        checkArgument(shrinkFactor > 1);
+
+        int numSections = concurrencyLevel;
+        int perSectionExpectedItems = expectedItems / numSections;
+        int perSectionCapacity = (int) (perSectionExpectedItems / mapFillFactor);
+        this.sections = new Section[numSections];
+
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section(perSectionCapacity, mapFillFactor, mapIdleFactor,
+                    autoShrink, expandFactor, shrinkFactor, allocator, memoryBudget);
+        }
+    }
+
+    public long size() {
+        checkOpen();
+        long size = 0;
+        for (Section s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    public long sizeInBytes() {
+        checkOpen();
+        long size = 0;
+        for (Section s : sections) {
+            size += (long) s.table.length * Long.BYTES;
+        }
+        return size;
+    }
+
+    long retiredSizeInBytes() {
+        checkOpen();
+        long size = 0;
+        for (Section s : sections) {
+            Table retiredTable = s.retiredTable;
+            size += retiredTable != null ? (long) retiredTable.length * Long.BYTES : 0;
+        }
+        return size;
+    }
+
+    public long capacity() {
+        checkOpen();
+        long capacity = 0;
+        for (Section s : sections) {
+            capacity += s.capacity;
+        }
+        return capacity;
+    }
+
+    public boolean isEmpty() {
+        checkOpen();
+        for (Section s : sections) {
+            if (s.size != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    long getUsedBucketCount() {
+        checkOpen();
+        long usedBucketCount = 0;
+        for (Section s : sections) {
+            usedBucketCount += s.usedBuckets;
+        }
+        return usedBucketCount;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the value or -1 if the key was not present
+     */
+    public LongPair get(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).get(key1, key2, (int) h);
+    }
+
+    public boolean containsKey(long key1, long key2) {
+        return get(key1, key2) != null;
+    }
+
+    public boolean put(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).put(key1, key2, value1, value2, (int) h, false);
+    }
+
+    public boolean putIfAbsent(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).put(key1, key2, value1, value2, (int) h, true);
+    }
+
+    /**
+     * Remove an existing entry if found.
+     *
+     * @param key
+     * @return the value associated with the key or -1 if key was not present
+     */
+    public boolean remove(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).remove(key1, key2, ValueNotFound, ValueNotFound, (int) h);
+    }
+
+    public boolean remove(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).remove(key1, key2, value1, value2, (int) h);
+    }
+
+    private Section getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    public void clear() {
+        for (Section s : sections) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Release the memory of the map. The map cannot be used after it is closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Section s : sections) {
+            s.close();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The map is closed");
+        }
+    }
+
+    /**
+     * Iterate over all the entries in the map and apply the processor function to each of them.
+     * <p>
+     * <b>Warning: Do Not Guarantee Thread-Safety.</b>
+     * @param processor the processor to process the elements.
+     */
+    public void forEach(BiConsumerLongPair processor) {
+        for (Section s : sections) {
+            s.forEach(processor);
+        }
+    }
+
+    /**
+     * @return a new list of all keys (makes a copy)
+     */
+    public List<LongPair> keys() {
+        List<LongPair> keys = Lists.newArrayList();
+        forEach((key1, key2, value1, value2) -> keys.add(new LongPair(key1, key2)));
+        return keys;
+    }
+
+    public List<LongPair> values() {
+        List<LongPair> values = Lists.newArrayList();
+        forEach((key1, key2, value1, value2) -> values.add(new LongPair(value1, value2)));
+        return values;
+    }
+
+    public Map<LongPair, LongPair> asMap() {
+        Map<LongPair, LongPair> map = Maps.newHashMap();
+        forEach((key1, key2, value1, value2) -> map.put(new LongPair(key1, key2), new LongPair(value1, value2)));
+        return map;
+    }
+
+    /**
+     * Array of longs in a direct buffer, accessed through its memory address when it has one.
+     */
+    private static final class Table {
+        private final ByteBuf buffer;
+        // 0 if the buffer is accessed through its accessors
+        private final long address;
+        final int length;
+        // null if the memory is not charged to a budget
+        private final MemoryLimitController memoryBudget;
+
+        Table(ByteBufAllocator allocator, int length, MemoryLimitController memoryBudget) {
+            int bytes = length * Long.BYTES;
+            this.buffer = allocator.directBuffer(bytes, bytes);
+            this.address = buffer.hasMemoryAddress() && (buffer.memoryAddress() & (Long.BYTES - 1)) == 0
+                    ? buffer.memoryAddress() : 0;
+            this.length = length;
+            this.memoryBudget = memoryBudget;
+            if (memoryBudget != null) {
+                // The table is needed anyway, the other consumers of the budget make room for it
+                memoryBudget.forceReserveMemory(bytes);
+            }
+            fillEmpty();
+        }
+
+        long get(int idx) {
+            if (address != 0) {
+                return io.netty.util.internal.PlatformDependent.getLong(address + ((long) idx << 3));
+            } else {
+                return buffer.getLong(idx << 3);
+            }
+        }
+
+        void set(int idx, long value) {
+            if (address != 0) {
+                io.netty.util.internal.PlatformDependent.putLong(address + ((long) idx << 3), value);
+            } else {
+                buffer.setLong(idx << 3, value);
+            }
+        }
+
+        void fillEmpty() {
+            // EmptyKey and ValueNotFound are both -1
+            if (address != 0) {
+                io.netty.util.internal.PlatformDependent.setMemory(address, (long) length * Long.BYTES, (byte) -1);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    set(i, EmptyKey);
+                }
+            }
+        }
+
+        void release() {
+            buffer.release();
+            if (memoryBudget != null) {
+                memoryBudget.releaseMemory((long) length * Long.BYTES);
+            }
+        }
+    }
+
+    // A section is a portion of the hash map that is covered by a single
+    @SuppressWarnings("serial")
+    private static final class Section extends StampedLock {
+        // Each item take up 4 continuous array space.
+        private static final int ITEM_SIZE = 4;
+
+        // Keys and values are stored interleaved in the table
+        private volatile Table table;
+        // The table replaced by the last resize, which lookups may still be reading
+        private Table retiredTable;
+
+        private volatile int capacity;
+        private final int initCapacity;
+        private volatile int size;
+        private int usedBuckets;
+        private int resizeThresholdUp;
+        private int resizeThresholdBelow;
+        private final float mapFillFactor;
+        private final float mapIdleFactor;
+        private final float expandFactor;
+        private final float shrinkFactor;
+        private final boolean autoShrink;
+        private final ByteBufAllocator allocator;
+        private final MemoryLimitController memoryBudget;
+        private volatile boolean closed = false;
+
+        Section(int capacity, float mapFillFactor, float mapIdleFactor, boolean autoShrink,
+                float expandFactor, float shrinkFactor, ByteBufAllocator allocator,
+                MemoryLimitController memoryBudget) {
+            this.allocator = allocator;
+            this.memoryBudget = memoryBudget;
+            this.capacity = alignToPowerOfTwo(capacity);
+            this.initCapacity = this.capacity;
+            this.table = new Table(allocator, ITEM_SIZE * this.capacity, memoryBudget);
+            this.size = 0;
+            this.usedBuckets = 0;
+            this.autoShrink = autoShrink;
+            this.mapFillFactor = mapFillFactor;
+            this.mapIdleFactor = mapIdleFactor;
+            this.expandFactor = expandFactor;
+            this.shrinkFactor = shrinkFactor;
+            this.resizeThresholdUp = (int) (this.capacity * mapFillFactor);
+            this.resizeThresholdBelow = (int) (this.capacity * mapIdleFactor);
+        }
+
+        LongPair get(long key1, long key2, int keyHash) {
+            long stamp = tryOptimisticRead();
+            boolean acquiredLock = false;
+            checkOpen();
+            // add local variable here, so OutOfBound won't happen
+            Table table = this.table;
+            // calculate table.length / 4 as capacity to avoid rehash changing capacity
+            int bucket = signSafeMod(keyHash, table.length / ITEM_SIZE);
+
+            try {
+                while (true) {
+                    // First try optimistic locking
+                    long storedKey1 = table.get(bucket);
+                    long storedKey2 = table.get(bucket + 1);
+                    long storedValue1 = table.get(bucket + 2);
+                    long storedValue2 = table.get(bucket + 3);
+
+                    if (!acquiredLock && validate(stamp)) {
+                        // The values we have read are consistent
+                        if (key1 == storedKey1 && key2 == storedKey2) {
+                            return new LongPair(storedValue1, storedValue2);
+                        } else if (storedKey1 == EmptyKey) {
+                            // Not found
+                            return null;
+                        }
+                    } else {
+                        // Fallback to acquiring read lock
+                        if (!acquiredLock) {
+                            stamp = readLock();
+                            acquiredLock = true;
+                            checkOpen();
+                            // update local variable
+                            table = this.table;
+                            bucket = signSafeMod(keyHash, table.length / ITEM_SIZE);
+                            storedKey1 = table.get(bucket);
+                            storedKey2 = table.get(bucket + 1);
+                            storedValue1 = table.get(bucket + 2);
+                            storedValue2 = table.get(bucket + 3);
+                        }
+
+                        if (key1 == storedKey1 && key2 == storedKey2) {
+                            return new LongPair(storedValue1, storedValue2);
+                        } else if (storedKey1 == EmptyKey) {
+                            // Not found
+                            return null;
+                        }
+                    }
+
+                    bucket = (bucket + ITEM_SIZE) & (table.length - 1);
+                }
+            } finally {
+                if (acquiredLock) {
+                    unlockRead(stamp);
+                }
+            }
+        }
+
+        boolean put(long key1, long key2, long value1, long value2, int keyHash, boolean onlyIfAbsent) {
+            long stamp = writeLock();
+            int bucket = signSafeMod(keyHash, capacity);
+
+            // Remember where we find the first available spot
+            int firstDeletedKey = -1;
+
+            try {
+                checkOpen();
+                Table table = this.table;
+                while (true) {
+                    long storedKey1 = table.get(bucket);
+                    long storedKey2 = table.get(bucket + 1);
+
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        if (!onlyIfAbsent) {
+                            // Over written an old value for same key
+                            table.set(bucket + 2, value1);
+                            table.set(bucket + 3, value2);
+                            return true;
+                        } else {
+                            return false;
+                        }
+                    } else if (storedKey1 == EmptyKey) {
+                        // Found an empty bucket. This means the key is not in the map. If we've already seen a deleted
+                        // key, we should write at that position
+                        if (firstDeletedKey != -1) {
+                            bucket = firstDeletedKey;
+                        } else {
+                            ++usedBuckets;
+                        }
+
+                        table.set(bucket, key1);
+                        table.set(bucket + 1, key2);
+                        table.set(bucket + 2, value1);
+                        table.set(bucket + 3, value2);
+                        ++size;
+                        return true;
+                    } else if (storedKey1 == DeletedKey) {
+                        // The bucket contained a different deleted key
+                        if (firstDeletedKey == -1) {
+                            firstDeletedKey = bucket;
+                        }
+                    }
+
+                    bucket = (bucket + ITEM_SIZE) & (table.length - 1);
+                }
+            } finally {
+                if (usedBuckets > resizeThresholdUp) {
+                    try {
+                        // Expand the hashmap
+                        int newCapacity = alignToPowerOfTwo((int) (capacity * expandFactor));
+                        rehash(newCapacity);
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } else {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private boolean remove(long key1, long key2, long value1, long value2, int keyHash) {
+            long stamp = writeLock();
+            int bucket = signSafeMod(keyHash, capacity);
+
+            try {
+                checkOpen();
+                Table table = this.table;
+                while (true) {
+                    long storedKey1 = table.get(bucket);
+                    long storedKey2 = table.get(bucket + 1);
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        if (value1 == ValueNotFound
+                                || (value1 == table.get(bucket + 2) && value2 == table.get(bucket + 3))) {
+                            --size;
+
+                            cleanBucket(bucket);
+                            return true;
+                        } else {
+                            return false;
+                        }
+                    } else if (storedKey1 == EmptyKey) {
+                        // Key wasn't found
+                        return false;
+                    }
+
+                    bucket = (bucket + ITEM_SIZE) & (table.length - 1);
+                }
+
+            } finally {
+                if (autoShrink && !closed && size < resizeThresholdBelow) {
+                    try {
+                        // Shrinking must at least ensure initCapacity,
+                        // so as to avoid frequent shrinking and expansion near initCapacity
+                        int newCapacity = Math.max(alignToPowerOfTwo((int) (capacity / shrinkFactor)), initCapacity);
+                        int newResizeThresholdUp = (int) (newCapacity * mapFillFactor);
+                        if (newCapacity < capacity && newResizeThresholdUp > size) {
+                            // shrink the hashmap
+                            rehash(newCapacity);
+                        }
+                    } finally {
+                        unlockWrite(stamp);
+                    }
+                } else {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private void cleanBucket(int bucket) {
+            Table table = this.table;
+            int nextInArray = (bucket + ITEM_SIZE) & (table.length - 1);
+            if (table.get(nextInArray) == EmptyKey) {
+                setBucket(table, bucket, EmptyKey, EmptyKey, ValueNotFound, ValueNotFound);
+                --usedBuckets;
+
+                // Cleanup all the buckets that were in `DeletedKey` state,
+                // so that we can reduce unnecessary expansions
+                bucket = (bucket - ITEM_SIZE) & (table.length - 1);
+                while (table.get(bucket) == DeletedKey) {
+                    setBucket(table, bucket, EmptyKey, EmptyKey, ValueNotFound, ValueNotFound);
+                    --usedBuckets;
+
+                    bucket = (bucket - ITEM_SIZE) & (table.length - 1);
+                }
+            } else {
+                setBucket(table, bucket, DeletedKey, DeletedKey, ValueNotFound, ValueNotFound);
+            }
+        }
+
+        void clear() {
+            long stamp = writeLock();
+
+            try {
+                checkOpen();
+                if (autoShrink && capacity > initCapacity) {
+                    shrinkToInitCapacity();
+                } else {
+                    table.fillEmpty();
+                    this.size = 0;
+                    this.usedBuckets = 0;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        void close() {
+            long stamp = writeLock();
+
+            try {
+                if (!closed) {
+                    closed = true;
+                    table.release();
+                    retire(null);
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("The map is closed");
+            }
+        }
+
+        public void forEach(BiConsumerLongPair processor) {
+            long stamp = readLock();
+
+            try {
+                checkOpen();
+                Table table = this.table;
+
+                // Go through all the buckets for this section
+                for (int bucket = 0; bucket < table.length; bucket += ITEM_SIZE) {
+                    long storedKey1 = table.get(bucket);
+
+                    if (storedKey1 != DeletedKey && storedKey1 != EmptyKey) {
+                        processor.accept(storedKey1, table.get(bucket + 1), table.get(bucket + 2),
+                                table.get(bucket + 3));
+                    }
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            Table table = this.table;
+            Table newTable = new Table(allocator, ITEM_SIZE * newCapacity, memoryBudget);
+
+            // Re-hash table
+            for (int i = 0; i < table.length; i += ITEM_SIZE) {
+                long storedKey1 = table.get(i);
+                if (storedKey1 != EmptyKey && storedKey1 != DeletedKey) {
+                    insertKeyValueNoLock(newTable, newCapacity, storedKey1, table.get(i + 1), table.get(i + 2),
+                            table.get(i + 3));
+                }
+            }
+
+            this.table = newTable;
+            retire(table);
+            usedBuckets = size;
+            capacity = newCapacity;
+            resizeThresholdUp = (int) (capacity * mapFillFactor);
+            resizeThresholdBelow = (int) (capacity * mapIdleFactor);
+        }
+
+        private void shrinkToInitCapacity() {
+            Table table = this.table;
+            this.table = new Table(allocator, ITEM_SIZE * initCapacity, memoryBudget);
+            retire(table);
+
+            size = 0;
+            usedBuckets = 0;
+            capacity = initCapacity;
+            resizeThresholdUp = (int) (capacity * mapFillFactor);
+            resizeThresholdBelow = (int) (capacity * mapIdleFactor);
+        }
+
+        private void retire(Table table) {
+            // The lookups validate every bucket they read and then move to the current table, so only a lookup
+            // stalled across two resizes could still be reading the table retired by the previous one
+            if (retiredTable != null) {
+                retiredTable.release();
+            }
+            retiredTable = table;
+        }
+
+        private static void setBucket(Table table, int bucket, long key1, long key2, long value1, long value2) {
+            table.set(bucket, key1);
+            table.set(bucket + 1, key2);
+            table.set(bucket + 2, value1);
+            table.set(bucket + 3, value2);
+        }
+
+        private static void insertKeyValueNoLock(Table table, int capacity, long key1, long key2, long value1,
+                                                 long value2) {
+            int bucket = signSafeMod(ConcurrentLongLongPairHashMap.hash(key1, key2), capacity);
+
+            while (true) {
+                long storedKey1 = table.get(bucket);
+
+                if (storedKey1 == EmptyKey) {
+                    // The bucket is empty, so we can use it
+                    setBucket(table, bucket, key1, key2, value1, value2);
+                    return;
+                }
+
+                bucket = (bucket + ITEM_SIZE) & (table.length - 1);
+            }
+        }
+    }
+
+    private static int signSafeMod(long n, int max) {
+        return ConcurrentLongLongPairHashMap.signSafeMod(n, max);
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static void checkBiggerEqualZero(long n) {
+        if (n < 0L) {
+            throw new IllegalArgumentException("Keys and values must be >= 0");
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.meta.NullMetadataBookieDriver.NullRegistrationManager;
+import org.apache.bookkeeper.proto.BookieRequestHandler;
+import org.apache.bookkeeper.proto.BookieRequestProcessor;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeAddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test adding a range of entries to a bookie with {@link Bookie#addEntries}, and through a range add request.
+ */
+public class BookieAddEntriesTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] MASTER_KEY = "master".getBytes();
+
+    private File journalDir;
+    private File ledgerDir;
+    private LedgerStorage ledgerStorage;
+    private BookieImpl bookie;
+    private final List<Long> completedEntries = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        journalDir = Files.createTempDirectory("bookie-journal").toFile();
+        ledgerDir = Files.createTempDirectory("bookie-ledgers").toFile();
+        ServerConfiguration conf = new ServerConfiguration()
+                .setJournalDirName(journalDir.getPath())
+                .setLedgerDirNames(new String[] { ledgerDir.getPath() })
+                .setJournalWriteData(false);
+        conf.setMetadataServiceUri(null);
+
+        ledgerStorage = mock(LedgerStorage.class);
+        DiskChecker diskChecker = BookieResources.createDiskChecker(conf);
+        LedgerDirsManager ledgerDirsManager =
+                BookieResources.createLedgerDirsManager(conf, diskChecker, NullStatsLogger.INSTANCE);
+        bookie = new BookieImpl(conf, new NullRegistrationManager(), ledgerStorage, diskChecker,
+                ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT,
+                BookieServiceInfo.NO_INFO);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        bookie.shutdown();
+        FileUtils.deleteDirectory(journalDir);
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    @Test
+    public void testAddEntries() throws Exception {
+        ByteBuf[] entries = { entry(LEDGER_ID, 5), entry(LEDGER_ID, 6), entry(LEDGER_ID, 7) };
+
+        bookie.addEntries(entries, false, (rc, ledgerId, entryId, addr, ctx) -> {
+            assertEquals(0, rc);
+            completedEntries.add(entryId);
+        }, null, MASTER_KEY);
+
+        verify(ledgerStorage, times(3)).addEntry(any());
+        assertEquals(3, completedEntries.size());
+        assertEquals(5L, (long) completedEntries.get(0));
+        assertEquals(7L, (long) completedEntries.get(2));
+    }
+
+    @Test
+    public void testEntriesNotConsecutive() throws Exception {
+        // the range is only invalid halfway
+        ByteBuf[] entries = { entry(LEDGER_ID, 5), entry(LEDGER_ID, 6), entry(LEDGER_ID, 8), entry(LEDGER_ID, 9) };
+        assertRejected(entries);
+    }
+
+    @Test
+    public void testEntryOfAnotherLedger() throws Exception {
+        ByteBuf[] entries = { entry(LEDGER_ID, 5), entry(LEDGER_ID, 6), entry(LEDGER_ID + 1, 7) };
+        assertRejected(entries);
+    }
+
+    @Test
+    public void testRangeAddRequestWithWrongFirstEntryId() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        // the request is processed on the calling thread
+        conf.setNumAddWorkerThreads(0);
+        BookieRequestProcessor requestProcessor = new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE,
+                null, ByteBufAllocator.DEFAULT, new DefaultChannelGroup(GlobalEventExecutor.INSTANCE));
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        BookieRequestHandler requestHandler = mock(BookieRequestHandler.class);
+        when(requestHandler.ctx()).thenReturn(channel.pipeline().firstContext());
+        try {
+            // the bodies are consecutive, but do not start from the first entry id of the request
+            RangeAddRequest.Builder rangeAddRequest = RangeAddRequest.newBuilder()
+                    .setLedgerId(LEDGER_ID)
+                    .setFirstEntryId(4)
+                    .setMasterKey(ByteString.copyFrom(MASTER_KEY));
+            for (long entryId = 5; entryId <= 7; entryId++) {
+                rangeAddRequest.addBody(ByteString.copyFrom(ByteBufUtil.getBytes(entry(LEDGER_ID, entryId))));
+            }
+            Request request = Request.newBuilder()
+                    .setHeader(BKPacketHeader.newBuilder()
+                            .setVersion(ProtocolVersion.VERSION_THREE)
+                            .setOperation(OperationType.RANGE_ADD_ENTRY)
+                            .setTxnId(1L))
+                    .setRangeAddRequest(rangeAddRequest)
+                    .build();
+
+            requestProcessor.processRequest(request, requestHandler);
+
+            Response response = channel.readOutbound();
+            assertEquals(StatusCode.EBADREQ, response.getStatus());
+            RangeAddResponse rangeAddResponse = response.getRangeAddResponse();
+            assertEquals(StatusCode.EBADREQ, rangeAddResponse.getStatus());
+            assertEquals(LEDGER_ID, rangeAddResponse.getLedgerId());
+            assertEquals(4L, rangeAddResponse.getFirstEntryId());
+            verify(ledgerStorage, never()).addEntry(any());
+        } finally {
+            requestProcessor.close();
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    private void assertRejected(ByteBuf[] entries) throws Exception {
+        try {
+            bookie.addEntries(entries, false, (rc, ledgerId, entryId, addr, ctx) -> completedEntries.add(entryId),
+                    null, MASTER_KEY);
+            fail("The range should have been rejected");
+        } catch (IOException e) {
+            // expected
+        }
+        // none of the entries before the invalid one was added
+        verify(ledgerStorage, never()).addEntry(any());
+        assertTrue(completedEntries.isEmpty());
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(24);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId);
+        return entry;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadFactory;
+import org.apache.bookkeeper.bookie.CpuAffinityProfile.CpuTopology;
+import org.apache.bookkeeper.bookie.CpuAffinityProfile.Role;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Test;
+
+/**
+ * Test the parsing and the validation of the CPUs of {@link CpuAffinityProfile}.
+ */
+public class CpuAffinityProfileTest {
+
+    // CPUs 2-7 and 10-11 are isolated, CPU n shares its core with CPU n + 8
+    private static final CpuTopology TOPOLOGY = new CpuTopology() {
+        @Override
+        public SortedSet<Integer> getIsolatedProcessors() {
+            return new TreeSet<>(Arrays.asList(2, 3, 4, 5, 6, 7, 10, 11));
+        }
+
+        @Override
+        public Set<Integer> getCpusOnSameCore(int cpu) {
+            return new TreeSet<>(Arrays.asList(cpu % 8, cpu % 8 + 8));
+        }
+    };
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+
+    private CpuAffinityProfile newProfile() {
+        return CpuAffinityProfile.fromConfiguration(conf, TOPOLOGY);
+    }
+
+    @Test
+    public void testNoCpus() {
+        CpuAffinityProfile profile = newProfile();
+        assertTrue(profile.isEmpty());
+        for (Role role : Role.values()) {
+            assertFalse(profile.hasCpus(role));
+        }
+    }
+
+    @Test
+    public void testRoleCpus() {
+        conf.setCpuAffinityCpus(Role.JOURNAL, "2");
+        conf.setCpuAffinityCpus(Role.NETTY_IO, "3-5");
+        conf.setCpuAffinityCpus(Role.READ_WORKER, "6,7");
+        CpuAffinityProfile profile = newProfile();
+
+        assertTrue(profile.hasCpus(Role.JOURNAL));
+        assertTrue(profile.hasCpus(Role.NETTY_IO));
+        assertTrue(profile.hasCpus(Role.READ_WORKER));
+        assertFalse(profile.hasCpus(Role.ADD_WORKER));
+        assertEquals(Arrays.asList(
+                "journal on cpus 2: no thread started",
+                "netty-io on cpus 3,4,5: no thread started",
+                "read-worker on cpus 6,7: no thread started"), profile.getLayout());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformedCpus() {
+        conf.setCpuAffinityCpus(Role.JOURNAL, "2-x");
+        newProfile();
+    }
+
+    @Test
+    public void testNotIsolatedCpusAreLeftOut() {
+        conf.setCpuAffinityCpus(Role.JOURNAL, "1,2");
+        conf.setCpuAffinityCpus(Role.SYNC, "0");
+        CpuAffinityProfile profile = newProfile();
+
+        assertEquals(Arrays.asList("journal on cpus 2: no thread started"), profile.getLayout());
+        assertFalse(profile.hasCpus(Role.SYNC));
+    }
+
+    @Test
+    public void testCpuSharedByRoles() {
+        conf.setCpuAffinityCpus(Role.JOURNAL, "2");
+        conf.setCpuAffinityCpus(Role.FORCE_WRITE, "2");
+        CpuAffinityProfile profile = newProfile();
+
+        assertTrue(profile.hasCpus(Role.JOURNAL));
+        assertTrue(profile.hasCpus(Role.FORCE_WRITE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHyperthreadSiblingsInRole() {
+        conf.setCpuAffinityCpus(Role.ADD_WORKER, "2,10");
+        newProfile();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHyperthreadSiblingsAcrossRoles() {
+        conf.setCpuAffinityCpus(Role.JOURNAL, "3");
+        conf.setCpuAffinityCpus(Role.SYNC, "11");
+        newProfile();
+    }
+
+    @Test
+    public void testUnreadableIsolatedCpus() {
+        conf.setCpuAffinityCpus(Role.JOURNAL, "2");
+        CpuAffinityProfile profile = CpuAffinityProfile.fromConfiguration(conf, new CpuTopology() {
+            @Override
+            public SortedSet<Integer> getIsolatedProcessors() throws IOException {
+                throw new IOException("no isolated CPUs");
+            }
+
+            @Override
+            public Set<Integer> getCpusOnSameCore(int cpu) {
+                return TOPOLOGY.getCpusOnSameCore(cpu);
+            }
+        });
+
+        assertTrue(profile.isEmpty());
+    }
+
+    @Test
+    public void testThreadFactoryOfRoleWithoutCpus() {
+        conf.setCpuAffinityCpus(Role.JOURNAL, "2");
+        ThreadFactory threadFactory = Thread::new;
+
+        CpuAffinityProfile profile = newProfile();
+        assertSame(threadFactory, profile.newThreadFactory(Role.SYNC, threadFactory));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test that {@link ReadCache} gives back its segments to the memory budget and allocates them again.
+ */
+public class ReadCacheMemoryBudgetTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int CACHE_SIZE = 4 * SEGMENT_SIZE;
+    private static final int ENTRY_SIZE = SEGMENT_SIZE / 2;
+
+    // usage of a cache, with its segments and its indexes
+    private long cacheUsage;
+    private MemoryLimitController root;
+    private MemoryLimitController readCacheMemory;
+    private MemoryLimitController otherMemory;
+    private ReadCache cache;
+
+    @Before
+    public void setUp() {
+        MemoryLimitController unlimited = new MemoryLimitController(0);
+        new ReadCache(ByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE, unlimited).close();
+        assertEquals(0, unlimited.currentUsage());
+        ReadCache measured = new ReadCache(ByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE, unlimited);
+        cacheUsage = unlimited.currentUsage();
+        measured.close();
+
+        // just enough for the read cache
+        root = new MemoryLimitController("root", cacheUsage);
+        readCacheMemory = root.newChild("read-cache", 0);
+        otherMemory = root.newChild("other", 0);
+        cache = new ReadCache(ByteBufAllocator.DEFAULT, CACHE_SIZE, SEGMENT_SIZE, readCacheMemory);
+        assertEquals(cacheUsage, root.currentUsage());
+
+        // fill the first 3 segments, 2 entries each
+        for (int i = 0; i < 6; i++) {
+            cache.put(1, i, entry(i));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+        assertEquals(0, readCacheMemory.currentUsage());
+    }
+
+    private static ByteBuf entry(int entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writerIndex(ENTRY_SIZE);
+        entry.setByte(0, entryId);
+        return entry;
+    }
+
+    private void assertCached(int entryId) {
+        ByteBuf entry = cache.get(1, entryId);
+        assertNotNull("Entry " + entryId + " should be cached", entry);
+        assertEquals(entryId, entry.getByte(0));
+        entry.release();
+    }
+
+    @Test
+    public void testShrinkReleasesOldestSegments() {
+        assertEquals(2 * SEGMENT_SIZE, cache.shrink(SEGMENT_SIZE + 1));
+        assertEquals(cacheUsage - 2 * SEGMENT_SIZE, readCacheMemory.currentUsage());
+
+        // the oldest segment is gone, the current and the previous one are kept
+        assertNull(cache.get(1, 0));
+        assertNull(cache.get(1, 1));
+        for (int i = 2; i < 6; i++) {
+            assertCached(i);
+        }
+        assertEquals(4, cache.count());
+    }
+
+    @Test
+    public void testReclaimedWhenAnotherConsumerNeedsMemory() throws Exception {
+        // the budget is over its limit
+        otherMemory.forceReserveMemory(1);
+        otherMemory.reserveMemory(SEGMENT_SIZE);
+
+        assertEquals(cacheUsage - 2 * SEGMENT_SIZE, readCacheMemory.currentUsage());
+        assertEquals(SEGMENT_SIZE + 1, otherMemory.currentUsage());
+    }
+
+    @Test
+    public void testSegmentAllocatedAgainWhenBudgetAllows() {
+        cache.shrink(SEGMENT_SIZE + 1);
+        otherMemory.forceReserveMemory(2 * SEGMENT_SIZE + 1);
+
+        // the next segment cannot be allocated again, the entries are not cached
+        cache.put(1, 6, entry(6));
+        assertNull(cache.get(1, 6));
+        assertEquals(cacheUsage - 2 * SEGMENT_SIZE, readCacheMemory.currentUsage());
+
+        otherMemory.releaseMemory(2 * SEGMENT_SIZE + 1);
+        cache.put(1, 7, entry(7));
+        assertCached(7);
+        assertEquals(cacheUsage - SEGMENT_SIZE, readCacheMemory.currentUsage());
+        for (int i = 2; i < 6; i++) {
+            assertCached(i);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link WriteCache}.
+ */
+public class WriteCacheTest {
+
+    private static final int CACHE_SIZE = 1024;
+
+    private WriteCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new WriteCache(ByteBufAllocator.DEFAULT, CACHE_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testHasSpace() {
+        assertTrue(cache.hasSpace(CACHE_SIZE));
+        assertFalse(cache.hasSpace(CACHE_SIZE + 1));
+
+        assertTrue(cache.put(1, 0, entry(500)));
+        // entries are aligned to 64 bytes
+        assertTrue(cache.hasSpace(CACHE_SIZE - 512));
+        assertFalse(cache.hasSpace(CACHE_SIZE - 511));
+    }
+
+    @Test
+    public void testHasSpaceMatchesPut() {
+        while (cache.hasSpace(100)) {
+            assertTrue(cache.put(1, cache.count(), entry(100)));
+        }
+        assertFalse(cache.put(1, cache.count(), entry(100)));
+        assertEquals(CACHE_SIZE / 128, cache.count());
+
+        cache.clear();
+        assertTrue(cache.hasSpace(CACHE_SIZE));
+    }
+
+    private static ByteBuf entry(int size) {
+        return Unpooled.wrappedBuffer(new byte[size]);
+    }
+}
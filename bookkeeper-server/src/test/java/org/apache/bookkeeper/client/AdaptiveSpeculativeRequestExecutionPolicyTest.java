@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Test the timeouts and the rate limit of the speculative requests of
+ * {@link AdaptiveSpeculativeRequestExecutionPolicy}.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicyTest {
+
+    private static final BookieId BOOKIE_1 = BookieId.parse("bookie-1:3181");
+    private static final BookieId BOOKIE_2 = BookieId.parse("bookie-2:3181");
+    private static final int FIRST_TIMEOUT_MS = 10;
+    private static final int MAX_TIMEOUT_MS = 100;
+
+    private BookieReadLatencyTracker latencyTracker;
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        latencyTracker = new BookieReadLatencyTracker(0);
+        scheduler = mock(ScheduledExecutorService.class);
+    }
+
+    @Test
+    public void testFirstTimeoutForUnknownBookie() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0);
+        policy.initiateSpeculativeRequest(scheduler, newRequestExecutor(BOOKIE_1));
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS), (long) scheduledDelaysMicros(1).get(0));
+    }
+
+    @Test
+    public void testExpectedLatencyOfKnownBookie() {
+        latencyTracker.recordLatency(BOOKIE_1, TimeUnit.MILLISECONDS.toNanos(2));
+        latencyTracker.recordLatency(BOOKIE_2, TimeUnit.MILLISECONDS.toNanos(MAX_TIMEOUT_MS * 2));
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(0);
+
+        policy.initiateSpeculativeRequest(scheduler, newRequestExecutor(BOOKIE_1));
+        policy.initiateSpeculativeRequest(scheduler, newRequestExecutor(BOOKIE_2));
+
+        List<Long> delaysMicros = scheduledDelaysMicros(2);
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(2), (long) delaysMicros.get(0));
+        // never waits longer than the max timeout
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_TIMEOUT_MS), (long) delaysMicros.get(1));
+    }
+
+    @Test
+    public void testRateLimitPerBookie() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy = newPolicy(1);
+        SpeculativeRequestExecutor slowBookieRead1 = newRequestExecutor(BOOKIE_1);
+        SpeculativeRequestExecutor slowBookieRead2 = newRequestExecutor(BOOKIE_1);
+        SpeculativeRequestExecutor otherBookieRead = newRequestExecutor(BOOKIE_2);
+
+        policy.initiateSpeculativeRequest(scheduler, slowBookieRead1);
+        policy.initiateSpeculativeRequest(scheduler, slowBookieRead2);
+        policy.initiateSpeculativeRequest(scheduler, otherBookieRead);
+        List<Runnable> tasks = scheduledTasks(3);
+        tasks.forEach(Runnable::run);
+
+        verify(slowBookieRead1).issueSpeculativeRequest();
+        // over the rate of the slow bookie, postponed to the next timeout
+        verify(slowBookieRead2, never()).issueSpeculativeRequest();
+        // the rate of the other bookies is not affected
+        verify(otherBookieRead).issueSpeculativeRequest();
+        scheduledTasks(4);
+    }
+
+    private AdaptiveSpeculativeRequestExecutionPolicy newPolicy(int maxSpeculativeRequestRate) {
+        return new AdaptiveSpeculativeRequestExecutionPolicy(latencyTracker, FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2,
+                maxSpeculativeRequestRate);
+    }
+
+    private static SpeculativeRequestExecutor newRequestExecutor(BookieId pendingBookie) {
+        SpeculativeRequestExecutor requestExecutor = mock(SpeculativeRequestExecutor.class);
+        when(requestExecutor.getPendingBookie()).thenReturn(pendingBookie);
+        when(requestExecutor.issueSpeculativeRequest()).thenReturn(Futures.immediateFuture(false));
+        return requestExecutor;
+    }
+
+    private List<Long> scheduledDelaysMicros(int numScheduled) {
+        ArgumentCaptor<Long> delays = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler, times(numScheduled)).schedule(any(Runnable.class), delays.capture(),
+                eq(TimeUnit.MICROSECONDS));
+        return delays.getAllValues();
+    }
+
+    private List<Runnable> scheduledTasks(int numScheduled) {
+        ArgumentCaptor<Runnable> tasks = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(numScheduled)).schedule(tasks.capture(), anyLong(), eq(TimeUnit.MICROSECONDS));
+        return tasks.getAllValues();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
+import org.apache.bookkeeper.client.BookieInfoReader.BookieInfoMap;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the load scores of the bookies computed by {@link BookieInfoMap}.
+ */
+public class BookieInfoLoadScoreTest {
+
+    private static final BookieId BOOKIE_1 = BookieId.parse("bookie-1:3181");
+    private static final BookieId BOOKIE_2 = BookieId.parse("bookie-2:3181");
+    private static final BookieId BOOKIE_3 = BookieId.parse("bookie-3:3181");
+    private static final long DISK_SPACE = 1000L;
+    private static final double DELTA = 1e-9;
+
+    private BookieInfoMap infoMap;
+
+    @Before
+    public void setUp() {
+        infoMap = new BookieInfoMap();
+        infoMap.updateBookies(Arrays.asList(BOOKIE_1, BOOKIE_2, BOOKIE_3));
+    }
+
+    private static BookieInfo load(long journalQueueLength, long writeCacheSize, long readQueueLength) {
+        return new BookieInfo(DISK_SPACE, DISK_SPACE, journalQueueLength, writeCacheSize, 100L, readQueueLength);
+    }
+
+    @Test
+    public void testEvenLoadKeepsSimilarWeights() {
+        infoMap.gotInfo(BOOKIE_1, load(10, 50, 10));
+        infoMap.gotInfo(BOOKIE_2, load(10, 50, 10));
+        infoMap.updateLoadScores(1.0);
+
+        assertEquals(infoMap.getInfo(BOOKIE_1).getWeight(), infoMap.getInfo(BOOKIE_2).getWeight());
+    }
+
+    @Test
+    public void testLoadedBookieHasLowerWeight() {
+        infoMap.gotInfo(BOOKIE_1, load(0, 0, 0));
+        infoMap.gotInfo(BOOKIE_2, load(100, 100, 100));
+        infoMap.updateLoadScores(1.0);
+
+        BookieInfo idle = infoMap.getInfo(BOOKIE_1);
+        BookieInfo loaded = infoMap.getInfo(BOOKIE_2);
+        assertEquals(0.0, idle.getLoadScore(), DELTA);
+        assertEquals(DISK_SPACE, idle.getWeight());
+        // mean queue lengths of 50: (100 / 151 + 1 + 100 / 151) / 3
+        assertEquals((200.0 / 151 + 1) / 3, loaded.getLoadScore(), DELTA);
+        assertTrue(loaded.getWeight() < idle.getWeight());
+    }
+
+    @Test
+    public void testLoadScoreIsSmoothed() {
+        infoMap.gotInfo(BOOKIE_1, load(0, 100, 0));
+        infoMap.updateLoadScores(0.25);
+        double firstScore = infoMap.getInfo(BOOKIE_1).getLoadScore();
+        // the first score is not smoothed, only the write cache counts
+        assertEquals(1.0 / 3, firstScore, DELTA);
+
+        infoMap.gotInfo(BOOKIE_1, load(0, 0, 0));
+        infoMap.updateLoadScores(0.25);
+        assertEquals(0.75 * firstScore, infoMap.getInfo(BOOKIE_1).getLoadScore(), DELTA);
+    }
+
+    @Test
+    public void testOnlyScannedBookiesAreScored() {
+        infoMap.gotInfo(BOOKIE_1, load(0, 100, 0));
+        infoMap.updateLoadScores(1.0);
+        double score = infoMap.getInfo(BOOKIE_1).getLoadScore();
+
+        // a scan without new info leaves the scores as they were
+        infoMap.updateLoadScores(0.5);
+        assertEquals(score, infoMap.getInfo(BOOKIE_1).getLoadScore(), DELTA);
+    }
+
+    @Test
+    public void testBookieWithoutLoadIsNotScored() {
+        infoMap.gotInfo(BOOKIE_1, load(0, 0, 0));
+        infoMap.gotInfo(BOOKIE_2, load(0, 0, 0));
+        // an older bookie reporting only its disk space
+        infoMap.gotInfo(BOOKIE_3, new BookieInfo(DISK_SPACE, DISK_SPACE));
+        infoMap.updateLoadScores(1.0);
+
+        BookieInfo unreported = infoMap.getInfo(BOOKIE_3);
+        assertEquals(0.0, unreported.getLoadScore(), DELTA);
+        assertEquals(DISK_SPACE, unreported.getWeight());
+        // and does not lower the mean load of the others
+        assertEquals(0.0, infoMap.getInfo(BOOKIE_1).getLoadScore(), DELTA);
+    }
+
+    @Test
+    public void testClearedBookieStartsOver() {
+        infoMap.gotInfo(BOOKIE_1, load(0, 100, 0));
+        infoMap.updateLoadScores(0.25);
+        infoMap.clearInfo(BOOKIE_1);
+
+        infoMap.gotInfo(BOOKIE_1, load(0, 0, 0));
+        infoMap.updateLoadScores(0.25);
+        assertEquals(0.0, infoMap.getInfo(BOOKIE_1).getLoadScore(), DELTA);
+    }
+}
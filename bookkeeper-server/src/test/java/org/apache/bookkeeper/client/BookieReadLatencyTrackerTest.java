@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Test;
+
+/**
+ * Test the read latency estimates of {@link BookieReadLatencyTracker}.
+ */
+public class BookieReadLatencyTrackerTest {
+
+    private static final BookieId BOOKIE_1 = BookieId.parse("bookie-1:3181");
+    private static final BookieId BOOKIE_2 = BookieId.parse("bookie-2:3181");
+
+    @Test
+    public void testUnknownBookie() {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker(4);
+        assertEquals(-1L, tracker.getExpectedLatencyNanos(BOOKIE_1));
+    }
+
+    @Test
+    public void testFirstSample() {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker(4);
+        tracker.recordLatency(BOOKIE_1, 1000);
+        // the first deviation is half the latency
+        assertEquals(1000 + 4 * 500, tracker.getExpectedLatencyNanos(BOOKIE_1));
+    }
+
+    @Test
+    public void testSmoothing() {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker(4);
+        tracker.recordLatency(BOOKIE_1, 1000);
+        tracker.recordLatency(BOOKIE_1, 2000);
+        // average 1000 * 7/8 + 2000 / 8, deviation 500 * 3/4 + 1000 / 4
+        assertEquals(1125 + 4 * 625, tracker.getExpectedLatencyNanos(BOOKIE_1));
+    }
+
+    @Test
+    public void testStableLatencyConverges() {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker(4);
+        tracker.recordLatency(BOOKIE_1, 10_000);
+        for (int i = 0; i < 100; i++) {
+            tracker.recordLatency(BOOKIE_1, 1000);
+        }
+        long expectedLatencyNanos = tracker.getExpectedLatencyNanos(BOOKIE_1);
+        assertTrue("Expected latency " + expectedLatencyNanos, expectedLatencyNanos >= 1000);
+        assertTrue("Expected latency " + expectedLatencyNanos, expectedLatencyNanos < 1010);
+    }
+
+    @Test
+    public void testBookiesAreTrackedSeparately() {
+        BookieReadLatencyTracker tracker = new BookieReadLatencyTracker(0);
+        tracker.recordLatency(BOOKIE_1, 1000);
+        tracker.recordLatency(BOOKIE_2, 5000);
+        assertEquals(1000L, tracker.getExpectedLatencyNanos(BOOKIE_1));
+        assertEquals(5000L, tracker.getExpectedLatencyNanos(BOOKIE_2));
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.ResourceLeakDetector;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Allocation regression guard of the add path of {@link LedgerHandle}.
+ *
+ * <p>The adds are acknowledged on the test thread by a bookie client that allocates nothing, and the
+ * bytes allocated by the test thread are measured. The bounds leave room for the JIT, they are meant
+ * to catch an allocation added back on each add, such as the ack set of {@link PendingAddOp} or the
+ * ensemble lookup of {@link LedgerHandle#getCurrentEnsemble()}. See LedgerHandleAddBenchmark in the
+ * microbenchmarks for the exact figures.
+ */
+public class LedgerHandleAddAllocationTest {
+
+    private static final int ENSEMBLE_SIZE = 3;
+    private static final int ENTRY_SIZE = 100;
+    private static final int WARMUP_ADDS = 200_000;
+    private static final int MEASURED_ADDS = 100_000;
+
+    private OrderedExecutor mainWorkerPool;
+    private OrderedScheduler scheduler;
+    private AckingBookieClient bookieClient;
+    private final byte[] data = new byte[ENTRY_SIZE];
+    private final AddCallback noopCallback = (rc, lh, entryId, ctx) -> { };
+    private ResourceLeakDetector.Level leakDetectionLevel;
+
+    @Before
+    public void setUp() {
+        // The leak detection of the tests records the stack of every buffer allocation
+        leakDetectionLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+        mainWorkerPool = OrderedExecutor.newBuilder().name("allocation-test-worker").numThreads(1).build();
+        scheduler = OrderedScheduler.newSchedulerBuilder().name("allocation-test-scheduler").numThreads(1).build();
+        bookieClient = new AckingBookieClient();
+    }
+
+    @After
+    public void tearDown() {
+        mainWorkerPool.shutdownNow();
+        scheduler.shutdownNow();
+        ResourceLeakDetector.setLevel(leakDetectionLevel);
+    }
+
+    @Test
+    public void testAsyncAddEntryAllocationV2() throws Exception {
+        assertAllocationPerAdd(true, 96);
+    }
+
+    @Test
+    public void testAsyncAddEntryAllocationV3() throws Exception {
+        assertAllocationPerAdd(false, 192);
+    }
+
+    private void assertAllocationPerAdd(boolean useV2Protocol, long maxBytesPerAdd) throws Exception {
+        com.sun.management.ThreadMXBean threadBean = threadMXBean();
+        long threadId = Thread.currentThread().getId();
+        LedgerHandle lh = newLedgerHandle(useV2Protocol);
+
+        for (int i = 0; i < WARMUP_ADDS; i++) {
+            addEntry(lh);
+        }
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_ADDS; i++) {
+            addEntry(lh);
+        }
+        long bytesPerAdd = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / MEASURED_ADDS;
+
+        assertEquals(WARMUP_ADDS + MEASURED_ADDS - 1, lh.getLastAddConfirmed());
+        assertTrue("The add path allocates " + bytesPerAdd + " bytes per add, expected at most " + maxBytesPerAdd,
+                bytesPerAdd <= maxBytesPerAdd);
+    }
+
+    private void addEntry(LedgerHandle lh) {
+        ByteBuf entry = PooledByteBufAllocator.DEFAULT.directBuffer(ENTRY_SIZE);
+        entry.writeBytes(data);
+        lh.asyncAddEntry(entry, noopCallback, null);
+        bookieClient.ackPendingAdds();
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+        return threadBean;
+    }
+
+    private LedgerHandle newLedgerHandle(boolean useV2Protocol) throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setUseV2WireProtocol(useV2Protocol);
+        // The adds are not throttled, to measure the add path alone
+        conf.setThrottleValue(0);
+        ClientInternalConf internalConf = ClientInternalConf.fromConfig(conf);
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        LedgerMetadataCache ledgerMetadataCache = new LedgerMetadataCache(null, 0, 0, clientStats);
+
+        ClientContext clientCtx = new ClientContext() {
+            @Override
+            public ClientInternalConf getConf() {
+                return internalConf;
+            }
+
+            @Override
+            public LedgerManager getLedgerManager() {
+                return null;
+            }
+
+            @Override
+            public LedgerMetadataCache getLedgerMetadataCache() {
+                return ledgerMetadataCache;
+            }
+
+            @Override
+            public BookieWatcher getBookieWatcher() {
+                return null;
+            }
+
+            @Override
+            public EnsemblePlacementPolicy getPlacementPolicy() {
+                return null;
+            }
+
+            @Override
+            public BookieClient getBookieClient() {
+                return bookieClient;
+            }
+
+            @Override
+            public ByteBufAllocator getByteBufAllocator() {
+                return PooledByteBufAllocator.DEFAULT;
+            }
+
+            @Override
+            public OrderedExecutor getMainWorkerPool() {
+                return mainWorkerPool;
+            }
+
+            @Override
+            public OrderedScheduler getScheduler() {
+                return scheduler;
+            }
+
+            @Override
+            public BookKeeperClientStats getClientStats() {
+                return clientStats;
+            }
+
+            @Override
+            public BookieReadLatencyTracker getBookieReadLatencyTracker() {
+                return null;
+            }
+
+            @Override
+            public Optional<SpeculativeRequestExecutionPolicy> getReadSpeculativeRequestPolicy() {
+                return Optional.empty();
+            }
+
+            @Override
+            public boolean isClientClosed() {
+                return false;
+            }
+        };
+
+        byte[] password = "allocation".getBytes(UTF_8);
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(1L)
+                .withEnsembleSize(ENSEMBLE_SIZE)
+                .withWriteQuorumSize(ENSEMBLE_SIZE)
+                .withAckQuorumSize(ENSEMBLE_SIZE - 1)
+                .withPassword(password)
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, Arrays.asList(
+                        BookieId.parse("bookie-1:3181"),
+                        BookieId.parse("bookie-2:3181"),
+                        BookieId.parse("bookie-3:3181")))
+                .build();
+        return new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, password, WriteFlag.NONE);
+    }
+
+    /**
+     * Bookie client acknowledging the adds it was sent when asked to, without allocating.
+     */
+    private static class AckingBookieClient implements BookieClient {
+
+        private final BookieId[] addresses = new BookieId[ENSEMBLE_SIZE];
+        private final long[] ledgerIds = new long[ENSEMBLE_SIZE];
+        private final long[] entryIds = new long[ENSEMBLE_SIZE];
+        private final WriteCallback[] callbacks = new WriteCallback[ENSEMBLE_SIZE];
+        private final Object[] contexts = new Object[ENSEMBLE_SIZE];
+        private int numPendingAdds = 0;
+
+        @Override
+        public void addEntry(BookieId address, long ledgerId, byte[] masterKey, long entryId,
+                             ReferenceCounted toSend, WriteCallback cb, Object ctx, int options,
+                             boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+            int i = numPendingAdds++;
+            addresses[i] = address;
+            ledgerIds[i] = ledgerId;
+            entryIds[i] = entryId;
+            callbacks[i] = cb;
+            contexts[i] = ctx;
+        }
+
+        void ackPendingAdds() {
+            for (int i = 0; i < numPendingAdds; i++) {
+                WriteCallback cb = callbacks[i];
+                Object ctx = contexts[i];
+                callbacks[i] = null;
+                contexts[i] = null;
+                cb.writeComplete(BKException.Code.OK, ledgerIds[i], entryIds[i], addresses[i], ctx);
+            }
+            numPendingAdds = 0;
+        }
+
+        @Override
+        public List<BookieId> getFaultyBookies() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isWritable(BookieId address, long ledgerId) {
+            return true;
+        }
+
+        @Override
+        public long getNumPendingRequests(BookieId address, long ledgerId) {
+            return 0;
+        }
+
+        @Override
+        public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writeLac(BookieId address, long ledgerId, byte[] masterKey, long lac, ByteBufList toSend,
+                             WriteLacCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntry(BookieId address, long ledgerId, long entryId, ReadEntryCallback cb, Object ctx,
+                              int flags, byte[] masterKey, boolean allowFastFail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount,
+                                     long maxSize, BatchedReadEntryCallback cb, Object ctx, int flags,
+                                     byte[] masterKey, boolean allowFastFail) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void streamReadEntries(BookieId address, long ledgerId, long firstEntryId, long lastEntryId,
+                                      int credits, StreamReadEntryCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                              long timeOutInMillis, boolean piggyBackEntry,
+                                              ReadEntryCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                         long ledgerId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
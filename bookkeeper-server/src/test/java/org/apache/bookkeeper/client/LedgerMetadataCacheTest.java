@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the hits and the invalidations of {@link LedgerMetadataCache}.
+ */
+public class LedgerMetadataCacheTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private LedgerManager ledgerManager;
+    private BookKeeperClientStats clientStats;
+    private Counter hitsCounter;
+    private Counter missesCounter;
+
+    @Before
+    public void setUp() {
+        ledgerManager = mock(LedgerManager.class);
+        hitsCounter = mock(Counter.class);
+        missesCounter = mock(Counter.class);
+        clientStats = mock(BookKeeperClientStats.class);
+        when(clientStats.getLedgerMetadataCacheHitsCounter()).thenReturn(hitsCounter);
+        when(clientStats.getLedgerMetadataCacheMissesCounter()).thenReturn(missesCounter);
+    }
+
+    private static Versioned<LedgerMetadata> metadata(boolean closed, long version) {
+        LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(1)
+                .withWriteQuorumSize(1)
+                .withAckQuorumSize(1)
+                .withPassword("cache".getBytes(UTF_8))
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, Arrays.asList(BookieId.parse("bookie-1:3181")));
+        if (closed) {
+            builder.withClosedState().withLastEntryId(10L).withLength(100L);
+        }
+        return new Versioned<>(builder.build(), new LongVersion(version));
+    }
+
+    private void metadataInStore(Versioned<LedgerMetadata> metadata) {
+        when(ledgerManager.readLedgerMetadata(LEDGER_ID)).thenReturn(CompletableFuture.completedFuture(metadata));
+    }
+
+    @Test
+    public void testClosedLedgerIsCached() throws Exception {
+        LedgerMetadataCache cache = new LedgerMetadataCache(ledgerManager, 10, 0, clientStats);
+        Versioned<LedgerMetadata> closed = metadata(true, 1);
+        metadataInStore(closed);
+
+        assertSame(closed, cache.readLedgerMetadata(LEDGER_ID).get());
+        assertSame(closed, cache.readLedgerMetadata(LEDGER_ID).get());
+
+        verify(ledgerManager, times(1)).readLedgerMetadata(LEDGER_ID);
+        verify(ledgerManager).registerLedgerMetadataListener(LEDGER_ID, cache);
+        verify(missesCounter).inc();
+        verify(hitsCounter).inc();
+    }
+
+    @Test
+    public void testOpenLedgerIsNotCached() throws Exception {
+        LedgerMetadataCache cache = new LedgerMetadataCache(ledgerManager, 10, 0, clientStats);
+        metadataInStore(metadata(false, 1));
+
+        cache.readLedgerMetadata(LEDGER_ID).get();
+        cache.readLedgerMetadata(LEDGER_ID).get();
+
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+        verify(ledgerManager, never()).registerLedgerMetadataListener(LEDGER_ID, cache);
+    }
+
+    @Test
+    public void testDisabledCache() throws Exception {
+        LedgerMetadataCache cache = new LedgerMetadataCache(ledgerManager, 0, 0, clientStats);
+        metadataInStore(metadata(true, 1));
+
+        cache.readLedgerMetadata(LEDGER_ID).get();
+        cache.readLedgerMetadata(LEDGER_ID).get();
+
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testListenerUpdatesCachedMetadata() throws Exception {
+        LedgerMetadataCache cache = new LedgerMetadataCache(ledgerManager, 10, 300, clientStats);
+        metadataInStore(metadata(true, 1));
+        cache.readLedgerMetadata(LEDGER_ID).get();
+
+        // e.g. the ensemble was replaced by re-replication
+        Versioned<LedgerMetadata> updated = metadata(true, 2);
+        cache.onChanged(LEDGER_ID, updated);
+        assertSame(updated, cache.readLedgerMetadata(LEDGER_ID).get());
+
+        // an older version does not replace the cached metadata
+        cache.onChanged(LEDGER_ID, metadata(true, 1));
+        assertSame(updated, cache.readLedgerMetadata(LEDGER_ID).get());
+        verify(ledgerManager, times(1)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testListenerInvalidatesOnDelete() throws Exception {
+        LedgerMetadataCache cache = new LedgerMetadataCache(ledgerManager, 10, 300, clientStats);
+        metadataInStore(metadata(true, 1));
+        cache.readLedgerMetadata(LEDGER_ID).get();
+
+        // the ledger was deleted by another client
+        cache.onChanged(LEDGER_ID, null);
+        verify(ledgerManager).unregisterLedgerMetadataListener(LEDGER_ID, cache);
+
+        cache.readLedgerMetadata(LEDGER_ID).get();
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testInvalidateOnDelete() throws Exception {
+        LedgerMetadataCache cache = new LedgerMetadataCache(ledgerManager, 10, 300, clientStats);
+        metadataInStore(metadata(true, 1));
+        cache.readLedgerMetadata(LEDGER_ID).get();
+
+        // the ledger was deleted by this client
+        cache.invalidate(LEDGER_ID);
+        verify(ledgerManager).unregisterLedgerMetadataListener(LEDGER_ID, cache);
+
+        cache.readLedgerMetadata(LEDGER_ID).get();
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTtl() {
+        new LedgerMetadataCache(ledgerManager, 10, -1, clientStats);
+    }
+}
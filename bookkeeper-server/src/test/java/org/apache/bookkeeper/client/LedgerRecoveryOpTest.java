@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.RETURNS_DEFAULTS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the pipelined recovery reads of {@link LedgerRecoveryOp}.
+ */
+public class LedgerRecoveryOpTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final byte[] PASSWORD = "recovery".getBytes(UTF_8);
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private OrderedExecutor mainWorkerPool;
+    private OrderedScheduler scheduler;
+    private ExecutorService bookieExecutor;
+    private BookieClient bookieClient;
+    private EnsemblePlacementPolicy placementPolicy;
+    private LedgerHandle lh;
+    private DigestManager entryPackager;
+
+    private final AtomicInteger numBatchReads = new AtomicInteger();
+    private final AtomicBoolean concurrentAddInjected = new AtomicBoolean();
+
+    @Before
+    public void setUp() throws Exception {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("recovery-test-worker").numThreads(1).build();
+        scheduler = OrderedScheduler.newSchedulerBuilder().name("recovery-test-scheduler").numThreads(1).build();
+        bookieExecutor = Executors.newSingleThreadExecutor();
+        entryPackager = DigestManager.instantiate(LEDGER_ID, PASSWORD,
+                BookKeeper.DigestType.toProtoDigestType(BookKeeper.DigestType.CRC32C),
+                UnpooledByteBufAllocator.DEFAULT, false);
+
+        // The default methods delegate to the abstract ones, which are answered below
+        bookieClient = mock(BookieClient.class, withSettings().defaultAnswer(invocation ->
+                invocation.getMethod().isDefault()
+                        ? invocation.callRealMethod() : RETURNS_DEFAULTS.answer(invocation)));
+        doAnswer(invocation -> true).when(bookieClient).isWritable(any(), anyLong());
+        // The fencing read of the last add confirmed finds no entry on any bookie
+        doAnswer(invocation -> {
+            ReadEntryCallback cb = invocation.getArgument(3);
+            Object ctx = invocation.getArgument(4);
+            bookieExecutor.execute(() -> cb.readEntryComplete(BKException.Code.NoSuchEntryException, LEDGER_ID,
+                    BookieProtocol.LAST_ADD_CONFIRMED, null, ctx));
+            return null;
+        }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt(), any(), anyBoolean());
+        // Each batched read returns two entries
+        doAnswer(invocation -> {
+            numBatchReads.incrementAndGet();
+            long startEntryId = invocation.getArgument(2);
+            BatchedReadEntryCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            bookieExecutor.execute(() -> {
+                ByteBufList entries = ByteBufList.get(entry(startEntryId), entry(startEntryId + 1));
+                cb.readEntriesComplete(BKException.Code.OK, LEDGER_ID, startEntryId, entries, ctx);
+                entries.release();
+            });
+            return null;
+        }).when(bookieClient).batchReadEntries(any(), anyLong(), anyLong(), anyInt(), anyLong(), any(), any(),
+                anyInt(), any(), anyBoolean());
+        // An add racing the recovery pushes an entry once the first entry is added back
+        doAnswer(invocation -> {
+            if (concurrentAddInjected.compareAndSet(false, true)) {
+                synchronized (lh) {
+                    lh.lastAddPushed++;
+                }
+            }
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+
+        placementPolicy = mock(EnsemblePlacementPolicy.class);
+        doAnswer(invocation -> invocation.getArgument(2))
+                .when(placementPolicy).reorderReadSequence(any(), any(), any());
+
+        lh = newLedgerHandle();
+    }
+
+    @After
+    public void tearDown() {
+        bookieExecutor.shutdownNow();
+        mainWorkerPool.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private ByteBuf entry(long entryId) {
+        ByteBuf data = Unpooled.copiedBuffer("entry-" + entryId, UTF_8);
+        ByteBufList packaged = (ByteBufList) entryPackager.computeDigestAndPackageForSending(entryId,
+                entryId - 1, (entryId + 1) * 10, data, PASSWORD, BookieProtocol.FLAG_NONE);
+        ByteBuf entry = ByteBufList.coalesce(packaged);
+        packaged.release();
+        return entry;
+    }
+
+    private LedgerHandle newLedgerHandle() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setUseV2WireProtocol(true);
+        conf.setBatchReadEnabled(true);
+        conf.setRecoveryPipelinedReadEnabled(true);
+        conf.setRecoveryPipelinedReadEntriesPerBatch(4);
+        conf.setRecoveryPipelinedReadMaxInFlightBytes(1024 * 1024);
+        conf.setSpeculativeReadTimeout(0);
+        conf.setThrottleValue(0);
+        ClientInternalConf internalConf = ClientInternalConf.fromConfig(conf);
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        LedgerMetadataCache ledgerMetadataCache = new LedgerMetadataCache(null, 0, 0, clientStats);
+
+        ClientContext clientCtx = new ClientContext() {
+            @Override
+            public ClientInternalConf getConf() {
+                return internalConf;
+            }
+
+            @Override
+            public LedgerManager getLedgerManager() {
+                return null;
+            }
+
+            @Override
+            public LedgerMetadataCache getLedgerMetadataCache() {
+                return ledgerMetadataCache;
+            }
+
+            @Override
+            public BookieWatcher getBookieWatcher() {
+                return null;
+            }
+
+            @Override
+            public EnsemblePlacementPolicy getPlacementPolicy() {
+                return placementPolicy;
+            }
+
+            @Override
+            public BookieClient getBookieClient() {
+                return bookieClient;
+            }
+
+            @Override
+            public ByteBufAllocator getByteBufAllocator() {
+                return UnpooledByteBufAllocator.DEFAULT;
+            }
+
+            @Override
+            public OrderedExecutor getMainWorkerPool() {
+                return mainWorkerPool;
+            }
+
+            @Override
+            public OrderedScheduler getScheduler() {
+                return scheduler;
+            }
+
+            @Override
+            public BookKeeperClientStats getClientStats() {
+                return clientStats;
+            }
+
+            @Override
+            public BookieReadLatencyTracker getBookieReadLatencyTracker() {
+                return null;
+            }
+
+            @Override
+            public Optional<SpeculativeRequestExecutionPolicy> getReadSpeculativeRequestPolicy() {
+                return Optional.empty();
+            }
+
+            @Override
+            public boolean isClientClosed() {
+                return false;
+            }
+        };
+
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withPassword(PASSWORD)
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, Arrays.asList(
+                        BookieId.parse("bookie-1:3181"),
+                        BookieId.parse("bookie-2:3181"),
+                        BookieId.parse("bookie-3:3181")))
+                .build();
+        return new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, PASSWORD, WriteFlag.NONE);
+    }
+
+    @Test
+    public void testUnexpectedEntryStopsPipelinedRecovery() throws Exception {
+        CompletableFuture<LedgerHandle> recovery = new LedgerRecoveryOp(lh, lh.clientCtx).initiate();
+        try {
+            recovery.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("the recovery should fail on an unexpected entry");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKUnexpectedConditionException);
+        }
+
+        // Wait for the recovery to be done with the batch, on the ordered thread of the ledger
+        CompletableFuture<Void> drained = new CompletableFuture<>();
+        mainWorkerPool.executeOrdered(LEDGER_ID, () -> drained.complete(null));
+        drained.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // Only the first entry was added back, and nothing was read after the failure
+        assertTrue(concurrentAddInjected.get());
+        assertEquals(1, lh.getLastAddPushed());
+        assertEquals(1, numBatchReads.get());
+    }
+}
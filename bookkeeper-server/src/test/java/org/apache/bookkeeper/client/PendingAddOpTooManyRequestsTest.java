@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the retries of the writes rejected by an overloaded bookie in {@link PendingAddOp}.
+ */
+public class PendingAddOpTooManyRequestsTest {
+
+    private static final int MAX_RETRIES = 2;
+    private static final BookieId BOOKIE_1 = BookieId.parse("bookie-1:3181");
+    private static final BookieId BOOKIE_2 = BookieId.parse("bookie-2:3181");
+    private static final BookieId BOOKIE_3 = BookieId.parse("bookie-3:3181");
+
+    private OrderedExecutor mainWorkerPool;
+    private OrderedScheduler scheduler;
+    private final LinkedBlockingQueue<SentWrite> sentWrites = new LinkedBlockingQueue<>();
+    // the writes taken from the queue, not yet completed by the test
+    private final List<SentWrite> receivedWrites = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("too-many-requests-test-worker").numThreads(1).build();
+        scheduler = OrderedScheduler.newSchedulerBuilder().name("too-many-requests-test-scheduler")
+                .numThreads(1).build();
+    }
+
+    @After
+    public void tearDown() {
+        mainWorkerPool.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testRetriesAreCountedPerBookie() throws Exception {
+        LedgerHandle lh = newLedgerHandle();
+        CompletableFuture<Integer> result = addEntry(lh);
+
+        // each bookie uses its own retries, more than the max in total
+        for (int i = 0; i < MAX_RETRIES; i++) {
+            nextWriteTo(BOOKIE_1).complete(BKException.Code.TooManyRequestsException);
+            nextWriteTo(BOOKIE_2).complete(BKException.Code.TooManyRequestsException);
+        }
+        nextWriteTo(BOOKIE_1).complete(BKException.Code.OK);
+        nextWriteTo(BOOKIE_2).complete(BKException.Code.OK);
+        nextWriteTo(BOOKIE_3).complete(BKException.Code.OK);
+
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+        assertEquals(0, sentWrites.size() + receivedWrites.size());
+    }
+
+    @Test
+    public void testBookieIsFailedAfterMaxRetries() throws Exception {
+        LedgerHandle lh = newLedgerHandle();
+        CompletableFuture<Integer> result = addEntry(lh);
+
+        for (int i = 0; i < MAX_RETRIES + 1; i++) {
+            nextWriteTo(BOOKIE_1).complete(BKException.Code.TooManyRequestsException);
+        }
+        // the ack quorum is still reachable without the failed bookie
+        nextWriteTo(BOOKIE_2).complete(BKException.Code.OK);
+        nextWriteTo(BOOKIE_3).complete(BKException.Code.OK);
+
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+        assertEquals(0, sentWrites.size() + receivedWrites.size());
+    }
+
+    @Test
+    public void testUnscheduledRetryOnlyFailsTheBookie() throws Exception {
+        LedgerHandle lh = newLedgerHandle();
+        CompletableFuture<Integer> result = addEntry(lh);
+
+        scheduler.shutdown();
+        nextWriteTo(BOOKIE_1).complete(BKException.Code.TooManyRequestsException);
+        nextWriteTo(BOOKIE_2).complete(BKException.Code.OK);
+        nextWriteTo(BOOKIE_3).complete(BKException.Code.OK);
+
+        assertEquals(BKException.Code.OK, result.get(10, TimeUnit.SECONDS).intValue());
+        assertFalse(lh.isClosed());
+        assertEquals(0, sentWrites.size() + receivedWrites.size());
+    }
+
+    private CompletableFuture<Integer> addEntry(LedgerHandle lh) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        lh.asyncAddEntry(Unpooled.wrappedBuffer("entry".getBytes(UTF_8)),
+                (rc, handle, entryId, ctx) -> result.complete(rc), null);
+        return result;
+    }
+
+    private SentWrite nextWriteTo(BookieId bookie) throws InterruptedException {
+        while (true) {
+            for (Iterator<SentWrite> it = receivedWrites.iterator(); it.hasNext(); ) {
+                SentWrite write = it.next();
+                if (write.address.equals(bookie)) {
+                    it.remove();
+                    return write;
+                }
+            }
+            SentWrite write = sentWrites.poll(10, TimeUnit.SECONDS);
+            assertNotNull("No write was sent to " + bookie, write);
+            receivedWrites.add(write);
+        }
+    }
+
+    private LedgerHandle newLedgerHandle() throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setDelayEnsembleChange(true);
+        conf.setAddEntryTooManyRequestsMaxRetries(MAX_RETRIES);
+        conf.setAddEntryTooManyRequestsRetryDelayMs(1);
+        ClientInternalConf internalConf = ClientInternalConf.fromConfig(conf);
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+
+        BookieClient bookieClient = mock(BookieClient.class);
+        doAnswer(invocation -> {
+            sentWrites.put(new SentWrite(invocation.getArgument(0), invocation.getArgument(1),
+                    invocation.getArgument(3), invocation.getArgument(5), invocation.getArgument(6)));
+            return null;
+        }).when(bookieClient).addEntry(any(BookieId.class), anyLong(), any(byte[].class), anyLong(), any(),
+                any(WriteCallback.class), any(), anyInt(), anyBoolean(), any());
+        when(bookieClient.isWritable(any(BookieId.class), anyLong())).thenReturn(true);
+
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(internalConf);
+        when(clientCtx.getLedgerMetadataCache()).thenReturn(new LedgerMetadataCache(null, 0, 0, clientStats));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getByteBufAllocator()).thenReturn(PooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getScheduler()).thenReturn(scheduler);
+        when(clientCtx.getClientStats()).thenReturn(clientStats);
+
+        byte[] password = "too-many-requests".getBytes(UTF_8);
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(1L)
+                .withEnsembleSize(3)
+                .withWriteQuorumSize(3)
+                .withAckQuorumSize(2)
+                .withPassword(password)
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, Arrays.asList(BOOKIE_1, BOOKIE_2, BOOKIE_3))
+                .build();
+        return new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, password, WriteFlag.NONE);
+    }
+
+    /**
+     * A write sent to a bookie, completed by the test.
+     */
+    private static class SentWrite {
+        final BookieId address;
+        final long ledgerId;
+        final long entryId;
+        final WriteCallback cb;
+        final Object ctx;
+
+        SentWrite(BookieId address, long ledgerId, long entryId, WriteCallback cb, Object ctx) {
+            this.address = address;
+            this.ledgerId = ledgerId;
+            this.entryId = entryId;
+            this.cb = cb;
+            this.ctx = ctx;
+        }
+
+        void complete(int rc) {
+            cb.writeComplete(rc, ledgerId, entryId, address, ctx);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Unit test of {@link ChunkedStreamRead}, the default implementation of the stream reads of a {@link ReadHandle}.
+ */
+public class ChunkedStreamReadTest {
+
+    private final List<long[]> reads = new ArrayList<>();
+    private final List<CompletableFuture<LedgerEntries>> pendingReads = new ArrayList<>();
+    private final List<Long> consumed = new ArrayList<>();
+    private ReadHandle handle;
+
+    @Before
+    public void setUp() {
+        handle = mock(ReadHandle.class, Mockito.CALLS_REAL_METHODS);
+        when(handle.readAsync(anyLong(), anyLong())).thenAnswer(invocation -> {
+            reads.add(new long[] { invocation.getArgument(0), invocation.getArgument(1) });
+            CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+            pendingReads.add(future);
+            return future;
+        });
+    }
+
+    @Test
+    public void testChunksAreReadOneAfterTheOther() {
+        CompletableFuture<Void> result = handle.readStreamAsync(0, 249, entry -> {
+            consumed.add(entry.getEntryId());
+            entry.close();
+        });
+
+        for (int chunk = 0; chunk < 3; chunk++) {
+            // the next chunk is only read once the previous one completed
+            assertEquals(chunk + 1, reads.size());
+            assertFalse(result.isDone());
+            long[] range = reads.get(chunk);
+            completeRead(chunk, range[0], range[1]);
+        }
+
+        assertTrue(result.isDone());
+        assertEquals(250, consumed.size());
+        assertEquals(200L, reads.get(2)[0]);
+        assertEquals(249L, reads.get(2)[1]);
+    }
+
+    @Test
+    public void testRangeEndingAtMaxEntryId() {
+        CompletableFuture<Void> result = handle.readStreamAsync(Long.MAX_VALUE - 150, Long.MAX_VALUE,
+                LedgerEntry::close);
+
+        completeRead(0, Long.MAX_VALUE - 150, Long.MAX_VALUE - 51);
+        assertEquals(2, reads.size());
+        assertEquals(Long.MAX_VALUE - 50, reads.get(1)[0]);
+        assertEquals(Long.MAX_VALUE, reads.get(1)[1]);
+        completeRead(1, Long.MAX_VALUE - 50, Long.MAX_VALUE);
+
+        assertTrue(result.isDone());
+        assertFalse(result.isCompletedExceptionally());
+        assertEquals(2, reads.size());
+    }
+
+    @Test
+    public void testFailedChunk() {
+        CompletableFuture<Void> result = handle.readStreamAsync(0, 249, LedgerEntry::close);
+        completeRead(0, 0, 99);
+        pendingReads.get(1).completeExceptionally(new BKException(BKException.Code.ReadException));
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(2, reads.size());
+    }
+
+    private void completeRead(int read, long first, long last) {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (long entryId = first; entryId <= last && entryId >= first; entryId++) {
+            entries.add(LedgerEntryImpl.create(1L, entryId, 1, Unpooled.wrappedBuffer(new byte[1])));
+        }
+        pendingReads.get(read).complete(LedgerEntriesImpl.create(entries));
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.BatchedRecords;
+import org.apache.bookkeeper.client.api.BatchingWriteHandle;
+import org.apache.bookkeeper.client.api.BatchingWriteHandleBuilder;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BatchingWriteHandleImpl} and {@link BatchedRecordsImpl}.
+ */
+public class BatchingWriteHandleImplTest {
+
+    private static final long LEDGER_ID = 1L;
+
+    private WriteHandle handle;
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private final List<CompletableFuture<Long>> entryFutures = new ArrayList<>();
+    // Whether the entries are acknowledged as soon as they are written
+    private volatile boolean autoAck = true;
+    private ScheduledExecutorService scheduler;
+    // The batching handle whose monitor must not be held while writing to the ledger
+    private volatile BatchingWriteHandle writer;
+    private volatile boolean writtenUnderMonitor = false;
+
+    @Before
+    public void setUp() {
+        handle = mock(WriteHandle.class);
+        when(handle.getId()).thenReturn(LEDGER_ID);
+        when(handle.closeAsync()).thenReturn(CompletableFuture.completedFuture(null));
+        when(handle.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+            if (writer != null && Thread.holdsLock(writer)) {
+                writtenUnderMonitor = true;
+            }
+            synchronized (entries) {
+                CompletableFuture<Long> future = new CompletableFuture<>();
+                entries.add(invocation.getArgument(0));
+                entryFutures.add(future);
+                if (autoAck) {
+                    future.complete((long) entries.size() - 1);
+                }
+                return future;
+            }
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+        for (ByteBuf entry : entries) {
+            entry.release(entry.refCnt());
+        }
+    }
+
+    private static ByteBuf record(String content) {
+        return Unpooled.copiedBuffer(content, UTF_8);
+    }
+
+    // A linger time long enough for the batches to only be written when full or flushed
+    private BatchingWriteHandleBuilder newLingeringBuilder() {
+        return BatchingWriteHandle.newBuilder(handle)
+                .withLingerTime(1, TimeUnit.HOURS)
+                .withScheduler(scheduler);
+    }
+
+    private BatchedRecords unpackEntries() {
+        List<LedgerEntry> ledgerEntries = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            ByteBuf entry = entries.get(i).retain();
+            ledgerEntries.add(LedgerEntryImpl.create(LEDGER_ID, i, entry.readableBytes(), entry));
+        }
+        return BatchedRecords.unpack(LedgerEntriesImpl.create(ledgerEntries));
+    }
+
+    @Test
+    public void testBatchByRecordCount() throws Exception {
+        BatchingWriteHandle batching = newLingeringBuilder().withMaxBatchRecords(3).build();
+
+        List<CompletableFuture<RecordPosition>> positions = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            positions.add(batching.appendAsync(record("record-" + i)));
+        }
+        assertEquals(2, entries.size());
+        assertEquals(1, batching.getPendingRecords());
+        assertFalse(positions.get(6).isDone());
+
+        batching.flush();
+        assertEquals(3, entries.size());
+        assertEquals(0, batching.getPendingRecords());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(new RecordPosition(i / 3, i % 3), positions.get(i).get());
+        }
+
+        try (BatchedRecords records = unpackEntries()) {
+            assertEquals(7, records.size());
+            int i = 0;
+            for (BatchedRecords.Record record : records) {
+                assertEquals(positions.get(i).get(), record.getPosition());
+                assertEquals("record-" + i, new String(record.getDataAsBytes(), UTF_8));
+                i++;
+            }
+            assertEquals("record-4", new String(records.getRecord(new RecordPosition(1, 1)).getDataAsBytes(), UTF_8));
+        }
+    }
+
+    @Test
+    public void testBatchBySize() throws Exception {
+        // each record takes 4 bytes of length and 10 bytes of content
+        int maxBatchSize = BatchingWriteHandleImpl.BATCH_HEADER_SIZE + 2 * 14;
+        BatchingWriteHandle batching = newLingeringBuilder().withMaxBatchSize(maxBatchSize).build();
+
+        batching.appendAsync(record("0123456789"));
+        assertEquals(0, entries.size());
+        batching.appendAsync(record("0123456789"));
+        assertEquals(1, entries.size());
+        assertEquals(maxBatchSize, entries.get(0).readableBytes());
+
+        // a record larger than the batch size is written alone
+        CompletableFuture<RecordPosition> large = batching.appendAsync(record("012345678901234567890123456789"));
+        assertEquals(new RecordPosition(1, 0), large.get());
+    }
+
+    @Test
+    public void testLingerTime() throws Exception {
+        BatchingWriteHandle batching = BatchingWriteHandle.newBuilder(handle)
+                .withLingerTime(10, TimeUnit.MILLISECONDS)
+                .withScheduler(scheduler)
+                .build();
+
+        CompletableFuture<RecordPosition> first = batching.appendAsync(record("first"));
+        CompletableFuture<RecordPosition> second = batching.appendAsync(record("second"));
+        assertEquals(new RecordPosition(0, 0), first.get(10, TimeUnit.SECONDS));
+        assertEquals(new RecordPosition(0, 1), second.get(10, TimeUnit.SECONDS));
+        assertEquals(1, entries.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testSyncAppendWithoutLinger() throws Exception {
+        BatchingWriteHandle batching = BatchingWriteHandle.newBuilder(handle).build();
+
+        assertEquals(new RecordPosition(0, 0), batching.append(record("first")));
+        assertEquals(new RecordPosition(1, 0), batching.append(record("second")));
+    }
+
+    @Test
+    public void testWriteWithoutLinger() throws Exception {
+        BatchingWriteHandle batching = BatchingWriteHandle.newBuilder(handle).withMaxBatchRecords(3).build();
+
+        CompletableFuture<RecordPosition> first = batching.appendAsync(record("first"));
+        CompletableFuture<RecordPosition> second = batching.appendAsync(record("second"));
+        // each record is written right away, without waiting for the batch to fill up
+        assertEquals(2, entries.size());
+        assertEquals(0, batching.getPendingRecords());
+        assertEquals(new RecordPosition(0, 0), first.get());
+        assertEquals(new RecordPosition(1, 0), second.get());
+    }
+
+    @Test
+    public void testBatchesAreWrittenOutsideTheMonitor() throws Exception {
+        BatchingWriteHandle batching = newLingeringBuilder().withMaxBatchRecords(2).build();
+        writer = batching;
+
+        for (int i = 0; i < 5; i++) {
+            batching.appendAsync(record("record-" + i));
+        }
+        batching.flush();
+        batching.close();
+        assertEquals(3, entries.size());
+        assertFalse(writtenUnderMonitor);
+    }
+
+    @Test
+    public void testConcurrentAppendsKeepTheBatchOrder() throws Exception {
+        BatchingWriteHandle batching = newLingeringBuilder().withMaxBatchRecords(4).build();
+        int numThreads = 4;
+        int recordsPerThread = 1000;
+        List<CompletableFuture<RecordPosition>> positions = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < recordsPerThread; i++) {
+                    CompletableFuture<RecordPosition> position = batching.appendAsync(record(thread + "-" + i));
+                    synchronized (positions) {
+                        positions.add(position);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        batching.flush();
+
+        // the records of each thread are read back in the order they were appended
+        int[] nextRecord = new int[numThreads];
+        try (BatchedRecords records = unpackEntries()) {
+            assertEquals(numThreads * recordsPerThread, records.size());
+            for (BatchedRecords.Record record : records) {
+                String[] content = new String(record.getDataAsBytes(), UTF_8).split("-");
+                int thread = Integer.parseInt(content[0]);
+                assertEquals(nextRecord[thread]++, Integer.parseInt(content[1]));
+            }
+        }
+        for (CompletableFuture<RecordPosition> position : positions) {
+            assertTrue(position.isDone());
+        }
+    }
+
+    @Test
+    public void testFailedBatch() throws Exception {
+        autoAck = false;
+        BatchingWriteHandle batching = newLingeringBuilder().withMaxBatchRecords(2).build();
+
+        CompletableFuture<RecordPosition> first = batching.appendAsync(record("first"));
+        CompletableFuture<RecordPosition> second = batching.appendAsync(record("second"));
+        entryFutures.get(0).completeExceptionally(BKException.create(BKException.Code.NotEnoughBookiesException));
+
+        for (CompletableFuture<RecordPosition> position : Arrays.asList(first, second)) {
+            try {
+                position.get();
+                fail("the records of a failed batch should fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof BKException.BKNotEnoughBookiesException);
+            }
+        }
+    }
+
+    @Test
+    public void testAppendAfterClose() throws Exception {
+        BatchingWriteHandle batching = BatchingWriteHandle.newBuilder(handle).build();
+
+        CompletableFuture<RecordPosition> pending = batching.appendAsync(record("pending"));
+        batching.close();
+        // the pending records are flushed on close
+        assertEquals(new RecordPosition(0, 0), pending.get());
+
+        try {
+            batching.appendAsync(record("closed")).get();
+            fail("an append after close should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKLedgerClosedException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnpackNotABatch() {
+        entries.add(record("not a batch of records"));
+        unpackEntries();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+/**
+ * Unit test for the lookups of {@link NetworkTopologyImpl}.
+ */
+public class NetworkTopologyImplTest {
+
+    @Test
+    public void testLookupsSeeChanges() {
+        NetworkTopologyImpl topology = new NetworkTopologyImpl();
+        Node bookie1 = new NodeBase("bookie-1:3181", "/rack-1");
+        Node bookie2 = new NodeBase("bookie-2:3181", "/rack-1");
+        Node bookie3 = new NodeBase("bookie-3:3181", "/rack-2");
+        assertEquals(0, topology.getNumOfLeaves());
+
+        topology.add(bookie1);
+        topology.add(bookie2);
+        topology.add(bookie3);
+
+        assertEquals(3, topology.getNumOfLeaves());
+        assertEquals(2, topology.getNumOfRacks());
+        assertSame(bookie1, topology.getNode("/rack-1/bookie-1:3181"));
+        assertTrue(topology.contains(bookie3));
+        assertTrue(topology.isOnSameRack(bookie1, bookie2));
+        assertFalse(topology.isOnSameRack(bookie1, bookie3));
+        assertEquals(2, topology.getDistance(bookie1, bookie2));
+        assertEquals(4, topology.getDistance(bookie1, bookie3));
+        assertEquals(new HashSet<>(Arrays.asList(bookie1, bookie2)), topology.getLeaves("/rack-1"));
+        assertEquals(Collections.singleton(bookie3), topology.getLeaves("~/rack-1"));
+        assertEquals(2, topology.countNumOfAvailableNodes("/rack-1", Collections.emptyList()));
+        assertEquals(1, topology.countNumOfAvailableNodes("/rack-1", Collections.singletonList(bookie2)));
+
+        topology.remove(bookie3);
+
+        assertEquals(2, topology.getNumOfLeaves());
+        assertEquals(1, topology.getNumOfRacks());
+        assertNull(topology.getNode("/rack-2/bookie-3:3181"));
+        assertFalse(topology.contains(bookie3));
+        assertEquals(0, topology.getLeaves("~/rack-1").size());
+    }
+
+    @Test
+    public void testLookupsDuringChanges() throws Exception {
+        NetworkTopologyImpl topology = new NetworkTopologyImpl();
+        for (int i = 0; i < 100; i++) {
+            topology.add(new NodeBase("bookie-" + i + ":3181", "/rack-" + (i % 10)));
+        }
+        Node churning = new NodeBase("bookie-churn:3181", "/rack-0");
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch readerStarted = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            readerStarted.countDown();
+            try {
+                while (!done.get()) {
+                    int numOfLeaves = topology.getNumOfLeaves();
+                    assertTrue(numOfLeaves == 100 || numOfLeaves == 101);
+                    assertEquals(10, topology.getNumOfRacks());
+                    int rackLeaves = topology.getLeaves("/rack-0").size();
+                    assertTrue(rackLeaves == 10 || rackLeaves == 11);
+                    assertTrue(topology.isOnSameRack(topology.getNode("/rack-0/bookie-0:3181"),
+                            topology.getNode("/rack-0/bookie-10:3181")));
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        reader.start();
+        readerStarted.await();
+        for (int i = 0; i < 1000; i++) {
+            topology.add(churning);
+            assertSame(churning, topology.getNode("/rack-0/bookie-churn:3181"));
+            topology.remove(churning);
+            assertNull(topology.getNode("/rack-0/bookie-churn:3181"));
+        }
+        done.set(true);
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError("A lookup failed during the changes", failure.get());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Random;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.ResponseEnDecoderV3;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Unit test for the entry bodies carried as {@link PayloadMessageV3} payloads by the protocol version 3
+ * encoders and decoders of {@link BookieProtoEncoding}.
+ */
+public class BookieProtoEncodingV3PayloadTest {
+
+    private static final int SMALL_ENTRY_SIZE = 100;
+    private static final int LARGE_ENTRY_SIZE = BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD * 2;
+
+    private final RequestEnDecoderV3 requestCodec = new RequestEnDecoderV3(ExtensionRegistry.getEmptyRegistry());
+    private final ResponseEnDecoderV3 responseCodec =
+            new ResponseEnDecoderV3(ExtensionRegistry.getEmptyRegistry());
+
+    private static byte[] entry(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static BKPacketHeader header(OperationType operation) {
+        return BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(operation)
+                .setTxnId(42L)
+                .build();
+    }
+
+    private static AddRequest.Builder addRequest() {
+        return AddRequest.newBuilder()
+                .setLedgerId(1L)
+                .setEntryId(2L)
+                .setMasterKey(ByteString.copyFromUtf8("master-key"));
+    }
+
+    private static ReadResponse.Builder readResponse() {
+        return ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK)
+                .setLedgerId(1L)
+                .setEntryId(2L);
+    }
+
+    /**
+     * Encode a message and return the packet following its frame size, as the frame decoder would.
+     */
+    private static ByteBuf encode(BookieProtoEncoding.EnDecoder codec, Object msg) throws Exception {
+        Object encoded = codec.encode(msg, UnpooledByteBufAllocator.DEFAULT);
+        ByteBuf frame;
+        if (encoded instanceof ByteBufList) {
+            frame = ByteBufList.coalesce((ByteBufList) encoded);
+            ((ByteBufList) encoded).release();
+        } else {
+            frame = (ByteBuf) encoded;
+        }
+        assertEquals(frame.readableBytes() - 4, frame.readInt());
+        return frame;
+    }
+
+    @Test
+    public void testAddRequestPayloadRoundTrip() throws Exception {
+        assertAddRequestPayloadRoundTrip(SMALL_ENTRY_SIZE);
+        assertAddRequestPayloadRoundTrip(LARGE_ENTRY_SIZE);
+    }
+
+    private void assertAddRequestPayloadRoundTrip(int entrySize) throws Exception {
+        byte[] data = entry(entrySize);
+        Request request = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().buildPartial())
+                .buildPartial();
+        ByteBuf payload = Unpooled.wrappedBuffer(data);
+        ByteBuf packet = encode(requestCodec, new PayloadMessageV3(request, payload));
+        // the payload is either copied and released by the encoder, or released with the written frame
+        assertEquals(0, payload.refCnt());
+
+        Object decoded = requestCodec.decode(packet);
+        assertTrue(decoded instanceof PayloadMessageV3);
+        PayloadMessageV3 message = (PayloadMessageV3) decoded;
+        assertEquals(request, message.getMessage());
+        assertArrayEquals(data, ByteBufUtil.getBytes(message.content()));
+        // the payload is a slice of the packet, not a copy
+        assertEquals(2, packet.refCnt());
+        message.release();
+        assertEquals(1, packet.refCnt());
+        packet.release();
+    }
+
+    @Test
+    public void testAddRequestPayloadMissingRequiredFields() throws Exception {
+        // an add request without its master key
+        assertAddRequestPayloadRejected(Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(AddRequest.newBuilder().setLedgerId(1L).setEntryId(2L).buildPartial())
+                .buildPartial());
+        // a request without its header
+        assertAddRequestPayloadRejected(Request.newBuilder()
+                .setAddRequest(addRequest().buildPartial())
+                .buildPartial());
+    }
+
+    private void assertAddRequestPayloadRejected(Request request) throws Exception {
+        ByteBuf packet = encode(requestCodec, new PayloadMessageV3(request, Unpooled.wrappedBuffer(entry(100))));
+        try {
+            requestCodec.decode(packet);
+            fail("a request missing required fields should be rejected");
+        } catch (InvalidProtocolBufferException e) {
+            // expected
+        }
+        // the payload slice is released
+        assertEquals(1, packet.refCnt());
+        packet.release();
+    }
+
+    @Test
+    public void testReadResponsePayloadRoundTrip() throws Exception {
+        assertReadResponsePayloadRoundTrip(SMALL_ENTRY_SIZE);
+        assertReadResponsePayloadRoundTrip(LARGE_ENTRY_SIZE);
+    }
+
+    private void assertReadResponsePayloadRoundTrip(int entrySize) throws Exception {
+        byte[] data = entry(entrySize);
+        Response response = Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponse())
+                .build();
+        ByteBuf packet = encode(responseCodec, new PayloadMessageV3(response, Unpooled.wrappedBuffer(data)));
+
+        Object decoded = responseCodec.decode(packet);
+        assertTrue(decoded instanceof PayloadMessageV3);
+        PayloadMessageV3 message = (PayloadMessageV3) decoded;
+        assertEquals(response, message.getMessage());
+        assertArrayEquals(data, ByteBufUtil.getBytes(message.content()));
+        message.release();
+        packet.release();
+    }
+
+    @Test
+    public void testPayloadPacketParsedByProtobuf() throws Exception {
+        // a peer parsing the whole packet with protobuf sees the body in the message
+        byte[] data = entry(LARGE_ENTRY_SIZE);
+        Request request = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().buildPartial())
+                .buildPartial();
+        ByteBuf packet = encode(requestCodec, new PayloadMessageV3(request, Unpooled.wrappedBuffer(data)));
+        Request parsed = Request.parseFrom(packet.nioBuffer());
+        assertEquals(Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().setBody(ByteString.copyFrom(data)))
+                .build(), parsed);
+        packet.release();
+
+        Response response = Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponse())
+                .build();
+        packet = encode(responseCodec, new PayloadMessageV3(response, Unpooled.wrappedBuffer(data)));
+        assertEquals(ByteString.copyFrom(data), Response.parseFrom(packet.nioBuffer()).getReadResponse().getBody());
+        packet.release();
+    }
+
+    @Test
+    public void testProtobufPacketDecodedAsMessage() throws Exception {
+        // a peer sending the body inside the message is decoded as a plain message
+        byte[] data = entry(SMALL_ENTRY_SIZE);
+        Request request = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().setBody(ByteString.copyFrom(data)))
+                .build();
+        ByteBuf packet = encode(requestCodec, request);
+        Object decoded = requestCodec.decode(packet);
+        assertFalse(decoded instanceof PayloadMessageV3);
+        assertEquals(request, decoded);
+        packet.release();
+
+        Response response = Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponse().setBody(ByteString.copyFrom(data)))
+                .build();
+        packet = encode(responseCodec, response);
+        decoded = responseCodec.decode(packet);
+        assertFalse(decoded instanceof PayloadMessageV3);
+        assertEquals(response, decoded);
+        packet.release();
+    }
+}
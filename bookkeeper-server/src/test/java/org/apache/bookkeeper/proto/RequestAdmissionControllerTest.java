@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RequestAdmissionController}.
+ */
+public class RequestAdmissionControllerTest {
+
+    private RequestAdmissionController controller;
+
+    @Before
+    public void setUp() {
+        ServerConfiguration conf = new ServerConfiguration()
+                .setAdmissionControlEnabled(true)
+                .setAdmissionControlMaxRequestsInProgress(12)
+                .setAdmissionControlMinRequestsPerClass(1)
+                .setAdmissionControlClassWeights(new String[] { "10.0.0.1:3" });
+        controller = new RequestAdmissionController(conf, NullStatsLogger.INSTANCE);
+    }
+
+    @Test
+    public void testSingleClassGetsAllRequests() {
+        EmbeddedChannel channel = newChannel("10.0.0.2");
+        for (int i = 0; i < 12; i++) {
+            assertTrue(controller.tryAdmit(channel));
+        }
+        assertFalse(controller.tryAdmit(channel));
+    }
+
+    @Test
+    public void testWeightedShares() {
+        EmbeddedChannel heavy = newChannel("10.0.0.1");
+        EmbeddedChannel light = newChannel("10.0.0.2");
+
+        assertTrue(controller.tryAdmit(light));
+        // weights 3 and 1 while both classes are active: 12 * 3 / 4
+        int admitted = 0;
+        while (controller.tryAdmit(heavy)) {
+            admitted++;
+        }
+        assertEquals(9, admitted);
+
+        // 12 * 1 / 4
+        assertTrue(controller.tryAdmit(light));
+        assertTrue(controller.tryAdmit(light));
+        assertFalse(controller.tryAdmit(light));
+    }
+
+    @Test
+    public void testMinRequestsPerClass() {
+        EmbeddedChannel[] channels = new EmbeddedChannel[20];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = newChannel("10.0.1." + i);
+            assertTrue(controller.tryAdmit(channels[i]));
+        }
+        // every class has at least its minimum share, even when the shares exceed the max requests in progress
+        assertFalse(controller.tryAdmit(channels[0]));
+    }
+
+    @Test
+    public void testRejectionDoesNotReserve() {
+        EmbeddedChannel channel = newChannel("10.0.0.2");
+        for (int i = 0; i < 12; i++) {
+            assertTrue(controller.tryAdmit(channel));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertFalse(controller.tryAdmit(channel));
+        }
+        controller.onRequestStart(channel);
+        controller.onRequestFinish(channel);
+        assertTrue(controller.tryAdmit(channel));
+    }
+
+    @Test
+    public void testReservationTakenOverByStart() {
+        EmbeddedChannel channel = newChannel("10.0.0.2");
+        for (int i = 0; i < 12; i++) {
+            assertTrue(controller.tryAdmit(channel));
+            controller.onRequestStart(channel);
+        }
+        assertFalse(controller.tryAdmit(channel));
+
+        for (int i = 0; i < 12; i++) {
+            controller.onRequestFinish(channel);
+        }
+        assertTrue(controller.tryAdmit(channel));
+    }
+
+    @Test
+    public void testCancelAdmission() {
+        EmbeddedChannel channel = newChannel("10.0.0.2");
+        for (int i = 0; i < 12; i++) {
+            assertTrue(controller.tryAdmit(channel));
+        }
+        assertFalse(controller.tryAdmit(channel));
+
+        controller.cancelAdmission(channel);
+        assertTrue(controller.tryAdmit(channel));
+        assertFalse(controller.tryAdmit(channel));
+    }
+
+    @Test
+    public void testCancelAdmissionAfterReservationTakenOver() {
+        EmbeddedChannel channel = newChannel("10.0.0.2");
+        assertTrue(controller.tryAdmit(channel));
+        // a request which was not admitted by the controller starts and takes over the reservation
+        controller.onRequestStart(channel);
+        controller.cancelAdmission(channel);
+        for (int i = 0; i < 11; i++) {
+            assertTrue(controller.tryAdmit(channel));
+        }
+        assertFalse(controller.tryAdmit(channel));
+    }
+
+    @Test
+    public void testIdleClassesAreRemoved() {
+        EmbeddedChannel first = newChannel("10.0.0.2");
+        EmbeddedChannel second = newChannel("10.0.0.2");
+        EmbeddedChannel other = newChannel("10.0.0.3");
+        assertTrue(controller.tryAdmit(first));
+        controller.onRequestStart(first);
+        assertTrue(controller.tryAdmit(second));
+        assertTrue(controller.tryAdmit(other));
+        controller.cancelAdmission(other);
+        assertEquals(2, controller.getNumClasses());
+
+        // the class of a closed channel is kept while it has requests in progress
+        other.close();
+        first.close();
+        second.close();
+        assertEquals(1, controller.getNumClasses());
+        controller.cancelAdmission(second);
+        assertEquals(1, controller.getNumClasses());
+        controller.onRequestFinish(first);
+        assertEquals(0, controller.getNumClasses());
+
+        // the class is registered again when a new channel of the client comes
+        EmbeddedChannel reconnected = newChannel("10.0.0.2");
+        assertTrue(controller.tryAdmit(reconnected));
+        assertEquals(1, controller.getNumClasses());
+    }
+
+    private static EmbeddedChannel newChannel(String host) {
+        InetSocketAddress remoteAddress = new InetSocketAddress(host, 3181);
+        return new EmbeddedChannel() {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return remoteAddress;
+            }
+        };
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.LedgerStorage;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Adds and reads through a bookie running in shard-per-core mode, with the v2 and v3 protocols.
+ */
+public class ShardPerCoreRequestProcessingTest {
+
+    private static final int NUM_IO_THREADS = 4;
+    private static final int NUM_LEDGERS = 8;
+    private static final int NUM_ENTRIES = 50;
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final byte[] MASTER_KEY = new byte[BookieProtocol.MASTER_KEY_LENGTH];
+
+    private BookieNettyServer nettyServer;
+    private BookieRequestProcessor requestProcessor;
+    private BookieId bookieId;
+    private Bookie bookie;
+    private LedgerStorage ledgerStorage;
+
+    private EventLoopGroup eventLoopGroup;
+    private OrderedExecutor executor;
+    private ScheduledExecutorService scheduler;
+    private BookieClientImpl client;
+
+    // the entry ids added to each ledger, in the order the bookie got them, and the threads that added them
+    private final Map<Long, List<Long>> addedEntries = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> addThreads = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() throws Exception {
+        eventLoopGroup = new NioEventLoopGroup(1);
+        executor = OrderedExecutor.newBuilder().name("shard-per-core-test").numThreads(1).build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+
+        ledgerStorage = mock(LedgerStorage.class);
+        bookie = mock(Bookie.class);
+        when(bookie.isTryAddEntrySupported()).thenReturn(true);
+        when(bookie.getLedgerStorage()).thenReturn(ledgerStorage);
+        when(bookie.tryAddEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(), any()))
+                .thenAnswer(invocation -> {
+                    ByteBuf entry = invocation.getArgument(0);
+                    WriteCallback cb = invocation.getArgument(2);
+                    Object ctx = invocation.getArgument(3);
+                    long ledgerId = entry.getLong(entry.readerIndex());
+                    long entryId = entry.getLong(entry.readerIndex() + 8);
+                    ReferenceCountUtil.release(entry);
+
+                    addedEntries.computeIfAbsent(ledgerId, id -> new CopyOnWriteArrayList<>()).add(entryId);
+                    addThreads.computeIfAbsent(ledgerId, id -> ConcurrentHashMap.newKeySet())
+                            .add(Thread.currentThread().getName());
+                    cb.writeComplete(BookieProtocol.EOK, ledgerId, entryId, null, ctx);
+                    if (ctx instanceof BookieRequestHandler) {
+                        ((BookieRequestHandler) ctx).flushPendingResponse();
+                    }
+                    return true;
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != client) {
+            client.close();
+        }
+        if (null != nettyServer) {
+            nettyServer.shutdown();
+            requestProcessor.close();
+        }
+        scheduler.shutdown();
+        executor.shutdown();
+        eventLoopGroup.shutdownGracefully();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(24);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId);
+        return entry;
+    }
+
+    private boolean useV2WireProtocol;
+
+    private void startBookie(boolean useV2WireProtocol) throws Exception {
+        this.useV2WireProtocol = useV2WireProtocol;
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setAdvertisedAddress("127.0.0.1");
+        conf.setBookiePort(0);
+        conf.setServerNumIOThreads(NUM_IO_THREADS);
+        conf.setShardPerCoreRequestProcessingEnabled(true);
+
+        nettyServer = new BookieNettyServer(conf, null, UnpooledByteBufAllocator.DEFAULT);
+        requestProcessor = new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE, null,
+                UnpooledByteBufAllocator.DEFAULT, nettyServer.allChannels);
+        nettyServer.setRequestProcessor(requestProcessor);
+        nettyServer.start();
+
+        int port = conf.getBookiePort();
+        bookieId = BookieId.parse("127.0.0.1:" + port);
+        ClientConfiguration clientConf = new ClientConfiguration().setUseV2WireProtocol(useV2WireProtocol);
+        client = new BookieClientImpl(clientConf, eventLoopGroup, UnpooledByteBufAllocator.DEFAULT,
+                executor, scheduler, NullStatsLogger.INSTANCE, id -> new BookieSocketAddress("127.0.0.1", port));
+    }
+
+    private List<CompletableFuture<Integer>> addEntries() throws Exception {
+        List<DigestManager> digestManagers = new ArrayList<>();
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            digestManagers.add(DigestManager.instantiate(ledgerId, MASTER_KEY, DigestType.DUMMY,
+                    UnpooledByteBufAllocator.DEFAULT, useV2WireProtocol));
+        }
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+                CompletableFuture<Integer> result = new CompletableFuture<>();
+                ByteBuf data = Unpooled.buffer(8).writeLong(entryId);
+                ReferenceCounted toSend = digestManagers.get((int) ledgerId).computeDigestAndPackageForSending(
+                        entryId, entryId - 1, data.readableBytes(), data, MASTER_KEY, BookieProtocol.FLAG_NONE);
+                client.addEntry(bookieId, ledgerId, MASTER_KEY, entryId, toSend,
+                        (rc, lid, eid, addr, ctx) -> result.complete(rc), null,
+                        BookieProtocol.FLAG_NONE, false, WriteFlag.NONE);
+                // the client keeps its own reference until the entry is sent
+                toSend.release();
+                results.add(result);
+            }
+        }
+        return results;
+    }
+
+    private void testAdds(boolean useV2WireProtocol) throws Exception {
+        startBookie(useV2WireProtocol);
+
+        for (CompletableFuture<Integer> result : addEntries()) {
+            assertEquals(BKException.Code.OK, (int) result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+
+        Set<String> allThreads = new HashSet<>();
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            // the entries of a ledger are added in order by the IO thread owning the ledger
+            List<Long> entries = addedEntries.get(ledgerId);
+            assertEquals(NUM_ENTRIES, entries.size());
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                assertEquals(i, (long) entries.get(i));
+            }
+            Set<String> threads = addThreads.get(ledgerId);
+            assertEquals(1, threads.size());
+            String thread = threads.iterator().next();
+            assertTrue(thread, thread.startsWith("bookie-io"));
+            allThreads.addAll(threads);
+        }
+        // the ledgers are spread over all the IO threads, even if the client uses a single connection
+        assertEquals(NUM_IO_THREADS, allThreads.size());
+
+        verify(bookie, never()).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(), any());
+    }
+
+    @Test
+    public void testAddsV2() throws Exception {
+        testAdds(true);
+    }
+
+    @Test
+    public void testAddsV3() throws Exception {
+        testAdds(false);
+    }
+
+    private void testAddsRejectedWhenBookieIsBusy(boolean useV2WireProtocol) throws Exception {
+        when(bookie.tryAddEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(), any()))
+                .thenAnswer(invocation -> {
+                    ReferenceCountUtil.release(invocation.getArgument(0));
+                    return false;
+                });
+        startBookie(useV2WireProtocol);
+
+        for (CompletableFuture<Integer> result : addEntries()) {
+            assertEquals(BKException.Code.TooManyRequestsException,
+                    (int) result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        verify(bookie, never()).addEntry(any(ByteBuf.class), anyBoolean(), any(WriteCallback.class), any(), any());
+    }
+
+    @Test
+    public void testAddsRejectedWhenBookieIsBusyV2() throws Exception {
+        testAddsRejectedWhenBookieIsBusy(true);
+    }
+
+    @Test
+    public void testAddsRejectedWhenBookieIsBusyV3() throws Exception {
+        testAddsRejectedWhenBookieIsBusy(false);
+    }
+
+    private void testReads(boolean useV2WireProtocol) throws Exception {
+        // the even entries are cached, the odd entries have to be read by the read thread pool
+        when(ledgerStorage.ledgerExists(anyLong())).thenReturn(true);
+        when(ledgerStorage.getCachedEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long entryId = invocation.getArgument(1);
+            return entryId % 2 == 0 ? entry(invocation.getArgument(0), entryId) : null;
+        });
+        Set<Long> entriesReadFromBookie = ConcurrentHashMap.newKeySet();
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> {
+            entriesReadFromBookie.add(invocation.getArgument(1));
+            return entry(invocation.getArgument(0), invocation.getArgument(1));
+        });
+        startBookie(useV2WireProtocol);
+
+        final long ledgerId = 3L;
+        List<CompletableFuture<Long>> results = new ArrayList<>();
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            CompletableFuture<Long> result = new CompletableFuture<>();
+            client.readEntry(bookieId, ledgerId, entryId, (rc, lid, eid, buffer, ctx) -> {
+                if (rc != BKException.Code.OK) {
+                    result.completeExceptionally(BKException.create(rc));
+                    return;
+                }
+                // the entry id written in the last field of the entry
+                result.complete(buffer.getLong(buffer.readerIndex() + 16));
+            }, null, BookieProtocol.FLAG_NONE);
+            results.add(result);
+        }
+
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            assertEquals(i, (long) results.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            assertEquals(entryId % 2 == 1, entriesReadFromBookie.contains(entryId));
+        }
+    }
+
+    @Test
+    public void testReadsV2() throws Exception {
+        testReads(true);
+    }
+
+    @Test
+    public void testReadsV3() throws Exception {
+        testReads(false);
+    }
+}
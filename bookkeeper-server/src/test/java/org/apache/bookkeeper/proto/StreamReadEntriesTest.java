@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.client.BKException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadFlowControl;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Round trip test of the stream reads between a {@link BookieClientImpl} and a bookie.
+ */
+public class StreamReadEntriesTest {
+
+    private static final long LEDGER_ID = 7L;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private BookieNettyServer nettyServer;
+    private BookieRequestProcessor requestProcessor;
+    private BookieId bookieId;
+
+    private EventLoopGroup eventLoopGroup;
+    private OrderedExecutor executor;
+    private ScheduledExecutorService scheduler;
+    private BookieClientImpl client;
+
+    @Before
+    public void setUp() throws Exception {
+        eventLoopGroup = new NioEventLoopGroup(1);
+        executor = OrderedExecutor.newBuilder().name("stream-read-test").numThreads(1).build();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (null != client) {
+            client.close();
+        }
+        if (null != nettyServer) {
+            nettyServer.shutdown();
+            requestProcessor.close();
+        }
+        scheduler.shutdown();
+        executor.shutdown();
+        eventLoopGroup.shutdownGracefully();
+    }
+
+    private void startBookie(ServerConfiguration conf) throws Exception {
+        conf.setAdvertisedAddress("127.0.0.1");
+        conf.setBookiePort(0);
+        Bookie bookie = mock(Bookie.class);
+        when(bookie.readEntry(anyLong(), anyLong())).thenAnswer(invocation -> entry(invocation.getArgument(1)));
+
+        nettyServer = new BookieNettyServer(conf, null, UnpooledByteBufAllocator.DEFAULT);
+        requestProcessor = new BookieRequestProcessor(conf, bookie, NullStatsLogger.INSTANCE, null,
+                UnpooledByteBufAllocator.DEFAULT, nettyServer.allChannels);
+        nettyServer.setRequestProcessor(requestProcessor);
+        nettyServer.start();
+
+        int port = conf.getBookiePort();
+        bookieId = BookieId.parse("127.0.0.1:" + port);
+        client = new BookieClientImpl(new ClientConfiguration(), eventLoopGroup, UnpooledByteBufAllocator.DEFAULT,
+                executor, scheduler, NullStatsLogger.INSTANCE, id -> new BookieSocketAddress("127.0.0.1", port));
+    }
+
+    @Test
+    public void testStreamRead() throws Exception {
+        startBookie(new ServerConfiguration());
+
+        StreamCollector stream = new StreamCollector(true);
+        client.streamReadEntries(bookieId, LEDGER_ID, 0, 49, 4, stream, null);
+
+        assertEquals(BKException.Code.OK, (int) stream.result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(50, stream.entries.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, (long) stream.entries.get(i));
+        }
+    }
+
+    @Test
+    public void testCancelRemovesCompletion() throws Exception {
+        startBookie(new ServerConfiguration());
+
+        StreamCollector stalled = new StreamCollector(false);
+        client.streamReadEntries(bookieId, LEDGER_ID, 0, 9, 1, stalled, null);
+        stalled.firstEntry.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        CompletableFuture<PerChannelBookieClient> pcbc = new CompletableFuture<>();
+        client.lookupClient(bookieId).obtain((rc, result) -> pcbc.complete(result), LEDGER_ID);
+        PerChannelBookieClient channelClient = pcbc.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, channelClient.getNumPendingCompletionRequests());
+
+        stalled.flowControl.cancel();
+        assertEquals(0, channelClient.getNumPendingCompletionRequests());
+        assertFalse(stalled.result.isDone());
+    }
+
+    @Test
+    public void testStreamReadsPerChannelLimit() throws Exception {
+        startBookie(new ServerConfiguration().setMaxStreamReadsPerChannel(1));
+        assertStalledStreamBlocksOthers();
+    }
+
+    @Test
+    public void testStreamReadsInProgressLimit() throws Exception {
+        startBookie(new ServerConfiguration().setMaxStreamReadsPerChannel(0).setMaxStreamReadsInProgressLimit(1));
+        assertStalledStreamBlocksOthers();
+    }
+
+    @Test
+    public void testStalledStreamDoesNotHoldReadPermit() throws Exception {
+        startBookie(new ServerConfiguration().setMaxReadsInProgressLimit(1).setAdmissionControlEnabled(true));
+
+        StreamCollector stalled = new StreamCollector(false);
+        client.streamReadEntries(bookieId, LEDGER_ID, 0, 9, 1, stalled, null);
+        stalled.firstEntry.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        // the only read permit, and the admission control slots of the client, are left to the other reads
+        for (long entryId = 0; entryId < 3; entryId++) {
+            CompletableFuture<Integer> read = new CompletableFuture<>();
+            client.readEntry(bookieId, LEDGER_ID, entryId,
+                    (rc, ledgerId, readEntryId, buffer, ctx) -> read.complete(rc), null, BookieProtocol.FLAG_NONE);
+            assertEquals(BKException.Code.OK, (int) read.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertFalse(stalled.result.isDone());
+    }
+
+    private void assertStalledStreamBlocksOthers() throws Exception {
+        // the first stream waits for credits after its first entry
+        StreamCollector stalled = new StreamCollector(false);
+        client.streamReadEntries(bookieId, LEDGER_ID, 0, 9, 1, stalled, null);
+        stalled.firstEntry.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        StreamCollector rejected = new StreamCollector(true);
+        client.streamReadEntries(bookieId, LEDGER_ID, 0, 9, 1, rejected, null);
+        assertEquals(BKException.Code.TooManyRequestsException,
+                (int) rejected.result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        // cancelling the stalled stream gives its slot back
+        stalled.flowControl.cancel();
+        StreamCollector next = new StreamCollector(true);
+        client.streamReadEntries(bookieId, LEDGER_ID, 0, 9, 1, next, null);
+        assertEquals(BKException.Code.OK, (int) next.result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(10, next.entries.size());
+    }
+
+    private static ByteBuf entry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(24);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId);
+        return entry;
+    }
+
+    private static class StreamCollector implements StreamReadEntryCallback {
+        private final boolean grantCredits;
+        final List<Long> entries = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Void> firstEntry = new CompletableFuture<>();
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        volatile StreamReadFlowControl flowControl;
+
+        StreamCollector(boolean grantCredits) {
+            this.grantCredits = grantCredits;
+        }
+
+        @Override
+        public void readEntryComplete(long ledgerId, long entryId, ByteBuf buffer,
+                                      StreamReadFlowControl flowControl, Object ctx) {
+            assertEquals(entryId, buffer.getLong(buffer.readerIndex() + 16));
+            entries.add(entryId);
+            this.flowControl = flowControl;
+            firstEntry.complete(null);
+            if (grantCredits) {
+                flowControl.grantCredits(1);
+            }
+        }
+
+        @Override
+        public void streamComplete(int rc, long ledgerId, long nextEntryId, Object ctx) {
+            result.complete(rc);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.proto.checksum;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
+import java.util.Random;
+import org.apache.bookkeeper.proto.BookieProtoEncoding;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Unit test for the digests of entries whose payload digest is computed by the caller.
+ */
+public class DigestManagerDataDigestTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final int[] LENGTHS = {
+        0, 1, 7, 100, 4096, BookieProtoEncoding.SMALL_ENTRY_SIZE_THRESHOLD + 1, 1024 * 1024 + 3
+    };
+
+    private final Random random = new Random(42);
+
+    private byte[] data(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testCombineChecksums() {
+        for (int length1 : LENGTHS) {
+            for (int length2 : LENGTHS) {
+                byte[] data1 = data(length1);
+                byte[] data2 = data(length2);
+                ByteBuf whole = Unpooled.wrappedBuffer(data1, data2);
+                int crc1 = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data1));
+                int crc2 = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data2));
+                assertEquals("lengths " + length1 + " and " + length2,
+                        Crc32cIntChecksum.computeChecksum(whole),
+                        Crc32cIntChecksum.combineChecksums(crc1, crc2, length2));
+            }
+        }
+    }
+
+    @Test
+    public void testCombineBlockChecksums() {
+        // the checksum of a payload computed by blocks, as a parallel producer would
+        byte[] data = data(1024 * 1024 + 3);
+        int blockSize = 64 * 1024;
+        int crc = 0;
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            int length = Math.min(blockSize, data.length - offset);
+            int blockCrc = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data, offset, length));
+            crc = offset == 0 ? blockCrc : Crc32cIntChecksum.combineChecksums(crc, blockCrc, length);
+        }
+        assertEquals(Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data)), crc);
+    }
+
+    @Test
+    public void testCrc32cPackageWithDataDigest() throws Exception {
+        assertPackageWithDataDigest(DigestType.CRC32C, false);
+        assertPackageWithDataDigest(DigestType.CRC32C, true);
+    }
+
+    @Test
+    public void testDummyPackageWithDataDigest() throws Exception {
+        assertPackageWithDataDigest(DigestType.DUMMY, false);
+        assertPackageWithDataDigest(DigestType.DUMMY, true);
+    }
+
+    @Test
+    public void testDataDigestNotAccepted() throws Exception {
+        for (DigestType digestType : new DigestType[] { DigestType.CRC32, DigestType.HMAC }) {
+            DigestManager digestManager = DigestManager.instantiate(LEDGER_ID, "pwd".getBytes(UTF_8), digestType,
+                    UnpooledByteBufAllocator.DEFAULT, false);
+            assertFalse(digestType.name(), digestManager.acceptsPrecomputedDataDigest());
+            ByteBuf data = Unpooled.wrappedBuffer(data(100));
+            try {
+                digestManager.computeDigestAndPackageForSending(0, -1, 100, data, 0, new byte[20], 0);
+                throw new AssertionError("Precomputed data digest should not be accepted by " + digestType);
+            } catch (IllegalStateException e) {
+                // expected
+            } finally {
+                data.release();
+            }
+        }
+    }
+
+    private void assertPackageWithDataDigest(DigestType digestType, boolean useV2Protocol) throws Exception {
+        DigestManager digestManager = DigestManager.instantiate(LEDGER_ID, "pwd".getBytes(UTF_8), digestType,
+                UnpooledByteBufAllocator.DEFAULT, useV2Protocol);
+        assertTrue(digestManager.acceptsPrecomputedDataDigest());
+        byte[] masterKey = DigestManager.generateMasterKey("pwd".getBytes(UTF_8));
+        long length = 0;
+        for (int entryId = 0; entryId < LENGTHS.length; entryId++) {
+            byte[] data = data(LENGTHS[entryId]);
+            length += data.length;
+            int dataDigest = Crc32cIntChecksum.computeChecksum(Unpooled.wrappedBuffer(data));
+
+            byte[] expected = packageBytes(digestManager.computeDigestAndPackageForSending(
+                    entryId, entryId - 1, length, Unpooled.wrappedBuffer(data), masterKey,
+                    BookieProtocol.FLAG_NONE));
+            byte[] actual = packageBytes(digestManager.computeDigestAndPackageForSending(
+                    entryId, entryId - 1, length, Unpooled.wrappedBuffer(data), dataDigest, masterKey,
+                    BookieProtocol.FLAG_NONE));
+            assertArrayEquals(digestType + " entry of " + data.length + " bytes", expected, actual);
+        }
+    }
+
+    private static byte[] packageBytes(ReferenceCounted toSend) {
+        try {
+            if (toSend instanceof ByteBufList) {
+                return ((ByteBufList) toSend).toArray();
+            }
+            return ByteBufUtil.getBytes((ByteBuf) toSend);
+        } finally {
+            toSend.release();
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bookkeeper.util.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ConcurrentLongLongPairOffHeapHashMap}.
+ */
+public class ConcurrentLongLongPairOffHeapHashMapTest {
+
+    private final TrackingAllocator allocator = new TrackingAllocator();
+
+    @After
+    public void tearDown() {
+        // every table allocated by the maps was released
+        for (ByteBuf buffer : allocator.buffers) {
+            assertEquals(0, buffer.refCnt());
+        }
+    }
+
+    private ConcurrentLongLongPairOffHeapHashMap.Builder newBuilder() {
+        return ConcurrentLongLongPairOffHeapHashMap.newBuilder().allocator(allocator);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        try (ConcurrentLongLongPairOffHeapHashMap map = newBuilder().expectedItems(16).concurrencyLevel(1).build()) {
+            assertTrue(map.isEmpty());
+            assertNull(map.get(1, 1));
+
+            assertTrue(map.put(1, 1, 11, 11));
+            assertTrue(map.put(1, 2, 12, 12));
+            assertTrue(map.put(2, 1, 21, 21));
+            assertEquals(3, map.size());
+            assertEquals(new LongPair(11, 11), map.get(1, 1));
+            assertEquals(new LongPair(12, 12), map.get(1, 2));
+            assertEquals(new LongPair(21, 21), map.get(2, 1));
+            assertNull(map.get(2, 2));
+
+            // overwrite
+            assertTrue(map.put(1, 1, 111, 111));
+            assertEquals(new LongPair(111, 111), map.get(1, 1));
+            assertFalse(map.putIfAbsent(1, 1, 0, 0));
+            assertEquals(new LongPair(111, 111), map.get(1, 1));
+            assertTrue(map.putIfAbsent(3, 3, 33, 33));
+            assertEquals(4, map.size());
+
+            assertTrue(map.remove(1, 1));
+            assertFalse(map.remove(1, 1));
+            assertNull(map.get(1, 1));
+            assertFalse(map.remove(1, 2, 0, 0));
+            assertTrue(map.remove(1, 2, 12, 12));
+            assertFalse(map.containsKey(1, 2));
+            assertEquals(2, map.size());
+
+            map.clear();
+            assertTrue(map.isEmpty());
+            assertNull(map.get(2, 1));
+        }
+    }
+
+    @Test
+    public void testMemoryBudget() {
+        MemoryLimitController memoryBudget = new MemoryLimitController(0);
+        ConcurrentLongLongPairOffHeapHashMap map = newBuilder().expectedItems(16).concurrencyLevel(1)
+                .memoryBudget(memoryBudget).build();
+        assertEquals(map.sizeInBytes(), memoryBudget.currentUsage());
+
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i, i, i);
+        }
+        // the resized tables are charged, the previous ones released except the last retired one
+        assertTrue(map.retiredSizeInBytes() > 0);
+        assertEquals(map.sizeInBytes() + map.retiredSizeInBytes(), memoryBudget.currentUsage());
+
+        map.close();
+        assertEquals(0, memoryBudget.currentUsage());
+    }
+
+    @Test
+    public void testNegativeKeys() {
+        try (ConcurrentLongLongPairOffHeapHashMap map = newBuilder().build()) {
+            try {
+                map.put(-1, 1, 1, 1);
+                fail("Negative keys should not be accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            try {
+                map.get(-1, 1);
+                fail("Negative keys should not be accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testRehash() {
+        int numItems = 10_000;
+        try (ConcurrentLongLongPairOffHeapHashMap map = newBuilder().expectedItems(16).concurrencyLevel(2)
+                .build()) {
+            long initialCapacity = map.capacity();
+            Map<LongPair, LongPair> expected = new HashMap<>();
+            Random random = new Random(1);
+            for (int i = 0; i < numItems; i++) {
+                long key1 = random.nextInt(100);
+                long key2 = random.nextInt(Integer.MAX_VALUE);
+                map.put(key1, key2, i, key2);
+                expected.put(new LongPair(key1, key2), new LongPair(i, key2));
+            }
+
+            assertTrue(map.capacity() > initialCapacity);
+            assertEquals(expected.size(), map.size());
+            assertEquals(map.capacity() * 4 * Long.BYTES, map.sizeInBytes());
+            assertEquals(expected, map.asMap());
+            expected.forEach((key, value) -> assertEquals(value, map.get(key.first, key.second)));
+
+            // the tables of the previous capacities were released, except the last retired ones
+            long allocatedBytes = 0;
+            for (ByteBuf buffer : allocator.buffers) {
+                allocatedBytes += buffer.refCnt() > 0 ? buffer.capacity() : 0;
+            }
+            assertEquals(map.sizeInBytes() + map.retiredSizeInBytes(), allocatedBytes);
+        }
+    }
+
+    @Test
+    public void testWithoutMemoryAddress() {
+        allocator.heapBuffers = true;
+        try (ConcurrentLongLongPairOffHeapHashMap map = newBuilder().expectedItems(16).concurrencyLevel(1).build()) {
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i + 1, i + 2, i + 3);
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(new LongPair(i + 2, i + 3), map.get(i, i + 1));
+            }
+            assertTrue(map.remove(1, 2));
+            assertNull(map.get(1, 2));
+            map.clear();
+            assertTrue(map.isEmpty());
+            assertNull(map.get(2, 3));
+        }
+    }
+
+    @Test
+    public void testConcurrentGetDuringRehash() throws Exception {
+        int numItems = 100_000;
+        try (ConcurrentLongLongPairOffHeapHashMap map = ConcurrentLongLongPairOffHeapHashMap.newBuilder()
+                .expectedItems(16).concurrencyLevel(1).autoShrink(true).build()) {
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            List<Thread> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(new Thread(() -> {
+                    Random random = new Random();
+                    while (!done.get()) {
+                        long key = random.nextInt(numItems);
+                        LongPair value = map.get(key, key);
+                        if (value != null && (value.first != key + 1 || value.second != key + 2)) {
+                            error.set(new AssertionError("Wrong value " + value + " for key " + key));
+                        }
+                    }
+                }));
+            }
+            readers.forEach(Thread::start);
+
+            // grow and shrink the table repeatedly
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < numItems; i++) {
+                    map.put(i, i, i + 1, i + 2);
+                }
+                for (int i = 0; i < numItems; i++) {
+                    map.remove(i, i);
+                }
+            }
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+            assertNull(error.get());
+        }
+    }
+
+    @Test
+    public void testAutoShrink() {
+        try (ConcurrentLongLongPairOffHeapHashMap map = newBuilder().expectedItems(16).concurrencyLevel(1)
+                .autoShrink(true).build()) {
+            long initialCapacity = map.capacity();
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i, i, i);
+            }
+            assertTrue(map.capacity() > initialCapacity);
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(map.remove(i, i));
+            }
+            assertTrue(map.isEmpty());
+            assertEquals(initialCapacity, map.capacity());
+
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, i, i, i);
+            }
+            map.clear();
+            assertEquals(initialCapacity, map.capacity());
+        }
+    }
+
+    @Test
+    public void testForEach() {
+        try (ConcurrentLongLongPairOffHeapHashMap map = newBuilder().build()) {
+            for (int i = 0; i < 100; i++) {
+                map.put(i, i + 1, i + 2, i + 3);
+            }
+            // a deleted bucket is skipped
+            map.remove(50, 51);
+
+            List<LongPair> keys = new ArrayList<>();
+            map.forEach((key1, key2, value1, value2) -> {
+                assertEquals(key1 + 1, key2);
+                assertEquals(key1 + 2, value1);
+                assertEquals(key1 + 3, value2);
+                keys.add(new LongPair(key1, key2));
+            });
+            assertEquals(99, keys.size());
+            assertFalse(keys.contains(new LongPair(50, 51)));
+            assertEquals(99, map.keys().size());
+            assertEquals(99, map.values().size());
+        }
+    }
+
+    @Test
+    public void testClose() {
+        ConcurrentLongLongPairOffHeapHashMap map = newBuilder().build();
+        map.put(1, 1, 1, 1);
+        map.close();
+        for (ByteBuf buffer : allocator.buffers) {
+            assertEquals(0, buffer.refCnt());
+        }
+
+        assertClosed(() -> map.get(1, 1));
+        assertClosed(() -> map.containsKey(1, 1));
+        assertClosed(() -> map.put(2, 2, 2, 2));
+        assertClosed(() -> map.putIfAbsent(2, 2, 2, 2));
+        assertClosed(() -> map.remove(1, 1));
+        assertClosed(() -> map.remove(1, 1, 1, 1));
+        assertClosed(map::clear);
+        assertClosed(() -> map.forEach((key1, key2, value1, value2) -> { }));
+        assertClosed(map::keys);
+        assertClosed(map::size);
+        assertClosed(map::sizeInBytes);
+        assertClosed(map::capacity);
+        assertClosed(map::isEmpty);
+
+        // closing again is a no-op
+        map.close();
+    }
+
+    private static void assertClosed(Runnable operation) {
+        try {
+            operation.run();
+            fail("Operation on a closed map should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Allocator keeping the buffers it allocated, to check that they are released.
+     */
+    private static class TrackingAllocator extends AbstractByteBufAllocator {
+        private final List<ByteBuf> buffers = new ArrayList<>();
+        // allocate buffers without a memory address
+        private boolean heapBuffers = false;
+
+        @Override
+        protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+            return UnpooledByteBufAllocator.DEFAULT.heapBuffer(initialCapacity, maxCapacity);
+        }
+
+        @Override
+        protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+            ByteBuf buffer = heapBuffers ? UnpooledByteBufAllocator.DEFAULT.heapBuffer(initialCapacity, maxCapacity)
+                    : UnpooledByteBufAllocator.DEFAULT.directBuffer(initialCapacity, maxCapacity);
+            buffers.add(buffer);
+            return buffer;
+        }
+
+        @Override
+        public boolean isDirectBufferPooled() {
+            return false;
+        }
+    }
+}
@@ -26,12 +26,17 @@ public class Crc32cIntChecksum {
     private final static IntHash CRC32C_HASH;
 
     static {
+        // java.util.zip.CRC32C is compiled to the crc32c instructions of the CPU: prefer it to the pure Java table
+        // lookups when the native library is not available, through its private methods if java.util.zip is open
+        // to reflection, else through its public API
         if (Sse42Crc32C.isSupported()) {
             CRC32C_HASH = new JniIntHash();
         } else if (Java9IntHash.HAS_JAVA9_CRC32C) {
             CRC32C_HASH = new Java9IntHash();
+        } else if (JdkCrc32cIntHash.HAS_JDK_CRC32C) {
+            CRC32C_HASH = new JdkCrc32cIntHash();
         } else {
-            CRC32C_HASH = new Java8IntHash();
+            CRC32C_HASH = new SlicingBy16IntHash();
         }
     }
 
@@ -94,7 +99,77 @@ public class Crc32cIntChecksum {
         return CRC32C_HASH.resume(previousChecksum, payload, offset, len);
     }
 
+    /**
+     * Combines the crc32c checksums of two consecutive blocks of data into the checksum of their concatenation,
+     * without going through the data again: given crc(A), crc(B) and the length of B, returns crc(A||B).
+     *
+     * <p>This allows to compute the checksum of a large payload by blocks, in parallel, or to reuse a checksum of
+     * the payload that is already known. It takes O(log(len2)) steps, whatever the length of the data.
+     *
+     * @param crc1 the checksum of the first block
+     * @param crc2 the checksum of the second block
+     * @param len2 the length in bytes of the second block
+     * @return the checksum of the first block followed by the second block
+     */
+    public static int combineChecksums(int crc1, int crc2, long len2) {
+        if (len2 < 0) {
+            throw new IllegalArgumentException("Invalid length: " + len2);
+        }
+        return multModP(x2nModP(len2, 3), crc1) ^ crc2;
+    }
+
     public static boolean acceptsMemoryAddressBuffer() {
         return CRC32C_HASH.acceptsMemoryAddressBuffer();
     }
+
+    // The polynomials below are in the reflected bit order of crc32c: the coefficient of x^0 is the most
+    // significant bit, and the coefficient of x^31 the least significant one.
+
+    private static final int CRC32C_POLY = 0x82F63B78;
+
+    // x^(2^n) modulo the crc32c polynomial, for n in [0, 32)
+    private static final int[] X2N_TABLE = new int[32];
+
+    static {
+        int p = 1 << 30; // x^1
+        X2N_TABLE[0] = p;
+        for (int n = 1; n < X2N_TABLE.length; n++) {
+            p = multModP(p, p);
+            X2N_TABLE[n] = p;
+        }
+    }
+
+    /**
+     * Returns a(x) * b(x) modulo the crc32c polynomial.
+     */
+    private static int multModP(int a, int b) {
+        int m = 1 << 31;
+        int p = 0;
+        while (true) {
+            if ((a & m) != 0) {
+                p ^= b;
+                if ((a & (m - 1)) == 0) {
+                    break;
+                }
+            }
+            m >>>= 1;
+            b = (b & 1) != 0 ? (b >>> 1) ^ CRC32C_POLY : b >>> 1;
+        }
+        return p;
+    }
+
+    /**
+     * Returns x^(n * 2^k) modulo the crc32c polynomial.
+     */
+    private static int x2nModP(long n, int k) {
+        int p = 1 << 31; // x^0
+        while (n != 0) {
+            if ((n & 1) != 0) {
+                p = multModP(X2N_TABLE[k & 31], p);
+            }
+            n >>>= 1;
+            k++;
+        }
+        return p;
+    }
 }
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Computes crc32c checksums with the public API of {@code java.util.zip.CRC32C}, which the JVM compiles to the
+ * crc32c instructions of the CPU. Unlike {@link Java9IntHash}, it does not need {@code java.util.zip} to be opened
+ * to reflection, and it reads direct buffers in place.
+ *
+ * <p>The public API always starts a checksum from scratch. To resume from a previous checksum, the checksum is
+ * first fed the 4 bytes that bring the crc register to the state it had at the end of the previous data.
+ */
+@Slf4j
+public class JdkCrc32cIntHash implements IntHash {
+    static final boolean HAS_JDK_CRC32C;
+    private static final MethodHandle NEW_CRC32C;
+    private static final MethodHandle UPDATE_BYTEBUFFER;
+
+    private static final String CRC32C_CLASS_NAME = "java.util.zip.CRC32C";
+
+    private static final int CRC32C_POLY = 0x82F63B78;
+
+    // the byte-wise crc32c table, and the index of each entry of the table by its most significant byte
+    private static final int[] TABLE = new int[256];
+    private static final int[] TABLE_INDEX = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ CRC32C_POLY : crc >>> 1;
+            }
+            TABLE[i] = crc;
+            TABLE_INDEX[crc >>> 24] = i;
+        }
+
+        boolean hasJdkCRC32C = false;
+        MethodHandle newCrc32c = null;
+        MethodHandle updateByteBuffer = null;
+        try {
+            Class<?> c = Class.forName(CRC32C_CLASS_NAME);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            newCrc32c = lookup.findConstructor(c, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Checksum.class));
+            updateByteBuffer = lookup.findVirtual(c, "update", MethodType.methodType(void.class, ByteBuffer.class))
+                    .asType(MethodType.methodType(void.class, Checksum.class, ByteBuffer.class));
+            hasJdkCRC32C = true;
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Unable to use java.util.zip.CRC32C: ", e);
+            }
+            newCrc32c = null;
+            updateByteBuffer = null;
+        }
+
+        HAS_JDK_CRC32C = hasJdkCRC32C;
+        NEW_CRC32C = newCrc32c;
+        UPDATE_BYTEBUFFER = updateByteBuffer;
+    }
+
+    private static final FastThreadLocal<Checksum> TL_CRC32C = new FastThreadLocal<Checksum>() {
+        @Override
+        protected Checksum initialValue() throws Exception {
+            return newCrc32c();
+        }
+    };
+
+    private static final FastThreadLocal<byte[]> TL_BUFFER = new FastThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[4096];
+        }
+    };
+
+    private static Checksum newCrc32c() {
+        try {
+            return (Checksum) NEW_CRC32C.invokeExact();
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static void updateByteBuffer(Checksum crc, ByteBuffer buffer) {
+        try {
+            UPDATE_BYTEBUFFER.invokeExact(crc, buffer);
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Returns the crc32c checksum, reset and positioned after the data whose checksum is {@code current}.
+     */
+    private static Checksum start(int current) {
+        Checksum crc = TL_CRC32C.get();
+        crc.reset();
+        if (current != 0) {
+            // The crc register starts at 0xffffffff and has to be at ~current. Feeding 4 bytes w to the register r
+            // sets it to Z(r ^ w), where Z is the linear function feeding 4 zero bytes: undo Z on ~current, one
+            // byte at a time with the table index, to get the bytes to feed.
+            int register = ~current;
+            for (int i = 0; i < 4; i++) {
+                int index = TABLE_INDEX[register >>> 24];
+                register = ((register ^ TABLE[index]) << 8) | index;
+            }
+            int w = register ^ 0xffffffff;
+            crc.update(w & 0xff);
+            crc.update((w >>> 8) & 0xff);
+            crc.update((w >>> 16) & 0xff);
+            crc.update(w >>> 24);
+        }
+        return crc;
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer) {
+        return resume(0, buffer);
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer, int offset, int len) {
+        return resume(0, buffer, offset, len);
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer) {
+        return resume(current, buffer, buffer.readerIndex(), buffer.readableBytes());
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer, int offset, int len) {
+        Checksum crc = start(current);
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + offset, len);
+        } else if (buffer.nioBufferCount() == 1) {
+            updateByteBuffer(crc, buffer.nioBuffer(offset, len));
+        } else if (buffer.nioBufferCount() > 1) {
+            for (ByteBuffer b : buffer.nioBuffers(offset, len)) {
+                updateByteBuffer(crc, b);
+            }
+        } else {
+            byte[] b = TL_BUFFER.get();
+            int toRead = len;
+            int loopOffset = offset;
+            while (toRead > 0) {
+                int length = Math.min(toRead, b.length);
+                buffer.getBytes(loopOffset, b, 0, length);
+                crc.update(b, 0, length);
+                toRead -= length;
+                loopOffset += length;
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public int resume(int current, byte[] buffer, int offset, int len) {
+        Checksum crc = start(current);
+        crc.update(buffer, offset, len);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public boolean acceptsMemoryAddressBuffer() {
+        return true;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.scurrilous.circe.checksum;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Computes crc32c checksums in pure Java with the slicing-by-16 algorithm: 16 lookup tables let it process 16
+ * bytes of data per step, instead of a byte per step for {@link Java8IntHash}. It reads direct buffers in place.
+ *
+ * <p>It is the fallback for the JVMs which have neither the native library nor {@code java.util.zip.CRC32C}.
+ */
+public class SlicingBy16IntHash implements IntHash {
+
+    private static final int CRC32C_POLY = 0x82F63B78;
+
+    // table k, at offset k * 256, gives the crc of a byte followed by k zero bytes
+    private static final int[] TABLES = new int[16 * 256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ CRC32C_POLY : crc >>> 1;
+            }
+            TABLES[i] = crc;
+        }
+        for (int k = 1; k < 16; k++) {
+            for (int i = 0; i < 256; i++) {
+                int prev = TABLES[(k - 1) * 256 + i];
+                TABLES[k * 256 + i] = (prev >>> 8) ^ TABLES[prev & 0xff];
+            }
+        }
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer) {
+        return resume(0, buffer);
+    }
+
+    @Override
+    public int calculate(ByteBuf buffer, int offset, int len) {
+        return resume(0, buffer, offset, len);
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer) {
+        return resume(current, buffer, buffer.readerIndex(), buffer.readableBytes());
+    }
+
+    @Override
+    public int resume(int current, ByteBuf buffer, int offset, int len) {
+        if (buffer.hasArray()) {
+            return resume(current, buffer.array(), buffer.arrayOffset() + offset, len);
+        }
+        int crc = ~current;
+        while (len >= 16) {
+            int w1 = buffer.getIntLE(offset);
+            int w2 = buffer.getIntLE(offset + 4);
+            int w3 = buffer.getIntLE(offset + 8);
+            int w4 = buffer.getIntLE(offset + 12);
+            crc = step(crc ^ w1, w2, w3, w4);
+            offset += 16;
+            len -= 16;
+        }
+        while (len > 0) {
+            crc = TABLES[(crc ^ buffer.getByte(offset)) & 0xff] ^ (crc >>> 8);
+            offset++;
+            len--;
+        }
+        return ~crc;
+    }
+
+    @Override
+    public int resume(int current, byte[] buffer, int offset, int len) {
+        int crc = ~current;
+        while (len >= 16) {
+            crc = step(crc ^ getIntLE(buffer, offset), getIntLE(buffer, offset + 4), getIntLE(buffer, offset + 8),
+                    getIntLE(buffer, offset + 12));
+            offset += 16;
+            len -= 16;
+        }
+        while (len > 0) {
+            crc = TABLES[(crc ^ buffer[offset]) & 0xff] ^ (crc >>> 8);
+            offset++;
+            len--;
+        }
+        return ~crc;
+    }
+
+    @Override
+    public boolean acceptsMemoryAddressBuffer() {
+        return true;
+    }
+
+    /**
+     * Returns the crc register after 16 bytes, given the register xor-ed with the first 4 bytes, and the next 12
+     * bytes as little-endian ints.
+     */
+    private static int step(int w1, int w2, int w3, int w4) {
+        return TABLES[15 * 256 + (w1 & 0xff)] ^ TABLES[14 * 256 + ((w1 >>> 8) & 0xff)]
+                ^ TABLES[13 * 256 + ((w1 >>> 16) & 0xff)] ^ TABLES[12 * 256 + (w1 >>> 24)]
+                ^ TABLES[11 * 256 + (w2 & 0xff)] ^ TABLES[10 * 256 + ((w2 >>> 8) & 0xff)]
+                ^ TABLES[9 * 256 + ((w2 >>> 16) & 0xff)] ^ TABLES[8 * 256 + (w2 >>> 24)]
+                ^ TABLES[7 * 256 + (w3 & 0xff)] ^ TABLES[6 * 256 + ((w3 >>> 8) & 0xff)]
+                ^ TABLES[5 * 256 + ((w3 >>> 16) & 0xff)] ^ TABLES[4 * 256 + (w3 >>> 24)]
+                ^ TABLES[3 * 256 + (w4 & 0xff)] ^ TABLES[2 * 256 + ((w4 >>> 8) & 0xff)]
+                ^ TABLES[256 + ((w4 >>> 16) & 0xff)] ^ TABLES[w4 >>> 24];
+    }
+
+    private static int getIntLE(byte[] buffer, int index) {
+        return (buffer[index] & 0xff) | (buffer[index + 1] & 0xff) << 8 | (buffer[index + 2] & 0xff) << 16
+                | (buffer[index + 3] & 0xff) << 24;
+    }
+}
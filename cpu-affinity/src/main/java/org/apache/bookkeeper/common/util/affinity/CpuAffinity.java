@@ -21,6 +21,10 @@
 
 package org.apache.bookkeeper.common.util.affinity;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.SortedSet;
 import lombok.experimental.UtilityClass;
 import org.apache.bookkeeper.common.util.affinity.impl.CpuAffinityImpl;
 
@@ -47,4 +51,45 @@ public class CpuAffinity {
     public static void acquireCore() {
         CpuAffinityImpl.acquireCore();
     }
+
+    /**
+     * Acquire ownership of a given CPU core for the current thread.
+     *
+     * <p>The CPU has to be isolated by the OS. If the core is not owned by this process yet, it is acquired like
+     * with {@link #acquireCore()}, disabling hyper-threading on it. Otherwise the current thread shares the core
+     * with the other threads of the process that acquired it.
+     *
+     * @param cpu id of the CPU
+     */
+    public static void acquireCore(int cpu) {
+        CpuAffinityImpl.acquireCore(cpu);
+    }
+
+    /**
+     * Returns the ids of the CPUs isolated by the OS, which can be acquired by the threads.
+     */
+    public static SortedSet<Integer> getIsolatedProcessors() throws IOException {
+        return Collections.unmodifiableSortedSet(CpuAffinityImpl.getIsolatedProcessors());
+    }
+
+    /**
+     * Returns the ids of the CPUs sharing the core of a given CPU, including it. Acquiring a CPU disables the other
+     * CPUs of its core.
+     *
+     * @param cpu id of the CPU
+     */
+    public static Set<Integer> getCpusOnSameCore(int cpu) {
+        return Collections.unmodifiableSet(CpuAffinityImpl.getCpusOnSameCore(cpu));
+    }
+
+    /**
+     * Parse a list of CPU ids in the format of the kernel, such as <code>2,3,6-9</code>.
+     *
+     * @param cpus list of CPU ids and ranges of CPU ids, with both ends included
+     * @return the CPU ids
+     * @throws NumberFormatException if the list is malformed
+     */
+    public static SortedSet<Integer> parseProcessors(String cpus) {
+        return CpuAffinityImpl.parseProcessorRange(cpus);
+    }
 }
@@ -55,6 +55,58 @@ public class CpuAffinityImpl {
     private static ProcessorsInfo processorsInfo = null;
 
     public static synchronized void acquireCore() {
+        checkSupported();
+
+        try {
+            int cpu = pickAvailableCpu();
+            CpuAffinityJni.setAffinity(cpu);
+
+            log.info("Thread {} has successfully acquired ownership of cpu {}", Thread.currentThread().getName(), cpu);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to acquire CPU core: " + e.getMessage());
+        }
+    }
+
+    public static synchronized void acquireCore(int cpu) {
+        checkSupported();
+
+        try {
+            // The cores already owned by this process can be shared by several of its threads
+            if (!acquiredProcessors.contains(cpu)) {
+                if (!getIsolatedProcessors().contains(cpu)) {
+                    throw new RuntimeException("CPU " + cpu + " is not isolated");
+                }
+                if (!tryAcquireCpu(cpu)) {
+                    throw new RuntimeException("CPU " + cpu + " is already acquired by another process");
+                }
+            }
+            CpuAffinityJni.setAffinity(cpu);
+
+            log.info("Thread {} has successfully acquired cpu {}", Thread.currentThread().getName(), cpu);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to acquire CPU " + cpu + ": " + e.getMessage());
+        }
+    }
+
+    public static synchronized SortedSet<Integer> getIsolatedProcessors() throws IOException {
+        if (isolatedProcessors == null) {
+            isolatedProcessors = IsolatedProcessors.get();
+        }
+        return isolatedProcessors;
+    }
+
+    public static synchronized Set<Integer> getCpusOnSameCore(int cpu) {
+        if (processorsInfo == null) {
+            processorsInfo = ProcessorsInfo.parseCpuInfo();
+        }
+        return processorsInfo.getCpusOnSameCore(cpu);
+    }
+
+    public static SortedSet<Integer> parseProcessorRange(String range) {
+        return IsolatedProcessors.parseProcessorRange(range);
+    }
+
+    private static void checkSupported() {
         if (!isInitialized) {
             init();
         }
@@ -66,15 +118,6 @@ public class CpuAffinityImpl {
         if (!CpuAffinityJni.isRoot()) {
             throw new RuntimeException("CPU Affinity can only be set if the process is running as root");
         }
-
-        try {
-            int cpu = pickAvailableCpu();
-            CpuAffinityJni.setAffinity(cpu);
-
-            log.info("Thread {} has successfully acquired ownership of cpu {}", Thread.currentThread().getName(), cpu);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to acquire CPU core: " + e.getMessage());
-        }
     }
 
     private static final String LOCK_FILE_PREFIX = Paths.get(System.getProperty("java.io.tmpdir"), "cpu-lock-")
@@ -88,10 +131,7 @@ public class CpuAffinityImpl {
      * automatically released if the process crashes.
      */
     private static synchronized int pickAvailableCpu() throws IOException {
-        if (isolatedProcessors == null) {
-            isolatedProcessors = IsolatedProcessors.get();
-        }
-        for (int isolatedCpu : isolatedProcessors) {
+        for (int isolatedCpu : getIsolatedProcessors()) {
             if (log.isDebugEnabled()) {
                 log.debug("Checking CPU {}", isolatedCpu);
             }
@@ -116,11 +156,7 @@ public class CpuAffinityImpl {
 
     private static boolean tryAcquireCpu(int targetCpu) throws IOException {
         // First, acquire lock on all the cpus that share the same core as target cpu
-        if (processorsInfo == null) {
-            processorsInfo = ProcessorsInfo.parseCpuInfo();
-        }
-
-        Set<Integer> cpusToAcquire = processorsInfo.getCpusOnSameCore(targetCpu);
+        Set<Integer> cpusToAcquire = getCpusOnSameCore(targetCpu);
         List<Closeable> acquiredCpus = new ArrayList<>();
 
         for (int cpu : cpusToAcquire) {
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.util.ReferenceCounted;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadLacCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.StreamReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
+import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Bookie client acknowledging the adds it was sent when asked to.
+ */
+class AckingBookieClient implements BookieClient {
+
+    private static final int MAX_PENDING_ADDS = LedgerHandleAddBenchmark.ENSEMBLE_SIZE;
+
+    private final BookieId[] addresses = new BookieId[MAX_PENDING_ADDS];
+    private final long[] ledgerIds = new long[MAX_PENDING_ADDS];
+    private final long[] entryIds = new long[MAX_PENDING_ADDS];
+    private final WriteCallback[] callbacks = new WriteCallback[MAX_PENDING_ADDS];
+    private final Object[] contexts = new Object[MAX_PENDING_ADDS];
+    private int numPendingAdds = 0;
+
+    @Override
+    public void addEntry(BookieId address, long ledgerId, byte[] masterKey, long entryId,
+                         ReferenceCounted toSend, WriteCallback cb, Object ctx, int options,
+                         boolean allowFastFail, EnumSet<WriteFlag> writeFlags) {
+        int i = numPendingAdds++;
+        addresses[i] = address;
+        ledgerIds[i] = ledgerId;
+        entryIds[i] = entryId;
+        callbacks[i] = cb;
+        contexts[i] = ctx;
+    }
+
+    void ackPendingAdds() {
+        for (int i = 0; i < numPendingAdds; i++) {
+            WriteCallback cb = callbacks[i];
+            Object ctx = contexts[i];
+            callbacks[i] = null;
+            contexts[i] = null;
+            cb.writeComplete(BKException.Code.OK, ledgerIds[i], entryIds[i], addresses[i], ctx);
+        }
+        numPendingAdds = 0;
+    }
+
+    @Override
+    public List<BookieId> getFaultyBookies() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isWritable(BookieId address, long ledgerId) {
+        return true;
+    }
+
+    @Override
+    public long getNumPendingRequests(BookieId address, long ledgerId) {
+        return 0;
+    }
+
+    @Override
+    public void forceLedger(BookieId address, long ledgerId, ForceLedgerCallback cb, Object ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void readLac(BookieId address, long ledgerId, ReadLacCallback cb, Object ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void writeLac(BookieId address, long ledgerId, byte[] masterKey, long lac, ByteBufList toSend,
+                         WriteLacCallback cb, Object ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void readEntry(BookieId address, long ledgerId, long entryId, ReadEntryCallback cb, Object ctx,
+                          int flags, byte[] masterKey, boolean allowFastFail) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount,
+                                 long maxSize, BatchedReadEntryCallback cb, Object ctx, int flags,
+                                 byte[] masterKey, boolean allowFastFail) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void streamReadEntries(BookieId address, long ledgerId, long firstEntryId, long lastEntryId,
+                                  int credits, StreamReadEntryCallback cb, Object ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void readEntryWaitForLACUpdate(BookieId address, long ledgerId, long entryId, long previousLAC,
+                                          long timeOutInMillis, boolean piggyBackEntry,
+                                          ReadEntryCallback cb, Object ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void getBookieInfo(BookieId address, long requested, GetBookieInfoCallback cb, Object ctx) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<AvailabilityOfEntriesOfLedger> getListOfEntriesOfLedger(BookieId address,
+                                                                                     long ledgerId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+}
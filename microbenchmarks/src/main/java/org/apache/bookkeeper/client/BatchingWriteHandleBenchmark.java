@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.BatchingWriteHandle;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the records written per second with a {@link BatchingWriteHandle}, compared to writing
+ * one entry per record with a {@link LedgerHandle}. The adds are acknowledged without any network by
+ * an {@link AckingBookieClient}, so it measures the client side cost of a record: the per entry cost
+ * of the add path against the cost of copying the record into a batch.
+ *
+ * <p>To run: ./run.sh BatchingWriteHandleBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchingWriteHandleBenchmark {
+
+    @Param({"16", "100"})
+    int recordSize;
+
+    @Param({"100"})
+    int maxBatchRecords;
+
+    private OrderedExecutor mainWorkerPool;
+    private OrderedScheduler scheduler;
+    private AckingBookieClient bookieClient;
+    private LedgerHandle lh;
+    private BatchingWriteHandle batchingHandle;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("benchmark-worker").numThreads(1).build();
+        scheduler = OrderedScheduler.newSchedulerBuilder().name("benchmark-scheduler").numThreads(1).build();
+        bookieClient = new AckingBookieClient();
+        lh = LedgerHandleAddBenchmark.newLedgerHandle(false, bookieClient, mainWorkerPool, scheduler);
+        batchingHandle = BatchingWriteHandle.newBuilder(lh)
+                .withMaxBatchRecords(maxBatchRecords)
+                // Long enough for the batches to only be written when full
+                .withLingerTime(1, TimeUnit.MINUTES)
+                .withScheduler(scheduler)
+                .withAllocator(PooledByteBufAllocator.DEFAULT)
+                .build();
+
+        data = new byte[recordSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        mainWorkerPool.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private ByteBuf newRecord() {
+        ByteBuf record = PooledByteBufAllocator.DEFAULT.directBuffer(recordSize);
+        record.writeBytes(data);
+        return record;
+    }
+
+    @Benchmark
+    public CompletableFuture<Long> entryPerRecord() {
+        CompletableFuture<Long> future = lh.appendAsync(newRecord());
+        bookieClient.ackPendingAdds();
+        return future;
+    }
+
+    @Benchmark
+    public CompletableFuture<RecordPosition> batchedRecords() {
+        CompletableFuture<RecordPosition> future = batchingHandle.appendAsync(newRecord());
+        // Only acknowledges something when the record filled up its batch
+        bookieClient.ackPendingAdds();
+        return future;
+    }
+}
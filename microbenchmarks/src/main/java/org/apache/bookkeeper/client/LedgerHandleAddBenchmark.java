@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.AsyncCallback.AddCallback;
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.OrderedScheduler;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the add path of {@link LedgerHandle}, against a bookie client which acknowledges the adds
+ * without any network. It measures the client side of an add: the pending add op, the digest and the
+ * packaging of the entry, the quorum tracking and the completion callbacks. The acknowledgements are
+ * delivered on the benchmark thread once the add is sent, so that the bookie client allocates nothing.
+ *
+ * <p>The interesting figure is gc.alloc.rate.norm, the bytes allocated per add.
+ * To run with the allocation profiler: ./run.sh LedgerHandleAddBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class LedgerHandleAddBenchmark {
+
+    static final int ENSEMBLE_SIZE = 3;
+
+    @Param({"true", "false"})
+    boolean useV2Protocol;
+
+    @Param({"100", "1024"})
+    int entrySize;
+
+    private OrderedExecutor mainWorkerPool;
+    private OrderedScheduler scheduler;
+    private AckingBookieClient bookieClient;
+    private LedgerHandle lh;
+    private byte[] data;
+    private final AddCallback noopCallback = (rc, lh, entryId, ctx) -> { };
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("benchmark-worker").numThreads(1).build();
+        scheduler = OrderedScheduler.newSchedulerBuilder().name("benchmark-scheduler").numThreads(1).build();
+        bookieClient = new AckingBookieClient();
+        lh = newLedgerHandle(useV2Protocol, bookieClient, mainWorkerPool, scheduler);
+
+        data = new byte[entrySize];
+    }
+
+    /**
+     * Create a ledger handle writing through the given bookie client, with the adds not throttled.
+     */
+    static LedgerHandle newLedgerHandle(boolean useV2Protocol, BookieClient bookieClient,
+                                        OrderedExecutor mainWorkerPool, OrderedScheduler scheduler)
+            throws Exception {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setUseV2WireProtocol(useV2Protocol);
+        // The adds are not throttled, to measure the add path alone
+        conf.setThrottleValue(0);
+        ClientInternalConf internalConf = ClientInternalConf.fromConfig(conf);
+        BookKeeperClientStats clientStats = BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE);
+        LedgerMetadataCache ledgerMetadataCache = new LedgerMetadataCache(null, 0, 0, clientStats);
+
+        ClientContext clientCtx = new ClientContext() {
+            @Override
+            public ClientInternalConf getConf() {
+                return internalConf;
+            }
+
+            @Override
+            public LedgerManager getLedgerManager() {
+                return null;
+            }
+
+            @Override
+            public LedgerMetadataCache getLedgerMetadataCache() {
+                return ledgerMetadataCache;
+            }
+
+            @Override
+            public BookieWatcher getBookieWatcher() {
+                return null;
+            }
+
+            @Override
+            public EnsemblePlacementPolicy getPlacementPolicy() {
+                return null;
+            }
+
+            @Override
+            public BookieClient getBookieClient() {
+                return bookieClient;
+            }
+
+            @Override
+            public ByteBufAllocator getByteBufAllocator() {
+                return PooledByteBufAllocator.DEFAULT;
+            }
+
+            @Override
+            public OrderedExecutor getMainWorkerPool() {
+                return mainWorkerPool;
+            }
+
+            @Override
+            public OrderedScheduler getScheduler() {
+                return scheduler;
+            }
+
+            @Override
+            public BookKeeperClientStats getClientStats() {
+                return clientStats;
+            }
+
+            @Override
+            public BookieReadLatencyTracker getBookieReadLatencyTracker() {
+                return null;
+            }
+
+            @Override
+            public Optional<SpeculativeRequestExecutionPolicy> getReadSpeculativeRequestPolicy() {
+                return Optional.empty();
+            }
+
+            @Override
+            public boolean isClientClosed() {
+                return false;
+            }
+        };
+
+        byte[] password = "benchmark".getBytes(UTF_8);
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(1L)
+                .withEnsembleSize(ENSEMBLE_SIZE)
+                .withWriteQuorumSize(ENSEMBLE_SIZE)
+                .withAckQuorumSize(ENSEMBLE_SIZE - 1)
+                .withPassword(password)
+                .withDigestType(DigestType.CRC32C)
+                .newEnsembleEntry(0L, Arrays.asList(
+                        BookieId.parse("bookie-1:3181"),
+                        BookieId.parse("bookie-2:3181"),
+                        BookieId.parse("bookie-3:3181")))
+                .build();
+        return new LedgerHandle(clientCtx, 1L, new Versioned<>(metadata, new LongVersion(0L)),
+                BookKeeper.DigestType.CRC32C, password, WriteFlag.NONE);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        mainWorkerPool.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private ByteBuf newEntry() {
+        ByteBuf entry = PooledByteBufAllocator.DEFAULT.directBuffer(entrySize);
+        entry.writeBytes(data);
+        return entry;
+    }
+
+    @Benchmark
+    public void asyncAddEntry() {
+        lh.asyncAddEntry(newEntry(), noopCallback, null);
+        bookieClient.ackPendingAdds();
+    }
+
+    @Benchmark
+    public CompletableFuture<Long> appendAsync() {
+        CompletableFuture<Long> future = lh.appendAsync(newEntry());
+        bookieClient.ackPendingAdds();
+        return future;
+    }
+}
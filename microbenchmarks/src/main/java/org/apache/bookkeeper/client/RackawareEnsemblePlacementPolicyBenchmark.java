@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKNotEnoughBookiesException;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.DNSToSwitchMapping;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the ensemble selection of {@link RackawareEnsemblePlacementPolicyImpl}, creating new ensembles and
+ * replacing a bookie of an ensemble, for clusters of increasing size spread over racks of
+ * {@link #BOOKIES_PER_RACK} bookies.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 3, timeUnit = TimeUnit.SECONDS)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RackawareEnsemblePlacementPolicyBenchmark {
+
+    private static final int BOOKIES_PER_RACK = 20;
+    private static final int ENSEMBLE_SIZE = 5;
+    private static final int WRITE_QUORUM_SIZE = 3;
+    private static final int ACK_QUORUM_SIZE = 2;
+
+    @Param({"100", "1000", "10000"})
+    int numBookies;
+
+    private HashedWheelTimer timer;
+    private RackawareEnsemblePlacementPolicy policy;
+    private List<BookieId> ensemble;
+
+    /**
+     * Resolves the bookies to the racks they were assigned to.
+     */
+    private static class StaticRackMapping implements DNSToSwitchMapping {
+        private final Map<String, String> racks = new HashMap<>();
+
+        @Override
+        public List<String> resolve(List<String> names) {
+            List<String> resolved = new ArrayList<>(names.size());
+            for (String name : names) {
+                resolved.add(racks.get(name));
+            }
+            return resolved;
+        }
+
+        @Override
+        public void reloadCachedMappings() {
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        StaticRackMapping rackMapping = new StaticRackMapping();
+        Set<BookieId> bookies = new HashSet<>();
+        for (int i = 0; i < numBookies; i++) {
+            String host = "10.0." + (i / 256) + "." + (i % 256);
+            rackMapping.racks.put(host, "/rack-" + (i / BOOKIES_PER_RACK));
+            bookies.add(new BookieSocketAddress(host, 3181).toBookieId());
+        }
+
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setIgnoreLocalNodeInPlacementPolicy(true);
+        timer = new HashedWheelTimer();
+        policy = new RackawareEnsemblePlacementPolicy();
+        policy.initialize(conf, Optional.of(rackMapping), timer, SettableFeatureProvider.DISABLE_ALL,
+                NullStatsLogger.INSTANCE, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        policy.onClusterChanged(bookies, Collections.emptySet());
+
+        ensemble = newEnsemble().getResult();
+    }
+
+    @TearDown
+    public void teardown() {
+        policy.uninitalize();
+        timer.stop();
+    }
+
+    @Benchmark
+    public EnsemblePlacementPolicy.PlacementResult<List<BookieId>> newEnsemble() throws BKNotEnoughBookiesException {
+        return policy.newEnsemble(ENSEMBLE_SIZE, WRITE_QUORUM_SIZE, ACK_QUORUM_SIZE, null, new HashSet<>());
+    }
+
+    @Benchmark
+    public EnsemblePlacementPolicy.PlacementResult<BookieId> replaceBookie() throws BKNotEnoughBookiesException {
+        return policy.replaceBookie(ENSEMBLE_SIZE, WRITE_QUORUM_SIZE, ACK_QUORUM_SIZE, null, ensemble,
+                ensemble.get(0), new HashSet<>());
+    }
+}
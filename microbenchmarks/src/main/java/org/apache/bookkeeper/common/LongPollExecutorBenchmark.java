@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.common;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmark of many concurrent long-poll readers, each one blocking a worker thread of the
+ * {@link OrderedExecutor} while waiting, with platform threads and with virtual threads.
+ *
+ * <p>The variants are:
+ * <ul>
+ *   <li>platform: platform threads sized like the default long poll pool, one per core;
+ *   <li>platform-per-reader: one platform thread per reader, the same thread count as the virtual variant;
+ *   <li>virtual: one virtual thread per reader.
+ * </ul>
+ *
+ * <p>On JDKs without virtual threads the virtual variant runs on platform threads.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class LongPollExecutorBenchmark {
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"platform", "platform-per-reader", "virtual"})
+        private String threads;
+
+        @Param({"10000"})
+        private int readers;
+
+        @Param({"1000"})
+        private long blockMicros;
+
+        private OrderedExecutor executor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            boolean useVirtualThreads = "virtual".equals(threads);
+            executor = OrderedExecutor.newBuilder()
+                    .name("long-poll-benchmark")
+                    .numThreads("platform".equals(threads) ? Runtime.getRuntime().availableProcessors() : readers)
+                    .useVirtualThreads(useVirtualThreads)
+                    .build();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Every reader waits on its own ledger, and all of them must complete.
+     */
+    @Benchmark
+    public void concurrentLongPollReaders(TestState s) throws Exception {
+        CountDownLatch latch = new CountDownLatch(s.readers);
+        long blockNanos = TimeUnit.MICROSECONDS.toNanos(s.blockMicros);
+        for (int ledgerId = 0; ledgerId < s.readers; ledgerId++) {
+            s.executor.executeOrdered(ledgerId, () -> {
+                LockSupport.parkNanos(blockNanos);
+                latch.countDown();
+            });
+        }
+        latch.await();
+    }
+}
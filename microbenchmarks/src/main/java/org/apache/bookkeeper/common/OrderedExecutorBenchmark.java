@@ -22,12 +22,15 @@ import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
 import org.openjdk.jmh.annotations.Level;
 import org.openjdk.jmh.annotations.Measurement;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
@@ -38,6 +41,7 @@ import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
 
 /**
  * Microbenchmarks for different executors providers.
@@ -80,4 +84,143 @@ public class OrderedExecutorBenchmark {
         s.executor.submit(() -> {
         }).get();
     }
+
+    /**
+     * State of the skewed benchmark: an executor running ordered tasks whose keys follow a uniform or a Zipf
+     * distribution, next to unordered tasks.
+     */
+    @State(Scope.Group)
+    public static class SkewedState {
+        private static final int NUM_THREADS = 4;
+        private static final int NUM_KEYS = 1000;
+        private static final int NUM_SAMPLES = 1 << 16;
+
+        @Param({"ordered-threads", "work-stealing"})
+        private String unorderedMode;
+
+        @Param({"uniform", "zipf"})
+        private String keyDistribution;
+
+        @Param({"1000"})
+        private long taskTokens;
+
+        private OrderedExecutor executor;
+        private long[] keys;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor = OrderedExecutor.newBuilder()
+                    .name("skewed")
+                    .numThreads(NUM_THREADS)
+                    .unorderedWorkStealing("work-stealing".equals(unorderedMode))
+                    .build();
+
+            keys = new long[NUM_SAMPLES];
+            if ("zipf".equals(keyDistribution)) {
+                // Inverse of the cumulative distribution of a Zipf law of exponent 1
+                double[] cdf = new double[NUM_KEYS];
+                double sum = 0;
+                for (int i = 0; i < NUM_KEYS; i++) {
+                    sum += 1.0 / (i + 1);
+                    cdf[i] = sum;
+                }
+                for (int i = 0; i < NUM_SAMPLES; i++) {
+                    double u = ThreadLocalRandom.current().nextDouble() * sum;
+                    int key = 0;
+                    while (cdf[key] < u) {
+                        key++;
+                    }
+                    keys[i] = key;
+                }
+            } else {
+                for (int i = 0; i < NUM_SAMPLES; i++) {
+                    keys[i] = ThreadLocalRandom.current().nextInt(NUM_KEYS);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executor.shutdown();
+        }
+
+        long nextKey() {
+            return keys[ThreadLocalRandom.current().nextInt(NUM_SAMPLES)];
+        }
+    }
+
+    @Benchmark
+    @Group("skewed")
+    @GroupThreads(6)
+    public void orderedTask(SkewedState s) throws Exception {
+        s.executor.submitOrdered(s.nextKey(), () -> {
+            Blackhole.consumeCPU(s.taskTokens);
+            return null;
+        }).get();
+    }
+
+    @Benchmark
+    @Group("skewed")
+    @GroupThreads(2)
+    public void unorderedTask(SkewedState s) throws Exception {
+        s.executor.submit(() -> Blackhole.consumeCPU(s.taskTokens)).get();
+    }
+
+    /**
+     * State of the hot key benchmark: an executor running the tasks of a hot key next to the tasks of cold keys,
+     * some of which share the thread of the hot key unless the hot key remapping moves them away.
+     */
+    @State(Scope.Group)
+    public static class HotKeyState {
+        private static final int NUM_THREADS = 4;
+        private static final int NUM_KEYS = 1000;
+        private static final long HOT_KEY = 0;
+
+        @Param({"false", "true"})
+        private boolean hotKeyRemapping;
+
+        @Param({"1000"})
+        private long taskTokens;
+
+        private OrderedExecutor executor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            executor = OrderedExecutor.newBuilder()
+                    .name("hot-key")
+                    .numThreads(NUM_THREADS)
+                    .hotKeyDetection(true)
+                    .hotKeyRemapping(hotKeyRemapping)
+                    .build();
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executor.shutdown();
+        }
+
+        long nextColdKey() {
+            return 1 + ThreadLocalRandom.current().nextInt(NUM_KEYS);
+        }
+    }
+
+    @Benchmark
+    @Group("hotKey")
+    @GroupThreads(4)
+    public void hotKeyTask(HotKeyState s) throws Exception {
+        s.executor.submitOrdered(HotKeyState.HOT_KEY, () -> {
+            Blackhole.consumeCPU(s.taskTokens);
+            return null;
+        }).get();
+    }
+
+    @Benchmark
+    @Group("hotKey")
+    @GroupThreads(4)
+    public void coldKeyTask(HotKeyState s) throws Exception {
+        s.executor.submitOrdered(s.nextColdKey(), () -> {
+            Blackhole.consumeCPU(s.taskTokens);
+            return null;
+        }).get();
+    }
 }
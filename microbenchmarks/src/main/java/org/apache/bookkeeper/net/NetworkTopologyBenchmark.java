@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.net;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmark of the lookups done on a {@link NetworkTopologyImpl} by concurrent placement threads, while a bookie
+ * keeps leaving and joining the cluster.
+ *
+ * <p>The placement threads look up, like the rack aware policy does for a new ensemble, the racks count, the
+ * bookies of a rack, the number of available bookies of a rack and whether two bookies share a rack. The update
+ * thread removes and adds back a bookie, then waits {@link #updateIntervalTokens} of CPU work.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 3, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Group)
+public class NetworkTopologyBenchmark {
+
+    private static final int BOOKIES_PER_RACK = 20;
+
+    @Param({"1000"})
+    int numBookies;
+
+    @Param({"100000"})
+    long updateIntervalTokens;
+
+    private NetworkTopologyImpl topology;
+    private BookieNode[] bookies;
+
+    @Setup
+    public void setup() {
+        topology = new NetworkTopologyImpl();
+        bookies = new BookieNode[numBookies];
+        for (int i = 0; i < numBookies; i++) {
+            BookieId bookieId = BookieId.parse("bookie-" + i + ":3181");
+            bookies[i] = new BookieNode(bookieId, "/rack-" + (i / BOOKIES_PER_RACK));
+            topology.add(bookies[i]);
+        }
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(7)
+    public void placement(Blackhole bh) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        BookieNode first = bookies[random.nextInt(numBookies)];
+        BookieNode second = bookies[random.nextInt(numBookies)];
+        bh.consume(topology.getNumOfRacks());
+        bh.consume(topology.getLeaves(first.getNetworkLocation()));
+        bh.consume(topology.countNumOfAvailableNodes(first.getNetworkLocation(), Collections.emptySet()));
+        bh.consume(topology.isOnSameRack(first, second));
+        bh.consume(topology.getNode(second.getNetworkLocation()));
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void update() {
+        BookieNode bookie = bookies[ThreadLocalRandom.current().nextInt(numBookies)];
+        topology.remove(bookie);
+        topology.add(bookie);
+        Blackhole.consumeCPU(updateIntervalTokens);
+    }
+}
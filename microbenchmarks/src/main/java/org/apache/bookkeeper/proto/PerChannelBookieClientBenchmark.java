@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.protobuf.ExtensionRegistry;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.ReferenceCounted;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.auth.AuthProviderFactoryFactory;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.proto.checksum.MacDigestManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the add path of {@link PerChannelBookieClient}, against an in-process bookie which acknowledges
+ * the adds as soon as it decodes them. It measures the client side of the protocol: request encoding,
+ * completion tracking and response dispatching.
+ *
+ * <p>To run with the allocation profiler: ./run.sh PerChannelBookieClientBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 5, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PerChannelBookieClientBenchmark {
+
+    private static final int MAX_OUTSTANDING_ADDS = 1000;
+
+    @Param({"true", "false"})
+    boolean useV2Protocol;
+
+    @Param({"100", "1024"})
+    int entrySize;
+
+    private DefaultEventLoopGroup eventLoopGroup;
+    private OrderedExecutor executor;
+    private Channel serverChannel;
+    private PerChannelBookieClient client;
+    private DigestManager digestManager;
+    private byte[] masterKey;
+    private ByteBuf entry;
+    private long ledgerId;
+    private long entryId;
+    private final Semaphore outstandingAdds = new Semaphore(MAX_OUTSTANDING_ADDS);
+    private final WriteCallback releaseCallback = (rc, ledgerId, entryId, addr, ctx) -> outstandingAdds.release();
+
+    /**
+     * Acknowledges every add request with a successful response.
+     */
+    private static class AckAddsHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (msg instanceof BookieProtocol.ParsedAddRequest) {
+                BookieProtocol.ParsedAddRequest add = (BookieProtocol.ParsedAddRequest) msg;
+                ctx.writeAndFlush(BookieProtocol.AddResponse.create(add.getProtocolVersion(), BookieProtocol.EOK,
+                        add.getLedgerId(), add.getEntryId()), ctx.voidPromise());
+                add.release();
+                add.recycle();
+            } else if (msg instanceof BookkeeperProtocol.Request) {
+                BookkeeperProtocol.Request request = (BookkeeperProtocol.Request) msg;
+                ctx.writeAndFlush(Response.newBuilder()
+                        .setHeader(request.getHeader())
+                        .setStatus(StatusCode.EOK)
+                        .setAddResponse(AddResponse.newBuilder()
+                                .setStatus(StatusCode.EOK)
+                                .setLedgerId(request.getAddRequest().getLedgerId())
+                                .setEntryId(request.getAddRequest().getEntryId()))
+                        .build(), ctx.voidPromise());
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BookieId bookieId = BookieId.parse("127.0.0.1:3181");
+        eventLoopGroup = new DefaultEventLoopGroup(2);
+        executor = OrderedExecutor.newBuilder().name("benchmark-client").numThreads(1).build();
+
+        serverChannel = new ServerBootstrap()
+                .group(eventLoopGroup)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast("bytebufList", ByteBufList.ENCODER);
+                        ch.pipeline().addLast("lengthbaseddecoder",
+                                new LengthFieldBasedFrameDecoder(5 * 1024 * 1024, 0, 4, 0, 4));
+                        ch.pipeline().addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(
+                                ExtensionRegistry.newInstance()));
+                        ch.pipeline().addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(null));
+                        ch.pipeline().addLast("ackAdds", new AckAddsHandler());
+                    }
+                })
+                .bind(new LocalAddress(bookieId.toString()))
+                .sync()
+                .channel();
+
+        ClientConfiguration conf = new ClientConfiguration().setUseV2WireProtocol(useV2Protocol);
+        client = new PerChannelBookieClient(conf, executor, eventLoopGroup, PooledByteBufAllocator.DEFAULT,
+                bookieId, NullStatsLogger.INSTANCE, AuthProviderFactoryFactory.newClientAuthProviderFactory(conf),
+                ExtensionRegistry.newInstance(), null, null, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+
+        masterKey = MacDigestManager.genDigest("ledger", "benchmark-key".getBytes(UTF_8));
+        ledgerId = ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE);
+        digestManager = DigestManager.instantiate(ledgerId, masterKey, DigestType.CRC32C,
+                PooledByteBufAllocator.DEFAULT, useV2Protocol);
+        byte[] data = new byte[entrySize];
+        ThreadLocalRandom.current().nextBytes(data);
+        entry = Unpooled.wrappedBuffer(data);
+
+        // Connect, and wait for the first add to complete
+        CompletableFuture<Void> connected = new CompletableFuture<>();
+        client.connectIfNeededAndDoOp((rc, pcbc) -> connected.complete(null));
+        connected.get(10, TimeUnit.SECONDS);
+        addEntry();
+        outstandingAdds.acquire(MAX_OUTSTANDING_ADDS);
+        outstandingAdds.release(MAX_OUTSTANDING_ADDS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.close();
+        serverChannel.close().sync();
+        executor.shutdown();
+        eventLoopGroup.shutdownGracefully().sync();
+        entry.release();
+    }
+
+    private void addEntry() throws InterruptedException {
+        outstandingAdds.acquire();
+        long id = entryId++;
+        ReferenceCounted toSend = digestManager.computeDigestAndPackageForSending(id, id - 1,
+                (long) entrySize * (id + 1), entry.retainedSlice(), masterKey, BookieProtocol.FLAG_NONE);
+        client.addEntry(ledgerId, masterKey, id, toSend, releaseCallback, null, BookieProtocol.FLAG_NONE,
+                false, WriteFlag.NONE);
+        toSend.release();
+    }
+
+    /**
+     * Add an entry, with up to {@link #MAX_OUTSTANDING_ADDS} adds waiting for their response.
+     */
+    @Benchmark
+    public void addEntryPipelined() throws Exception {
+        addEntry();
+    }
+}
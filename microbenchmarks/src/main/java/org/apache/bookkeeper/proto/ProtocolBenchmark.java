@@ -20,6 +20,8 @@ package org.apache.bookkeeper.proto;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.ExtensionRegistry;
+import com.google.protobuf.UnsafeByteOperations;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
@@ -29,11 +31,15 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.EnDecoder;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDeCoderPreV3;
 import org.apache.bookkeeper.proto.BookieProtoEncoding.RequestEnDecoderV3;
+import org.apache.bookkeeper.proto.BookieProtoEncoding.ResponseEnDecoderV3;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -43,6 +49,8 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
 import org.slf4j.MDC;
 
 /**
@@ -53,7 +61,7 @@ import org.slf4j.MDC;
 @State(Scope.Thread)
 public class ProtocolBenchmark {
 
-    @Param({"10", "100", "1000", "10000"})
+    @Param({"10", "100", "1000", "10000", "100000"})
     int size;
 
     byte[] masterKey;
@@ -63,9 +71,14 @@ public class ProtocolBenchmark {
     short flags;
     EnDecoder reqEnDeV2;
     EnDecoder reqEnDeV3;
+    EnDecoder respEnDeV3;
+    ByteBuf addEntryV3Packet;
+    ByteBuf addEntryV3PayloadPacket;
+    ByteBuf readEntryV3Packet;
+    ByteBuf readEntryV3PayloadPacket;
 
     @Setup
-    public void prepare() {
+    public void prepare() throws Exception {
         this.masterKey = "test-benchmark-key".getBytes(UTF_8);
         byte[] data = new byte[this.size];
         ThreadLocalRandom.current().nextBytes(data);
@@ -75,8 +88,98 @@ public class ProtocolBenchmark {
         this.flags = 1;
 
         // prepare the encoder
-        this.reqEnDeV2 = new RequestEnDeCoderPreV3(null);
-        this.reqEnDeV3 = new RequestEnDecoderV3(null);
+        ExtensionRegistry extensionRegistry = ExtensionRegistry.newInstance();
+        this.reqEnDeV2 = new RequestEnDeCoderPreV3(extensionRegistry);
+        this.reqEnDeV3 = new RequestEnDecoderV3(extensionRegistry);
+        this.respEnDeV3 = new ResponseEnDecoderV3(extensionRegistry);
+
+        // prepare the packets to decode, as received once the frame size is stripped
+        this.addEntryV3Packet = toPacket(reqEnDeV3.encode(buildAddRequest(), ByteBufAllocator.DEFAULT));
+        this.addEntryV3PayloadPacket = toPacket(reqEnDeV3.encode(
+                new PayloadMessageV3(buildAddRequestWithoutBody(), entry.retainedSlice()), ByteBufAllocator.DEFAULT));
+        this.readEntryV3Packet = toPacket(respEnDeV3.encode(buildReadResponse(), ByteBufAllocator.DEFAULT));
+        this.readEntryV3PayloadPacket = toPacket(respEnDeV3.encode(
+                new PayloadMessageV3(buildReadResponseWithoutBody(), entry.retainedSlice()), ByteBufAllocator.DEFAULT));
+    }
+
+    @TearDown
+    public void teardown() {
+        addEntryV3Packet.release();
+        addEntryV3PayloadPacket.release();
+        readEntryV3Packet.release();
+        readEntryV3PayloadPacket.release();
+    }
+
+    private static ByteBuf toPacket(Object encoded) {
+        ByteBuf frame;
+        if (encoded instanceof ByteBufList) {
+            frame = ByteBufList.coalesce((ByteBufList) encoded);
+            ReferenceCountUtil.release(encoded);
+        } else {
+            frame = (ByteBuf) encoded;
+        }
+        ByteBuf packet = Unpooled.directBuffer(frame.readableBytes() - 4);
+        packet.writeBytes(frame, frame.readerIndex() + 4, frame.readableBytes() - 4);
+        frame.release();
+        return packet;
+    }
+
+    private AddRequest.Builder addRequestBuilder() {
+        return AddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
+                .setFlag(AddRequest.Flag.RECOVERY_ADD);
+    }
+
+    private Request buildAddRequest() {
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.ADD_ENTRY)
+                        .setTxnId(0L))
+                .setAddRequest(addRequestBuilder().setBody(UnsafeByteOperations.unsafeWrap(entry.nioBuffer())))
+                .build();
+    }
+
+    private Request buildAddRequestWithoutBody() {
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.ADD_ENTRY)
+                        .setTxnId(0L))
+                .setAddRequest(addRequestBuilder().buildPartial())
+                .buildPartial();
+    }
+
+    private ReadResponse.Builder readResponseBuilder() {
+        return ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK)
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setMaxLAC(entryId);
+    }
+
+    private Response buildReadResponse() {
+        return Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(0L))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponseBuilder().setBody(UnsafeByteOperations.unsafeWrap(entry.nioBuffer())))
+                .build();
+    }
+
+    private Response buildReadResponseWithoutBody() {
+        return Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(0L))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponseBuilder())
+                .build();
     }
 
     @Benchmark
@@ -178,4 +281,89 @@ public class ProtocolBenchmark {
         Object res = this.reqEnDeV3.encode(request, ByteBufAllocator.DEFAULT);
         ReferenceCountUtil.release(res);
     }
+
+    /**
+     * Encode an add request whose entry is wrapped as the body of the request, as the client does with the
+     * entries it sends in ranges.
+     */
+    @Benchmark
+    public void testAddEntryV3Body() throws Exception {
+        Object res = this.reqEnDeV3.encode(buildAddRequest(), ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    /**
+     * Encode an add request whose entry is sent as a payload next to the request.
+     */
+    @Benchmark
+    public void testAddEntryV3Payload() throws Exception {
+        Object res = this.reqEnDeV3.encode(
+                new PayloadMessageV3(buildAddRequestWithoutBody(), entry.retainedSlice()), ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    /**
+     * Decode an add request whose entry is set in the body of the request, copying the entry out of the packet.
+     */
+    @Benchmark
+    public void testDecodeAddEntryV3Body(Blackhole bh) throws Exception {
+        Request request = (Request) this.reqEnDeV3.decode(addEntryV3Packet.duplicate());
+        bh.consume(Unpooled.wrappedBuffer(request.getAddRequest().getBody().asReadOnlyByteBuffer()));
+    }
+
+    /**
+     * Decode an add request whose entry is sent as a payload, sliced out of the packet.
+     */
+    @Benchmark
+    public void testDecodeAddEntryV3Payload(Blackhole bh) throws Exception {
+        PayloadMessageV3 request = (PayloadMessageV3) this.reqEnDeV3.decode(addEntryV3PayloadPacket.duplicate());
+        bh.consume(request.content());
+        request.release();
+    }
+
+    /**
+     * Encode a read response whose entry is copied in the body of the response, as the bookie used to.
+     */
+    @Benchmark
+    public void testReadEntryV3Body() throws Exception {
+        Response response = Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(0L))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponseBuilder().setBody(ByteString.copyFrom(entry.nioBuffer())))
+                .build();
+        Object res = this.respEnDeV3.encode(response, ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    /**
+     * Encode a read response whose entry is sent as a payload next to the response.
+     */
+    @Benchmark
+    public void testReadEntryV3Payload() throws Exception {
+        Object res = this.respEnDeV3.encode(
+                new PayloadMessageV3(buildReadResponseWithoutBody(), entry.retainedSlice()), ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    /**
+     * Decode a read response whose entry is set in the body of the response, copying the entry out of the packet.
+     */
+    @Benchmark
+    public void testDecodeReadEntryV3Body(Blackhole bh) throws Exception {
+        Response response = (Response) this.respEnDeV3.decode(readEntryV3Packet.duplicate());
+        bh.consume(Unpooled.wrappedBuffer(response.getReadResponse().getBody().asReadOnlyByteBuffer()));
+    }
+
+    /**
+     * Decode a read response whose entry is sent as a payload, sliced out of the packet.
+     */
+    @Benchmark
+    public void testDecodeReadEntryV3Payload(Blackhole bh) throws Exception {
+        PayloadMessageV3 response = (PayloadMessageV3) this.respEnDeV3.decode(readEntryV3PayloadPacket.duplicate());
+        bh.consume(response.content());
+        response.release();
+    }
 }
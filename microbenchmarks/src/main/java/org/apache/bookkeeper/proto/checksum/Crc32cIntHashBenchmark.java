@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bookkeeper.proto.checksum;
+
+import com.scurrilous.circe.checksum.IntHash;
+import com.scurrilous.circe.checksum.Java8IntHash;
+import com.scurrilous.circe.checksum.Java9IntHash;
+import com.scurrilous.circe.checksum.JdkCrc32cIntHash;
+import com.scurrilous.circe.checksum.SlicingBy16IntHash;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the pure Java crc32c implementations of circe-checksum, which are used when the native library
+ * can't be loaded, on heap and direct buffers of increasing size. The checksum is resumed from the checksum of
+ * the entry metadata, as {@link DigestManager} does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS)
+@Threads(1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util.zip=ALL-UNNAMED")
+@State(Scope.Thread)
+public class Crc32cIntHashBenchmark {
+
+    /**
+     * Crc32c implementation.
+     */
+    public enum Implementation {
+        JAVA8,
+        JAVA9,
+        JDK_CRC32C,
+        SLICING_BY_16
+    }
+
+    @Param({"JAVA8", "JAVA9", "JDK_CRC32C", "SLICING_BY_16"})
+    public Implementation implementation;
+
+    @Param({"64", "1024", "16384", "1048576"})
+    public int entrySize;
+
+    @Param({"true", "false"})
+    public boolean direct;
+
+    private IntHash hash;
+    private ByteBuf entry;
+    private int metadataChecksum;
+
+    @Setup
+    public void setup() {
+        switch (implementation) {
+        case JAVA8:
+            hash = new Java8IntHash();
+            break;
+        case JAVA9:
+            hash = new Java9IntHash();
+            break;
+        case JDK_CRC32C:
+            hash = new JdkCrc32cIntHash();
+            break;
+        default:
+            hash = new SlicingBy16IntHash();
+            break;
+        }
+        byte[] data = new byte[entrySize];
+        ThreadLocalRandom.current().nextBytes(data);
+        entry = direct ? Unpooled.directBuffer(entrySize).writeBytes(data) : Unpooled.wrappedBuffer(data);
+        metadataChecksum = hash.calculate(Unpooled.wrappedBuffer(new byte[DigestManager.METADATA_LENGTH]));
+    }
+
+    @TearDown
+    public void teardown() {
+        entry.release();
+    }
+
+    @Benchmark
+    public int resumeChecksum() {
+        return hash.resume(metadataChecksum, entry, entry.readerIndex(), entry.readableBytes());
+    }
+}
@@ -19,12 +19,15 @@
 
 package org.apache.bookkeeper.proto.checksum;
 
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCounted;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -38,6 +41,7 @@ import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.annotations.Threads;
 import org.openjdk.jmh.annotations.Warmup;
 
@@ -53,6 +57,8 @@ import org.openjdk.jmh.annotations.Warmup;
  */
 public class DigestManagerBenchmark {
 
+    private static final byte[] MASTER_KEY = new byte[BookieProtocol.MASTER_KEY_LENGTH];
+
     static byte[] randomBytes(int sz) {
         byte[] b = new byte[sz];
         ThreadLocalRandom.current().nextBytes(b);
@@ -65,13 +71,17 @@ public class DigestManagerBenchmark {
     @State(Scope.Thread)
     public static class MyState {
 
-        @Param({"64", "1024", "4086", "8192"})
+        @Param({"64", "1024", "4086", "8192", "1048576"})
         public int entrySize;
 
         private DigestManager dm;
 
         public ByteBuf digestBuf;
 
+        public ByteBuf data;
+
+        public int dataDigest;
+
         @Setup(Level.Trial)
         public void doSetup() throws Exception {
             final byte[] password = "password".getBytes(StandardCharsets.UTF_8);
@@ -79,13 +89,29 @@ public class DigestManagerBenchmark {
             dm = DigestManager.instantiate(ThreadLocalRandom.current().nextLong(0, Long.MAX_VALUE),
                     password, DigestType.CRC32C, PooledByteBufAllocator.DEFAULT, true);
 
-            ByteBuf data = ByteBufAllocator.DEFAULT.directBuffer(entrySize, entrySize);
+            data = ByteBufAllocator.DEFAULT.directBuffer(entrySize, entrySize);
             data.writeBytes(randomBytes(entrySize));
+            dataDigest = Crc32cIntChecksum.computeChecksum(data);
 
             digestBuf = ByteBufAllocator.DEFAULT.directBuffer();
-            digestBuf.writeBytes((ByteBuf)
-                    dm.computeDigestAndPackageForSending(1234, 1234, entrySize, data,
-                            new byte[0], 0));
+            ReferenceCounted toSend = dm.computeDigestAndPackageForSending(1234, 1234, entrySize,
+                    data.retain(), MASTER_KEY, 0);
+            if (toSend instanceof ByteBufList) {
+                ByteBuf coalesced = ByteBufList.coalesce((ByteBufList) toSend);
+                digestBuf.writeBytes(coalesced);
+                coalesced.release();
+            } else {
+                digestBuf.writeBytes((ByteBuf) toSend);
+            }
+            toSend.release();
+            // keep the entry as stored by the bookie, without the frame size, request header and master key
+            digestBuf.skipBytes(4 + 4 + BookieProtocol.MASTER_KEY_LENGTH).discardReadBytes();
+        }
+
+        @TearDown(Level.Trial)
+        public void doTearDown() {
+            data.release();
+            digestBuf.release();
         }
     }
 
@@ -100,4 +126,28 @@ public class DigestManagerBenchmark {
         state.digestBuf.readerIndex(0);
         state.dm.verifyDigestAndReturnData(1234, state.digestBuf);
     }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(1)
+    public void computeDigest(MyState state) {
+        state.dm.computeDigestAndPackageForSending(1234, 1234, state.entrySize, state.data.retain(),
+                MASTER_KEY, 0).release();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 2, time = 3, timeUnit = TimeUnit.SECONDS)
+    @Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+    @Threads(2)
+    @Fork(1)
+    public void computeDigestWithDataDigest(MyState state) {
+        state.dm.computeDigestAndPackageForSending(1234, 1234, state.entrySize, state.data.retain(),
+                state.dataDigest, MASTER_KEY, 0).release();
+    }
 }
@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.util.collections;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the lookups and updates of {@link ConcurrentLongLongPairHashMap} against
+ * {@link ConcurrentLongLongPairOffHeapHashMap}, filled like a write cache index with the entries of a few ledgers.
+ *
+ * <p>Run it with {@code -prof gc} to compare the allocation rate and the GC time of both maps. The heap map keeps
+ * its tables on the heap, while the off-heap map only allocates the pairs returned by the lookups.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 3, timeUnit = TimeUnit.SECONDS)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g", "-XX:MaxDirectMemorySize=2g" })
+@State(Scope.Benchmark)
+public class ConcurrentLongLongPairHashMapBenchmark {
+
+    private static final int LEDGERS = 100;
+
+    @Param({"heap", "offheap"})
+    String mapType;
+
+    @Param({"100000", "10000000"})
+    int entries;
+
+    private ConcurrentLongLongPairHashMap heapMap;
+    private ConcurrentLongLongPairOffHeapHashMap offHeapMap;
+    private int entriesPerLedger;
+
+    @Setup
+    public void setup() {
+        entriesPerLedger = entries / LEDGERS;
+        if ("heap".equals(mapType)) {
+            heapMap = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .build();
+        } else {
+            offHeapMap = ConcurrentLongLongPairOffHeapHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .allocator(PooledByteBufAllocator.DEFAULT)
+                    .build();
+        }
+        for (long ledgerId = 0; ledgerId < LEDGERS; ledgerId++) {
+            for (long entryId = 0; entryId < entriesPerLedger; entryId++) {
+                put(ledgerId, entryId, ledgerId * entriesPerLedger + entryId, 100);
+            }
+        }
+    }
+
+    @TearDown
+    public void teardown() {
+        if (offHeapMap != null) {
+            offHeapMap.close();
+        }
+    }
+
+    private boolean put(long ledgerId, long entryId, long offset, long size) {
+        if (heapMap != null) {
+            return heapMap.put(ledgerId, entryId, offset, size);
+        } else {
+            return offHeapMap.put(ledgerId, entryId, offset, size);
+        }
+    }
+
+    private boolean remove(long ledgerId, long entryId) {
+        if (heapMap != null) {
+            return heapMap.remove(ledgerId, entryId);
+        } else {
+            return offHeapMap.remove(ledgerId, entryId);
+        }
+    }
+
+    @Benchmark
+    public LongPair get() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long ledgerId = random.nextInt(LEDGERS);
+        long entryId = random.nextInt(entriesPerLedger);
+        if (heapMap != null) {
+            return heapMap.get(ledgerId, entryId);
+        } else {
+            return offHeapMap.get(ledgerId, entryId);
+        }
+    }
+
+    @Benchmark
+    public boolean put() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long ledgerId = random.nextInt(LEDGERS);
+        long entryId = random.nextInt(entriesPerLedger);
+        return put(ledgerId, entryId, ledgerId * entriesPerLedger + entryId, 100);
+    }
+
+    @Benchmark
+    public boolean removeAndPut() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long ledgerId = random.nextInt(LEDGERS);
+        long entryId = random.nextInt(entriesPerLedger);
+        remove(ledgerId, entryId);
+        return put(ledgerId, entryId, ledgerId * entriesPerLedger + entryId, 100);
+    }
+}
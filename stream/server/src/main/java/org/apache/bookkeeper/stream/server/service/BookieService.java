@@ -38,6 +38,7 @@ import org.apache.bookkeeper.bookie.UncleanShutdownDetection;
 import org.apache.bookkeeper.bookie.UncleanShutdownDetectionImpl;
 import org.apache.bookkeeper.common.component.AbstractLifecycleComponent;
 import org.apache.bookkeeper.common.component.ComponentInfoPublisher;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
 import org.apache.bookkeeper.discover.RegistrationManager;
@@ -99,8 +100,10 @@ public class BookieService extends AbstractLifecycleComponent<BookieConfiguratio
                 serverConf, diskChecker, bookieStats.scope(LD_LEDGER_SCOPE));
         LedgerDirsManager indexDirsManager = BookieResources.createIndexDirsManager(
                 serverConf, diskChecker, bookieStats.scope(LD_INDEX_SCOPE), ledgerDirsManager);
+        MemoryLimitController memoryBudget = BookieResources.createMemoryBudget(serverConf, bookieStats);
         LedgerStorage storage = BookieResources.createLedgerStorage(
-                serverConf, ledgerManager, ledgerDirsManager, indexDirsManager, bookieStats, allocator);
+                serverConf, ledgerManager, ledgerDirsManager, indexDirsManager, bookieStats, allocator,
+                memoryBudget);
         UncleanShutdownDetection uncleanShutdownDetection = new UncleanShutdownDetectionImpl(ledgerDirsManager);
 
         LegacyCookieValidation cookieValidation = new LegacyCookieValidation(serverConf, rm);
@@ -111,12 +114,12 @@ public class BookieService extends AbstractLifecycleComponent<BookieConfiguratio
             bookie = new ReadOnlyBookie(serverConf, rm, storage, diskChecker,
                     ledgerDirsManager, indexDirsManager,
                     statsLogger.scope(BOOKIE_SCOPE),
-                    allocator, bookieServiceInfoProvider);
+                    allocator, memoryBudget, bookieServiceInfoProvider);
         } else {
             bookie = new BookieImpl(serverConf, rm, storage, diskChecker,
                     ledgerDirsManager, indexDirsManager,
                     statsLogger.scope(BOOKIE_SCOPE),
-                    allocator, bookieServiceInfoProvider);
+                    allocator, memoryBudget, bookieServiceInfoProvider);
         }
 
         this.bs = new BookieServer(serverConf, bookie,